@@ -0,0 +1,61 @@
+package cn.lyf.redis.anno;
+
+import java.lang.annotation.*;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ConcurrencyLimit
+ * @description 限制接口同时处理的请求数(舱壁)，超过时返回请求受限。
+ * 与@RequestLimit按时间窗口限制次数不同，这里限制的是在途请求，上限根据接口的处理耗时自动调整：
+ * 耗时明显高于长期水平时下调，耗时正常并且上限被用满时逐步上调
+ * @since 2023/5/28 10:00
+ */
+@Documented
+@Inherited
+@Target(value = {ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ConcurrencyLimit {
+    /**
+     * 启动时每个节点的并发上限
+     *
+     * @return initialLimit
+     */
+    int initialLimit() default 20;
+
+    /**
+     * 自动调整的下限
+     *
+     * @return minLimit
+     */
+    int minLimit() default 1;
+
+    /**
+     * 自动调整的上限
+     *
+     * @return maxLimit
+     */
+    int maxLimit() default 200;
+
+    /**
+     * 延迟容忍倍数，短期耗时超过长期耗时的该倍数时才下调上限
+     *
+     * @return tolerance
+     */
+    double tolerance() default 1.5;
+
+    /**
+     * 大于0时为分布式模式：除了每个节点的自适应上限，所有节点共用一个Redisson信号量，
+     * 同时处理的请求总数不超过globalLimit。信号量的许可数只在第一次创建时设置
+     *
+     * @return globalLimit
+     */
+    int globalLimit() default 0;
+
+    /**
+     * 分布式模式下许可的租约时间(毫秒)，节点宕机没有归还的许可在租约到期后自动释放，应大于接口的最长处理时间
+     *
+     * @return leaseMillis
+     */
+    long leaseMillis() default 30_000;
+}
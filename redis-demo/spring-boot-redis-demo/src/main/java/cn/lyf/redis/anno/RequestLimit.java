@@ -1,5 +1,8 @@
 package cn.lyf.redis.anno;
 
+import cn.lyf.redis.limit.LimitAlgorithm;
+import cn.lyf.redis.limit.LimitBackend;
+
 import java.lang.annotation.*;
 
 /**
@@ -27,4 +30,50 @@ public @interface RequestLimit {
      * @return maxCount
      */
     int maxCount() default 1;
+
+    /**
+     * 限流算法，默认为固定窗口计数
+     *
+     * @return algorithm
+     */
+    LimitAlgorithm algorithm() default LimitAlgorithm.FIXED_WINDOW;
+
+    /**
+     * 是否启用本地+redis两级限流，大部分请求在本地判断，只有预占的额度用完时才访问redis。
+     * 仅对固定窗口计数生效
+     *
+     * @return hybrid
+     */
+    boolean hybrid() default false;
+
+    /**
+     * 两级限流允许的误差比例，每个节点每次从redis预占 maxCount * maxError 个额度(至少为1)，
+     * 值越大访问redis的次数越少，但节点间的误差越大
+     *
+     * @return maxError
+     */
+    double maxError() default 0.1;
+
+    /**
+     * 是否按接口限流：所有客户端共用maxCount，默认每个客户端(ip或会话)各自计数
+     *
+     * @return global
+     */
+    boolean global() default false;
+
+    /**
+     * 接口维度限流的分片数，大于1时一个计数拆成shards个key分散到集群的不同节点，每个分片的额度为 maxCount / shards，
+     * 请求随机落在一个分片上，该分片额度用完时再尝试另一个分片。总放行数不会超过maxCount，
+     * 但分片间不均匀时在总额度用完之前就可能受限。需要 global = true，并且maxCount不小于shards
+     *
+     * @return shards
+     */
+    int shards() default 1;
+
+    /**
+     * 限流的实现方式，默认使用配置 demo.limit.backend
+     *
+     * @return backend
+     */
+    LimitBackend backend() default LimitBackend.DEFAULT;
 }
@@ -0,0 +1,291 @@
+package cn.lyf.redis.batch;
+
+import cn.lyf.redis.config.RedisBatchProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname RedisRequestBatcher
+ * @description 合并并发的单key读写：调用方的命令先进入队列，发送线程一次取出一批，
+ * 连续的GET合并为一个MGET，与SET一起按到达顺序放在同一个pipeline中发送，再分别完成各自的future。
+ * 集群模式不支持pipeline，MGET交给连接按slot拆分，SET逐条发送。
+ * 关闭时等发送线程退出，再在当前线程发送队列中剩余的命令，返回的future都会完成，没有结果的以异常结束
+ * @since 2023/5/12 10:00
+ */
+@Slf4j
+@Component
+public class RedisRequestBatcher implements InitializingBean, DisposableBean {
+    /**
+     * 关闭时等待每个发送线程发送完当前批次的最长时间
+     */
+    private static final long SHUTDOWN_WAIT_MILLIS = 5_000;
+
+    private final RedisTemplate<String, Serializable> redisTemplate;
+    private final RedisSerializer<String> keySerializer;
+    private final RedisSerializer<Object> valueSerializer;
+    private final RedisBatchProperties properties;
+    private final BlockingQueue<Command> queue;
+    private final boolean cluster;
+    private final List<Thread> dispatchers = new ArrayList<>();
+    private volatile boolean running;
+
+    @SuppressWarnings("unchecked")
+    public RedisRequestBatcher(@Qualifier(value = "jsonRedisTemplate") RedisTemplate<String, Serializable> redisTemplate,
+                               RedisBatchProperties properties) {
+        this.redisTemplate = redisTemplate;
+        this.keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+        this.valueSerializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        this.properties = properties;
+        this.queue = new LinkedBlockingQueue<>(properties.getQueueCapacity());
+        RedisConnectionFactory connectionFactory = redisTemplate.getConnectionFactory();
+        this.cluster = connectionFactory instanceof JedisConnectionFactory && ((JedisConnectionFactory) connectionFactory).isRedisClusterAware()
+                || connectionFactory instanceof LettuceConnectionFactory && ((LettuceConnectionFactory) connectionFactory).isClusterAware();
+    }
+
+    /**
+     * 读取一个key，不存在时结果为null
+     *
+     * @param key key
+     * @return 在发送线程上完成的future
+     */
+    public CompletableFuture<Object> get(String key) {
+        return submit(new Command(keySerializer.serialize(key), null, null));
+    }
+
+    /**
+     * 写入一个key
+     *
+     * @param key     key
+     * @param value   值，在调用线程上序列化
+     * @param timeout 过期时间，为null时不过期
+     * @return 在发送线程上完成的future
+     */
+    public CompletableFuture<Object> set(String key, Serializable value, Duration timeout) {
+        Expiration expiration = timeout == null ? Expiration.persistent() : Expiration.from(timeout);
+        return submit(new Command(keySerializer.serialize(key), valueSerializer.serialize(value), expiration));
+    }
+
+    private CompletableFuture<Object> submit(Command command) {
+        // 未启动或队列已满时在调用线程直接执行，相当于背压；
+        // 入队后发现已经关闭时，命令可能错过了destroy的清空，能从队列中取回就自己发送
+        if (!running || !queue.offer(command) || !running && queue.remove(command)) {
+            List<Command> single = new ArrayList<>(1);
+            single.add(command);
+            flush(single);
+        }
+        return command.future;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        running = true;
+        for (int i = 0; i < properties.getDispatchers(); i++) {
+            Thread thread = new Thread(this::dispatch, "redis-batcher-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            dispatchers.add(thread);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        dispatchers.forEach(Thread::interrupt);
+        for (Thread dispatcher : dispatchers) {
+            try {
+                dispatcher.join(SHUTDOWN_WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // 剩余的命令在当前线程发送完
+        List<Command> rest = new ArrayList<>();
+        while (queue.drainTo(rest, properties.getMaxBatchSize()) > 0) {
+            flush(rest);
+            rest.clear();
+        }
+    }
+
+    private void dispatch() {
+        int maxBatchSize = properties.getMaxBatchSize();
+        long windowNanos = properties.getWindow().toNanos();
+        List<Command> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                if (windowNanos > 0) {
+                    long deadline = System.nanoTime() + windowNanos;
+                    long remaining;
+                    while (batch.size() < maxBatchSize && (remaining = deadline - System.nanoTime()) > 0) {
+                        Command command = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (command == null) {
+                            break;
+                        }
+                        batch.add(command);
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                    }
+                }
+            } catch (InterruptedException e) {
+                // 中断标志已被清除；关闭时由循环条件退出，运行中的意外中断忽略，不重新设置，否则每次take都立即抛出
+                log.debug("redis batcher dispatcher interrupted, running: {}", running);
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 发送一批命令，失败时这一批的future都以异常结束
+     */
+    void flush(List<Command> batch) {
+        try {
+            if (cluster) {
+                flushWithoutPipeline(batch);
+                return;
+            }
+            List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                int i = 0;
+                while (i < batch.size()) {
+                    i = send(connection, batch, i);
+                }
+                return null;
+            }, null);
+            complete(batch, results);
+        } catch (RuntimeException e) {
+            log.warn("redis batch of {} commands failed: {}", batch.size(), e.getMessage());
+            for (Command command : batch) {
+                command.future.completeExceptionally(e);
+            }
+        } finally {
+            // 结果数量与命令不一致等情况下，不让调用方一直等待
+            for (Command command : batch) {
+                if (!command.future.isDone()) {
+                    command.future.completeExceptionally(new IllegalStateException("redis batch returned no result for command"));
+                }
+            }
+        }
+    }
+
+    private void flushWithoutPipeline(List<Command> batch) {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            int i = 0;
+            while (i < batch.size()) {
+                Command command = batch.get(i);
+                if (command.value != null) {
+                    set(connection, command);
+                    command.future.complete(null);
+                    i++;
+                } else {
+                    int end = getsEnd(batch, i);
+                    completeGets(batch, i, end, connection.stringCommands().mGet(keys(batch, i, end)));
+                    i = end;
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 从start开始发送一条命令：连续的GET合并为一个MGET
+     *
+     * @return 下一条未发送命令的下标
+     */
+    private int send(RedisConnection connection, List<Command> batch, int start) {
+        Command command = batch.get(start);
+        if (command.value != null) {
+            set(connection, command);
+            return start + 1;
+        }
+        int end = getsEnd(batch, start);
+        connection.stringCommands().mGet(keys(batch, start, end));
+        return end;
+    }
+
+    private static void set(RedisConnection connection, Command command) {
+        connection.stringCommands().set(command.key, command.value, command.expiration, RedisStringCommands.SetOption.upsert());
+    }
+
+    /**
+     * 从start开始连续的GET的结束下标
+     */
+    private static int getsEnd(List<Command> batch, int start) {
+        int end = start + 1;
+        while (end < batch.size() && batch.get(end).value == null) {
+            end++;
+        }
+        return end;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void complete(List<Command> batch, List<Object> results) {
+        int i = 0;
+        for (Object result : results) {
+            if (batch.get(i).value != null) {
+                batch.get(i).future.complete(null);
+                i++;
+            } else {
+                List<byte[]> values = (List<byte[]>) result;
+                completeGets(batch, i, i + values.size(), values);
+                i += values.size();
+            }
+        }
+    }
+
+    private void completeGets(List<Command> batch, int start, int end, List<byte[]> values) {
+        for (int i = start; i < end; i++) {
+            batch.get(i).future.complete(valueSerializer.deserialize(values.get(i - start)));
+        }
+    }
+
+    private static byte[][] keys(List<Command> batch, int start, int end) {
+        byte[][] keys = new byte[end - start][];
+        for (int i = start; i < end; i++) {
+            keys[i - start] = batch.get(i).key;
+        }
+        return keys;
+    }
+
+    static final class Command {
+        private final byte[] key;
+
+        /**
+         * 为null时表示GET
+         */
+        private final byte[] value;
+        private final Expiration expiration;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        Command(byte[] key, byte[] value, Expiration expiration) {
+            this.key = key;
+            this.value = value;
+            this.expiration = expiration;
+        }
+    }
+}
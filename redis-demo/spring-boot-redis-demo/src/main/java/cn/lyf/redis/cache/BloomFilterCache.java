@@ -0,0 +1,207 @@
+package cn.lyf.redis.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname BloomFilterCache
+ * @description 防缓存穿透的包装。布隆过滤器判断key一定不存在时直接返回null，不访问redis也不执行加载；
+ * 可能存在但加载结果为null时(误判，或数据已删除)，在本地记录一个短期的空值，存活时间内同样直接返回null。
+ * 空值不写入redis，内层缓存只保存存在的值。过滤器需要预先写入所有存在的key，见BloomFilterCacheDecorator.getFilter。
+ * 指标: cache.bloom.rejected、cache.bloom.false.positives、cache.bloom.negative.hits、cache.bloom.negative.size、
+ * cache.bloom.false.positive.rate(读取不存在的key时通过过滤器的比例)。
+ * 各计数都按读取次数统计，同一个key重复读取会重复计数；已删除的数据在过滤器中仍然存在，读取时同样计为误判
+ * @since 2023/5/30 10:30
+ */
+public class BloomFilterCache implements Cache {
+    private static final ValueWrapper NULL_WRAPPER = new SimpleValueWrapper(null);
+
+    private final Cache delegate;
+
+    private final CacheBloomFilter filter;
+
+    /**
+     * 加载结果为null的key，value无意义
+     */
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Boolean> negatives;
+
+    private final Counter rejected;
+    private final Counter falsePositives;
+    private final Counter negativeHits;
+
+    public BloomFilterCache(Cache delegate, CacheBloomFilter filter, Duration negativeTtl, long negativeMaximumSize,
+                            MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.filter = filter;
+        this.negatives = Caffeine.newBuilder()
+                .expireAfterWrite(negativeTtl)
+                .maximumSize(negativeMaximumSize)
+                .build();
+        String name = delegate.getName();
+        this.rejected = Counter.builder("cache.bloom.rejected").description("布隆过滤器判断不存在的读取")
+                .tag("cache", name).register(meterRegistry);
+        this.falsePositives = Counter.builder("cache.bloom.false.positives").description("布隆过滤器判断可能存在但加载结果为null")
+                .tag("cache", name).register(meterRegistry);
+        this.negativeHits = Counter.builder("cache.bloom.negative.hits").description("命中本地空值的读取")
+                .tag("cache", name).register(meterRegistry);
+        Gauge.builder("cache.bloom.false.positive.rate", this, BloomFilterCache::falsePositiveRate)
+                .description("读取不存在的key时通过过滤器的比例(含命中本地空值和已删除的数据)").tag("cache", name).register(meterRegistry);
+        Gauge.builder("cache.bloom.negative.size", negatives, c -> c.estimatedSize()).description("本地空值的数量")
+                .tag("cache", name).register(meterRegistry);
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        if (isMissing(key)) {
+            return NULL_WRAPPER;
+        }
+        return delegate.get(key);
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        if (isMissing(key)) {
+            return null;
+        }
+        return delegate.get(key, type);
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        if (isMissing(key)) {
+            return null;
+        }
+        try {
+            return delegate.get(key, () -> {
+                T value = valueLoader.call();
+                if (value == null) {
+                    onNullValue(key);
+                    // 中断内层的写入，内层缓存和合并加载的等待者都不会保存null
+                    throw NullValueLoaded.INSTANCE;
+                }
+                return value;
+            });
+        } catch (ValueRetrievalException e) {
+            if (isNullValueLoaded(e)) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (value == null) {
+            // @Cacheable(sync = false)方法返回null
+            onNullValue(key);
+            return;
+        }
+        delegate.put(key, value);
+        filter.add(key);
+        negatives.invalidate(key);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        if (value == null) {
+            onNullValue(key);
+            return null;
+        }
+        ValueWrapper existing = delegate.putIfAbsent(key, value);
+        filter.add(key);
+        negatives.invalidate(key);
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+        negatives.invalidate(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        negatives.invalidate(key);
+        return delegate.evictIfPresent(key);
+    }
+
+    /**
+     * 布隆过滤器不支持删除，clear只清空缓存和本地空值
+     */
+    @Override
+    public void clear() {
+        delegate.clear();
+        negatives.invalidateAll();
+    }
+
+    @Override
+    public boolean invalidate() {
+        negatives.invalidateAll();
+        return delegate.invalidate();
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    private boolean isMissing(Object key) {
+        if (!filter.mightContain(key)) {
+            rejected.increment();
+            return true;
+        }
+        if (negatives.getIfPresent(key) != null) {
+            negativeHits.increment();
+            return true;
+        }
+        return false;
+    }
+
+    private void onNullValue(Object key) {
+        falsePositives.increment();
+        negatives.put(key, Boolean.TRUE);
+    }
+
+    /**
+     * 通过过滤器但不存在的读取(加载为null、命中本地空值) / 所有读取不存在的key的次数
+     */
+    private double falsePositiveRate() {
+        double passed = falsePositives.count() + negativeHits.count();
+        double total = passed + rejected.count();
+        return total == 0 ? 0 : passed / total;
+    }
+
+    private static boolean isNullValueLoaded(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause == NullValueLoaded.INSTANCE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 加载结果为null的标记，不需要堆栈
+     */
+    private static final class NullValueLoaded extends RuntimeException {
+        private static final NullValueLoaded INSTANCE = new NullValueLoaded();
+
+        private NullValueLoaded() {
+            super("value loader returned null", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package cn.lyf.redis.cache;
+
+import cn.lyf.redis.config.CacheSpecProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname BloomFilterCacheDecorator
+ * @description 为配置了 demo.cache.specs.[name].bloom.enabled 的缓存增加布隆过滤器，
+ * 同时持有各缓存的过滤器，供启动预热和数据新增时写入存在的key。
+ * 各缓存的本地副本共用一个单线程调度刷新，与缓存后台刷新的线程池分开
+ * @since 2023/5/30 11:00
+ */
+@Slf4j
+@Component
+@Order(BloomFilterCacheDecorator.ORDER)
+public class BloomFilterCacheDecorator implements CacheDecorator, DisposableBean {
+    /**
+     * 在近端缓存之外，一定不存在的key不占用近端缓存；本地副本模式下判断不访问redis
+     */
+    public static final int ORDER = Ordered.LOWEST_PRECEDENCE - 75;
+
+    private final CacheSpecProperties cacheSpecProperties;
+
+    private final RedissonClient redissonClient;
+
+    private final ScheduledExecutorService refreshScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cache-bloom-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, CacheBloomFilter> filters = new ConcurrentHashMap<>();
+
+    public BloomFilterCacheDecorator(CacheSpecProperties cacheSpecProperties, RedissonClient redissonClient,
+                                     MeterRegistry meterRegistry) {
+        this.cacheSpecProperties = cacheSpecProperties;
+        this.redissonClient = redissonClient;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache decorate(Cache cache) {
+        CacheBloomFilter filter = getFilter(cache.getName());
+        if (filter == null) {
+            return cache;
+        }
+        CacheSpecProperties.Bloom bloom = cacheSpecProperties.getSpecs().get(cache.getName()).getBloom();
+        return new BloomFilterCache(cache, filter, bloom.getNegativeTtl(), bloom.getNegativeMaximumSize(), meterRegistry);
+    }
+
+    /**
+     * 获取缓存的布隆过滤器，key与缓存的key一致(如 @Cacheable(key = "#id") 时为id)
+     *
+     * @param cacheName 缓存名称
+     * @return 没有启用时返回null
+     */
+    public CacheBloomFilter getFilter(String cacheName) {
+        CacheSpecProperties.CacheSpec spec = cacheSpecProperties.getSpecs().get(cacheName);
+        if (spec == null || !spec.getBloom().isEnabled()) {
+            return null;
+        }
+        return filters.computeIfAbsent(cacheName, name -> {
+            CacheSpecProperties.Bloom bloom = spec.getBloom();
+            log.info("缓存[{}]启用布隆过滤器, 预期数量: {}, 误判率: {}, 本地副本: {}", name,
+                    bloom.getExpectedInsertions(), bloom.getFalseProbability(), bloom.isLocalCopy());
+            return new CacheBloomFilter(name, redissonClient, bloom.getExpectedInsertions(), bloom.getFalseProbability(),
+                    bloom.isLocalCopy() ? bloom.getRefreshInterval() : null, refreshScheduler, meterRegistry);
+        });
+    }
+
+    @Override
+    public void destroy() {
+        refreshScheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,187 @@
+package cn.lyf.redis.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.misc.Hash;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname CacheBloomFilter
+ * @description 一个缓存的key存在性过滤器，保存在Redisson RBloomFilter中，所有节点共用。
+ * 开启本地副本时，定期把redis中的位图整个读到本地，mightContain不访问redis；
+ * 下标的计算与RedissonBloomFilter相同(StringCodec编码后HighwayHash 128位，双重哈希)，
+ * 本地副本检查全部下标(RedissonBloomFilter.contains没有检查最后一个)，误判只会比redis中的判断少。
+ * 本节点add的key立即写入本地副本，其它节点add的key在下一次刷新后可见；
+ * 本地副本中已经全部置位的key在redis中也已置位，add不再访问redis。
+ * 刷新由布隆过滤器自己的调度线程定期执行，不占用缓存后台刷新的线程池，也不计入cache.refresh指标。
+ * 指标: cache.bloom.memory(location=redis/local)
+ * @since 2023/5/30 10:00
+ */
+@Slf4j
+public class CacheBloomFilter {
+    static final String KEY_PREFIX = "cache:bloom:";
+
+    private final String cacheName;
+
+    private final RBloomFilter<String> bloomFilter;
+
+    private final long size;
+    private final int hashIterations;
+
+    /**
+     * 本地副本，不开启时为null
+     */
+    private final RedissonClient redissonClient;
+    private volatile byte[] localBits;
+
+    /**
+     * 上次刷新以来本节点add的key的下标，刷新后重新写入新的副本，避免读取位图与add交错时丢失
+     */
+    private final List<long[]> pendingIndexes = new ArrayList<>();
+
+    /**
+     * @param refreshInterval  本地副本的刷新间隔，为null时不使用本地副本
+     * @param refreshScheduler 定期刷新本地副本的调度线程，不使用本地副本时可以为null
+     */
+    public CacheBloomFilter(String cacheName, RedissonClient redissonClient, long expectedInsertions, double falseProbability,
+                            Duration refreshInterval, ScheduledExecutorService refreshScheduler, MeterRegistry meterRegistry) {
+        this.cacheName = cacheName;
+        this.bloomFilter = redissonClient.getBloomFilter(KEY_PREFIX + cacheName, StringCodec.INSTANCE);
+        // 已经存在时沿用redis中的配置
+        if (!bloomFilter.tryInit(expectedInsertions, falseProbability)) {
+            log.info("缓存[{}]的布隆过滤器已存在, 预期数量: {}, 误判率: {}", cacheName,
+                    bloomFilter.getExpectedInsertions(), bloomFilter.getFalseProbability());
+        }
+        this.size = bloomFilter.getSize();
+        this.hashIterations = bloomFilter.getHashIterations();
+        Gauge.builder("cache.bloom.memory", () -> (size + 7) / 8).description("布隆过滤器位图占用的字节数")
+                .baseUnit("bytes").tag("cache", cacheName).tag("location", "redis").register(meterRegistry);
+
+        if (refreshInterval == null) {
+            this.redissonClient = null;
+            return;
+        }
+        this.redissonClient = redissonClient;
+        refresh();
+        long intervalMillis = refreshInterval.toMillis();
+        refreshScheduler.scheduleWithFixedDelay(this::scheduledRefresh, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        Gauge.builder("cache.bloom.memory", this, filter -> filter.localBits.length).description("布隆过滤器位图占用的字节数")
+                .baseUnit("bytes").tag("cache", cacheName).tag("location", "local").register(meterRegistry);
+    }
+
+    /**
+     * 记录一个存在的key，数据写入数据库后或启动时预热调用
+     *
+     * @param key 缓存的key
+     */
+    public void add(Object key) {
+        String value = String.valueOf(key);
+        if (localBits == null) {
+            bloomFilter.add(value);
+            return;
+        }
+        long[] indexes = indexes(value);
+        // 本地副本只包含redis中已置位的下标，全部置位时不需要再写
+        if (allSet(localBits, indexes)) {
+            return;
+        }
+        bloomFilter.add(value);
+        synchronized (pendingIndexes) {
+            setBits(localBits, indexes);
+            pendingIndexes.add(indexes);
+        }
+    }
+
+    /**
+     * @param key 缓存的key
+     * @return false: key一定不存在; true: key可能存在
+     */
+    public boolean mightContain(Object key) {
+        String value = String.valueOf(key);
+        if (localBits == null) {
+            return bloomFilter.contains(value);
+        }
+        return allSet(localBits, indexes(value));
+    }
+
+    /**
+     * 从redis读取整个位图替换本地副本
+     */
+    void refresh() {
+        synchronized (pendingIndexes) {
+            pendingIndexes.clear();
+        }
+        byte[] remote = redissonClient.<byte[]>getBucket(KEY_PREFIX + cacheName, ByteArrayCodec.INSTANCE).get();
+        // redis只保存到最后一个置位的字节，本地按完整大小分配，add时不需要扩容
+        byte[] bits = new byte[(int) ((size + 7) / 8)];
+        if (remote != null) {
+            System.arraycopy(remote, 0, bits, 0, Math.min(remote.length, bits.length));
+        }
+        synchronized (pendingIndexes) {
+            for (long[] indexes : pendingIndexes) {
+                setBits(bits, indexes);
+            }
+            localBits = bits;
+        }
+    }
+
+    /**
+     * 异常时保留旧的副本，不抛出，否则调度线程不再执行后续的刷新
+     */
+    private void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("缓存[{}]的布隆过滤器刷新本地副本失败, 继续使用旧副本", cacheName, e);
+        }
+    }
+
+    private long[] indexes(String value) {
+        ByteBuf buf = Unpooled.wrappedBuffer(value.getBytes(StandardCharsets.UTF_8));
+        long[] hash;
+        try {
+            hash = Hash.hash128(buf);
+        } finally {
+            buf.release();
+        }
+        long[] indexes = new long[hashIterations];
+        long combined = hash[0];
+        for (int i = 0; i < hashIterations; i++) {
+            indexes[i] = (combined & Long.MAX_VALUE) % size;
+            combined += i % 2 == 0 ? hash[1] : hash[0];
+        }
+        return indexes;
+    }
+
+    private static boolean allSet(byte[] bits, long[] indexes) {
+        for (long index : indexes) {
+            int offset = (int) (index >>> 3);
+            // redis的位图从每个字节的最高位开始
+            if (offset >= bits.length || (bits[offset] & (0x80 >>> (index & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void setBits(byte[] bits, long[] indexes) {
+        for (long index : indexes) {
+            bits[(int) (index >>> 3)] |= (byte) (0x80 >>> (index & 7));
+        }
+    }
+}
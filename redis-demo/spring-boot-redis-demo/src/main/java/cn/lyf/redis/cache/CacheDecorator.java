@@ -0,0 +1,32 @@
+package cn.lyf.redis.cache;
+
+import org.springframework.cache.Cache;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname CacheDecorator
+ * @description 对redis缓存进行包装的扩展点，按@Order从小到大依次包装，order越小越靠近redis
+ * @since 2023/5/4 10:20
+ */
+@FunctionalInterface
+public interface CacheDecorator {
+    /**
+     * 包装缓存
+     *
+     * @param cache 被包装的缓存
+     * @return 包装后的缓存，不需要包装时返回原缓存
+     */
+    Cache decorate(Cache cache);
+
+    /**
+     * 包装缓存，需要直接读写底层缓存(如RedisCache的cacheWriter和序列化配置)的包装覆盖该方法
+     *
+     * @param cache  被包装的缓存
+     * @param target 最内层由RedisCacheManager创建的缓存
+     * @return 包装后的缓存，不需要包装时返回原缓存
+     */
+    default Cache decorate(Cache cache, Cache target) {
+        return decorate(cache);
+    }
+}
@@ -0,0 +1,86 @@
+package cn.lyf.redis.cache;
+
+import cn.lyf.redis.config.CacheSpecProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname CacheRefreshExecutor
+ * @description 缓存后台刷新使用的有界线程池，所有缓存共用。
+ * 线程数即同时刷新的最大数量，线程和队列都满时放弃本次刷新，调用者继续使用当前值，值过期后再同步加载。
+ * 指标: cache.refresh(耗时, result=success/failure)、cache.refresh.rejected、cache.refresh.active
+ * @since 2023/5/19 10:00
+ */
+@Slf4j
+@Component
+public class CacheRefreshExecutor implements DisposableBean {
+    private final ThreadPoolExecutor executor;
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public CacheRefreshExecutor(CacheSpecProperties cacheSpecProperties, MeterRegistry meterRegistry) {
+        this(cacheSpecProperties.getRefresh().getThreads(), cacheSpecProperties.getRefresh().getQueueCapacity(), meterRegistry);
+    }
+
+    public CacheRefreshExecutor(int threads, int queueCapacity, MeterRegistry meterRegistry) {
+        AtomicInteger sequence = new AtomicInteger();
+        BlockingQueue<Runnable> queue = queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue, r -> {
+            Thread thread = new Thread(r, "cache-refresh-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("cache.refresh.active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+    }
+
+    /**
+     * 提交一次后台刷新
+     *
+     * @param cacheName 缓存名称，作为指标的tag
+     * @param reload    刷新逻辑，抛出异常时记为失败
+     * @return false: 线程池已满，没有提交
+     */
+    public boolean submit(String cacheName, Callable<?> reload) {
+        Timer success = timer(cacheName, "success");
+        Timer failure = timer(cacheName, "failure");
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                try {
+                    reload.call();
+                    success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                } catch (Exception e) {
+                    failure.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    log.warn("缓存[{}]后台刷新失败", cacheName, e);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            Counter.builder("cache.refresh.rejected").tag("cache", cacheName).register(meterRegistry).increment();
+            return false;
+        }
+    }
+
+    private Timer timer(String cacheName, String result) {
+        return Timer.builder("cache.refresh").tag("cache", cacheName).tag("result", result).register(meterRegistry);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,245 @@
+package cn.lyf.redis.cache;
+
+import org.springframework.aop.TargetClassAware;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.core.MethodClassKey;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.temporal.TemporalAccessor;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname CompactKeyGenerator
+ * @description 紧凑的缓存key生成策略，格式为 前缀:参数1,参数2...
+ * 前缀为缩写的类名加方法名，再加完整类名和方法签名的短hash(如 c.l.r.s.GoodsService.findById@1a2b3c4d)，按(类, 方法)缓存；
+ * 缩写只为便于阅读，不同包下的同名类由hash区分；重载的方法在hash前追加参数类型。
+ * 每个参数带类型标识，字符串带长度，null、"1"与1、("a,b")与("a","b")生成的key都不相同。
+ * key超过hashThreshold个字符时，参数部分替换为 #md5，避免过长的key占用redis内存
+ * @since 2023/5/11 10:00
+ */
+public class CompactKeyGenerator implements KeyGenerator {
+    private static final char PREFIX_SEPARATOR = ':';
+    private static final char PARAM_SEPARATOR = ',';
+    private static final char HASH = '#';
+    private static final char SIGNATURE_HASH = '@';
+
+    /**
+     * key超过该长度时对参数部分做hash，小于等于0时不做hash
+     */
+    private final int hashThreshold;
+
+    /**
+     * 绝大多数方法只对应一个目标类，先按方法查找，不需要为每次调用创建MethodClassKey
+     */
+    private final Map<Method, Prefix> prefixesByMethod = new ConcurrentHashMap<>();
+    private final Map<MethodClassKey, String> prefixes = new ConcurrentHashMap<>();
+
+    public CompactKeyGenerator(int hashThreshold) {
+        this.hashThreshold = hashThreshold;
+    }
+
+    @Override
+    public Object generate(Object target, Method method, Object... params) {
+        // AopUtils.getTargetClass每次都要检查类名，这里直接按运行时类缓存，CGLIB子类在构建前缀时还原
+        Class<?> targetClass = target instanceof TargetClassAware ? ((TargetClassAware) target).getTargetClass() : target.getClass();
+        String prefix = prefix(targetClass, method);
+        if (params.length == 0) {
+            return prefix;
+        }
+
+        StringBuilder sb = new StringBuilder(prefix.length() + 16 * params.length);
+        sb.append(prefix).append(PREFIX_SEPARATOR);
+        for (int i = 0; i < params.length; i++) {
+            if (i > 0) {
+                sb.append(PARAM_SEPARATOR);
+            }
+            append(sb, params[i]);
+        }
+        if (hashThreshold > 0 && sb.length() > hashThreshold) {
+            String digest = DigestUtils.md5DigestAsHex(sb.substring(prefix.length() + 1).getBytes(StandardCharsets.UTF_8));
+            sb.setLength(prefix.length() + 1);
+            sb.append(HASH).append(digest);
+        }
+        return sb.toString();
+    }
+
+    private String prefix(Class<?> targetClass, Method method) {
+        Prefix cached = prefixesByMethod.get(method);
+        if (cached != null && cached.targetClass == targetClass) {
+            return cached.value;
+        }
+        String value = prefixes.computeIfAbsent(new MethodClassKey(method, targetClass), k -> buildPrefix(targetClass, method));
+        if (cached == null) {
+            prefixesByMethod.putIfAbsent(method, new Prefix(targetClass, value));
+        }
+        return value;
+    }
+
+    /**
+     * 包名缩写为首字母，重载的方法追加参数类型的简单名称，最后追加完整类名和方法签名的md5前8位
+     */
+    static String buildPrefix(Class<?> targetClass, Method method) {
+        StringBuilder sb = new StringBuilder();
+        String className = ClassUtils.getUserClass(targetClass).getName();
+        StringBuilder signature = new StringBuilder(className).append('.').append(method.getName()).append('(');
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                signature.append(PARAM_SEPARATOR);
+            }
+            signature.append(parameterTypes[i].getName());
+        }
+        signature.append(')');
+
+        int start = 0;
+        int dot;
+        while ((dot = className.indexOf('.', start)) > 0) {
+            sb.append(className.charAt(start)).append('.');
+            start = dot + 1;
+        }
+        sb.append(className, start, className.length()).append('.').append(method.getName());
+
+        if (isOverloaded(targetClass, method)) {
+            sb.append('(');
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (i > 0) {
+                    sb.append(PARAM_SEPARATOR);
+                }
+                sb.append(parameterTypes[i].getSimpleName());
+            }
+            sb.append(')');
+        }
+        String digest = DigestUtils.md5DigestAsHex(signature.toString().getBytes(StandardCharsets.UTF_8));
+        return sb.append(SIGNATURE_HASH).append(digest, 0, 8).toString();
+    }
+
+    private static boolean isOverloaded(Class<?> targetClass, Method method) {
+        for (Method candidate : ReflectionUtils.getUniqueDeclaredMethods(ClassUtils.getUserClass(targetClass))) {
+            if (candidate.getName().equals(method.getName())
+                    && !Arrays.equals(candidate.getParameterTypes(), method.getParameterTypes())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按类型编码参数：
+     * n: null, t/f: boolean, i: int/short/byte, l: long, d: float/double, m: BigDecimal/BigInteger, c: char,
+     * s长度:字符串, e: 枚举, D: Date(毫秒数), T: java.time日期时间, u: UUID, [..]: 数组/List/Set(Set排序后编码), {k=v,..}: Map(排序后编码),
+     * o长度:toString 其它对象
+     */
+    static void append(StringBuilder sb, Object param) {
+        if (param == null) {
+            sb.append('n');
+            return;
+        }
+        // 常见的final类型先按类比较，比instanceof链(尤其是接口)便宜
+        Class<?> type = param.getClass();
+        if (type == String.class) {
+            String value = (String) param;
+            sb.append('s').append(value.length()).append(':').append(value);
+        } else if (type == Long.class) {
+            sb.append('l').append(((Long) param).longValue());
+        } else if (type == Integer.class) {
+            sb.append('i').append(((Integer) param).intValue());
+        } else if (param instanceof Set) {
+            List<String> elements = new ArrayList<>(((Set<?>) param).size());
+            for (Object element : (Set<?>) param) {
+                StringBuilder elementSb = new StringBuilder();
+                append(elementSb, element);
+                elements.add(elementSb.toString());
+            }
+            appendSorted(sb, '[', elements, ']');
+        } else if (param instanceof Collection) {
+            sb.append('[');
+            int i = 0;
+            for (Object element : (Collection<?>) param) {
+                if (i++ > 0) {
+                    sb.append(PARAM_SEPARATOR);
+                }
+                append(sb, element);
+            }
+            sb.append(']');
+        } else if (param instanceof CharSequence) {
+            String value = param.toString();
+            sb.append('s').append(value.length()).append(':').append(value);
+        } else if (param instanceof Short || param instanceof Byte) {
+            sb.append('i').append(((Number) param).intValue());
+        } else if (param instanceof Double || param instanceof Float) {
+            sb.append('d').append(param);
+        } else if (param instanceof BigDecimal || param instanceof BigInteger) {
+            sb.append('m').append(param);
+        } else if (param instanceof Boolean) {
+            sb.append((Boolean) param ? 't' : 'f');
+        } else if (param instanceof Character) {
+            sb.append('c').append(((Character) param).charValue());
+        } else if (param instanceof Enum) {
+            sb.append('e').append(((Enum<?>) param).name());
+        } else if (param instanceof Date) {
+            sb.append('D').append(((Date) param).getTime());
+        } else if (param instanceof TemporalAccessor) {
+            sb.append('T').append(param);
+        } else if (param instanceof UUID) {
+            sb.append('u').append(param);
+        } else if (type.isArray()) {
+            sb.append('[');
+            int length = Array.getLength(param);
+            for (int i = 0; i < length; i++) {
+                if (i > 0) {
+                    sb.append(PARAM_SEPARATOR);
+                }
+                append(sb, Array.get(param, i));
+            }
+            sb.append(']');
+        } else if (param instanceof Map) {
+            List<String> entries = new ArrayList<>(((Map<?, ?>) param).size());
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) param).entrySet()) {
+                StringBuilder entrySb = new StringBuilder();
+                append(entrySb, entry.getKey());
+                entrySb.append('=');
+                append(entrySb, entry.getValue());
+                entries.add(entrySb.toString());
+            }
+            appendSorted(sb, '{', entries, '}');
+        } else {
+            String value = param.toString();
+            sb.append('o').append(value.length()).append(':').append(value);
+        }
+    }
+
+    /**
+     * 无序集合的元素按编码后的字符串排序，保证相等的集合生成相同的key
+     */
+    private static void appendSorted(StringBuilder sb, char open, List<String> encoded, char close) {
+        Collections.sort(encoded);
+        sb.append(open);
+        for (int i = 0; i < encoded.size(); i++) {
+            if (i > 0) {
+                sb.append(PARAM_SEPARATOR);
+            }
+            sb.append(encoded.get(i));
+        }
+        sb.append(close);
+    }
+
+    private static final class Prefix {
+        private final Class<?> targetClass;
+        private final String value;
+
+        private Prefix(Class<?> targetClass, String value) {
+            this.targetClass = targetClass;
+            this.value = value;
+        }
+    }
+}
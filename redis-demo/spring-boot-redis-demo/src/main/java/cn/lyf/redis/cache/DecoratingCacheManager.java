@@ -0,0 +1,55 @@
+package cn.lyf.redis.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname DecoratingCacheManager
+ * @description 在RedisCacheManager创建的缓存外依次套上CacheDecorator，每个缓存只包装一次
+ * @since 2023/5/4 10:30
+ */
+public class DecoratingCacheManager implements CacheManager {
+    private final CacheManager delegate;
+
+    private final List<CacheDecorator> decorators;
+
+    private final ConcurrentMap<String, Cache> caches = new ConcurrentHashMap<>();
+
+    public DecoratingCacheManager(CacheManager delegate, List<CacheDecorator> decorators) {
+        this.delegate = delegate;
+        this.decorators = decorators;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache target = delegate.getCache(name);
+        if (target == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, n -> decorate(target));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+
+    private Cache decorate(Cache cache) {
+        Cache decorated = cache;
+        for (CacheDecorator decorator : decorators) {
+            decorated = decorator.decorate(decorated, cache);
+        }
+        return decorated;
+    }
+}
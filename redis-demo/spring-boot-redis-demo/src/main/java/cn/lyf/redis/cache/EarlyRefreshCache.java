@@ -0,0 +1,317 @@
+package cn.lyf.redis.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname EarlyRefreshCache
+ * @description 过期前刷新的缓存，写入redis的值附带重新计算耗时delta和逻辑过期时间expireAt。
+ * XFETCH: 读取时若 now - delta * beta * ln(random) >= expireAt 则认为需要刷新，越接近过期、计算越慢，越可能提前刷新；
+ * AHEAD: 在存活时间的最后aheadRatio比例内读取时，把valueLoader提交到后台线程池重新加载，调用者直接返回当前值。
+ * 后台加载在其它线程执行被缓存的方法，拿不到调用者线程上的事务、请求等上下文。
+ * 同一个key在本节点只有一个调用者负责刷新(@Cacheable时get返回null让它重新执行方法，sync = true时直接调用valueLoader)，
+ * 其它调用者继续读旧值，值在redis中过期之前就已经被替换，不会出现集中未命中。
+ * 随机增量加在逻辑过期时间上，redis中的存活时间应取上限 ttl * (1 + jitter)
+ * @since 2023/5/18 10:30
+ */
+@Slf4j
+public class EarlyRefreshCache implements SelfLoadingCache {
+    /**
+     * 本地最多记录的加载中的key数量，超过后按近似LRU淘汰
+     */
+    private static final int MAX_LOADING_KEYS = 10_000;
+
+    /**
+     * 刷新者在这段时间内没有写入时，其它调用者可以接手刷新
+     */
+    private static final long MIN_CLAIM_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Cache delegate;
+
+    /**
+     * 逻辑存活时间，实际为 [ttl, ttl * (1 + jitter)] 之间的随机值
+     */
+    private final Duration ttl;
+
+    private final double jitter;
+
+    private final RefreshMode mode;
+
+    private final double beta;
+
+    private final double aheadRatio;
+
+    private final CacheRefreshExecutor refreshExecutor;
+
+    /**
+     * key -> 正在重新计算的调用者，用于测量delta和保证只有一个调用者提前刷新；
+     * 加载失败或没有写入时留下的记录在一个ttl后过期，数量有上限
+     */
+    private final ConcurrentMap<Object, Loading> loadings;
+
+    /**
+     * XFETCH
+     */
+    public EarlyRefreshCache(Cache delegate, Duration ttl, double jitter, double beta) {
+        this(delegate, ttl, jitter, RefreshMode.XFETCH, beta, 0, null);
+    }
+
+    /**
+     * AHEAD，没有valueLoader的读取按beta=1的XFETCH处理
+     */
+    public EarlyRefreshCache(Cache delegate, Duration ttl, double jitter, double aheadRatio, CacheRefreshExecutor refreshExecutor) {
+        this(delegate, ttl, jitter, RefreshMode.AHEAD, 1.0, aheadRatio, refreshExecutor);
+    }
+
+    private EarlyRefreshCache(Cache delegate, Duration ttl, double jitter, RefreshMode mode, double beta,
+                              double aheadRatio, CacheRefreshExecutor refreshExecutor) {
+        this.delegate = delegate;
+        this.ttl = ttl;
+        this.jitter = jitter;
+        this.mode = mode;
+        this.beta = beta;
+        this.aheadRatio = aheadRatio;
+        this.refreshExecutor = refreshExecutor;
+        this.loadings = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(MAX_LOADING_KEYS)
+                .<Object, Loading>build()
+                .asMap();
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper wrapper = delegate.get(key);
+        if (wrapper == null) {
+            startLoading(key);
+            return null;
+        }
+        Object stored = wrapper.get();
+        if (!(stored instanceof Entry)) {
+            // 启用前写入的值
+            return wrapper;
+        }
+        Entry entry = (Entry) stored;
+        // 外层的包装在加载前可能会再读一次，正在刷新的线程重复读取时仍然返回未命中
+        if (isRefreshing(key) || shouldRefresh(entry) && tryClaim(key, entry)) {
+            // 当前调用者负责重新计算，由随后的put写入新值
+            return null;
+        }
+        return new SimpleValueWrapper(entry.getValue());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = delegate.get(key);
+        Object value = wrapper != null ? unwrap(wrapper.get()) : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = delegate.get(key);
+        if (wrapper == null) {
+            startLoading(key);
+            try {
+                return (T) load(key, valueLoader);
+            } catch (Exception e) {
+                loadings.remove(key);
+                throw new ValueRetrievalException(key, valueLoader, e);
+            }
+        }
+
+        Object stored = wrapper.get();
+        if (!(stored instanceof Entry)) {
+            return (T) stored;
+        }
+        Entry entry = (Entry) stored;
+        if (mode == RefreshMode.AHEAD) {
+            if (inAheadWindow(entry) && tryClaim(key, entry) && !refreshExecutor.submit(getName(), () -> reload(key, valueLoader))) {
+                loadings.remove(key);
+            }
+            return (T) entry.getValue();
+        }
+        if (!shouldRefresh(entry) || !tryClaim(key, entry)) {
+            return (T) entry.getValue();
+        }
+        try {
+            return (T) load(key, valueLoader);
+        } catch (Exception e) {
+            // 旧值还没有过期，刷新失败时继续使用
+            loadings.remove(key);
+            log.warn("缓存[{}]提前刷新失败, 继续使用旧值: {}", getName(), key, e);
+            return (T) entry.getValue();
+        }
+    }
+
+    private Object load(Object key, Callable<?> valueLoader) throws Exception {
+        Object value = valueLoader.call();
+        put(key, value);
+        return value;
+    }
+
+    private Object reload(Object key, Callable<?> valueLoader) throws Exception {
+        try {
+            return load(key, valueLoader);
+        } catch (Exception e) {
+            loadings.remove(key);
+            throw e;
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, wrap(key, value));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = delegate.putIfAbsent(key, wrap(key, value));
+        return existing != null ? new SimpleValueWrapper(unwrap(existing.get())) : null;
+    }
+
+    @Override
+    public void evict(Object key) {
+        loadings.remove(key);
+        delegate.evict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        loadings.remove(key);
+        return delegate.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        loadings.clear();
+        delegate.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        loadings.clear();
+        return delegate.invalidate();
+    }
+
+    /**
+     * 未命中或抢到刷新时记录开始时间，写入时计算delta
+     */
+    private void startLoading(Object key) {
+        loadings.put(key, new Loading(Thread.currentThread(), System.nanoTime(), MIN_CLAIM_NANOS));
+    }
+
+    private boolean tryClaim(Object key, Entry entry) {
+        long now = System.nanoTime();
+        long claimNanos = Math.max(MIN_CLAIM_NANOS, TimeUnit.MILLISECONDS.toNanos(entry.getDelta()) * 5);
+        Loading claim = new Loading(Thread.currentThread(), now, claimNanos);
+        Loading current = loadings.putIfAbsent(key, claim);
+        if (current == null) {
+            return true;
+        }
+        return now - current.startNanos > current.claimNanos && loadings.replace(key, current, claim);
+    }
+
+    private boolean isRefreshing(Object key) {
+        Loading loading = loadings.get(key);
+        return loading != null && loading.thread == Thread.currentThread()
+                && System.nanoTime() - loading.startNanos <= loading.claimNanos;
+    }
+
+    private boolean inAheadWindow(Entry entry) {
+        return System.currentTimeMillis() >= entry.getExpireAt() - (long) (ttl.toMillis() * aheadRatio);
+    }
+
+    private boolean shouldRefresh(Entry entry) {
+        return shouldRefresh(System.currentTimeMillis(), entry.getExpireAt(), entry.getDelta(), beta,
+                1 - ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * XFetch: now - delta * beta * ln(random) >= expireAt
+     *
+     * @param now      当前时间
+     * @param expireAt 逻辑过期时间
+     * @param delta    重新计算的耗时(毫秒)
+     * @param beta     提前程度
+     * @param random   (0, 1]的随机数
+     * @return true: 需要刷新
+     */
+    static boolean shouldRefresh(long now, long expireAt, long delta, double beta, double random) {
+        return now - delta * beta * Math.log(random) >= expireAt;
+    }
+
+    private Entry wrap(Object key, Object value) {
+        Loading loading = loadings.remove(key);
+        long delta = loading == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loading.startNanos);
+        long ttlMillis = JitterRedisCacheWriter.jitter(ttl, jitter, ThreadLocalRandom.current().nextDouble()).toMillis();
+        return new Entry(value, delta, System.currentTimeMillis() + ttlMillis);
+    }
+
+    private static Object unwrap(Object stored) {
+        return stored instanceof Entry ? ((Entry) stored).getValue() : stored;
+    }
+
+    /**
+     * 写入redis的值，delta为0(例如@CachePut直接写入)时只在真正过期后重新计算
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Object value;
+
+        /**
+         * 重新计算的耗时(毫秒)
+         */
+        private long delta;
+
+        /**
+         * 逻辑过期时间
+         */
+        private long expireAt;
+    }
+
+    private static final class Loading {
+        private final Thread thread;
+        private final long startNanos;
+        private final long claimNanos;
+
+        private Loading(Thread thread, long startNanos, long claimNanos) {
+            this.thread = thread;
+            this.startNanos = startNanos;
+            this.claimNanos = claimNanos;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package cn.lyf.redis.cache;
+
+import cn.lyf.redis.config.CacheSpecProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname EarlyRefreshCacheDecorator
+ * @description 为配置了 demo.cache.specs.[name].early-refresh.enabled 的缓存增加过期前刷新(XFETCH或后台AHEAD)
+ * @since 2023/5/18 11:00
+ */
+@Slf4j
+@Component
+@Order(EarlyRefreshCacheDecorator.ORDER)
+public class EarlyRefreshCacheDecorator implements CacheDecorator {
+    /**
+     * 紧挨着redis缓存，外层读写的都是原始值，只有redis中保存附带delta和过期时间的值
+     */
+    public static final int ORDER = Ordered.LOWEST_PRECEDENCE - 300;
+
+    private final CacheSpecProperties cacheSpecProperties;
+
+    private final CacheRefreshExecutor refreshExecutor;
+
+    public EarlyRefreshCacheDecorator(CacheSpecProperties cacheSpecProperties, CacheRefreshExecutor refreshExecutor) {
+        this.cacheSpecProperties = cacheSpecProperties;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    @Override
+    public Cache decorate(Cache cache) {
+        CacheSpecProperties.CacheSpec spec = cacheSpecProperties.getSpecs().get(cache.getName());
+        if (spec == null || !spec.getEarlyRefresh().isEnabled()) {
+            return cache;
+        }
+        CacheSpecProperties.EarlyRefresh earlyRefresh = spec.getEarlyRefresh();
+        log.info("缓存[{}]启用过期前刷新, mode: {}, ttl: {}, jitter: {}",
+                cache.getName(), earlyRefresh.getMode(), spec.getTtl(), spec.getTtlJitter());
+        if (earlyRefresh.getMode() == RefreshMode.AHEAD) {
+            return new EarlyRefreshCache(cache, spec.getTtl(), spec.getTtlJitter(), earlyRefresh.getAheadRatio(), refreshExecutor);
+        }
+        return new EarlyRefreshCache(cache, spec.getTtl(), spec.getTtlJitter(), earlyRefresh.getBeta());
+    }
+}
@@ -0,0 +1,72 @@
+package cn.lyf.redis.cache;
+
+import org.springframework.cache.Cache.ValueWrapper;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname GuardedLocalCache
+ * @description 带失效代数的进程内缓存，NearCache和热点key的本地提升共用。
+ * 读取redis前记下key所在分段的代数，回填时同一段发生过失效就放弃，避免读到的旧值覆盖读取期间的失效
+ * @since 2023/6/6 10:30
+ */
+public class GuardedLocalCache {
+    /**
+     * 按key的hash分段的失效代数，每次本地失效加1，回填本地时检查读取redis期间同一段是否发生过失效
+     */
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    private final com.github.benmanes.caffeine.cache.Cache<String, ValueWrapper> local;
+
+    public GuardedLocalCache(com.github.benmanes.caffeine.cache.Cache<String, ValueWrapper> local) {
+        this.local = local;
+    }
+
+    public ValueWrapper getIfPresent(String key) {
+        return local.getIfPresent(key);
+    }
+
+    /**
+     * 读取redis之前调用，结果传给fill
+     */
+    public long generation(String key) {
+        return generations.get(stripe(key));
+    }
+
+    /**
+     * 读取redis期间没有发生失效时才回填，回填后再检查一次，防止与失效交错时旧值留在本地
+     */
+    public void fill(String key, ValueWrapper wrapper, long readGeneration) {
+        if (generation(key) != readGeneration) {
+            return;
+        }
+        local.put(key, wrapper);
+        if (generation(key) != readGeneration) {
+            local.invalidate(key);
+        }
+    }
+
+    public void invalidate(String key) {
+        generations.incrementAndGet(stripe(key));
+        local.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        local.invalidateAll();
+    }
+
+    public long estimatedSize() {
+        return local.estimatedSize();
+    }
+
+    private static int stripe(String key) {
+        return key.hashCode() & (GENERATION_STRIPES - 1);
+    }
+}
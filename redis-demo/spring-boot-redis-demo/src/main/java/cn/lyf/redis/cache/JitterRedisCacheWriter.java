@@ -0,0 +1,90 @@
+package cn.lyf.redis.cache;
+
+import org.springframework.data.redis.cache.CacheStatistics;
+import org.springframework.data.redis.cache.CacheStatisticsCollector;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname JitterRedisCacheWriter
+ * @description 写入时给存活时间加上随机增量的RedisCacheWriter，
+ * 实际存活时间在 [ttl, ttl * (1 + jitter)] 之间，同一时刻写入的key不会在同一时刻过期
+ * @since 2023/5/18 10:00
+ */
+public class JitterRedisCacheWriter implements RedisCacheWriter {
+    private final RedisCacheWriter delegate;
+
+    /**
+     * 缓存名称 -> 随机增量比例，没有配置的缓存不加随机增量
+     */
+    private final Map<String, Double> jitters;
+
+    public JitterRedisCacheWriter(RedisCacheWriter delegate, Map<String, Double> jitters) {
+        this.delegate = delegate;
+        this.jitters = jitters;
+    }
+
+    @Override
+    public void put(String name, byte[] key, byte[] value, Duration ttl) {
+        delegate.put(name, key, value, jitter(name, ttl));
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key) {
+        return delegate.get(name, key);
+    }
+
+    @Override
+    public byte[] putIfAbsent(String name, byte[] key, byte[] value, Duration ttl) {
+        return delegate.putIfAbsent(name, key, value, jitter(name, ttl));
+    }
+
+    @Override
+    public void remove(String name, byte[] key) {
+        delegate.remove(name, key);
+    }
+
+    @Override
+    public void clean(String name, byte[] pattern) {
+        delegate.clean(name, pattern);
+    }
+
+    @Override
+    public void clearStatistics(String name) {
+        delegate.clearStatistics(name);
+    }
+
+    @Override
+    public RedisCacheWriter withStatisticsCollector(CacheStatisticsCollector cacheStatisticsCollector) {
+        return new JitterRedisCacheWriter(delegate.withStatisticsCollector(cacheStatisticsCollector), jitters);
+    }
+
+    @Override
+    public CacheStatistics getCacheStatistics(String cacheName) {
+        return delegate.getCacheStatistics(cacheName);
+    }
+
+    private Duration jitter(String name, Duration ttl) {
+        Double jitter = jitters.get(name);
+        if (jitter == null || jitter <= 0 || ttl == null || ttl.isZero() || ttl.isNegative()) {
+            return ttl;
+        }
+        return jitter(ttl, jitter, ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * @param ttl    配置的存活时间
+     * @param jitter 随机增量比例
+     * @param random [0, 1)的随机数
+     * @return ttl + ttl * jitter * random，精确到毫秒
+     */
+    static Duration jitter(Duration ttl, double jitter, double random) {
+        long millis = ttl.toMillis();
+        return Duration.ofMillis(millis + (long) (millis * jitter * random));
+    }
+}
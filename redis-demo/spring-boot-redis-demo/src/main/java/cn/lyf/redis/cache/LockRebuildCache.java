@@ -0,0 +1,259 @@
+package cn.lyf.redis.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.util.ByteUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname LockRebuildCache
+ * @description 用Redisson分布式锁保护缓存重建，对应 @Cacheable(sync = true)。
+ * 未命中时抢到锁的节点执行加载，其它节点有旧值(影子key)时直接返回旧值，没有时在waitTime内等锁释放后读取新值，
+ * 等待超时后自行加载。锁带租约时间，持有者宕机或加载过慢时自动释放。
+ * 影子key的存活时间比缓存长，缓存过期后重建期间仍能读到上一次的值；evict时一起删除。
+ * 影子key通过缓存自己的cacheWriter和值序列化配置读写，读到的旧值与缓存中的值类型一致；
+ * 事务中的写入和删除与TransactionAwareCacheDecorator一样在提交后执行。
+ * 指标: cache.rebuild(cache, result=loaded/waited/stale/timeout)
+ * @since 2023/5/29 10:10
+ */
+@Slf4j
+public class LockRebuildCache implements SelfLoadingCache {
+    static final String LOCK_PREFIX = "cache:lock:";
+    static final String STALE_PREFIX = "cache:stale:";
+
+    private final Cache delegate;
+
+    private final RedissonClient redissonClient;
+
+    /**
+     * 读写影子key，与底层RedisCache使用同一个cacheWriter和序列化配置
+     */
+    private final RedisCacheWriter cacheWriter;
+
+    private final RedisCacheConfiguration cacheConfiguration;
+
+    /**
+     * 锁的租约时间，应大于加载耗时
+     */
+    private final Duration leaseTime;
+
+    /**
+     * 没有旧值时等待持有者加载完成的最长时间
+     */
+    private final Duration waitTime;
+
+    /**
+     * 影子key的存活时间，为null(或没有底层RedisCache)时不保存旧值
+     */
+    private final Duration staleTtl;
+
+    private final Counter loaded;
+    private final Counter waited;
+    private final Counter stale;
+    private final Counter timeout;
+
+    /**
+     * @param redisCache 最内层的RedisCache，用于读写影子key，为null时不保存旧值
+     */
+    public LockRebuildCache(Cache delegate, RedisCache redisCache, RedissonClient redissonClient,
+                            Duration leaseTime, Duration waitTime, Duration staleTtl, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.redissonClient = redissonClient;
+        this.cacheWriter = redisCache != null ? redisCache.getNativeCache() : null;
+        this.cacheConfiguration = redisCache != null ? redisCache.getCacheConfiguration() : null;
+        this.leaseTime = leaseTime;
+        this.waitTime = waitTime;
+        this.staleTtl = redisCache != null ? staleTtl : null;
+        this.loaded = counter(meterRegistry, "loaded");
+        this.waited = counter(meterRegistry, "waited");
+        this.stale = counter(meterRegistry, "stale");
+        this.timeout = counter(meterRegistry, "timeout");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = delegate.get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+
+        RLock lock = redissonClient.getLock(LOCK_PREFIX + getName() + ":" + key);
+        try {
+            if (lock.tryLock(0, leaseTime.toMillis(), TimeUnit.MILLISECONDS)) {
+                loaded.increment();
+                return (T) loadAndPut(lock, key, valueLoader);
+            }
+
+            Object staleValue = getStale(key);
+            if (staleValue != null) {
+                stale.increment();
+                return (T) staleValue;
+            }
+
+            // 持有者释放锁时通过发布订阅唤醒等待者，不需要轮询
+            if (lock.tryLock(waitTime.toMillis(), leaseTime.toMillis(), TimeUnit.MILLISECONDS)) {
+                waited.increment();
+                return (T) loadAndPut(lock, key, valueLoader);
+            }
+            timeout.increment();
+            log.warn("等待其它节点重建缓存超时, 自行加载: {}", lock.getName());
+            return (T) loadAndPut(null, key, valueLoader);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } catch (ValueRetrievalException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    /**
+     * 加载前再读一次，等到锁时值通常已经由上一个持有者写入
+     *
+     * @param lock 持有的锁，自行加载时为null
+     */
+    private Object loadAndPut(RLock lock, Object key, Callable<?> valueLoader) throws Exception {
+        try {
+            ValueWrapper wrapper = delegate.get(key);
+            if (wrapper != null) {
+                return wrapper.get();
+            }
+            Object value = valueLoader.call();
+            put(key, value);
+            return value;
+        } finally {
+            // 加载超过租约时间时锁已经自动释放
+            if (lock != null && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private Object getStale(Object key) {
+        if (staleTtl == null) {
+            return null;
+        }
+        try {
+            byte[] value = cacheWriter.get(getName(), staleKey(key));
+            return value != null ? cacheConfiguration.getValueSerializationPair().read(ByteBuffer.wrap(value)) : null;
+        } catch (Exception e) {
+            log.warn("读取缓存旧值失败: {}", staleKeyString(key), e);
+            return null;
+        }
+    }
+
+    private byte[] staleKey(Object key) {
+        return ByteUtils.getBytes(cacheConfiguration.getKeySerializationPair().write(staleKeyString(key)));
+    }
+
+    private String staleKeyString(Object key) {
+        return STALE_PREFIX + getName() + ":" + key;
+    }
+
+    private Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("cache.rebuild")
+                .description("分布式锁保护的缓存重建")
+                .tag("cache", delegate.getName())
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        return delegate.get(key, type);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+        if (staleTtl != null && value != null) {
+            byte[] staleValue = ByteUtils.getBytes(cacheConfiguration.getValueSerializationPair().write(value));
+            afterCommit(() -> cacheWriter.put(getName(), staleKey(key), staleValue, staleTtl));
+        }
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        return delegate.putIfAbsent(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+        deleteStale(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean evicted = delegate.evictIfPresent(key);
+        deleteStale(key);
+        return evicted;
+    }
+
+    /**
+     * 影子key不随clear删除，在staleTtl后过期
+     */
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        return delegate.invalidate();
+    }
+
+    private void deleteStale(Object key) {
+        if (staleTtl != null) {
+            afterCommit(() -> cacheWriter.remove(getName(), staleKey(key)));
+        }
+    }
+
+    /**
+     * 与TransactionAwareCacheDecorator相同，有事务同步时在提交后执行，否则立即执行
+     */
+    private static void afterCommit(Runnable runnable) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            runnable.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                runnable.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,71 @@
+package cn.lyf.redis.cache;
+
+import cn.lyf.redis.config.CacheSpecProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RedissonClient;
+import org.springframework.cache.Cache;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname LockRebuildCacheDecorator
+ * @description 为配置了 demo.cache.specs.[name].lock-rebuild.enabled 的缓存增加分布式锁保护的重建，
+ * 影子key通过最内层RedisCache的cacheWriter和序列化配置读写
+ * @since 2023/5/29 11:00
+ */
+@Slf4j
+@Component
+@Order(LockRebuildCacheDecorator.ORDER)
+public class LockRebuildCacheDecorator implements CacheDecorator {
+    /**
+     * 在合并加载之内，SingleFlightCache合并后把get(key, valueLoader)交给它，本节点只有一个线程去抢锁
+     */
+    public static final int ORDER = Ordered.LOWEST_PRECEDENCE - 250;
+
+    private final CacheSpecProperties cacheSpecProperties;
+
+    private final RedissonClient redissonClient;
+
+    private final MeterRegistry meterRegistry;
+
+    public LockRebuildCacheDecorator(CacheSpecProperties cacheSpecProperties, RedissonClient redissonClient,
+                                     MeterRegistry meterRegistry) {
+        this.cacheSpecProperties = cacheSpecProperties;
+        this.redissonClient = redissonClient;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache decorate(Cache cache) {
+        return decorate(cache, cache);
+    }
+
+    @Override
+    public Cache decorate(Cache cache, Cache target) {
+        CacheSpecProperties.CacheSpec spec = cacheSpecProperties.getSpecs().get(cache.getName());
+        if (spec == null || !spec.getLockRebuild().isEnabled()) {
+            return cache;
+        }
+        CacheSpecProperties.LockRebuild lockRebuild = spec.getLockRebuild();
+        log.info("缓存[{}]启用分布式锁重建, 租约: {}, 等待: {}, 旧值存活: {}", cache.getName(),
+                lockRebuild.getLeaseTime(), lockRebuild.getWaitTime(), lockRebuild.getStaleTtl());
+        RedisCache redisCache = redisCache(target);
+        if (redisCache == null && lockRebuild.getStaleTtl() != null) {
+            log.warn("缓存[{}]不是RedisCache, 不保存旧值: {}", cache.getName(), target.getClass().getName());
+        }
+        return new LockRebuildCache(cache, redisCache, redissonClient, lockRebuild.getLeaseTime(),
+                lockRebuild.getWaitTime(), lockRebuild.getStaleTtl(), meterRegistry);
+    }
+
+    private static RedisCache redisCache(Cache target) {
+        Cache cache = target instanceof TransactionAwareCacheDecorator
+                ? ((TransactionAwareCacheDecorator) target).getTargetCache() : target;
+        return cache instanceof RedisCache ? (RedisCache) cache : null;
+    }
+}
@@ -0,0 +1,34 @@
+package cn.lyf.redis.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname MeteredCacheDecorator
+ * @description 为所有缓存记录命中、未命中、写入、删除次数
+ * @since 2023/5/23 11:30
+ */
+@Component
+@Order(MeteredCacheDecorator.ORDER)
+public class MeteredCacheDecorator implements CacheDecorator {
+    /**
+     * 在近端缓存之外、热点key记录之内
+     */
+    public static final int ORDER = Ordered.LOWEST_PRECEDENCE - 50;
+
+    private final MeterRegistry meterRegistry;
+
+    public MeteredCacheDecorator(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache decorate(Cache cache) {
+        return new MeteredCache(cache, meterRegistry);
+    }
+}
@@ -0,0 +1,237 @@
+package cn.lyf.redis.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname NearCache
+ * @description 进程内(L1) + redis(L2)的两级缓存。
+ * 读取先查本地，未命中再查redis并回填本地；写入和删除只让本地失效并广播给其它节点，
+ * 下一次读取再从redis加载，因此与事务感知的redis缓存配合时也不会读到未提交的值。
+ * 事务中的写入在提交后才写入redis，失效和广播也在提交后再做一次，避免提交前回填的旧值留在本地。
+ * 回填前后检查失效代数，读取redis期间发生过失效时不回填，避免旧值覆盖失效
+ * @since 2023/5/4 11:10
+ */
+public class NearCache implements Cache {
+    private final Cache delegate;
+
+    private final GuardedLocalCache local;
+
+    /**
+     * 本地失效后的通知，参数为key，为null时表示清空
+     */
+    private final Consumer<String> invalidationPublisher;
+
+    private final LongAdder l1Hits = new LongAdder();
+    private final LongAdder l2Hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public NearCache(Cache delegate, com.github.benmanes.caffeine.cache.Cache<String, ValueWrapper> local,
+                     Consumer<String> invalidationPublisher) {
+        this.delegate = delegate;
+        this.local = new GuardedLocalCache(local);
+        this.invalidationPublisher = invalidationPublisher;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = localKey(key);
+        ValueWrapper wrapper = local.getIfPresent(localKey);
+        if (wrapper != null) {
+            l1Hits.increment();
+            return wrapper;
+        }
+
+        long readGeneration = local.generation(localKey);
+        wrapper = delegate.get(key);
+        if (wrapper != null) {
+            l2Hits.increment();
+            local.fill(localKey, wrapper, readGeneration);
+        } else {
+            misses.increment();
+        }
+        return wrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = localKey(key);
+        ValueWrapper wrapper = local.getIfPresent(localKey);
+        if (wrapper != null) {
+            l1Hits.increment();
+            return (T) wrapper.get();
+        }
+
+        long readGeneration = local.generation(localKey);
+        AtomicBoolean loaded = new AtomicBoolean();
+        T value = delegate.get(key, () -> {
+            loaded.set(true);
+            return valueLoader.call();
+        });
+        if (loaded.get()) {
+            misses.increment();
+        } else {
+            l2Hits.increment();
+        }
+        local.fill(localKey, new SimpleValueWrapper(value), readGeneration);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+        invalidate(localKey(key));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = delegate.putIfAbsent(key, value);
+        invalidate(localKey(key));
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+        invalidate(localKey(key));
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = delegate.evictIfPresent(key);
+        invalidate(localKey(key));
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        invalidateAll();
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean present = delegate.invalidate();
+        invalidateAll();
+        return present;
+    }
+
+    /**
+     * 只让本节点的本地缓存失效，收到其它节点的通知时调用
+     *
+     * @param key key
+     */
+    public void evictLocal(String key) {
+        local.invalidate(key);
+    }
+
+    public void clearLocal() {
+        local.invalidateAll();
+    }
+
+    public long l1HitCount() {
+        return l1Hits.sum();
+    }
+
+    public long l2HitCount() {
+        return l2Hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long localSize() {
+        return local.estimatedSize();
+    }
+
+    /**
+     * 本地缓存命中率
+     */
+    public double l1HitRatio() {
+        long l1 = l1HitCount();
+        long total = l1 + l2HitCount() + missCount();
+        return total == 0 ? 0 : (double) l1 / total;
+    }
+
+    /**
+     * 本地未命中的请求在redis中的命中率
+     */
+    public double l2HitRatio() {
+        long l2 = l2HitCount();
+        long total = l2 + missCount();
+        return total == 0 ? 0 : (double) l2 / total;
+    }
+
+    private void invalidate(String localKey) {
+        evictLocal(localKey);
+        invalidationPublisher.accept(localKey);
+        afterCommit(() -> {
+            evictLocal(localKey);
+            invalidationPublisher.accept(localKey);
+        });
+    }
+
+    private void invalidateAll() {
+        clearLocal();
+        invalidationPublisher.accept(null);
+        afterCommit(() -> {
+            clearLocal();
+            invalidationPublisher.accept(null);
+        });
+    }
+
+    /**
+     * 事务中delegate的写入在提交后执行，提交后再失效一次；
+     * 注册晚于TransactionAwareCacheDecorator，按注册顺序在redis写入之后执行
+     */
+    private static void afterCommit(Runnable runnable) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                runnable.run();
+            }
+        });
+    }
+
+    /**
+     * 与RedisCache一样按字符串区分key，便于跨节点传递失效通知
+     */
+    private static String localKey(Object key) {
+        return key instanceof String ? (String) key : String.valueOf(key);
+    }
+}
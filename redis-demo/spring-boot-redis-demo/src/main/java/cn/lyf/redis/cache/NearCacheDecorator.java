@@ -0,0 +1,128 @@
+package cn.lyf.redis.cache;
+
+import cn.lyf.redis.config.CacheSpecProperties;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname NearCacheDecorator
+ * @description 为配置了 demo.cache.specs.[name].near.enabled 的缓存增加进程内近端缓存，
+ * 并通过redis发布订阅在节点间传递失效通知
+ * @since 2023/5/4 14:00
+ */
+@Slf4j
+@Component
+@Order(NearCacheDecorator.ORDER)
+public class NearCacheDecorator implements CacheDecorator, MessageListener {
+    /**
+     * 近端缓存在最外层，命中时不再经过其它包装
+     */
+    public static final int ORDER = Ordered.LOWEST_PRECEDENCE - 100;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final CacheSpecProperties cacheSpecProperties;
+
+    private final RedisTemplate<String, Serializable> redisTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, NearCache> nearCaches = new ConcurrentHashMap<>();
+
+    public NearCacheDecorator(CacheSpecProperties cacheSpecProperties,
+                              @Qualifier(value = "jsonRedisTemplate") RedisTemplate<String, Serializable> redisTemplate,
+                              RedisMessageListenerContainer listenerContainer,
+                              MeterRegistry meterRegistry) {
+        this.cacheSpecProperties = cacheSpecProperties;
+        this.redisTemplate = redisTemplate;
+        this.meterRegistry = meterRegistry;
+        listenerContainer.addMessageListener(this, new ChannelTopic(cacheSpecProperties.getNearInvalidationChannel()));
+    }
+
+    @Override
+    public Cache decorate(Cache cache) {
+        String name = cache.getName();
+        CacheSpecProperties.CacheSpec spec = cacheSpecProperties.getSpecs().get(name);
+        if (spec == null || !spec.getNear().isEnabled()) {
+            return cache;
+        }
+
+        CacheSpecProperties.Near near = spec.getNear();
+        NearCache nearCache = new NearCache(cache,
+                Caffeine.newBuilder()
+                        .maximumSize(near.getMaximumSize())
+                        .expireAfterWrite(near.getTtl())
+                        .build(),
+                key -> publish(name, key));
+        nearCaches.put(name, nearCache);
+        bindMetrics(name, nearCache);
+        log.info("缓存[{}]启用近端缓存, maximumSize: {}, ttl: {}", name, near.getMaximumSize(), near.getTtl());
+        return nearCache;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        NearCacheInvalidation invalidation = NearCacheInvalidation.fromMessage(
+                new String(message.getBody(), StandardCharsets.UTF_8));
+        if (invalidation == null || nodeId.equals(invalidation.getOrigin())) {
+            return;
+        }
+        NearCache nearCache = nearCaches.get(invalidation.getCacheName());
+        if (nearCache == null) {
+            return;
+        }
+        if (invalidation.getKey() == null) {
+            nearCache.clearLocal();
+        } else {
+            nearCache.evictLocal(invalidation.getKey());
+        }
+    }
+
+    private void publish(String cacheName, String key) {
+        try {
+            byte[] channel = cacheSpecProperties.getNearInvalidationChannel().getBytes(StandardCharsets.UTF_8);
+            byte[] message = new NearCacheInvalidation(nodeId, cacheName, key).toMessage().getBytes(StandardCharsets.UTF_8);
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channel, message));
+        } catch (Exception e) {
+            // 通知失败时其它节点最多在ttl之后读到新值，不影响本次写入
+            log.warn("近端缓存失效通知发送失败: {}, {}", cacheName, key, e);
+        }
+    }
+
+    private void bindMetrics(String name, NearCache nearCache) {
+        FunctionCounter.builder("cache.near.requests", nearCache, NearCache::l1HitCount)
+                .tag("cache", name).tag("result", "l1_hit").register(meterRegistry);
+        FunctionCounter.builder("cache.near.requests", nearCache, NearCache::l2HitCount)
+                .tag("cache", name).tag("result", "l2_hit").register(meterRegistry);
+        FunctionCounter.builder("cache.near.requests", nearCache, NearCache::missCount)
+                .tag("cache", name).tag("result", "miss").register(meterRegistry);
+        Gauge.builder("cache.near.hit.ratio", nearCache, NearCache::l1HitRatio)
+                .tag("cache", name).tag("tier", "l1").register(meterRegistry);
+        Gauge.builder("cache.near.hit.ratio", nearCache, NearCache::l2HitRatio)
+                .tag("cache", name).tag("tier", "l2").register(meterRegistry);
+        Gauge.builder("cache.near.size", nearCache, NearCache::localSize)
+                .tag("cache", name).register(meterRegistry);
+    }
+}
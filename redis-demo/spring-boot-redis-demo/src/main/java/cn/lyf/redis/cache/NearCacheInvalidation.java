@@ -0,0 +1,61 @@
+package cn.lyf.redis.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname NearCacheInvalidation
+ * @description 近端缓存失效通知，通过redis发布订阅广播给其它节点。
+ * 消息为纯文本：origin + "\n" + cacheName + "\n" + ("c" | "k" + key)，不依赖json的类型信息
+ * @since 2023/5/4 11:00
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NearCacheInvalidation {
+    private static final char SEPARATOR = '\n';
+    private static final char CLEAR = 'c';
+    private static final char KEY = 'k';
+
+    /**
+     * 发出通知的节点，节点忽略自己发出的通知
+     */
+    private String origin;
+
+    private String cacheName;
+
+    /**
+     * 为null时表示清空整个缓存
+     */
+    private String key;
+
+    public String toMessage() {
+        StringBuilder sb = new StringBuilder(origin.length() + cacheName.length() + 3 + (key == null ? 0 : key.length()));
+        sb.append(origin).append(SEPARATOR).append(cacheName).append(SEPARATOR);
+        if (key == null) {
+            sb.append(CLEAR);
+        } else {
+            sb.append(KEY).append(key);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 解析通知
+     *
+     * @param message 消息内容
+     * @return 格式不正确时返回null
+     */
+    public static NearCacheInvalidation fromMessage(String message) {
+        int first = message.indexOf(SEPARATOR);
+        int second = first < 0 ? -1 : message.indexOf(SEPARATOR, first + 1);
+        if (second < 0 || second + 1 >= message.length()) {
+            return null;
+        }
+        String key = message.charAt(second + 1) == KEY ? message.substring(second + 2) : null;
+        return new NearCacheInvalidation(message.substring(0, first), message.substring(first + 1, second), key);
+    }
+}
@@ -0,0 +1,21 @@
+package cn.lyf.redis.cache;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname RefreshMode
+ * @description 缓存过期前的刷新方式
+ * @since 2023/5/19 10:10
+ */
+public enum RefreshMode {
+    /**
+     * 概率提前刷新，由读取的调用者同步重新计算
+     */
+    XFETCH,
+
+    /**
+     * 进入存活时间的最后一段后，在后台线程池中重新加载，调用者直接返回当前值。
+     * 需要valueLoader，只对 @Cacheable(sync = true) 生效，其它读取按XFETCH处理
+     */
+    AHEAD
+}
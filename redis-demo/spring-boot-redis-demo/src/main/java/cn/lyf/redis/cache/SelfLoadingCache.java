@@ -0,0 +1,14 @@
+package cn.lyf.redis.cache;
+
+import org.springframework.cache.Cache;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname SelfLoadingCache
+ * @description 在get(key, valueLoader)中自己决定何时加载的缓存包装，如提前刷新、分布式锁重建。
+ * 外层的SingleFlightCache合并同一个key的并发调用后交给它加载，而不是自己读取、加载再写入
+ * @since 2023/6/5 10:00
+ */
+public interface SelfLoadingCache extends Cache {
+}
@@ -0,0 +1,233 @@
+package cn.lyf.redis.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scripting.support.ResourceScriptSource;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname SingleFlightCache
+ * @description 按key合并并发加载的缓存，对应 @Cacheable(sync = true)。
+ * 同一个JVM内同一个key同时只有一个线程执行加载，其它线程等待同一个结果；不同key的加载互不影响。
+ * 配置了租约时间后，还会在redis中抢占一个短期租约，让多个节点对同一个key也只加载一次。
+ * 内层是{@link SelfLoadingCache}时不自己读写，合并后交给它的get(key, valueLoader)，由它决定是否提前刷新、是否抢锁重建
+ * @since 2023/5/8 10:10
+ */
+@Slf4j
+public class SingleFlightCache implements Cache {
+    private static final RedisScript<Long> LEASE_RELEASE_SCRIPT = leaseReleaseScript();
+
+    private final Cache delegate;
+
+    private final RedisTemplate<String, Serializable> redisTemplate;
+
+    /**
+     * 跨节点租约时间，为null时只在本JVM内合并
+     */
+    private final Duration lease;
+
+    /**
+     * 没有抢到租约时轮询redis的间隔
+     */
+    private final Duration pollInterval;
+
+    private final String owner = UUID.randomUUID().toString();
+
+    private final ConcurrentMap<Object, CompletableFuture<Object>> flights = new ConcurrentHashMap<>();
+
+    public SingleFlightCache(Cache delegate, RedisTemplate<String, Serializable> redisTemplate,
+                             Duration lease, Duration pollInterval) {
+        this.delegate = delegate;
+        this.redisTemplate = redisTemplate;
+        this.lease = lease;
+        this.pollInterval = pollInterval;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        boolean selfLoading = delegate instanceof SelfLoadingCache;
+        if (!selfLoading) {
+            ValueWrapper wrapper = delegate.get(key);
+            if (wrapper != null) {
+                return (T) wrapper.get();
+            }
+        }
+
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = flights.putIfAbsent(key, flight);
+        if (inFlight != null) {
+            // 已经有线程在加载，等待它的结果
+            try {
+                return (T) inFlight.join();
+            } catch (CompletionException e) {
+                throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+
+        try {
+            Object value;
+            if (selfLoading) {
+                value = delegate.get(key, () -> loadThroughLease(key, valueLoader));
+            } else {
+                value = lease == null ? loadAndPut(key, valueLoader)
+                        : loadWithLease(key, () -> loadAndPut(key, valueLoader), () -> delegate.get(key));
+            }
+            flight.complete(value);
+            return (T) value;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw e instanceof ValueRetrievalException ? (ValueRetrievalException) e
+                    : new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * 内层决定加载时调用，写入也由内层完成。提前刷新时旧值还在，轮询分辨不出新旧，只有未命中时才跨节点合并
+     */
+    private Object loadThroughLease(Object key, Callable<?> valueLoader) throws Exception {
+        if (lease == null || delegate.get(key, Object.class) != null) {
+            return valueLoader.call();
+        }
+        return loadWithLease(key, valueLoader, () -> {
+            Object value = delegate.get(key, Object.class);
+            return value != null ? new SimpleValueWrapper(value) : null;
+        });
+    }
+
+    /**
+     * 抢到租约的节点负责加载，其它节点在租约时间内轮询redis等待结果，超时后自行加载
+     */
+    private Object loadWithLease(Object key, Callable<?> load, Callable<ValueWrapper> poll) throws Exception {
+        String leaseKey = "cache:lease:" + getName() + ":" + key;
+        if (tryAcquireLease(leaseKey)) {
+            try {
+                return load.call();
+            } finally {
+                releaseLease(leaseKey);
+            }
+        }
+
+        long deadline = System.nanoTime() + lease.toNanos();
+        while (System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(pollInterval.toMillis());
+            ValueWrapper wrapper = poll.call();
+            if (wrapper != null) {
+                return wrapper.get();
+            }
+        }
+        log.warn("等待其它节点加载缓存超时, 自行加载: {}", leaseKey);
+        return load.call();
+    }
+
+    private Object loadAndPut(Object key, Callable<?> valueLoader) throws Exception {
+        // 可能在排队期间已经被其它线程或节点写入
+        ValueWrapper wrapper = delegate.get(key);
+        if (wrapper != null) {
+            return wrapper.get();
+        }
+        Object value = valueLoader.call();
+        delegate.put(key, value);
+        return value;
+    }
+
+    private boolean tryAcquireLease(String leaseKey) {
+        byte[] rawKey = leaseKey.getBytes(StandardCharsets.UTF_8);
+        byte[] rawOwner = owner.getBytes(StandardCharsets.UTF_8);
+        Boolean acquired = redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.stringCommands()
+                .set(rawKey, rawOwner, Expiration.from(lease), RedisStringCommands.SetOption.ifAbsent()));
+        return Boolean.TRUE.equals(acquired);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void releaseLease(String leaseKey) {
+        try {
+            redisTemplate.execute(LEASE_RELEASE_SCRIPT, RedisSerializer.string(), (RedisSerializer) RedisSerializer.string(),
+                    Collections.singletonList(leaseKey), owner);
+        } catch (Exception e) {
+            // 释放失败时等待租约自动过期
+            log.warn("释放缓存加载租约失败: {}", leaseKey, e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        return delegate.get(key, type);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        return delegate.putIfAbsent(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        return delegate.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        return delegate.invalidate();
+    }
+
+    private static RedisScript<Long> leaseReleaseScript() {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/lease_release.lua")));
+        script.setResultType(Long.class);
+        return script;
+    }
+}
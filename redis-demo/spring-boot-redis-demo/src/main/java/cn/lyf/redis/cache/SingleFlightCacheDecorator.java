@@ -0,0 +1,50 @@
+package cn.lyf.redis.cache;
+
+import cn.lyf.redis.config.CacheSpecProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname SingleFlightCacheDecorator
+ * @description 为配置了 demo.cache.specs.[name].single-flight.enabled 的缓存增加按key合并加载
+ * @since 2023/5/8 11:00
+ */
+@Slf4j
+@Component
+@Order(SingleFlightCacheDecorator.ORDER)
+public class SingleFlightCacheDecorator implements CacheDecorator {
+    /**
+     * 在近端缓存之内，近端缓存未命中时才合并加载
+     */
+    public static final int ORDER = Ordered.LOWEST_PRECEDENCE - 200;
+
+    private final CacheSpecProperties cacheSpecProperties;
+
+    private final RedisTemplate<String, Serializable> redisTemplate;
+
+    public SingleFlightCacheDecorator(CacheSpecProperties cacheSpecProperties,
+                                      @Qualifier(value = "jsonRedisTemplate") RedisTemplate<String, Serializable> redisTemplate) {
+        this.cacheSpecProperties = cacheSpecProperties;
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public Cache decorate(Cache cache) {
+        CacheSpecProperties.CacheSpec spec = cacheSpecProperties.getSpecs().get(cache.getName());
+        if (spec == null || !spec.getSingleFlight().isEnabled()) {
+            return cache;
+        }
+        CacheSpecProperties.SingleFlight singleFlight = spec.getSingleFlight();
+        log.info("缓存[{}]启用合并加载, 跨节点租约: {}", cache.getName(), singleFlight.getLease());
+        return new SingleFlightCache(cache, redisTemplate, singleFlight.getLease(), singleFlight.getPollInterval());
+    }
+}
@@ -12,4 +12,14 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class CommonConstant {
     public static final String CONTENT_TYPE_JSON = "application/json;charset=utf-8";
+
+    /**
+     * 限流窗口内剩余的请求次数
+     */
+    public static final String HEADER_LIMIT_REMAINING = "X-RateLimit-Remaining";
+
+    /**
+     * 被限流后建议的重试等待时间(秒)
+     */
+    public static final String HEADER_RETRY_AFTER = "Retry-After";
 }
@@ -0,0 +1,241 @@
+package cn.lyf.redis.config;
+
+import cn.lyf.redis.cache.RefreshMode;
+import cn.lyf.redis.serializer.SerializerType;
+import lombok.Data;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname CacheSpecProperties
+ * @description 按缓存名称配置的缓存策略，对应配置文件中的 demo.cache
+ * @since 2023/5/4 10:00
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "demo.cache")
+public class CacheSpecProperties implements InitializingBean {
+    /**
+     * 近端缓存失效通知使用的redis频道
+     */
+    private String nearInvalidationChannel = "cache:near:invalidate";
+
+    /**
+     * keyGenerator生成的key超过该长度时参数部分使用md5，小于等于0时不做hash
+     */
+    private int keyHashThreshold = 128;
+
+    /**
+     * 后台刷新(refresh-ahead)使用的线程池
+     */
+    private RefreshExecutor refresh = new RefreshExecutor();
+
+    /**
+     * key为缓存名称
+     */
+    private Map<String, CacheSpec> specs = new LinkedHashMap<>();
+
+    /**
+     * 启动时拒绝互相冲突的组合，避免配置了却不生效
+     */
+    @Override
+    public void afterPropertiesSet() {
+        specs.forEach((name, spec) -> {
+            if (!spec.getLockRebuild().isEnabled()) {
+                return;
+            }
+            if (spec.getSingleFlight().isEnabled() && spec.getSingleFlight().getLease() != null) {
+                throw new IllegalArgumentException("demo.cache.specs." + name + ".lock-rebuild与single-flight.lease只能选一个");
+            }
+            // 分布式锁重建先读一次再决定是否抢锁，读到快过期的值时走的是XFETCH，后台刷新不会执行
+            if (spec.getEarlyRefresh().isEnabled() && spec.getEarlyRefresh().getMode() == RefreshMode.AHEAD) {
+                throw new IllegalArgumentException("demo.cache.specs." + name + ".lock-rebuild不支持early-refresh.mode=ahead");
+            }
+        });
+    }
+
+    @Data
+    public static class CacheSpec {
+        /**
+         * 值的序列化方式
+         */
+        private SerializerType serializer = SerializerType.JSON;
+
+        /**
+         * redis中的存活时间
+         */
+        private Duration ttl = Duration.ofMinutes(5);
+
+        /**
+         * 存活时间的随机增量比例，实际存活时间在 [ttl, ttl * (1 + ttlJitter)] 之间，
+         * 避免同一时刻写入的key同时过期
+         */
+        private double ttlJitter = 0;
+
+        /**
+         * 过期前的概率提前刷新
+         */
+        private EarlyRefresh earlyRefresh = new EarlyRefresh();
+
+        /**
+         * 进程内的近端缓存
+         */
+        private Near near = new Near();
+
+        /**
+         * 按key合并并发加载
+         */
+        private SingleFlight singleFlight = new SingleFlight();
+
+        /**
+         * 分布式锁保护的缓存重建
+         */
+        private LockRebuild lockRebuild = new LockRebuild();
+
+        /**
+         * 布隆过滤器防缓存穿透
+         */
+        private Bloom bloom = new Bloom();
+    }
+
+    @Data
+    public static class EarlyRefresh {
+        /**
+         * 是否启用过期前刷新，读到快过期的值时由一个调用者或后台线程重新加载，其它调用者继续读旧值
+         */
+        private boolean enabled = false;
+
+        /**
+         * 刷新方式
+         */
+        private RefreshMode mode = RefreshMode.XFETCH;
+
+        /**
+         * XFETCH的提前程度，越大越早刷新，1.0为论文推荐值
+         */
+        private double beta = 1.0;
+
+        /**
+         * AHEAD在存活时间的最后多少比例内读取时后台刷新
+         */
+        private double aheadRatio = 0.2;
+    }
+
+    @Data
+    public static class RefreshExecutor {
+        /**
+         * 线程数，即同时进行的后台刷新的最大数量
+         */
+        private int threads = 2;
+
+        /**
+         * 等待刷新的队列长度，满了之后放弃刷新
+         */
+        private int queueCapacity = 100;
+    }
+
+    @Data
+    public static class Near {
+        /**
+         * 是否在redis缓存之前增加一层进程内缓存
+         */
+        private boolean enabled = false;
+
+        /**
+         * 最多缓存的条数，超过后按最近最少使用淘汰
+         */
+        private long maximumSize = 10_000;
+
+        /**
+         * 写入后的存活时间，同时也是节点间不一致的最长时间
+         */
+        private Duration ttl = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class SingleFlight {
+        /**
+         * 是否按key合并并发加载，只对 @Cacheable(sync = true) 生效
+         */
+        private boolean enabled = false;
+
+        /**
+         * 跨节点合并加载的redis租约时间，不配置时只在本JVM内合并
+         */
+        private Duration lease;
+
+        /**
+         * 没有抢到租约的节点轮询结果的间隔
+         */
+        private Duration pollInterval = Duration.ofMillis(20);
+    }
+
+    @Data
+    public static class LockRebuild {
+        /**
+         * 是否用Redisson分布式锁保证整个集群同一个key只重建一次，只对 @Cacheable(sync = true) 生效，
+         * 与single-flight.lease作用相同，二者选一个即可
+         */
+        private boolean enabled = false;
+
+        /**
+         * 锁的租约时间，持有者宕机或加载超过该时间时自动释放
+         */
+        private Duration leaseTime = Duration.ofSeconds(10);
+
+        /**
+         * 没有旧值时等待持有者重建完成的最长时间，超时后自行加载
+         */
+        private Duration waitTime = Duration.ofMillis(500);
+
+        /**
+         * 旧值(影子key)的存活时间，应大于缓存的ttl，不配置时不保存旧值
+         */
+        private Duration staleTtl;
+    }
+
+    @Data
+    public static class Bloom {
+        /**
+         * 是否用布隆过滤器拦截一定不存在的key，需要预先写入所有存在的key
+         */
+        private boolean enabled = false;
+
+        /**
+         * 预期的key数量，只在redis中还没有过滤器时生效
+         */
+        private long expectedInsertions = 1_000_000;
+
+        /**
+         * 预期的误判率
+         */
+        private double falseProbability = 0.01;
+
+        /**
+         * 是否在本地保存位图副本，判断时不访问redis
+         */
+        private boolean localCopy = false;
+
+        /**
+         * 本地副本从redis刷新的间隔，其它节点新增的key最多延迟该时间可见
+         */
+        private Duration refreshInterval = Duration.ofSeconds(10);
+
+        /**
+         * 加载结果为null的key在本地缓存的时间
+         */
+        private Duration negativeTtl = Duration.ofSeconds(30);
+
+        /**
+         * 本地最多缓存的null的key数量
+         */
+        private long negativeMaximumSize = 10_000;
+    }
+}
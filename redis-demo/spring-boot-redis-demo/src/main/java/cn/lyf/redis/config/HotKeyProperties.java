@@ -0,0 +1,77 @@
+package cn.lyf.redis.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname HotKeyProperties
+ * @description 热点key探测的配置，对应配置文件中的 demo.hotkey
+ * @since 2023/5/22 10:00
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "demo.hotkey")
+public class HotKeyProperties {
+    /**
+     * 是否记录redis模板和缓存的key访问
+     */
+    private boolean enabled = true;
+
+    /**
+     * 采样比例，只有被采样的访问计入sketch，统计结果再按比例放大
+     */
+    private double sampleRate = 0.1;
+
+    /**
+     * Count-Min Sketch的行数(哈希函数个数)
+     */
+    private int depth = 4;
+
+    /**
+     * Count-Min Sketch每行的计数器个数，向上取整为2的幂
+     */
+    private int width = 4096;
+
+    /**
+     * 保留的热点key个数
+     */
+    private int topK = 20;
+
+    /**
+     * 计数每隔该时间减半，让不再访问的key逐渐退出
+     */
+    private Duration decayInterval = Duration.ofSeconds(10);
+
+    /**
+     * 估算的访问次数(已按采样比例放大)达到该值的top-K key视为热点
+     */
+    private long hotThreshold = 1000;
+
+    /**
+     * 热点key提升到进程内缓存
+     */
+    private Promote promote = new Promote();
+
+    @Data
+    public static class Promote {
+        /**
+         * 是否把@Cacheable的热点key提升到进程内缓存
+         */
+        private boolean enabled = false;
+
+        /**
+         * 进程内的存活时间，也是节点间不一致的最长时间
+         */
+        private Duration ttl = Duration.ofSeconds(1);
+
+        /**
+         * 每个缓存最多提升的key数量
+         */
+        private long maximumSize = 1000;
+    }
+}
@@ -0,0 +1,51 @@
+package cn.lyf.redis.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname LimitFallbackProperties
+ * @description 限流访问redis变慢或不可用时降级为进程内限流的配置，对应配置文件中的 demo.limit.fallback
+ * @since 2023/5/26 10:00
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "demo.limit.fallback")
+public class LimitFallbackProperties {
+    /**
+     * 是否启用延迟预算和熔断，关闭时限流判断直接在请求线程访问redis，出错时抛出异常
+     */
+    private boolean enabled = true;
+
+    /**
+     * 一次限流判断等待redis的最长时间，超过后按本地限流的结果处理。
+     * 同时作为限流专用连接(limitConnectionFactory)的命令超时和建立连接超时
+     */
+    private Duration budget = Duration.ofMillis(50);
+
+    /**
+     * 连续超时或出错达到该次数后熔断，不再访问redis
+     */
+    private int failureThreshold = 5;
+
+    /**
+     * 熔断持续的时间，之后放一个请求访问redis探测是否恢复
+     */
+    private Duration openDuration = Duration.ofSeconds(5);
+
+    /**
+     * 共享同一个redis限额的节点数，降级时每个节点按 maxCount / nodes 本地限流
+     */
+    private int nodes = 1;
+
+    /**
+     * redis出现失败后限时访问redis的线程数，全部被慢请求占用时新的判断直接降级；健康时在请求线程访问redis。
+     * 为0时不使用线程池，始终在请求线程访问redis，超过预算的请求计为失败(虚拟线程模式)
+     */
+    private int threads = 16;
+}
@@ -0,0 +1,39 @@
+package cn.lyf.redis.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname RedisBatchProperties
+ * @description 合并单key读写的配置，对应配置文件中的 demo.redis.batch
+ * @since 2023/5/12 10:00
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "demo.redis.batch")
+public class RedisBatchProperties {
+    /**
+     * 一批最多的命令数
+     */
+    private int maxBatchSize = 128;
+
+    /**
+     * 取到第一个命令后最多再等待的时间，为0时只合并发送上一批期间积累的命令，不额外增加延迟
+     */
+    private Duration window = Duration.ZERO;
+
+    /**
+     * 发送线程数，即同时在途的批次数，每个线程占用一个连接
+     */
+    private int dispatchers = 2;
+
+    /**
+     * 等待发送的命令上限，队列满时在调用线程直接执行
+     */
+    private int queueCapacity = 10_000;
+}
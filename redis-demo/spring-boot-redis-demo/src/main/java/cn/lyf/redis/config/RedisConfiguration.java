@@ -1,5 +1,17 @@
 package cn.lyf.redis.config;
 
+import cn.lyf.redis.cache.CacheDecorator;
+import cn.lyf.redis.cache.CompactKeyGenerator;
+import cn.lyf.redis.cache.DecoratingCacheManager;
+import cn.lyf.redis.cache.JitterRedisCacheWriter;
+import cn.lyf.redis.hotkey.HotKeyDetector;
+import cn.lyf.redis.hotkey.HotKeyRecordingSerializer;
+import cn.lyf.redis.metrics.InstrumentedRedisTemplate;
+import cn.lyf.redis.metrics.RedisCommandMetrics;
+import cn.lyf.redis.pool.InstrumentedJedisConnectionFactory;
+import cn.lyf.redis.pool.InstrumentedLettuceConnectionFactory;
+import cn.lyf.redis.serializer.CompactRedisSerializer;
+import cn.lyf.redis.serializer.SerializerType;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -7,12 +19,22 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.commonspool2.CommonsObjectPool2Metrics;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.ClusterServersConfig;
 import org.redisson.config.Config;
 import org.redisson.config.SingleServerConfig;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CachingConfigurerSupport;
@@ -27,10 +49,15 @@ import org.springframework.data.redis.cache.RedisCacheWriter;
 import org.springframework.data.redis.connection.RedisClusterConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
-import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.*;
 import org.springframework.util.ObjectUtils;
+import redis.clients.jedis.JedisPoolConfig;
 
 import java.io.Serializable;
 import java.time.Duration;
@@ -53,88 +80,267 @@ public class RedisConfiguration extends CachingConfigurerSupport {
     @Autowired
     private RedisProperties redisProperties;
 
+    @Autowired
+    private CacheSpecProperties cacheSpecProperties;
+
+    @Autowired
+    private HotKeyDetector hotKeyDetector;
+
+    @Autowired
+    private LimitFallbackProperties limitFallbackProperties;
+
+    /**
+     * 紧凑序列化超过该字节数时使用LZ4压缩
+     */
+    @Value("${demo.redis.compress-threshold:1024}")
+    private int compressThreshold;
+
     /**
      * 自定义缓存key的生成策略。
-     * 默认的生成策略是看不懂的(乱码内容) 通过Spring 的依赖注入特性进行自定义的配置注入并且此类是一个配置类可以更多程度的自定义配置
+     * 默认的生成策略是看不懂的(乱码内容) 通过Spring 的依赖注入特性进行自定义的配置注入并且此类是一个配置类可以更多程度的自定义配置。
+     * 前缀按(类, 方法)缓存，参数按类型紧凑编码，过长的key使用md5
      *
      * @return KeyGenerator
      */
     @Bean
     @Override
     public KeyGenerator keyGenerator() {
-        return (target, method, params) -> {
-            StringBuilder sb = new StringBuilder();
-            sb.append(target.getClass().getName());
-            sb.append(method.getName());
-            for (Object obj : params) {
-                sb.append(obj.toString());
-            }
-            return sb.toString();
-        };
+        return new CompactKeyGenerator(cacheSpecProperties.getKeyHashThreshold());
     }
 
     /**
-     * 缓存配置管理器
+     * 缓存配置管理器，redis缓存外按顺序套上各个CacheDecorator(如近端缓存、合并加载、提前刷新)。
+     * 存活时间按 demo.cache.specs.[name].ttl 配置，写入时再加上 ttl-jitter 比例内的随机增量。
+     * 使用不加锁的cacheWriter，不同key的写入可以并行，同一个key的并发加载由SingleFlightCache合并
      */
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory connectionFactory) {
+    public CacheManager cacheManager(RedisConnectionFactory connectionFactory, List<CacheDecorator> cacheDecorators) {
         RedisCacheConfiguration cacheConfiguration = RedisCacheConfiguration.defaultCacheConfig()
                 .serializeKeysWith(RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
                 .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(genericJackson2JsonRedisSerializer()))
                 .entryTtl(Duration.ofMinutes(5L));
 
         Map<String, RedisCacheConfiguration> map = new HashMap<>();
+        Map<String, Double> jitters = new HashMap<>();
         map.put("custom", cacheConfiguration);
+        // 按缓存名称选择值的序列化方式和存活时间
+        cacheSpecProperties.getSpecs().forEach((name, spec) -> {
+            Duration ttl = spec.getTtl();
+            if (spec.getEarlyRefresh().isEnabled()) {
+                // 随机增量由EarlyRefreshCache加在逻辑过期时间上，redis中取上限，保证逻辑过期前值一直存在
+                ttl = Duration.ofMillis((long) (ttl.toMillis() * (1 + spec.getTtlJitter())));
+            } else {
+                jitters.put(name, spec.getTtlJitter());
+            }
+            map.put(name, cacheConfiguration.entryTtl(ttl).serializeValuesWith(
+                    RedisSerializationContext.SerializationPair.fromSerializer(valueSerializer(spec.getSerializer()))));
+        });
 
-        return RedisCacheManager.builder(connectionFactory)
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
                 .withInitialCacheConfigurations(map)
                 .transactionAware()
-                .cacheWriter(RedisCacheWriter.lockingRedisCacheWriter(connectionFactory))
+                .cacheWriter(new JitterRedisCacheWriter(RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory), jitters))
                 .build();
+        // 不是单独的bean，需要手动初始化initialCacheConfigurations中的缓存
+        redisCacheManager.afterPropertiesSet();
+        return new DecoratingCacheManager(redisCacheManager, cacheDecorators);
+    }
+
+    /**
+     * redis发布订阅的监听容器，用于接收近端缓存的失效通知
+     *
+     * @param connectionFactory connectionFactory
+     * @return RedisMessageListenerContainer
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
     }
 
     /**
      * 通过配置RedisStandaloneConfiguration实例来
      * 创建Redis Standolone模式的客户端连接创建工厂
-     * 配置hostname和port
+     * 配置hostname和port。
+     * spring.redis.client-type选择jedis(默认，连接池)或lettuce(共用一个多路复用的连接)，
+     * 连接池读取spring.redis.jedis.pool / spring.redis.lettuce.pool，借出连接的耗时记录在redis.pool.borrow
      *
-     * @return LettuceConnectionFactory
+     * @param meterRegistry 指标，不存在时不记录
+     * @return RedisConnectionFactory
      */
     @Bean
-    public JedisConnectionFactory redisConnectionFactory() {
-        JedisConnectionFactory jedisConnectionFactory;
+    public RedisConnectionFactory redisConnectionFactory(ObjectProvider<MeterRegistry> meterRegistry) {
         RedisProperties.Cluster cluster = redisProperties.getCluster();
-        String password = redisProperties.getPassword();
-        if (cluster != null) {
-            // 集群配置
-            List<String> nodes = cluster.getNodes();
-            RedisClusterConfiguration clusterConfiguration = new RedisClusterConfiguration(nodes);
-            if (!ObjectUtils.isEmpty(password)) {
-                clusterConfiguration.setPassword(password);
-            }
-            jedisConnectionFactory = new JedisConnectionFactory(clusterConfiguration);
+        RedisClusterConfiguration clusterConfiguration = cluster != null ? clusterConfiguration() : null;
+        RedisStandaloneConfiguration standaloneConfiguration = cluster == null ? standaloneConfiguration() : null;
+
+        RedisProperties.ClientType clientType = redisProperties.getClientType() == null
+                ? RedisProperties.ClientType.JEDIS : redisProperties.getClientType();
+        Timer borrowTimer = borrowTimer(meterRegistry.getIfAvailable(), clientType);
+        if (clientType == RedisProperties.ClientType.LETTUCE) {
+            LettuceClientConfiguration clientConfiguration = lettuceClientConfiguration(cluster != null);
+            return cluster != null
+                    ? new InstrumentedLettuceConnectionFactory(clusterConfiguration, clientConfiguration, borrowTimer)
+                    : new InstrumentedLettuceConnectionFactory(standaloneConfiguration, clientConfiguration, borrowTimer);
+        }
+        JedisClientConfiguration clientConfiguration = jedisClientConfiguration();
+        return cluster != null
+                ? new InstrumentedJedisConnectionFactory(clusterConfiguration, clientConfiguration, borrowTimer)
+                : new InstrumentedJedisConnectionFactory(standaloneConfiguration, clientConfiguration, borrowTimer);
+    }
+
+    /**
+     * 限流专用的连接工厂，不论spring.redis.client-type都使用lettuce：jedis执行脚本时不设读超时(setTimeoutInfinite)，
+     * 而lettuce的commandTimeout对脚本同样有效，调用线程等待结果时不需要额外的线程。
+     * 启用 demo.limit.fallback 时命令超时和建立连接超时都等于budget，断线期间直接失败，
+     * redis无响应时健康状态下在请求线程执行的限流判断也只阻塞一个预算，随后按出错降级。
+     * 不作为按类型注入的候选，只给limitRedisTemplate使用
+     *
+     * @return RedisConnectionFactory
+     */
+    @Bean(name = "limitConnectionFactory", autowireCandidate = false)
+    public RedisConnectionFactory limitConnectionFactory() {
+        boolean cluster = redisProperties.getCluster() != null;
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder builder = LettuceClientConfiguration.builder();
+        ClientOptions.Builder options = cluster
+                ? ClusterClientOptions.builder().topologyRefreshOptions(clusterTopologyRefreshOptions())
+                : ClientOptions.builder();
+        if (limitFallbackProperties.isEnabled()) {
+            Duration budget = limitFallbackProperties.getBudget();
+            builder.commandTimeout(budget);
+            options.socketOptions(SocketOptions.builder().connectTimeout(budget).build())
+                    .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS);
+        } else if (redisProperties.getTimeout() != null) {
+            builder.commandTimeout(redisProperties.getTimeout());
+        }
+        LettuceClientConfiguration clientConfiguration = builder.clientOptions(options.build()).build();
+        return cluster
+                ? new LettuceConnectionFactory(clusterConfiguration(), clientConfiguration)
+                : new LettuceConnectionFactory(standaloneConfiguration(), clientConfiguration);
+    }
+
+    private RedisClusterConfiguration clusterConfiguration() {
+        // 集群配置
+        RedisClusterConfiguration clusterConfiguration = new RedisClusterConfiguration(redisProperties.getCluster().getNodes());
+        if (!ObjectUtils.isEmpty(redisProperties.getPassword())) {
+            clusterConfiguration.setPassword(redisProperties.getPassword());
+        }
+        return clusterConfiguration;
+    }
+
+    private RedisStandaloneConfiguration standaloneConfiguration() {
+        // 单机配置
+        RedisStandaloneConfiguration standaloneConfiguration = new RedisStandaloneConfiguration(redisProperties.getHost(), redisProperties.getPort());
+        standaloneConfiguration.setDatabase(redisProperties.getDatabase());
+        if (!ObjectUtils.isEmpty(redisProperties.getPassword())) {
+            standaloneConfiguration.setPassword(redisProperties.getPassword());
+        }
+        return standaloneConfiguration;
+    }
+
+    /**
+     * 连接池的活跃、空闲、等待线程数等，来自commons-pool2注册的JMX(jedis连接池和lettuce连接池都是commons-pool2)，
+     * 指标名为commons.pool2.*
+     *
+     * @return CommonsObjectPool2Metrics
+     */
+    @Bean
+    public CommonsObjectPool2Metrics commonsObjectPool2Metrics() {
+        return new CommonsObjectPool2Metrics();
+    }
+
+    private JedisClientConfiguration jedisClientConfiguration() {
+        JedisClientConfiguration.JedisClientConfigurationBuilder builder = JedisClientConfiguration.builder();
+        // spring.redis.timeout作为socket读超时，redis无响应时调用线程最多阻塞这么久，不宜过大
+        Duration timeout = redisProperties.getTimeout();
+        if (timeout != null) {
+            builder.readTimeout(timeout);
+        }
+        if (redisProperties.getConnectTimeout() != null) {
+            builder.connectTimeout(redisProperties.getConnectTimeout());
+        }
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        applyPool(poolConfig, redisProperties.getJedis().getPool());
+        return builder.usePooling().poolConfig(poolConfig).build();
+    }
+
+    private LettuceClientConfiguration lettuceClientConfiguration(boolean cluster) {
+        RedisProperties.Pool pool = redisProperties.getLettuce().getPool();
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder builder;
+        if (!Boolean.FALSE.equals(pool.getEnabled())) {
+            // 连接池只用于阻塞命令和事务，普通命令仍然共用一个连接
+            GenericObjectPoolConfig<?> poolConfig = new GenericObjectPoolConfig<>();
+            applyPool(poolConfig, pool);
+            builder = LettucePoolingClientConfiguration.builder().poolConfig(poolConfig);
         } else {
-            // 单机配置
-            RedisStandaloneConfiguration standaloneConfiguration = new RedisStandaloneConfiguration(
-                    redisProperties.getHost(), redisProperties.getPort());
-            if (!ObjectUtils.isEmpty(password)) {
-                standaloneConfiguration.setPassword(password);
-            }
-            jedisConnectionFactory =
-                    new JedisConnectionFactory(standaloneConfiguration);
+            builder = LettuceClientConfiguration.builder();
         }
-        return jedisConnectionFactory;
+        if (redisProperties.getTimeout() != null) {
+            builder.commandTimeout(redisProperties.getTimeout());
+        }
+        if (cluster) {
+            // 集群拓扑变化(主从切换、扩容)时自动刷新
+            builder.clientOptions(ClusterClientOptions.builder()
+                    .topologyRefreshOptions(clusterTopologyRefreshOptions())
+                    .build());
+        }
+        return builder.build();
+    }
+
+    private static ClusterTopologyRefreshOptions clusterTopologyRefreshOptions() {
+        return ClusterTopologyRefreshOptions.builder()
+                .enableAllAdaptiveRefreshTriggers()
+                .build();
+    }
+
+    private static void applyPool(GenericObjectPoolConfig<?> poolConfig, RedisProperties.Pool pool) {
+        poolConfig.setMaxTotal(pool.getMaxActive());
+        poolConfig.setMaxIdle(pool.getMaxIdle());
+        poolConfig.setMinIdle(pool.getMinIdle());
+        if (pool.getMaxWait() != null) {
+            poolConfig.setMaxWait(pool.getMaxWait());
+        }
+        if (pool.getTimeBetweenEvictionRuns() != null) {
+            poolConfig.setTimeBetweenEvictionRuns(pool.getTimeBetweenEvictionRuns());
+        }
+    }
+
+    private static Timer borrowTimer(MeterRegistry meterRegistry, RedisProperties.ClientType clientType) {
+        if (meterRegistry == null) {
+            return null;
+        }
+        return Timer.builder("redis.pool.borrow")
+                .description("从连接池借出redis连接的耗时")
+                .tag("client", clientType.name().toLowerCase())
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 
     /**
      * 保证序列化之后不会乱码的配置
      *
      * @param connectionFactory connectionFactory
+     * @param meterRegistry     指标，存在时按命令记录耗时(redis.commands)
      * @return RedisTemplate
      */
     @Bean(name = "jsonRedisTemplate")
-    public RedisTemplate<String, Serializable> redisTemplate(JedisConnectionFactory connectionFactory) {
-        return getRedisTemplate(connectionFactory, genericJackson2JsonRedisSerializer());
+    public RedisTemplate<String, Serializable> redisTemplate(RedisConnectionFactory connectionFactory,
+                                                             ObjectProvider<MeterRegistry> meterRegistry) {
+        return getRedisTemplate(connectionFactory, genericJackson2JsonRedisSerializer(), "json", meterRegistry.getIfAvailable());
+    }
+
+    /**
+     * 限流器使用的RedisTemplate，序列化与jsonRedisTemplate一致，连接来自limitConnectionFactory
+     *
+     * @param meterRegistry 指标，存在时按命令记录耗时(redis.commands)
+     * @return RedisTemplate
+     */
+    @Bean(name = "limitRedisTemplate")
+    public RedisTemplate<String, Serializable> limitRedisTemplate(ObjectProvider<MeterRegistry> meterRegistry) {
+        return getRedisTemplate(limitConnectionFactory(), genericJackson2JsonRedisSerializer(), "limit",
+                meterRegistry.getIfAvailable());
     }
 
     /**
@@ -163,26 +369,68 @@ public class RedisConfiguration extends CachingConfigurerSupport {
         return new GenericJackson2JsonRedisSerializer(objectMapper);
     }
 
+    /**
+     * 紧凑的二进制序列化，Smile编码并在超过阈值时压缩，可以读取旧的json数据
+     *
+     * @return CompactRedisSerializer
+     */
+    @Bean
+    public CompactRedisSerializer compactRedisSerializer() {
+        return new CompactRedisSerializer(genericJackson2JsonRedisSerializer(), compressThreshold);
+    }
+
+    /**
+     * 采用紧凑二进制序列化的方式
+     *
+     * @param connectionFactory connectionFactory
+     * @param meterRegistry     指标，存在时按命令记录耗时(redis.commands)
+     * @return RedisTemplate
+     */
+    @Bean(name = "compactRedisTemplate")
+    public RedisTemplate<String, Serializable> redisTemplateByCompactSerialization(RedisConnectionFactory connectionFactory,
+                                                                                   ObjectProvider<MeterRegistry> meterRegistry) {
+        return getRedisTemplate(connectionFactory, compactRedisSerializer(), "compact", meterRegistry.getIfAvailable());
+    }
+
     /**
      * 采用jdk序列化的方式
      *
      * @param connectionFactory connectionFactory
+     * @param meterRegistry     指标，存在时按命令记录耗时(redis.commands)
      * @return RedisTemplate
      */
     @Bean(name = "jdkRedisTemplate")
-    public RedisTemplate<String, Serializable> redisTemplateByJdkSerialization(JedisConnectionFactory connectionFactory) {
-        return getRedisTemplate(connectionFactory, new JdkSerializationRedisSerializer());
+    public RedisTemplate<String, Serializable> redisTemplateByJdkSerialization(RedisConnectionFactory connectionFactory,
+                                                                               ObjectProvider<MeterRegistry> meterRegistry) {
+        return getRedisTemplate(connectionFactory, new JdkSerializationRedisSerializer(), "jdk", meterRegistry.getIfAvailable());
     }
 
-    private RedisTemplate<String, Serializable> getRedisTemplate(JedisConnectionFactory connectionFactory,
-                                                                 RedisSerializer<?> redisSerializer) {
-        RedisTemplate<String, Serializable> redisTemplate = new RedisTemplate<>();
-        redisTemplate.setKeySerializer(new StringRedisSerializer());
+    private RedisSerializer<?> valueSerializer(SerializerType serializerType) {
+        switch (serializerType) {
+            case COMPACT:
+                return compactRedisSerializer();
+            case JDK:
+                return new JdkSerializationRedisSerializer();
+            default:
+                return genericJackson2JsonRedisSerializer();
+        }
+    }
+
+    /**
+     * @param templateName  指标redis.commands中的template tag
+     * @param meterRegistry 为null时不记录命令指标
+     */
+    private RedisTemplate<String, Serializable> getRedisTemplate(RedisConnectionFactory connectionFactory,
+                                                                 RedisSerializer<?> redisSerializer,
+                                                                 String templateName, MeterRegistry meterRegistry) {
+        RedisTemplate<String, Serializable> redisTemplate = meterRegistry == null ? new RedisTemplate<>()
+                : new InstrumentedRedisTemplate<>(new RedisCommandMetrics(meterRegistry, templateName));
+        // 序列化key时记录访问，用于热点key探测
+        redisTemplate.setKeySerializer(new HotKeyRecordingSerializer(hotKeyDetector));
         redisTemplate.setValueSerializer(redisSerializer);
 
         redisTemplate.setHashKeySerializer(new StringRedisSerializer());
         redisTemplate.setHashValueSerializer(redisSerializer);
-        connectionFactory.afterPropertiesSet();
         redisTemplate.setConnectionFactory(connectionFactory);
         return redisTemplate;
     }
@@ -1,5 +1,6 @@
 package cn.lyf.redis.config;
 
+import cn.lyf.redis.intercept.ConcurrencyLimitIntercept;
 import cn.lyf.redis.intercept.RequestLimitIntercept;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,11 +21,15 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 public class WebMvcConfig implements WebMvcConfigurer {
     @Autowired
     private RequestLimitIntercept requestLimitIntercept;
+    @Autowired
+    private ConcurrencyLimitIntercept concurrencyLimitIntercept;
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         log.info("添加拦截");
         registry.addInterceptor(requestLimitIntercept);
+        // 先按次数限制，被拒绝的请求不占用并发许可
+        registry.addInterceptor(concurrencyLimitIntercept);
     }
 
     /**
@@ -1,20 +1,14 @@
 package cn.lyf.redis.controller;
 
+import cn.lyf.redis.anno.ConcurrencyLimit;
 import cn.lyf.redis.anno.RequestLimit;
 import cn.lyf.redis.common.Result;
+import cn.lyf.redis.limit.LimitAlgorithm;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.io.Serializable;
-import java.util.Objects;
-import java.util.UUID;
-
 /**
  * @author lyf
  * @version 1.0
@@ -27,56 +21,35 @@ import java.util.UUID;
 @RequestMapping(value = "/goods")
 public class GoodsController {
 
-    private static final String GOODS_LIMIT_ZSET = "goods:limit:zset";
-    private static final String GOODS_LIMIT_LIST = "goods:limit:list";
-    @Autowired
-    @Qualifier(value = "jsonRedisTemplate")
-    private RedisTemplate<String, Serializable> redisTemplate;
-
+    /**
+     * 固定窗口限流，同时根据耗时限制并发
+     */
     @GetMapping(value = "/test")
     @RequestLimit
+    @ConcurrencyLimit
     public Result<String> testLimit() {
         return Result.ok("请求成功");
     }
 
 
+    /**
+     * 滑动窗口限流，每个客户端任意10秒内只能访问5次
+     */
     @RequestMapping(value = "/findAll")
+    @RequestLimit(second = 10, maxCount = 5, algorithm = LimitAlgorithm.SLIDING_WINDOW)
     public String limitFlow() {
-        long currentTime = System.currentTimeMillis();
-        log.info("currentTime: {}", currentTime);
-        long intervalTime = 10 * 1000L;
-        if (Boolean.TRUE.equals(redisTemplate.hasKey(GOODS_LIMIT_ZSET))) {
-            int limitCount = Objects.requireNonNull(redisTemplate.opsForZSet().rangeByScore(GOODS_LIMIT_ZSET, currentTime - intervalTime, currentTime)).size();
-            if (limitCount > 5) {
-                return "10秒只能访问5次";
-            }
-        }
-
-        redisTemplate.opsForZSet().add(GOODS_LIMIT_ZSET, UUID.randomUUID().toString(), currentTime);
         return getGoods();
     }
 
+    /**
+     * 令牌桶限流，每个客户端的桶容量为60，每秒生成1个令牌
+     */
     @RequestMapping(value = "/findAll2")
+    @RequestLimit(second = 60, maxCount = 60, algorithm = LimitAlgorithm.TOKEN_BUCKET)
     public String limitFlow2() {
-        Serializable result = redisTemplate.opsForList().leftPop(GOODS_LIMIT_LIST);
-        if (result == null) {
-            return "当前令牌桶中没有令牌";
-        }
-
         return getGoods();
     }
 
-    /**
-     * 1秒的速率往令牌桶中添加UUID，只为保证唯一性
-     */
-    @Scheduled(fixedDelay = 1_000, initialDelay = 0)
-    public void setIntervalTimeTask() {
-        int capacity = 60;
-        if (capacity > redisTemplate.boundListOps(GOODS_LIMIT_LIST).size()) {
-            redisTemplate.boundListOps(GOODS_LIMIT_LIST).rightPush(UUID.randomUUID().toString());
-        }
-    }
-
     public String getGoods() {
         return "商品获取成功";
     }
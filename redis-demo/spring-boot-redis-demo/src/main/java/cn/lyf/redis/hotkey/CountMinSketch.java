@@ -0,0 +1,70 @@
+package cn.lyf.redis.hotkey;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname CountMinSketch
+ * @description 固定内存的频率估算，depth行、每行width个计数器，估算值只会偏大不会偏小。
+ * 每行的下标由两个哈希值组合得到(h1 + i * h2)，不需要为每行单独计算哈希
+ * @since 2023/5/22 10:10
+ */
+public class CountMinSketch {
+    private final int depth;
+    private final int mask;
+    private final AtomicLongArray counters;
+
+    public CountMinSketch(int depth, int width) {
+        this.depth = depth;
+        int size = Integer.highestOneBit(Math.max(2, width - 1)) << 1;
+        this.mask = size - 1;
+        this.counters = new AtomicLongArray(depth * size);
+    }
+
+    /**
+     * 计数加一
+     *
+     * @param hash key的哈希值
+     * @return 加一后的估算值
+     */
+    public long increment(int hash) {
+        int h2 = spread(hash);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            long count = counters.incrementAndGet(index(i, hash + i * h2));
+            min = Math.min(min, count);
+        }
+        return min;
+    }
+
+    public long estimate(int hash) {
+        int h2 = spread(hash);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, counters.get(index(i, hash + i * h2)));
+        }
+        return min;
+    }
+
+    /**
+     * 所有计数减半
+     */
+    public void halve() {
+        for (int i = 0; i < counters.length(); i++) {
+            long count = counters.get(i);
+            if (count > 0) {
+                counters.getAndAdd(i, -(count - (count >>> 1)));
+            }
+        }
+    }
+
+    private int index(int row, int hash) {
+        return row * (mask + 1) + (spread(hash) & mask);
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
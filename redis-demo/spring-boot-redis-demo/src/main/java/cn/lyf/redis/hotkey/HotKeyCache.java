@@ -0,0 +1,154 @@
+package cn.lyf.redis.hotkey;
+
+import cn.lyf.redis.cache.GuardedLocalCache;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname HotKeyCache
+ * @description 记录缓存key访问的包装，key按RedisCache的格式(缓存名::key)记录，与redis中的key一致。
+ * 配置了提升时，探测到的热点key在本地缓存很短的时间，本节点的写入和删除会让它失效，
+ * 其它节点的写入最多在ttl之后可见。提升前检查失效代数，读取期间本节点发生过失效时不提升
+ * @since 2023/5/22 11:20
+ */
+public class HotKeyCache implements Cache {
+    private final Cache delegate;
+
+    private final HotKeyDetector detector;
+
+    /**
+     * 热点key的本地缓存，为null时不提升
+     */
+    private final GuardedLocalCache promoted;
+
+    private final String prefix;
+
+    public HotKeyCache(Cache delegate, HotKeyDetector detector,
+                       com.github.benmanes.caffeine.cache.Cache<String, ValueWrapper> promoted) {
+        this.delegate = delegate;
+        this.detector = detector;
+        this.promoted = promoted != null ? new GuardedLocalCache(promoted) : null;
+        this.prefix = delegate.getName() + "::";
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String redisKey = redisKey(key);
+        detector.record(redisKey);
+        if (promoted == null) {
+            return delegate.get(key);
+        }
+        ValueWrapper wrapper = promoted.getIfPresent(redisKey);
+        if (wrapper != null) {
+            return wrapper;
+        }
+        long readGeneration = promoted.generation(redisKey);
+        wrapper = delegate.get(key);
+        if (wrapper != null && detector.isHot(redisKey)) {
+            promoted.fill(redisKey, wrapper, readGeneration);
+        }
+        return wrapper;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String redisKey = redisKey(key);
+        detector.record(redisKey);
+        if (promoted == null) {
+            return delegate.get(key, valueLoader);
+        }
+        ValueWrapper wrapper = promoted.getIfPresent(redisKey);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+        long readGeneration = promoted.generation(redisKey);
+        T value = delegate.get(key, valueLoader);
+        if (detector.isHot(redisKey)) {
+            promoted.fill(redisKey, new SimpleValueWrapper(value), readGeneration);
+        }
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = delegate.putIfAbsent(key, value);
+        invalidate(key);
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+        invalidate(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = delegate.evictIfPresent(key);
+        invalidate(key);
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        if (promoted != null) {
+            promoted.invalidateAll();
+        }
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean present = delegate.invalidate();
+        if (promoted != null) {
+            promoted.invalidateAll();
+        }
+        return present;
+    }
+
+    public long promotedSize() {
+        return promoted == null ? 0 : promoted.estimatedSize();
+    }
+
+    private void invalidate(Object key) {
+        if (promoted != null) {
+            promoted.invalidate(redisKey(key));
+        }
+    }
+
+    private String redisKey(Object key) {
+        return prefix + key;
+    }
+}
@@ -0,0 +1,57 @@
+package cn.lyf.redis.hotkey;
+
+import cn.lyf.redis.cache.CacheDecorator;
+import cn.lyf.redis.config.HotKeyProperties;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname HotKeyCacheDecorator
+ * @description 在最外层记录所有缓存的key访问，开启 demo.hotkey.promote.enabled 时把热点key提升到进程内缓存
+ * @since 2023/5/22 11:40
+ */
+@Component
+@Order(HotKeyCacheDecorator.ORDER)
+public class HotKeyCacheDecorator implements CacheDecorator {
+    /**
+     * 在近端缓存之外，近端缓存命中的访问也要计数
+     */
+    public static final int ORDER = Ordered.LOWEST_PRECEDENCE;
+
+    private final HotKeyProperties properties;
+
+    private final HotKeyDetector detector;
+
+    private final MeterRegistry meterRegistry;
+
+    public HotKeyCacheDecorator(HotKeyProperties properties, HotKeyDetector detector, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.detector = detector;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache decorate(Cache cache) {
+        if (!properties.isEnabled()) {
+            return cache;
+        }
+        HotKeyProperties.Promote promote = properties.getPromote();
+        if (!promote.isEnabled()) {
+            return new HotKeyCache(cache, detector, null);
+        }
+        HotKeyCache hotKeyCache = new HotKeyCache(cache, detector, Caffeine.newBuilder()
+                .maximumSize(promote.getMaximumSize())
+                .expireAfterWrite(promote.getTtl())
+                .build());
+        Gauge.builder("cache.hotkey.promoted", hotKeyCache, HotKeyCache::promotedSize)
+                .tag("cache", cache.getName()).register(meterRegistry);
+        return hotKeyCache;
+    }
+}
@@ -0,0 +1,173 @@
+package cn.lyf.redis.hotkey;
+
+import cn.lyf.redis.config.HotKeyProperties;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname HotKeyDetector
+ * @description 热点key探测。按采样比例把key访问计入Count-Min Sketch，估算值超过当前top-K最小值的key进入候选集合，
+ * 计数定期减半。未被采样的访问只需要一次随机数判断，被采样的访问在sketch中做depth次原子自增；
+ * 已在候选集合中的key直接替换估算值，其它key只有估算值超过无锁读取的下限、要进入top-K时才加锁
+ * @since 2023/5/22 10:30
+ */
+@Component
+public class HotKeyDetector {
+    private final boolean enabled;
+    private final double sampleRate;
+    private final int topK;
+    private final long decayIntervalMillis;
+
+    /**
+     * 采样后的计数阈值
+     */
+    private final long sampledHotThreshold;
+
+    private final CountMinSketch sketch;
+
+    /**
+     * top-K候选 key -> 采样后的估算值
+     */
+    private final Map<String, Long> candidates = new ConcurrentHashMap<>();
+
+    /**
+     * 候选集合已满时的最小估算值，小于等于它的key不需要加锁
+     */
+    private volatile long minCandidate;
+
+    private final AtomicLong nextDecay;
+
+    public HotKeyDetector(HotKeyProperties properties) {
+        this.enabled = properties.isEnabled();
+        this.sampleRate = properties.getSampleRate();
+        this.topK = properties.getTopK();
+        this.decayIntervalMillis = properties.getDecayInterval().toMillis();
+        this.sampledHotThreshold = Math.max(1, (long) (properties.getHotThreshold() * sampleRate));
+        this.sketch = new CountMinSketch(properties.getDepth(), properties.getWidth());
+        this.nextDecay = new AtomicLong(System.currentTimeMillis() + decayIntervalMillis);
+    }
+
+    /**
+     * 记录一次key访问
+     *
+     * @param key redis中的key
+     */
+    public void record(String key) {
+        if (!enabled || key == null || sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        decayIfDue();
+        long estimate = sketch.increment(key.hashCode());
+        Long current = candidates.get(key);
+        if (current != null) {
+            // 替换失败说明其它线程刚更新或淘汰了它，这次访问已经计入sketch，不需要重试
+            if (current != estimate) {
+                candidates.replace(key, current, estimate);
+            }
+        } else if (estimate > minCandidate) {
+            offer(key, estimate);
+        }
+    }
+
+    /**
+     * 是否为热点key，只查候选集合，不访问sketch
+     *
+     * @param key redis中的key
+     * @return true: 在top-K中并且估算值达到阈值
+     */
+    public boolean isHot(String key) {
+        Long estimate = candidates.get(key);
+        return estimate != null && estimate >= sampledHotThreshold;
+    }
+
+    /**
+     * 当前的top-K，估算值已按采样比例放大
+     *
+     * @return 按估算值从大到小排列
+     */
+    public List<HotKey> topKeys() {
+        List<HotKey> keys = new ArrayList<>(candidates.size());
+        candidates.forEach((key, estimate) -> keys.add(new HotKey(key, scale(estimate), estimate >= sampledHotThreshold)));
+        keys.sort(Comparator.comparingLong(HotKey::getEstimatedCount).reversed());
+        return keys;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getDecayIntervalMillis() {
+        return decayIntervalMillis;
+    }
+
+    /**
+     * 候选估算值的无锁更新只会抬高真实的最小值，minCandidate偏低时多放进来的key在这里按最新值淘汰
+     */
+    private synchronized void offer(String key, long estimate) {
+        if (candidates.size() >= topK && estimate <= minCandidate) {
+            // 等锁期间其它线程已经抬高了下限
+            return;
+        }
+        candidates.put(key, estimate);
+        if (candidates.size() < topK) {
+            return;
+        }
+        // 一次遍历找出最小和次小，淘汰最小的之后次小的就是新的下限
+        String minKey = null;
+        long min = Long.MAX_VALUE;
+        long second = Long.MAX_VALUE;
+        for (Map.Entry<String, Long> entry : candidates.entrySet()) {
+            long value = entry.getValue();
+            if (value < min) {
+                second = min;
+                min = value;
+                minKey = entry.getKey();
+            } else if (value < second) {
+                second = value;
+            }
+        }
+        if (candidates.size() > topK) {
+            candidates.remove(minKey);
+            minCandidate = second;
+        } else {
+            minCandidate = min;
+        }
+    }
+
+    private void decayIfDue() {
+        long now = System.currentTimeMillis();
+        long due = nextDecay.get();
+        if (now < due || !nextDecay.compareAndSet(due, now + decayIntervalMillis)) {
+            return;
+        }
+        sketch.halve();
+        synchronized (this) {
+            candidates.replaceAll((key, estimate) -> estimate >>> 1);
+            candidates.values().removeIf(estimate -> estimate == 0);
+            minCandidate = candidates.size() >= topK ? minCandidate >>> 1 : 0;
+        }
+    }
+
+    private long scale(long sampled) {
+        return (long) (sampled / sampleRate);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class HotKey {
+        private final String key;
+        private final long estimatedCount;
+        private final boolean hot;
+    }
+}
@@ -0,0 +1,34 @@
+package cn.lyf.redis.hotkey;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname HotKeyEndpoint
+ * @description 查看当前热点key: GET /actuator/hotkeys
+ * @since 2023/5/22 11:10
+ */
+@Component
+@Endpoint(id = "hotkeys")
+public class HotKeyEndpoint {
+    private final HotKeyDetector detector;
+
+    public HotKeyEndpoint(HotKeyDetector detector) {
+        this.detector = detector;
+    }
+
+    @ReadOperation
+    public Map<String, Object> hotKeys() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sampleRate", detector.getSampleRate());
+        result.put("decayIntervalMillis", detector.getDecayIntervalMillis());
+        result.put("keys", detector.topKeys());
+        return result;
+    }
+}
@@ -0,0 +1,39 @@
+package cn.lyf.redis.hotkey;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname HotKeyRecordingSerializer
+ * @description RedisTemplate的key序列化器，每次序列化key(即每次按key访问redis)时记录一次访问，
+ * 不需要修改业务代码或包装RedisTemplate的各个操作
+ * @since 2023/5/22 11:00
+ */
+public class HotKeyRecordingSerializer implements RedisSerializer<String> {
+    private final StringRedisSerializer delegate = StringRedisSerializer.UTF_8;
+
+    private final HotKeyDetector detector;
+
+    public HotKeyRecordingSerializer(HotKeyDetector detector) {
+        this.detector = detector;
+    }
+
+    @Override
+    public byte[] serialize(String key) throws SerializationException {
+        detector.record(key);
+        return delegate.serialize(key);
+    }
+
+    @Override
+    public String deserialize(byte[] bytes) throws SerializationException {
+        return delegate.deserialize(bytes);
+    }
+
+    @Override
+    public Class<?> getTargetType() {
+        return String.class;
+    }
+}
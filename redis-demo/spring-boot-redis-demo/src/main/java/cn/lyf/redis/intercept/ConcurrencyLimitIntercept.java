@@ -0,0 +1,81 @@
+package cn.lyf.redis.intercept;
+
+import cn.lyf.redis.common.Result;
+import cn.lyf.redis.common.StatusCode;
+import cn.lyf.redis.limit.ConcurrencyLimitRegistry;
+import cn.lyf.redis.limit.ConcurrencyLimiter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static cn.lyf.redis.common.CommonConstant.CONTENT_TYPE_JSON;
+import static cn.lyf.redis.common.CommonConstant.HEADER_RETRY_AFTER;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ConcurrencyLimitIntercept
+ * @description 接口并发限制的拦截器，超过@ConcurrencyLimit的上限时返回请求受限，与RequestLimitIntercept的响应相同。
+ * 许可保存在请求属性中，afterCompletion时归还；异步请求再次分派时不重复获取
+ * @since 2023/5/28 11:00
+ */
+@Slf4j
+@Component
+public class ConcurrencyLimitIntercept implements HandlerInterceptor {
+    private static final String PERMIT_ATTRIBUTE = ConcurrencyLimitIntercept.class.getName() + ".permit";
+
+    /**
+     * 在途请求完成的时间不确定，建议1秒后重试
+     */
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final ConcurrencyLimitRegistry concurrencyLimitRegistry;
+
+    /**
+     * 受限时的响应体是固定的，只序列化一次
+     */
+    private final byte[] limitedBody;
+
+    public ConcurrencyLimitIntercept(ConcurrencyLimitRegistry concurrencyLimitRegistry, ObjectMapper objectMapper)
+            throws JsonProcessingException {
+        this.concurrencyLimitRegistry = concurrencyLimitRegistry;
+        this.limitedBody = objectMapper.writeValueAsBytes(Result.error(StatusCode.REQUEST_LIMIT));
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if (!(handler instanceof HandlerMethod) || request.getAttribute(PERMIT_ATTRIBUTE) != null) {
+            return true;
+        }
+        ConcurrencyLimiter limiter = concurrencyLimitRegistry.getLimiter((HandlerMethod) handler);
+        if (limiter == null) {
+            return true;
+        }
+        ConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        if (permit == null) {
+            log.debug("并发受限: {}, 上限: {}", limiter.getRoute(), limiter.getLimit());
+            response.setHeader(HEADER_RETRY_AFTER, RETRY_AFTER_SECONDS);
+            response.setContentType(CONTENT_TYPE_JSON);
+            response.getOutputStream().write(limitedBody);
+            return false;
+        }
+        request.setAttribute(PERMIT_ATTRIBUTE, permit);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object permit = request.getAttribute(PERMIT_ATTRIBUTE);
+        if (permit != null) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            ((ConcurrencyLimiter.Permit) permit).release();
+        }
+    }
+}
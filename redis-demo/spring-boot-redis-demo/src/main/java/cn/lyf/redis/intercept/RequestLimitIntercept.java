@@ -1,14 +1,14 @@
 package cn.lyf.redis.intercept;
 
-import cn.lyf.redis.anno.RequestLimit;
 import cn.lyf.redis.common.Result;
 import cn.lyf.redis.common.StatusCode;
+import cn.lyf.redis.limit.LimitMetrics;
+import cn.lyf.redis.limit.LimitPolicy;
+import cn.lyf.redis.limit.LimitPolicyRegistry;
+import cn.lyf.redis.limit.LimitResult;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.util.ObjectUtils;
 import org.springframework.web.method.HandlerMethod;
@@ -16,13 +16,11 @@ import org.springframework.web.servlet.HandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 import java.io.IOException;
-import java.io.Serializable;
-import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.TimeUnit;
 
-import static cn.lyf.redis.common.CommonConstant.CONTENT_TYPE_JSON;
+import static cn.lyf.redis.common.CommonConstant.*;
 
 /**
  * @author lyf
@@ -34,35 +32,32 @@ import static cn.lyf.redis.common.CommonConstant.CONTENT_TYPE_JSON;
 @Slf4j
 @Component
 public class RequestLimitIntercept implements HandlerInterceptor {
-    @Autowired
-    private ObjectMapper objectMapper;
+    /**
+     * 既没有ip也没有会话的请求共用一个限流key
+     */
+    private static final String ANONYMOUS = "anonymous";
+
+    private final ObjectMapper objectMapper;
 
-    @Autowired
-    @Qualifier(value = "jsonRedisTemplate")
-    private RedisTemplate<String, Serializable> redisTemplate;
+    private final LimitPolicyRegistry limitPolicyRegistry;
+
+    private final LimitMetrics limitMetrics;
+
+    public RequestLimitIntercept(ObjectMapper objectMapper, LimitPolicyRegistry limitPolicyRegistry, LimitMetrics limitMetrics) {
+        this.objectMapper = objectMapper;
+        this.limitPolicyRegistry = limitPolicyRegistry;
+        this.limitMetrics = limitMetrics;
+    }
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
-        // 判断handler 所表示的对象是否是HandlerMethod对象
         // 我们只拦截HandlerMethod对象及其子类对象
-        if (handler.getClass().isAssignableFrom(HandlerMethod.class)) {
-            // HandlerMethod封装方法定义相关的信息，如类、方法、参数等
-            HandlerMethod handlerMethod = (HandlerMethod) handler;
-            Method method = handlerMethod.getMethod();
-            // 方法上存在@RequestLimit注解
-            RequestLimit requestLimit = null;
-            if (method.isAnnotationPresent(RequestLimit.class)) {
-                requestLimit = method.getAnnotation(RequestLimit.class);
-            } else if (method.getDeclaringClass().isAnnotationPresent(RequestLimit.class)) {
-                requestLimit = method.getDeclaringClass().getAnnotation(RequestLimit.class);
-            }
-
-            // 即表示存在RequestLimit注解
-            if (requestLimit != null) {
-                if (isLimit(request, requestLimit)) {
-                    writeToResponse(response, Result.error(StatusCode.REQUEST_LIMIT));
-                    return false;
-                }
+        if (handler instanceof HandlerMethod) {
+            // 注解在启动时已解析为限流策略，这里只做一次map查找
+            LimitPolicy policy = limitPolicyRegistry.getPolicy((HandlerMethod) handler);
+            if (policy.isLimited() && isLimit(request, response, policy)) {
+                writeToResponse(response, Result.error(StatusCode.REQUEST_LIMIT));
+                return false;
             }
         }
 
@@ -100,37 +95,51 @@ public class RequestLimitIntercept implements HandlerInterceptor {
     /**
      * 判断请求是否受限
      *
-     * @param request      请求
-     * @param requestLimit 这里会携带两个参数，一个是限定时间，一个是限定次数
+     * @param request  请求
+     * @param response 响应，用于回写剩余次数等限流信息
+     * @param policy   接口的限流策略
      * @return true: 受限，false：不受限
      */
-    private boolean isLimit(HttpServletRequest request, RequestLimit requestLimit) {
-        // 受限的redis的缓存key，我们使用ip地址或session来做唯一的key
-        String remoteAddr = request.getRemoteAddr();
-        String limitKey = "request:limit:";
-        if (!ObjectUtils.isEmpty(remoteAddr)) { // 此时我们才使用sessionid来作为唯一的key
-            remoteAddr = remoteAddr.replace(":", "-");
-            limitKey = limitKey + request.getServletPath() + ":" + remoteAddr;
-        } else {
-            limitKey = limitKey + request.getServletPath() + ":" + request.getSession().getId();
+    private boolean isLimit(HttpServletRequest request, HttpServletResponse response, LimitPolicy policy) {
+        String limitKey = limitKey(request, policy);
+        long start = System.nanoTime();
+        LimitResult limitResult;
+        try {
+            limitResult = policy.tryAcquire(limitKey);
+        } catch (RuntimeException e) {
+            limitMetrics.record(policy, null, System.nanoTime() - start);
+            throw e;
         }
-
-        // 从缓存中获取，当前的这个请求访问了几次
-        Serializable redisCount = redisTemplate.opsForValue().get(limitKey);
-        // 表示是第一次访问
-        if (redisCount == null) {
-            redisTemplate.opsForValue().set(limitKey, 1, requestLimit.second(), TimeUnit.SECONDS);
-            log.info("第1次访问: {}", limitKey);
-        } else {
-            int limitCount = (int) redisCount;
-            if (limitCount >= requestLimit.maxCount()) {
-                log.info("第{}次访问, 访问受限", limitCount + 1);
-                return true;
-            }
-            redisTemplate.opsForValue().increment(limitKey);
-            log.info("第{}次访问", limitCount + 1);
+        limitMetrics.record(policy, limitResult, System.nanoTime() - start);
+        response.setHeader(HEADER_LIMIT_REMAINING, String.valueOf(limitResult.getRemaining()));
+        if (!limitResult.isAllowed()) {
+            // 向上取整到秒
+            response.setHeader(HEADER_RETRY_AFTER, String.valueOf((limitResult.getTtlMillis() + 999) / 1000));
+            // 受限次数记录在request.limit指标中，这里不再逐条打印info日志
+            log.debug("访问受限: {}, {}ms后重试", limitKey, limitResult.getTtlMillis());
+            return true;
         }
 
+        log.debug("访问: {}, 剩余次数: {}", limitKey, limitResult.getRemaining());
         return false;
     }
+
+    /**
+     * 受限的redis的缓存key，我们使用ip地址或已有的session来做唯一的key，不会为了限流创建session
+     *
+     * @param request 请求
+     * @param policy  接口的限流策略
+     * @return 前缀 + {请求路径:客户端标识}，按接口限流时为 前缀 + global:{接口}
+     */
+    static String limitKey(HttpServletRequest request, LimitPolicy policy) {
+        if (policy.isGlobal()) {
+            return policy.getGlobalKey();
+        }
+        String client = request.getRemoteAddr();
+        if (ObjectUtils.isEmpty(client)) {
+            HttpSession session = request.getSession(false);
+            client = session != null ? session.getId() : ANONYMOUS;
+        }
+        return policy.limitKey(request.getServletPath(), client);
+    }
 }
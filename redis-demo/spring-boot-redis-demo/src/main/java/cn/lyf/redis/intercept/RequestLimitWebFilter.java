@@ -0,0 +1,127 @@
+package cn.lyf.redis.intercept;
+
+import cn.lyf.redis.common.Result;
+import cn.lyf.redis.common.StatusCode;
+import cn.lyf.redis.limit.LimitMetrics;
+import cn.lyf.redis.limit.LimitPolicy;
+import cn.lyf.redis.limit.LimitPolicyRegistry;
+import cn.lyf.redis.limit.ReactiveRateLimiter;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+
+import static cn.lyf.redis.common.CommonConstant.HEADER_LIMIT_REMAINING;
+import static cn.lyf.redis.common.CommonConstant.HEADER_RETRY_AFTER;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname RequestLimitWebFilter
+ * @description WebFlux下的接口防刷过滤器，与RequestLimitIntercept使用相同的@RequestLimit、限流key和响应，
+ * 限流判断通过ReactiveRateLimiter异步完成，不占用事件循环线程
+ * @since 2023/5/16 10:00
+ */
+@Slf4j
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class RequestLimitWebFilter implements WebFilter {
+    /**
+     * 既没有ip也没有会话的请求共用一个限流key
+     */
+    private static final String ANONYMOUS = "anonymous";
+
+    private final RequestMappingHandlerMapping handlerMapping;
+
+    private final LimitPolicyRegistry limitPolicyRegistry;
+
+    private final ReactiveRateLimiter rateLimiter;
+
+    private final LimitMetrics limitMetrics;
+
+    /**
+     * 受限时的响应体是固定的，只序列化一次
+     */
+    private final byte[] limitedBody;
+
+    public RequestLimitWebFilter(@Qualifier(value = "requestMappingHandlerMapping") RequestMappingHandlerMapping handlerMapping,
+                                 LimitPolicyRegistry limitPolicyRegistry,
+                                 ReactiveRateLimiter rateLimiter, LimitMetrics limitMetrics,
+                                 ObjectMapper objectMapper) throws JsonProcessingException {
+        this.handlerMapping = handlerMapping;
+        this.limitPolicyRegistry = limitPolicyRegistry;
+        this.rateLimiter = rateLimiter;
+        this.limitMetrics = limitMetrics;
+        this.limitedBody = objectMapper.writeValueAsBytes(Result.error(StatusCode.REQUEST_LIMIT));
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return handlerMapping.getHandler(exchange)
+                .filter(HandlerMethod.class::isInstance)
+                .map(handler -> limitPolicyRegistry.getPolicy((HandlerMethod) handler))
+                .filter(LimitPolicy::isLimited)
+                .flatMap(policy -> isLimit(exchange, policy))
+                .defaultIfEmpty(Boolean.FALSE)
+                .flatMap(limited -> limited ? writeToResponse(exchange.getResponse()) : chain.filter(exchange));
+    }
+
+    /**
+     * 判断请求是否受限，同时回写剩余次数等限流信息
+     */
+    private Mono<Boolean> isLimit(ServerWebExchange exchange, LimitPolicy policy) {
+        String limitKey = limitKey(exchange.getRequest(), policy);
+        long start = System.nanoTime();
+        return rateLimiter.tryAcquire(limitKey, policy)
+                .doOnError(e -> limitMetrics.record(policy, null, System.nanoTime() - start))
+                .map(limitResult -> {
+                    limitMetrics.record(policy, limitResult, System.nanoTime() - start);
+                    HttpHeaders headers = exchange.getResponse().getHeaders();
+                    headers.set(HEADER_LIMIT_REMAINING, String.valueOf(limitResult.getRemaining()));
+                    if (!limitResult.isAllowed()) {
+                        // 向上取整到秒
+                        headers.set(HEADER_RETRY_AFTER, String.valueOf((limitResult.getTtlMillis() + 999) / 1000));
+                        log.debug("访问受限: {}, {}ms后重试", limitKey, limitResult.getTtlMillis());
+                        return true;
+                    }
+                    log.debug("访问: {}, 剩余次数: {}", limitKey, limitResult.getRemaining());
+                    return false;
+                });
+    }
+
+    private Mono<Void> writeToResponse(ServerHttpResponse response) {
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(limitedBody)));
+    }
+
+    /**
+     * 与RequestLimitIntercept.limitKey一致，使用ip地址做唯一的key，响应式下不读取会话
+     *
+     * @param request 请求
+     * @param policy  接口的限流策略
+     * @return 前缀 + {请求路径:客户端标识}，按接口限流时为 前缀 + global:{接口}
+     */
+    static String limitKey(ServerHttpRequest request, LimitPolicy policy) {
+        if (policy.isGlobal()) {
+            return policy.getGlobalKey();
+        }
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        String client = remoteAddress != null && remoteAddress.getAddress() != null
+                ? remoteAddress.getAddress().getHostAddress() : ANONYMOUS;
+        return policy.limitKey(request.getPath().pathWithinApplication().value(), client);
+    }
+}
@@ -0,0 +1,91 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.anno.ConcurrencyLimit;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ConcurrencyLimitRegistry
+ * @description 每个接口方法的并发限制，第一次请求时解析@ConcurrencyLimit，之后只做一次map查找。
+ * 并发上限和在途请求数是接口级别的状态，同一个方法只有一个ConcurrencyLimiter
+ * @since 2023/5/28 10:50
+ */
+@Component
+public class ConcurrencyLimitRegistry {
+    /**
+     * 分布式模式下信号量的key前缀
+     */
+    static final String SEMAPHORE_PREFIX = "request:concurrency:";
+
+    private final ObjectProvider<RedissonClient> redissonClient;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 分布式许可的延迟预算和熔断，为null时直接访问redis
+     */
+    private final LimitFallback fallback;
+
+    /**
+     * 没有声明@ConcurrencyLimit的方法对应Optional.empty()
+     */
+    private final ConcurrentMap<Method, Optional<ConcurrencyLimiter>> limiters = new ConcurrentHashMap<>();
+
+    public ConcurrencyLimitRegistry(ObjectProvider<RedissonClient> redissonClient, MeterRegistry meterRegistry) {
+        this(redissonClient, meterRegistry, null);
+    }
+
+    @Autowired
+    public ConcurrencyLimitRegistry(ObjectProvider<RedissonClient> redissonClient, MeterRegistry meterRegistry,
+                                    LimitFallback fallback) {
+        this.redissonClient = redissonClient;
+        this.meterRegistry = meterRegistry;
+        this.fallback = fallback;
+    }
+
+    /**
+     * 获取接口的并发限制
+     *
+     * @param handlerMethod handlerMethod
+     * @return 没有声明@ConcurrencyLimit时返回null
+     */
+    public ConcurrencyLimiter getLimiter(HandlerMethod handlerMethod) {
+        Method method = handlerMethod.getMethod();
+        Optional<ConcurrencyLimiter> limiter = limiters.get(method);
+        if (limiter == null) {
+            limiter = limiters.computeIfAbsent(method, this::resolve);
+        }
+        return limiter.orElse(null);
+    }
+
+    private Optional<ConcurrencyLimiter> resolve(Method method) {
+        // 方法上的注解优先，其次是类上的注解
+        ConcurrencyLimit concurrencyLimit = method.getAnnotation(ConcurrencyLimit.class);
+        if (concurrencyLimit == null) {
+            concurrencyLimit = method.getDeclaringClass().getAnnotation(ConcurrencyLimit.class);
+        }
+        if (concurrencyLimit == null) {
+            return Optional.empty();
+        }
+        String route = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        if (concurrencyLimit.globalLimit() <= 0) {
+            return Optional.of(new ConcurrencyLimiter(route, concurrencyLimit, null, null, meterRegistry));
+        }
+        RedissonClient client = redissonClient.getIfAvailable();
+        if (client == null) {
+            throw new IllegalStateException("globalLimit大于0时需要RedissonClient: " + method);
+        }
+        return Optional.of(new ConcurrencyLimiter(route, concurrencyLimit,
+                client.getPermitExpirableSemaphore(SEMAPHORE_PREFIX + route), fallback, meterRegistry));
+    }
+}
@@ -0,0 +1,176 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.anno.ConcurrencyLimit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RFuture;
+import org.redisson.api.RPermitExpirableSemaphore;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ConcurrencyLimiter
+ * @description 一个接口的并发限制。先在本地按自适应上限计数，通过后分布式模式再从Redisson信号量获取许可(一次网络往返)，
+ * 许可在请求完成后异步归还，不增加响应时间。访问redis出错时只按本地上限判断。
+ * 启用 demo.limit.fallback 时获取许可与限流判断共用LimitFallback的延迟预算和熔断器，请求线程最多等待budget，
+ * 超时、出错或熔断时同样只按本地上限判断；放弃等待后才获取到的许可立即归还，来不及归还的在租约到期后释放。
+ * 指标: request.concurrency.limit、request.concurrency.inflight、request.concurrency.rejected(reason=local/global)
+ * @since 2023/5/28 10:30
+ */
+@Slf4j
+public class ConcurrencyLimiter {
+    private final String route;
+    private final GradientLimit limit;
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    /**
+     * 本地模式为null
+     */
+    private final RPermitExpirableSemaphore semaphore;
+    private final long leaseMillis;
+
+    /**
+     * 获取许可的延迟预算和熔断，为null时直接等待Redisson的结果
+     */
+    private final LimitFallback fallback;
+
+    private final Counter localRejected;
+    private final Counter globalRejected;
+
+    ConcurrencyLimiter(String route, ConcurrencyLimit concurrencyLimit, RPermitExpirableSemaphore semaphore,
+                       LimitFallback fallback, MeterRegistry meterRegistry) {
+        this.route = route;
+        this.limit = new GradientLimit(concurrencyLimit.initialLimit(), concurrencyLimit.minLimit(),
+                concurrencyLimit.maxLimit(), concurrencyLimit.tolerance());
+        this.semaphore = semaphore;
+        this.leaseMillis = concurrencyLimit.leaseMillis();
+        this.fallback = fallback != null && fallback.isEnabled() ? fallback : null;
+        if (semaphore != null) {
+            // 已存在时不修改许可数
+            semaphore.trySetPermits(concurrencyLimit.globalLimit());
+        }
+        Gauge.builder("request.concurrency.limit", limit, GradientLimit::getLimit)
+                .description("接口当前的并发上限").tag("route", route).register(meterRegistry);
+        Gauge.builder("request.concurrency.inflight", inflight, AtomicInteger::get)
+                .description("接口在途请求数").tag("route", route).register(meterRegistry);
+        this.localRejected = rejected(meterRegistry, "local");
+        this.globalRejected = rejected(meterRegistry, "global");
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    /**
+     * 尝试开始处理一个请求
+     *
+     * @return 许可，请求完成后必须调用release；为null时受限
+     */
+    public Permit tryAcquire() {
+        int current;
+        do {
+            current = inflight.get();
+            if (current >= limit.getLimit()) {
+                localRejected.increment();
+                return null;
+            }
+        } while (!inflight.compareAndSet(current, current + 1));
+
+        int inflightAtStart = current + 1;
+        if (semaphore == null) {
+            return new Permit(inflightAtStart, null);
+        }
+        Permit permit;
+        if (fallback == null) {
+            try {
+                permit = acquireGlobal(inflightAtStart, null);
+            } catch (RuntimeException e) {
+                log.warn("获取接口[{}]的分布式并发许可出错, 只按本地上限判断", route, e);
+                permit = new Permit(inflightAtStart, null);
+            }
+        } else {
+            permit = fallback.call(semaphore.getName(), route, () -> acquireGlobal(inflightAtStart, fallback.getBudget()),
+                    () -> new Permit(inflightAtStart, null));
+        }
+        if (permit == null) {
+            inflight.decrementAndGet();
+            globalRejected.increment();
+        }
+        return permit;
+    }
+
+    /**
+     * 从信号量获取许可，不等待空闲许可
+     *
+     * @param timeout 等待redis的最长时间，为null时由Redisson的timeout兜底
+     * @return 没有空闲许可时返回null
+     */
+    private Permit acquireGlobal(int inflightAtStart, Duration timeout) {
+        long deadline = timeout != null ? System.nanoTime() + timeout.toNanos() : 0;
+        RFuture<String> future = semaphore.tryAcquireAsync(0, leaseMillis, TimeUnit.MILLISECONDS);
+        String permitId;
+        try {
+            permitId = RedissonRateLimiter.await(future, timeout, deadline);
+        } catch (RuntimeException e) {
+            // 放弃等待后许可仍可能获取成功，归还而不是等租约到期
+            future.whenComplete((id, error) -> {
+                if (id != null) {
+                    semaphore.releaseAsync(id);
+                }
+            });
+            throw e;
+        }
+        return permitId != null ? new Permit(inflightAtStart, permitId) : null;
+    }
+
+    private Counter rejected(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("request.concurrency.rejected")
+                .description("超过并发上限被拒绝的请求数")
+                .tag("route", route)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 一个在途请求持有的许可
+     */
+    public final class Permit {
+        private final long startNanos = System.nanoTime();
+        private final int inflightAtStart;
+        private final String permitId;
+
+        private Permit(int inflightAtStart, String permitId) {
+            this.inflightAtStart = inflightAtStart;
+            this.permitId = permitId;
+        }
+
+        /**
+         * 请求完成，记录耗时并归还许可
+         */
+        public void release() {
+            inflight.decrementAndGet();
+            limit.onSample(System.nanoTime() - startNanos, inflightAtStart);
+            if (permitId != null) {
+                semaphore.releaseAsync(permitId).whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        log.warn("归还接口[{}]的分布式并发许可出错, 租约到期后自动释放", route, e);
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.anno.RequestLimit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname FallbackRateLimiter
+ * @description 由LimitPolicyRegistry包装在访问redis的限流器外面，限流判断经过LimitFallback的延迟预算和熔断
+ * @since 2023/5/26 10:40
+ */
+class FallbackRateLimiter implements RateLimiter {
+    private final RateLimiter delegate;
+    private final LimitFallback fallback;
+
+    FallbackRateLimiter(RateLimiter delegate, LimitFallback fallback) {
+        this.delegate = delegate;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public LimitBackend backend() {
+        return delegate.backend();
+    }
+
+    @Override
+    public boolean supports(RequestLimit requestLimit) {
+        return delegate.supports(requestLimit);
+    }
+
+    @Override
+    public LimitResult tryAcquire(String key, LimitPolicy policy) {
+        return fallback.tryAcquire(key, policy, delegate);
+    }
+}
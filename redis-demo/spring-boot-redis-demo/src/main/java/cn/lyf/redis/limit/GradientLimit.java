@@ -0,0 +1,106 @@
+package cn.lyf.redis.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname GradientLimit
+ * @description 根据处理耗时调整的并发上限(梯度算法)。每windowSamples个请求为一个窗口，窗口的平均耗时为短期耗时，
+ * 长期耗时是各窗口的指数移动平均。梯度 = tolerance * 长期 / 短期，限制在[0.5, 1]：
+ * 耗时变长时梯度小于1，上限按比例下降；耗时正常时梯度为1，上限增加sqrt(limit)，持续探测更高的并发。
+ * 窗口内在途请求没有达到上限的一半时不调整，避免空闲时上限无限增长。
+ * 请求完成时只做原子累加，窗口结束时才加锁计算
+ * @since 2023/5/28 10:10
+ */
+public class GradientLimit {
+    /**
+     * 每个窗口的请求数
+     */
+    static final int WINDOW_SAMPLES = 20;
+
+    /**
+     * 长期耗时的平滑窗口数
+     */
+    private static final int LONG_WINDOWS = 20;
+
+    /**
+     * 新上限的权重，越小调整越平缓
+     */
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+
+    private final AtomicLong rttSum = new AtomicLong();
+    private final AtomicInteger samples = new AtomicInteger();
+    private final AtomicInteger maxInflight = new AtomicInteger();
+
+    /**
+     * 以下字段只在update中修改
+     */
+    private double estimatedLimit;
+    private double longRttNanos;
+    private volatile int limit;
+
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit || tolerance < 1) {
+            throw new IllegalArgumentException(String.format("需要 1 <= minLimit(%d) <= initialLimit(%d) <= maxLimit(%d), "
+                    + "tolerance(%s) >= 1", minLimit, initialLimit, maxLimit, tolerance));
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.estimatedLimit = initialLimit;
+        this.limit = initialLimit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * 记录一个请求的处理耗时
+     *
+     * @param rttNanos 耗时
+     * @param inflight 该请求开始时的在途请求数(含自身)
+     */
+    public void onSample(long rttNanos, int inflight) {
+        rttSum.addAndGet(rttNanos);
+        if (inflight > maxInflight.get()) {
+            maxInflight.accumulateAndGet(inflight, Math::max);
+        }
+        if (samples.incrementAndGet() == WINDOW_SAMPLES) {
+            update();
+        }
+    }
+
+    private synchronized void update() {
+        int count = samples.getAndSet(0);
+        long sum = rttSum.getAndSet(0);
+        int inflight = maxInflight.getAndSet(0);
+        if (count == 0) {
+            return;
+        }
+        double shortRtt = (double) sum / count;
+        if (longRttNanos == 0) {
+            longRttNanos = shortRtt;
+        } else {
+            longRttNanos += (shortRtt - longRttNanos) / LONG_WINDOWS;
+            // 后端恢复后长期耗时远高于当前耗时，加快回落，否则梯度长时间为1，上限会冲得过高
+            if (longRttNanos > 2 * shortRtt) {
+                longRttNanos *= 0.95;
+            }
+        }
+        if (inflight < estimatedLimit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / shortRtt));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+}
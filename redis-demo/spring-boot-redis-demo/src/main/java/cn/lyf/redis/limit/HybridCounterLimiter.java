@@ -0,0 +1,226 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.anno.RequestLimit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static cn.lyf.redis.limit.RedisCounterLimiter.loadScript;
+import static cn.lyf.redis.limit.RedisCounterLimiter.scriptLoad;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname HybridCounterLimiter
+ * @description 本地+redis两级的固定窗口限流。
+ * 每个节点按批次从redis的窗口计数中预占额度(租约)，租约内的请求只在本地原子扣减，
+ * 租约用完或窗口结束时才访问redis。租约的额度分散到按线程选择的几个分段中扣减，自己的分段用完后再借用其它分段，
+ * 所有分段都用完才续约，不会多放行；续约用ReentrantLock保证同一个key只有一个线程访问redis，等待时不占住虚拟线程的载体线程。预占的额度只在当前窗口内有效，
+ * 误差来源于其它节点上尚未用完的租约，最多为 节点数 * 单次预占额度。
+ * 租约内的判断不访问redis，只有续约经过LimitFallback的延迟预算和熔断
+ * @since 2023/4/21 09:40
+ */
+@Slf4j
+@Component
+public class HybridCounterLimiter implements RateLimiter, InitializingBean {
+    private static final RedisScript<List> LEASE_SCRIPT = loadScript("lua/request_limit_lease.lua");
+
+    /**
+     * 本地最多保留的key数量，超过后清理已过期的租约
+     */
+    private static final int MAX_LOCAL_KEYS = 100_000;
+
+    /**
+     * 租约额度的分段数，不超过CPU核数，取2的幂
+     */
+    private static final int STRIPES = Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()));
+
+    private final RedisTemplate<String, Serializable> redisTemplate;
+
+    /**
+     * 续约的延迟预算和降级，为null时续约直接访问redis
+     */
+    private final LimitFallback fallback;
+
+    private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<>();
+
+    public HybridCounterLimiter(RedisTemplate<String, Serializable> redisTemplate) {
+        this(redisTemplate, null);
+    }
+
+    @Autowired
+    public HybridCounterLimiter(@Qualifier(value = "limitRedisTemplate") RedisTemplate<String, Serializable> redisTemplate,
+                                LimitFallback fallback) {
+        this.redisTemplate = redisTemplate;
+        this.fallback = fallback != null && fallback.isEnabled() ? fallback : null;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        try {
+            redisTemplate.execute((RedisCallback<String>) connection -> scriptLoad(connection, LEASE_SCRIPT));
+        } catch (Exception e) {
+            log.warn("两级限流脚本预加载失败, 将在首次执行时加载: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean supports(RequestLimit requestLimit) {
+        return requestLimit.algorithm() == LimitAlgorithm.FIXED_WINDOW && requestLimit.hybrid();
+    }
+
+    @Override
+    public boolean managesFallback() {
+        return true;
+    }
+
+    @Override
+    public LimitResult tryAcquire(String key, LimitPolicy policy) {
+        return tryAcquire(key, policy.getMaxCount(), policy.getSecond(), policy.getMaxError(), policy);
+    }
+
+    /**
+     * 尝试获取一次请求许可
+     *
+     * @param key      限流key
+     * @param maxCount 在second秒内最多允许的请求次数
+     * @param second   窗口时长(秒)
+     * @param maxError 允许的误差比例，每次预占 maxCount * maxError 个额度(至少为1)
+     * @return 限流结果，remaining为本节点租约内的剩余额度
+     */
+    public LimitResult tryAcquire(String key, int maxCount, int second, double maxError) {
+        return tryAcquire(key, maxCount, second, maxError, null);
+    }
+
+    /**
+     * @param policy 不为null并且启用了降级时，续约经过LimitFallback
+     */
+    private LimitResult tryAcquire(String key, int maxCount, int second, double maxError, LimitPolicy policy) {
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            slot = slots.computeIfAbsent(key, k -> new Slot());
+        }
+
+        long now = System.currentTimeMillis();
+        LimitResult result = slot.lease.tryTake(now);
+        if (result != null) {
+            return result;
+        }
+
+        // 租约用完或已过期，同一个key同时只有一个线程去redis续约
+        slot.renewLock.lock();
+        try {
+            result = slot.lease.tryTake(now);
+            if (result != null) {
+                return result;
+            }
+            int leaseSize = leaseSize(maxCount, maxError);
+            if (fallback == null || policy == null) {
+                slot.lease = renew(key, maxCount, second, leaseSize);
+                result = slot.lease.tryTake(now);
+            } else {
+                // 超时降级时续约仍可能在后台完成，得到的租约照常留给之后的请求
+                Slot renewing = slot;
+                result = fallback.tryAcquire(key, policy, () -> {
+                    renewing.lease = renew(key, maxCount, second, leaseSize);
+                    return renewing.lease.tryTake(now);
+                });
+            }
+        } finally {
+            slot.renewLock.unlock();
+        }
+
+        if (slots.size() > MAX_LOCAL_KEYS) {
+            slots.values().removeIf(s -> s.lease.expireAt <= now);
+        }
+        return result;
+    }
+
+    static int leaseSize(int maxCount, double maxError) {
+        return (int) Math.max(1L, (long) (maxCount * maxError));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Lease renew(String key, int maxCount, int second, int leaseSize) {
+        List<Long> reply = redisTemplate.execute(LEASE_SCRIPT, RedisSerializer.string(), (RedisSerializer) RedisSerializer.string(),
+                Collections.singletonList(key), String.valueOf(maxCount), String.valueOf(second * 1000L),
+                String.valueOf(leaseSize));
+        long granted = reply.get(0);
+        long ttlMillis = reply.get(1);
+        // 预占失败时也缓存一个空租约，窗口结束前的请求直接在本地拒绝
+        return new Lease(granted, System.currentTimeMillis() + ttlMillis, granted == 0);
+    }
+
+    private static final class Slot {
+        private final ReentrantLock renewLock = new ReentrantLock();
+        private volatile Lease lease = Lease.EXPIRED;
+    }
+
+    private static final class Lease {
+        private static final Lease EXPIRED = new Lease(0, 0, false);
+
+        /**
+         * 相邻分段间隔一个缓存行(8个long)，避免伪共享
+         */
+        private static final int PADDING = 8;
+
+        private final AtomicLongArray tokens;
+        private final long expireAt;
+        private final boolean exhausted;
+
+        private Lease(long tokens, long expireAt, boolean exhausted) {
+            this.tokens = new AtomicLongArray(STRIPES * PADDING);
+            for (int i = 0; i < STRIPES; i++) {
+                this.tokens.set(i * PADDING, tokens / STRIPES + (i < tokens % STRIPES ? 1 : 0));
+            }
+            this.expireAt = expireAt;
+            this.exhausted = exhausted;
+        }
+
+        /**
+         * 在本地租约内扣减一个额度
+         *
+         * @param now 当前时间
+         * @return 可以在本地做出判断时返回结果，需要去redis续约时返回null
+         */
+        private LimitResult tryTake(long now) {
+            long ttl = expireAt - now;
+            if (ttl <= 0) {
+                return null;
+            }
+            if (exhausted) {
+                return new LimitResult(false, 0, ttl);
+            }
+            int home = (int) Thread.currentThread().getId() & (STRIPES - 1);
+            for (int i = 0; i < STRIPES; i++) {
+                // 用完的分段会被减成负数，计算剩余额度时按0处理
+                if (tokens.decrementAndGet(((home + i) & (STRIPES - 1)) * PADDING) >= 0) {
+                    return new LimitResult(true, remaining(), ttl);
+                }
+            }
+            return null;
+        }
+
+        private long remaining() {
+            long remaining = 0;
+            for (int i = 0; i < STRIPES; i++) {
+                remaining += Math.max(0, tokens.get(i * PADDING));
+            }
+            return remaining;
+        }
+    }
+}
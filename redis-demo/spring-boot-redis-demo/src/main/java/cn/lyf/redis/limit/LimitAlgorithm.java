@@ -0,0 +1,35 @@
+package cn.lyf.redis.limit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname LimitAlgorithm
+ * @description 限流算法，不同算法在redis中的数据结构不同，使用不同的key前缀
+ * @since 2023/4/23 10:05
+ */
+public enum LimitAlgorithm {
+    /**
+     * 固定窗口计数
+     */
+    FIXED_WINDOW("request:limit:"),
+
+    /**
+     * 滑动窗口日志，窗口边界处不会出现两倍的突发流量
+     */
+    SLIDING_WINDOW("request:limit:sw:"),
+
+    /**
+     * 令牌桶(GCRA)，容量为maxCount，每second秒生成maxCount个令牌
+     */
+    TOKEN_BUCKET("request:limit:tb:");
+
+    private final String keyPrefix;
+
+    LimitAlgorithm(String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+    }
+
+    public String keyPrefix() {
+        return keyPrefix;
+    }
+}
@@ -0,0 +1,40 @@
+package cn.lyf.redis.limit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname LimitBackend
+ * @description 限流的实现方式，@RequestLimit未指定时使用配置 demo.limit.backend
+ * @since 2023/5/17 10:00
+ */
+public enum LimitBackend {
+    /**
+     * 使用配置 demo.limit.backend 的值
+     */
+    DEFAULT,
+
+    /**
+     * redis lua脚本，所有节点共享额度
+     */
+    REDIS,
+
+    /**
+     * Redisson的RRateLimiter，所有节点共享额度，按滑动窗口计算
+     */
+    REDISSON,
+
+    /**
+     * 进程内限流，不访问redis，每个节点各自计算额度
+     */
+    LOCAL;
+
+    /**
+     * 不同实现在redis中的数据结构不同，使用不同的key前缀，避免切换实现时出现WRONGTYPE
+     *
+     * @param algorithm 限流算法
+     * @return key前缀
+     */
+    public String keyPrefix(LimitAlgorithm algorithm) {
+        return this == REDISSON ? "request:limit:rrl:" : algorithm.keyPrefix();
+    }
+}
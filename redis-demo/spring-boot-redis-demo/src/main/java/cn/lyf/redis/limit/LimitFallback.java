@@ -0,0 +1,250 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.config.LimitFallbackProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname LimitFallback
+ * @description 限流判断的延迟预算和降级。熔断器健康时直接在请求线程访问redis，不切换线程，耗时超过budget计为一次失败；
+ * 限流器使用的连接(limitConnectionFactory的命令超时、Redisson的异步等待)以budget为上限，redis无响应时请求线程也只阻塞一个预算。
+ * 出现失败后(连续失败未清零、半开探测)改为在有界线程池中执行，请求线程最多等待budget，超时或出错计为失败，连续失败后熔断。
+ * 线程池已满只说明并发高，不计为redis的失败，直接按本地限流处理。超时、出错、线程池已满和熔断期间按进程内限流判断，
+ * 额度为接口限额在各节点间的平均份额，整个集群放行的总数与正常时接近。
+ * threads为0时不使用线程池(虚拟线程模式)，始终在请求线程访问redis，慢请求同样计为失败并触发熔断。
+ * 并发限制的分布式许可通过call使用同一个预算和熔断器，降级时由调用者按本地规则判断。
+ * 指标: request.limit.fallback(tag: route、reason=timeout/error/saturated/open)、request.limit.breaker(0关闭、1打开、2半开)
+ * @since 2023/5/26 10:20
+ */
+@Slf4j
+@Component
+public class LimitFallback implements DisposableBean {
+    private final boolean enabled;
+    private final long budgetNanos;
+    private final int nodes;
+    private final LimiterCircuitBreaker breaker;
+    private final LocalRateLimiter localRateLimiter;
+    private final MeterRegistry meterRegistry;
+    /**
+     * 为null时始终在请求线程访问redis
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * 每个接口每种原因的计数器只注册一次
+     */
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public LimitFallback(LimitFallbackProperties properties, LocalRateLimiter localRateLimiter, MeterRegistry meterRegistry) {
+        if (properties.getNodes() < 1) {
+            throw new IllegalArgumentException("demo.limit.fallback.nodes需要大于0: " + properties.getNodes());
+        }
+        this.enabled = properties.isEnabled();
+        this.budgetNanos = properties.getBudget().toNanos();
+        this.nodes = properties.getNodes();
+        this.breaker = new LimiterCircuitBreaker(properties.getFailureThreshold(),
+                properties.getOpenDuration().toNanos(), TimeUnit.NANOSECONDS);
+        this.localRateLimiter = localRateLimiter;
+        this.meterRegistry = meterRegistry;
+        this.executor = properties.getThreads() > 0 ? executor(properties.getThreads()) : null;
+        Gauge.builder("request.limit.breaker", breaker, b -> b.getState().ordinal())
+                .description("限流熔断器状态: 0关闭、1打开、2半开")
+                .register(meterRegistry);
+    }
+
+    private static ThreadPoolExecutor executor(int threads) {
+        AtomicInteger sequence = new AtomicInteger();
+        // 只在redis已经出现失败时使用；没有队列，线程全部被慢请求占用时直接降级，不在队列里继续等待
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "limit-call-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            // 线程由请求线程创建，不继承tomcat的类加载器，停止web容器时不会被当作泄漏
+            thread.setContextClassLoader(LimitFallback.class.getClassLoader());
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public LimiterCircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    public Duration getBudget() {
+        return Duration.ofNanos(budgetNanos);
+    }
+
+    /**
+     * 在延迟预算内执行限流判断，超时、出错或熔断时降级为本地限流
+     *
+     * @param key      限流key
+     * @param policy   限流策略
+     * @param delegate 访问redis的限流器
+     * @return 限流结果
+     */
+    public LimitResult tryAcquire(String key, LimitPolicy policy, RateLimiter delegate) {
+        return tryAcquire(key, policy, () -> delegate.tryAcquire(key, policy));
+    }
+
+    /**
+     * 在延迟预算内执行一次访问redis的限流判断，超时、出错或熔断时降级为本地限流
+     *
+     * @param key    限流key
+     * @param policy 限流策略，用于降级时的本地额度和指标
+     * @param call   访问redis的限流判断
+     * @return 限流结果
+     */
+    public LimitResult tryAcquire(String key, LimitPolicy policy, Supplier<LimitResult> call) {
+        return call(key, policy.getRoute(), call, () -> localShare(key, policy));
+    }
+
+    /**
+     * 在延迟预算内执行一次访问redis的调用，超时、出错或熔断时计入request.limit.fallback，返回onFallback的结果
+     *
+     * @param key        redis key，用于日志
+     * @param route      接口，作为指标的tag
+     * @param call       访问redis的调用
+     * @param onFallback 降级时的结果
+     * @return call或onFallback的结果
+     */
+    public <T> T call(String key, String route, Supplier<T> call, Supplier<T> onFallback) {
+        if (!enabled) {
+            return call.get();
+        }
+        if (!breaker.tryPass()) {
+            return fallback(route, "open", onFallback);
+        }
+        if (executor == null || breaker.isHealthy()) {
+            return callInPlace(key, route, call, onFallback);
+        }
+        return callWithBudget(key, route, call, onFallback);
+    }
+
+    /**
+     * 在请求线程执行，结果总是被采用；超过预算时计为失败，之后的调用改为在线程池中限时等待
+     */
+    private <T> T callInPlace(String key, String route, Supplier<T> call, Supplier<T> onFallback) {
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            breaker.onFailure();
+            log.warn("限流访问redis出错, 降级为本地判断: {}", key, e);
+            return fallback(route, "error", onFallback);
+        }
+        if (System.nanoTime() - start > budgetNanos) {
+            breaker.onFailure();
+        } else {
+            breaker.onSuccess();
+        }
+        return result;
+    }
+
+    private <T> T callWithBudget(String key, String route, Supplier<T> call, Supplier<T> onFallback) {
+        Future<T> future;
+        try {
+            future = executor.submit(call::get);
+        } catch (RejectedExecutionException e) {
+            // 线程全部占用只说明并发高，不计入熔断
+            return fallback(route, "saturated", onFallback);
+        }
+        try {
+            T result = future.get(budgetNanos, TimeUnit.NANOSECONDS);
+            breaker.onSuccess();
+            return result;
+        } catch (TimeoutException e) {
+            // 同步调用不响应中断，线程会一直等到redis返回或命令超时，期间占用一个线程
+            future.cancel(true);
+            breaker.onFailure();
+            return fallback(route, "timeout", onFallback);
+        } catch (ExecutionException e) {
+            breaker.onFailure();
+            log.warn("限流访问redis出错, 降级为本地判断: {}", key, e.getCause());
+            return fallback(route, "error", onFallback);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return fallback(route, "timeout", onFallback);
+        }
+    }
+
+    /**
+     * 响应式下的延迟预算和降级，redis的结果不需要额外的线程
+     *
+     * @param key    限流key
+     * @param policy 限流策略
+     * @param call   访问redis的限流判断
+     * @return 限流结果
+     */
+    public Mono<LimitResult> tryAcquire(String key, LimitPolicy policy, Mono<LimitResult> call) {
+        if (!enabled) {
+            return call;
+        }
+        return Mono.defer(() -> {
+            if (!breaker.tryPass()) {
+                return Mono.just(fallback(key, policy, "open"));
+            }
+            return call.timeout(Duration.ofNanos(budgetNanos))
+                    .doOnNext(result -> breaker.onSuccess())
+                    .onErrorResume(e -> {
+                        breaker.onFailure();
+                        return Mono.fromSupplier(() -> fallback(key, policy, e instanceof TimeoutException ? "timeout" : "error"));
+                    });
+        });
+    }
+
+    LimitResult fallback(String key, LimitPolicy policy, String reason) {
+        return fallback(policy.getRoute(), reason, () -> localShare(key, policy));
+    }
+
+    private <T> T fallback(String route, String reason, Supplier<T> onFallback) {
+        counter(route, reason).increment();
+        return onFallback.get();
+    }
+
+    /**
+     * 本地限流，额度为 maxCount / nodes 向上取整
+     */
+    private LimitResult localShare(String key, LimitPolicy policy) {
+        int share = (policy.getMaxCount() + nodes - 1) / nodes;
+        return localRateLimiter.tryAcquire(key, policy.getAlgorithm(), share, policy.getSecond());
+    }
+
+    private Counter counter(String route, String reason) {
+        String name = route + ":" + reason;
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(name, n -> Counter.builder("request.limit.fallback")
+                    .description("降级为本地判断的次数")
+                    .tag("route", route)
+                    .tag("reason", reason)
+                    .register(meterRegistry));
+        }
+        return counter;
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
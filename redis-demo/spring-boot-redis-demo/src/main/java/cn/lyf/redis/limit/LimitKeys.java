@@ -0,0 +1,97 @@
+package cn.lyf.redis.limit;
+
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname LimitKeys
+ * @description 限流key的格式。{}中的部分为redis cluster的hash tag，只有它参与slot计算：
+ * 客户端维度为 前缀 + {请求路径:客户端标识}，同一个客户端在同一个接口上的所有key(不同算法、附加的key)都在同一个slot，
+ * lua脚本可以原子地操作多个key；不同客户端仍然分散在各个slot。
+ * 接口维度(global)为 前缀 + global:{接口}，分片时每个分片有各自的hash tag，并且尽量落在slot空间中均匀分开的区间里，
+ * 按slot区间平均分配的集群中各分片会在不同的节点上
+ * @since 2023/5/25 10:00
+ */
+public final class LimitKeys {
+    /**
+     * redis cluster的slot数量
+     */
+    public static final int SLOT_COUNT = 16384;
+
+    /**
+     * 寻找分片hash tag时最多尝试的次数，超过后不再要求落在对应的区间
+     */
+    private static final int MAX_SHARD_PROBES = 100_000;
+
+    private LimitKeys() {
+    }
+
+    /**
+     * 客户端维度的限流key
+     *
+     * @param prefix 算法对应的前缀
+     * @param path   请求路径
+     * @param client ip地址或会话id
+     * @return 前缀{路径:客户端}
+     */
+    public static String clientKey(String prefix, String path, String client) {
+        StringBuilder sb = new StringBuilder(prefix.length() + path.length() + client.length() + 3);
+        sb.append(prefix).append('{').append(path).append(':');
+        // ipv6地址中的":"替换为"-"，避免与key的分隔符混淆
+        for (int i = 0; i < client.length(); i++) {
+            char c = client.charAt(i);
+            sb.append(c == ':' ? '-' : c);
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * 接口维度的限流key，所有客户端共用
+     *
+     * @param prefix 算法对应的前缀
+     * @param route  接口，类名.方法名
+     * @return 前缀global:{接口}
+     */
+    public static String globalKey(String prefix, String route) {
+        return prefix + "global:{" + route + "}";
+    }
+
+    /**
+     * 把一个接口维度的计数拆成shards个key。第i个分片的hash tag选择落在slot空间第i段的那个，
+     * 集群按slot区间平均分给N个节点时，shards为N的倍数即可让每个节点承担相同数量的分片
+     *
+     * @param prefix 算法对应的前缀
+     * @param route  接口，类名.方法名
+     * @param shards 分片数
+     * @return 各分片的key
+     */
+    public static String[] shardKeys(String prefix, String route, int shards) {
+        String[] keys = new String[shards];
+        int filled = 0;
+        for (int n = 0; filled < shards && n < MAX_SHARD_PROBES; n++) {
+            String tag = route + "#" + n;
+            int segment = ClusterSlotHashUtil.calculateSlot(tag) * shards / SLOT_COUNT;
+            if (keys[segment] == null) {
+                keys[segment] = prefix + "global:{" + tag + "}";
+                filled++;
+            }
+        }
+        for (int i = 0, n = MAX_SHARD_PROBES; i < shards; i++) {
+            if (keys[i] == null) {
+                keys[i] = prefix + "global:{" + route + "#" + n++ + "}";
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * key所在的slot
+     *
+     * @param key 限流key
+     * @return 0 - 16383
+     */
+    public static int slot(String key) {
+        return ClusterSlotHashUtil.calculateSlot(key);
+    }
+}
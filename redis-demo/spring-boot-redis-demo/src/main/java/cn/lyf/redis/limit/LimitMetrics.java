@@ -0,0 +1,69 @@
+package cn.lyf.redis.limit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname LimitMetrics
+ * @description 限流判断的指标 request.limit，tag: route(接口方法)、backend、result(allowed/rejected/error)。
+ * 计时器的count即为各结果的次数，耗时为一次限流判断(含访问redis)的时间，可以据此设置限流开销的SLO
+ * @since 2023/5/23 10:00
+ */
+@Component
+public class LimitMetrics {
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 每个接口的计时器只注册一次，请求时不再按tag查找
+     */
+    private final ConcurrentMap<LimitPolicy, Timers> timers = new ConcurrentHashMap<>();
+
+    public LimitMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 记录一次限流判断
+     *
+     * @param policy      限流策略
+     * @param result      限流结果，为null时表示判断出错
+     * @param elapsedNanos 耗时
+     */
+    public void record(LimitPolicy policy, LimitResult result, long elapsedNanos) {
+        Timers policyTimers = timers.get(policy);
+        if (policyTimers == null) {
+            policyTimers = timers.computeIfAbsent(policy, Timers::new);
+        }
+        Timer timer = result == null ? policyTimers.error : result.isAllowed() ? policyTimers.allowed : policyTimers.rejected;
+        timer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private final class Timers {
+        private final Timer allowed;
+        private final Timer rejected;
+        private final Timer error;
+
+        private Timers(LimitPolicy policy) {
+            this.allowed = timer(policy, "allowed");
+            this.rejected = timer(policy, "rejected");
+            this.error = timer(policy, "error");
+        }
+
+        private Timer timer(LimitPolicy policy, String result) {
+            return Timer.builder("request.limit")
+                    .description("限流判断的耗时")
+                    .tag("route", policy.getRoute())
+                    .tag("backend", String.valueOf(policy.getBackend()))
+                    .tag("result", result)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.anno.RequestLimit;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname LimitPolicy
+ * @description 从@RequestLimit解析出来的不可变限流策略，每个接口只解析一次
+ * @since 2023/4/25 10:15
+ */
+@Getter
+@ToString(exclude = {"limiter", "shardKeys", "shardPolicies"})
+public final class LimitPolicy {
+    /**
+     * 没有声明@RequestLimit的接口
+     */
+    public static final LimitPolicy NONE = new LimitPolicy();
+
+    /**
+     * 声明限流的接口，类名.方法名，作为指标的tag
+     */
+    private final String route;
+    private final LimitAlgorithm algorithm;
+    private final int maxCount;
+    private final int second;
+    private final boolean hybrid;
+    private final double maxError;
+    private final LimitBackend backend;
+    private final String keyPrefix;
+    private final RateLimiter limiter;
+
+    /**
+     * 是否按接口限流，所有客户端共用globalKey
+     */
+    private final boolean global;
+    private final String globalKey;
+    private final int shards;
+
+    /**
+     * 分片时各分片的key和额度，分片的额度之和等于maxCount
+     */
+    @Getter(AccessLevel.NONE)
+    private final String[] shardKeys;
+    @Getter(AccessLevel.NONE)
+    private final LimitPolicy[] shardPolicies;
+
+    LimitPolicy(RequestLimit requestLimit, String route, LimitBackend backend, RateLimiter limiter) {
+        this.route = route;
+        this.algorithm = requestLimit.algorithm();
+        this.maxCount = requestLimit.maxCount();
+        this.second = requestLimit.second();
+        this.hybrid = requestLimit.hybrid();
+        this.maxError = requestLimit.maxError();
+        this.backend = backend;
+        this.keyPrefix = backend.keyPrefix(requestLimit.algorithm());
+        this.limiter = limiter;
+        this.global = requestLimit.global();
+        this.globalKey = global ? LimitKeys.globalKey(keyPrefix, route) : null;
+        this.shards = requestLimit.shards();
+        if (shards > 1) {
+            this.shardKeys = LimitKeys.shardKeys(keyPrefix, route, shards);
+            this.shardPolicies = new LimitPolicy[shards];
+            for (int i = 0; i < shards; i++) {
+                // 不能整除时余数分给前面的分片
+                shardPolicies[i] = new LimitPolicy(this, maxCount / shards + (i < maxCount % shards ? 1 : 0));
+            }
+        } else {
+            this.shardKeys = null;
+            this.shardPolicies = null;
+        }
+    }
+
+    /**
+     * 一个分片的策略，只有额度与接口的策略不同
+     */
+    private LimitPolicy(LimitPolicy parent, int maxCount) {
+        this.route = parent.route;
+        this.algorithm = parent.algorithm;
+        this.maxCount = maxCount;
+        this.second = parent.second;
+        this.hybrid = parent.hybrid;
+        this.maxError = parent.maxError;
+        this.backend = parent.backend;
+        this.keyPrefix = parent.keyPrefix;
+        this.limiter = parent.limiter;
+        this.global = true;
+        this.globalKey = parent.globalKey;
+        this.shards = 1;
+        this.shardKeys = null;
+        this.shardPolicies = null;
+    }
+
+    private LimitPolicy() {
+        this.route = null;
+        this.algorithm = null;
+        this.maxCount = 0;
+        this.second = 0;
+        this.hybrid = false;
+        this.maxError = 0;
+        this.backend = null;
+        this.keyPrefix = null;
+        this.limiter = null;
+        this.global = false;
+        this.globalKey = null;
+        this.shards = 1;
+        this.shardKeys = null;
+        this.shardPolicies = null;
+    }
+
+    public boolean isLimited() {
+        return this != NONE;
+    }
+
+    /**
+     * 请求对应的限流key，global时与客户端无关
+     *
+     * @param path   请求路径
+     * @param client ip地址或会话id
+     * @return 限流key，分片时为接口维度的逻辑key，只用于日志
+     */
+    public String limitKey(String path, String client) {
+        return global ? globalKey : LimitKeys.clientKey(keyPrefix, path, client);
+    }
+
+    /**
+     * 尝试获取一次请求许可，分片时随机选择一个分片，受限时再尝试另一个分片
+     *
+     * @param key 限流key，分片时忽略
+     * @return 限流结果，分片时剩余次数按分片数放大估算
+     */
+    public LimitResult tryAcquire(String key) {
+        if (shards == 1) {
+            return limiter.tryAcquire(key, this);
+        }
+        int first = nextShard(-1);
+        LimitResult result = limiter.tryAcquire(shardKeys[first], shardPolicies[first]);
+        if (!result.isAllowed()) {
+            int second = nextShard(first);
+            result = limiter.tryAcquire(shardKeys[second], shardPolicies[second]);
+        }
+        return estimate(result);
+    }
+
+    /**
+     * 随机选择一个分片
+     *
+     * @param exclude 需要排除的分片，-1为不排除
+     * @return 分片下标
+     */
+    public int nextShard(int exclude) {
+        if (exclude < 0) {
+            return ThreadLocalRandom.current().nextInt(shards);
+        }
+        return (exclude + 1 + ThreadLocalRandom.current().nextInt(shards - 1)) % shards;
+    }
+
+    public String shardKey(int shard) {
+        return shardKeys[shard];
+    }
+
+    public LimitPolicy shardPolicy(int shard) {
+        return shardPolicies[shard];
+    }
+
+    /**
+     * 由一个分片的结果估算整个接口的剩余次数
+     *
+     * @param shardResult 分片的限流结果
+     * @return 限流结果
+     */
+    public LimitResult estimate(LimitResult shardResult) {
+        return new LimitResult(shardResult.isAllowed(), shardResult.getRemaining() * shards, shardResult.getTtlMillis());
+    }
+}
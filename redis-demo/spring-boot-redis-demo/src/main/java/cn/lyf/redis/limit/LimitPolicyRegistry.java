@@ -0,0 +1,114 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.anno.RequestLimit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname LimitPolicyRegistry
+ * @description 每个接口方法生效的限流策略注册表。
+ * 启动完成后一次性解析所有HandlerMethod上的@RequestLimit，请求时只做一次map查找，不再反射读取注解
+ * @since 2023/4/25 10:30
+ */
+@Slf4j
+@Component
+public class LimitPolicyRegistry implements ApplicationListener<ContextRefreshedEvent> {
+    private final List<RateLimiter> limiters;
+
+    /**
+     * @RequestLimit未指定backend时使用的实现方式
+     */
+    private final LimitBackend defaultBackend;
+
+    /**
+     * 访问redis的限流器的延迟预算和降级，为null时不包装
+     */
+    private final LimitFallback fallback;
+
+    private final ConcurrentMap<Method, LimitPolicy> policies = new ConcurrentHashMap<>();
+
+    public LimitPolicyRegistry(List<RateLimiter> limiters) {
+        this(limiters, LimitBackend.REDIS);
+    }
+
+    public LimitPolicyRegistry(List<RateLimiter> limiters, LimitBackend defaultBackend) {
+        this(limiters, defaultBackend, null);
+    }
+
+    @Autowired
+    public LimitPolicyRegistry(List<RateLimiter> limiters, @Value("${demo.limit.backend:redis}") LimitBackend defaultBackend,
+                               LimitFallback fallback) {
+        if (defaultBackend == LimitBackend.DEFAULT) {
+            throw new IllegalArgumentException("demo.limit.backend不能为default");
+        }
+        this.limiters = limiters;
+        this.defaultBackend = defaultBackend;
+        this.fallback = fallback != null && fallback.isEnabled() ? fallback : null;
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        for (RequestMappingHandlerMapping handlerMapping
+                : event.getApplicationContext().getBeansOfType(RequestMappingHandlerMapping.class).values()) {
+            for (HandlerMethod handlerMethod : handlerMapping.getHandlerMethods().values()) {
+                getPolicy(handlerMethod);
+            }
+        }
+        log.info("限流策略解析完成, 共{}个接口", policies.size());
+    }
+
+    /**
+     * 获取接口生效的限流策略，启动时未解析到的接口在第一次请求时解析
+     *
+     * @param handlerMethod handlerMethod
+     * @return 没有声明@RequestLimit时返回LimitPolicy.NONE
+     */
+    public LimitPolicy getPolicy(HandlerMethod handlerMethod) {
+        Method method = handlerMethod.getMethod();
+        LimitPolicy policy = policies.get(method);
+        if (policy == null) {
+            policy = policies.computeIfAbsent(method, this::resolve);
+        }
+        return policy;
+    }
+
+    private LimitPolicy resolve(Method method) {
+        // 方法上的注解优先，其次是类上的注解
+        RequestLimit requestLimit = method.getAnnotation(RequestLimit.class);
+        if (requestLimit == null) {
+            requestLimit = method.getDeclaringClass().getAnnotation(RequestLimit.class);
+        }
+        if (requestLimit == null) {
+            return LimitPolicy.NONE;
+        }
+
+        if (requestLimit.shards() < 1 || requestLimit.shards() > 1
+                && (!requestLimit.global() || requestLimit.maxCount() < requestLimit.shards())) {
+            throw new IllegalStateException("shards大于1时需要global = true, 并且maxCount不小于shards: " + method);
+        }
+        LimitBackend backend = requestLimit.backend() == LimitBackend.DEFAULT ? defaultBackend : requestLimit.backend();
+        for (RateLimiter limiter : limiters) {
+            if (limiter.backend() == backend && limiter.supports(requestLimit)) {
+                // 本地限流不访问redis，不需要降级；自行处理降级的限流器(如两级限流只在续约时访问redis)不包装
+                RateLimiter effective = fallback != null && backend != LimitBackend.LOCAL && !limiter.managesFallback()
+                        ? new FallbackRateLimiter(limiter, fallback) : limiter;
+                return new LimitPolicy(requestLimit, method.getDeclaringClass().getSimpleName() + "." + method.getName(),
+                        backend, effective);
+            }
+        }
+        throw new IllegalStateException("没有可以处理的限流器: " + method + ", " + requestLimit);
+    }
+}
@@ -0,0 +1,32 @@
+package cn.lyf.redis.limit;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname LimitResult
+ * @description 一次限流判断的结果
+ * @since 2023/4/20 10:12
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class LimitResult {
+    /**
+     * 是否放行
+     */
+    private final boolean allowed;
+
+    /**
+     * 当前窗口内剩余的可请求次数
+     */
+    private final long remaining;
+
+    /**
+     * 当前窗口剩余的时间(毫秒)
+     */
+    private final long ttlMillis;
+}
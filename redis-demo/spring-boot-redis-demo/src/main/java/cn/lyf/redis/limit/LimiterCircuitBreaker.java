@@ -0,0 +1,93 @@
+package cn.lyf.redis.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname LimiterCircuitBreaker
+ * @description 限流访问redis的熔断器。关闭时正常访问，连续failureThreshold次超时或出错后打开；
+ * 打开openDuration后进入半开，只放行一个探测请求，成功则关闭，失败则重新打开。
+ * 成功的请求只读一次状态并清零计数，不加锁
+ * @since 2023/5/26 10:10
+ */
+public class LimiterCircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile long openedAt;
+
+    public LimiterCircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold需要大于0: " + failureThreshold);
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = unit.toNanos(openDuration);
+    }
+
+    /**
+     * 是否可以访问redis，打开的时间到了之后只有一个调用者拿到探测的机会
+     *
+     * @return false: 直接降级
+     */
+    public boolean tryPass() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        return current == State.OPEN && System.nanoTime() - openedAt >= openNanos
+                && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+    }
+
+    /**
+     * 关闭并且没有连续失败，此时可以直接在请求线程访问redis
+     *
+     * @return true: 健康
+     */
+    public boolean isHealthy() {
+        return state.get() == State.CLOSED && failures.get() == 0;
+    }
+
+    /**
+     * 访问redis成功
+     */
+    public void onSuccess() {
+        if (failures.get() != 0) {
+            failures.set(0);
+        }
+        if (state.get() != State.CLOSED) {
+            state.set(State.CLOSED);
+        }
+    }
+
+    /**
+     * 访问redis超时或出错
+     */
+    public void onFailure() {
+        if (state.get() == State.HALF_OPEN) {
+            open(State.HALF_OPEN);
+        } else if (failures.incrementAndGet() >= failureThreshold) {
+            open(State.CLOSED);
+        }
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    private void open(State expected) {
+        // 先写时间再切换状态，tryPass看到OPEN时不会读到上一次打开的时间
+        openedAt = System.nanoTime();
+        if (state.compareAndSet(expected, State.OPEN)) {
+            failures.set(0);
+        }
+    }
+}
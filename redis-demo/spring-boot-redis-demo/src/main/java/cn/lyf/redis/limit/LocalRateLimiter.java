@@ -0,0 +1,152 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.anno.RequestLimit;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname LocalRateLimiter
+ * @description 进程内限流，不访问redis，每个节点各自按maxCount计算额度。
+ * 固定窗口为计数器；滑动窗口用上一个窗口的计数按剩余比例加权估算(不保存请求日志)；令牌桶为GCRA。
+ * 每个key的状态在两个窗口内没有访问后过期
+ * @since 2023/5/17 10:30
+ */
+@Component
+public class LocalRateLimiter implements RateLimiter {
+    /**
+     * 本地最多保留的key数量
+     */
+    private static final int MAX_LOCAL_KEYS = 100_000;
+
+    private final Cache<String, State> states = Caffeine.newBuilder()
+            .maximumSize(MAX_LOCAL_KEYS)
+            .expireAfter(new Expiry<String, State>() {
+                @Override
+                public long expireAfterCreate(String key, State state, long currentTime) {
+                    return state.idleNanos;
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, State state, long currentTime, long currentDuration) {
+                    return state.idleNanos;
+                }
+
+                @Override
+                public long expireAfterRead(String key, State state, long currentTime, long currentDuration) {
+                    return state.idleNanos;
+                }
+            })
+            .build();
+
+    @Override
+    public LimitBackend backend() {
+        return LimitBackend.LOCAL;
+    }
+
+    @Override
+    public boolean supports(RequestLimit requestLimit) {
+        return true;
+    }
+
+    @Override
+    public LimitResult tryAcquire(String key, LimitPolicy policy) {
+        return tryAcquire(key, policy.getAlgorithm(), policy.getMaxCount(), policy.getSecond());
+    }
+
+    /**
+     * 尝试获取一次请求许可
+     *
+     * @param key       限流key
+     * @param algorithm 限流算法
+     * @param maxCount  在second秒内最多允许的请求次数
+     * @param second    窗口时长(秒)
+     * @return 限流结果
+     */
+    public LimitResult tryAcquire(String key, LimitAlgorithm algorithm, int maxCount, int second) {
+        long windowMillis = second * 1000L;
+        State state = states.get(key, k -> new State(windowMillis));
+        long now = System.currentTimeMillis();
+        synchronized (state) {
+            switch (algorithm) {
+                case SLIDING_WINDOW:
+                    return state.slidingWindow(now, maxCount, windowMillis);
+                case TOKEN_BUCKET:
+                    return state.tokenBucket(now, maxCount, windowMillis);
+                default:
+                    return state.fixedWindow(now, maxCount, windowMillis);
+            }
+        }
+    }
+
+    private static final class State {
+        private final long idleNanos;
+
+        /**
+         * 当前窗口的开始时间和计数，固定窗口和滑动窗口使用
+         */
+        private long windowStart;
+        private long count;
+        private long previousCount;
+
+        /**
+         * 令牌桶的理论到达时间(TAT)
+         */
+        private long tat;
+
+        private State(long windowMillis) {
+            this.idleNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis * 2);
+        }
+
+        private LimitResult fixedWindow(long now, int maxCount, long windowMillis) {
+            roll(now, windowMillis);
+            long ttl = windowStart + windowMillis - now;
+            if (count >= maxCount) {
+                return new LimitResult(false, 0, ttl);
+            }
+            count++;
+            return new LimitResult(true, maxCount - count, ttl);
+        }
+
+        private LimitResult slidingWindow(long now, int maxCount, long windowMillis) {
+            roll(now, windowMillis);
+            long elapsed = now - windowStart;
+            // 上一个窗口中仍落在[now - window, now]内的部分按时间比例估算
+            double weight = (double) (windowMillis - elapsed) / windowMillis;
+            double estimated = previousCount * weight + count;
+            if (estimated + 1 > maxCount) {
+                // 估算值随上一个窗口权重下降而减小，这里返回上限：到当前窗口结束的时间
+                return new LimitResult(false, 0, windowMillis - elapsed);
+            }
+            count++;
+            return new LimitResult(true, (long) (maxCount - estimated - 1), 0);
+        }
+
+        private LimitResult tokenBucket(long now, int maxCount, long windowMillis) {
+            double interval = (double) windowMillis / maxCount;
+            long base = Math.max(tat, now);
+            long newTat = base + (long) Math.ceil(interval);
+            long allowAt = newTat - windowMillis;
+            if (allowAt > now) {
+                return new LimitResult(false, 0, allowAt - now);
+            }
+            tat = newTat;
+            return new LimitResult(true, (long) ((now - allowAt) / interval), 0);
+        }
+
+        private void roll(long now, long windowMillis) {
+            long start = now - now % windowMillis;
+            if (start != windowStart) {
+                // 中间隔了不止一个窗口时上一个窗口的计数为0
+                previousCount = start - windowStart == windowMillis ? count : 0;
+                windowStart = start;
+                count = 0;
+            }
+        }
+    }
+}
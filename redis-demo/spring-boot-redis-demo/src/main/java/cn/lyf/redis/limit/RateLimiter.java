@@ -0,0 +1,47 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.anno.RequestLimit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname RateLimiter
+ * @description 限流器，启动时由LimitPolicyRegistry为每个接口选定
+ * @since 2023/4/25 10:10
+ */
+public interface RateLimiter {
+    /**
+     * 限流的实现方式，LimitPolicyRegistry只在同一实现方式的限流器中选择
+     *
+     * @return backend
+     */
+    default LimitBackend backend() {
+        return LimitBackend.REDIS;
+    }
+
+    /**
+     * 是否自行把访问redis的部分交给LimitFallback，为true时LimitPolicyRegistry不再包装整个限流器
+     *
+     * @return true: 自行处理降级
+     */
+    default boolean managesFallback() {
+        return false;
+    }
+
+    /**
+     * 是否可以处理该注解声明的限流
+     *
+     * @param requestLimit 注解
+     * @return true: 可以处理
+     */
+    boolean supports(RequestLimit requestLimit);
+
+    /**
+     * 尝试获取一次请求许可
+     *
+     * @param key    限流key
+     * @param policy 限流策略
+     * @return 限流结果
+     */
+    LimitResult tryAcquire(String key, LimitPolicy policy);
+}
@@ -0,0 +1,101 @@
+package cn.lyf.redis.limit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static cn.lyf.redis.limit.RedisCounterLimiter.loadScript;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ReactiveRateLimiter
+ * @description 响应式限流器，与servlet下的限流器使用同一组lua脚本和key，语义相同，
+ * 通过ReactiveStringRedisTemplate(lettuce)执行，不会阻塞事件循环线程。
+ * hybrid的本地租约在这里不生效，按普通固定窗口计数处理。
+ * backend为local时直接在当前线程计算；为redisson时RRateLimiter是同步调用，切换到boundedElastic线程执行。
+ * 访问redis的脚本同样受LimitFallback的延迟预算和熔断控制
+ * @since 2023/5/16 10:00
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveRateLimiter {
+    private final Map<LimitAlgorithm, RedisScript<List>> scripts = new EnumMap<>(LimitAlgorithm.class);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    /**
+     * 为null时不设延迟预算
+     */
+    private final LimitFallback fallback;
+
+    public ReactiveRateLimiter(RedisConnectionFactory connectionFactory) {
+        this(connectionFactory, null);
+    }
+
+    @Autowired
+    public ReactiveRateLimiter(RedisConnectionFactory connectionFactory, LimitFallback fallback) {
+        if (!(connectionFactory instanceof ReactiveRedisConnectionFactory)) {
+            throw new IllegalStateException("响应式限流需要lettuce客户端, 请配置 spring.redis.client-type=lettuce");
+        }
+        this.redisTemplate = new ReactiveStringRedisTemplate((ReactiveRedisConnectionFactory) connectionFactory);
+        scripts.put(LimitAlgorithm.FIXED_WINDOW, loadScript("lua/request_limit.lua"));
+        scripts.put(LimitAlgorithm.SLIDING_WINDOW, loadScript("lua/sliding_window.lua"));
+        scripts.put(LimitAlgorithm.TOKEN_BUCKET, loadScript("lua/token_bucket.lua"));
+        this.fallback = fallback;
+    }
+
+    /**
+     * 尝试获取一次请求许可
+     *
+     * @param key    限流key
+     * @param policy 限流策略
+     * @return 限流结果
+     */
+    public Mono<LimitResult> tryAcquire(String key, LimitPolicy policy) {
+        if (policy.getBackend() == LimitBackend.LOCAL) {
+            return Mono.fromSupplier(() -> policy.tryAcquire(key));
+        }
+        if (policy.getBackend() == LimitBackend.REDISSON) {
+            return Mono.fromCallable(() -> policy.tryAcquire(key)).subscribeOn(Schedulers.boundedElastic());
+        }
+        if (policy.getShards() > 1) {
+            // 与LimitPolicy.tryAcquire一致，随机的分片受限时再尝试另一个分片
+            int first = policy.nextShard(-1);
+            return execute(policy.shardKey(first), policy.shardPolicy(first))
+                    .flatMap(result -> {
+                        if (result.isAllowed()) {
+                            return Mono.just(result);
+                        }
+                        int second = policy.nextShard(first);
+                        return execute(policy.shardKey(second), policy.shardPolicy(second));
+                    })
+                    .map(policy::estimate);
+        }
+        return execute(key, policy);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mono<LimitResult> execute(String key, LimitPolicy policy) {
+        List<String> args = Arrays.asList(String.valueOf(policy.getMaxCount()), String.valueOf(policy.getSecond() * 1000L));
+        Mono<LimitResult> call = redisTemplate.execute(scripts.get(policy.getAlgorithm()), Collections.singletonList(key), args)
+                .next()
+                .map(reply -> {
+                    List<Long> values = (List<Long>) reply;
+                    return new LimitResult(values.get(0) == 1L, values.get(1), values.get(2));
+                });
+        return fallback != null ? fallback.tryAcquire(key, policy, call) : call;
+    }
+}
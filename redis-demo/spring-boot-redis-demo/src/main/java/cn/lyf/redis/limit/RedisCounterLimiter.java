@@ -0,0 +1,94 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.anno.RequestLimit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname RedisCounterLimiter
+ * @description 基于lua脚本的固定窗口计数限流，一次网络往返完成检查和自增
+ * @since 2023/4/20 10:20
+ */
+@Slf4j
+@Component
+public class RedisCounterLimiter implements RateLimiter, InitializingBean {
+    private static final RedisScript<List> REQUEST_LIMIT_SCRIPT = loadScript("lua/request_limit.lua");
+
+    private final RedisTemplate<String, Serializable> redisTemplate;
+
+    public RedisCounterLimiter(@Qualifier(value = "limitRedisTemplate") RedisTemplate<String, Serializable> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * 启动时预加载脚本，之后每次请求只需要通过sha执行(EVALSHA)。
+     * 预加载失败(例如集群模式或redis暂不可用)并不影响使用，执行时会自动回退到EVAL并缓存脚本
+     */
+    @Override
+    public void afterPropertiesSet() {
+        try {
+            String sha1 = redisTemplate.execute((RedisCallback<String>) connection -> scriptLoad(connection, REQUEST_LIMIT_SCRIPT));
+            log.info("限流脚本预加载完成: {}", sha1);
+        } catch (Exception e) {
+            log.warn("限流脚本预加载失败, 将在首次执行时加载: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean supports(RequestLimit requestLimit) {
+        return requestLimit.algorithm() == LimitAlgorithm.FIXED_WINDOW && !requestLimit.hybrid();
+    }
+
+    @Override
+    public LimitResult tryAcquire(String key, LimitPolicy policy) {
+        return tryAcquire(key, policy.getMaxCount(), policy.getSecond());
+    }
+
+    /**
+     * 尝试获取一次请求许可
+     *
+     * @param key      限流key
+     * @param maxCount 在second秒内最多允许的请求次数
+     * @param second   窗口时长(秒)
+     * @return 限流结果
+     */
+    public LimitResult tryAcquire(String key, int maxCount, int second) {
+        List<Long> reply = execute(REQUEST_LIMIT_SCRIPT, key, String.valueOf(maxCount), String.valueOf(second * 1000L));
+        return new LimitResult(reply.get(0) == 1L, reply.get(1), reply.get(2));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private List<Long> execute(RedisScript<List> script, String key, String... args) {
+        // 参数按字符串传给脚本，不经过json序列化
+        return redisTemplate.execute(script, RedisSerializer.string(), (RedisSerializer) RedisSerializer.string(),
+                Collections.singletonList(key), (Object[]) args);
+    }
+
+    static String scriptLoad(RedisConnection connection, RedisScript<?> script) {
+        return connection.scriptingCommands().scriptLoad(script.getScriptAsString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static RedisScript<List> loadScript(String path) {
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource(path)));
+        script.setResultType(List.class);
+        return script;
+    }
+}
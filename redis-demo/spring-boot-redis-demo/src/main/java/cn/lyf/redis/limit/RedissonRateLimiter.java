@@ -0,0 +1,141 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.anno.RequestLimit;
+import cn.lyf.redis.config.LimitFallbackProperties;
+import org.redisson.api.RFuture;
+import org.redisson.api.RRateLimiter;
+import org.redisson.api.RateIntervalUnit;
+import org.redisson.api.RateType;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisException;
+import org.redisson.client.RedisTimeoutException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname RedissonRateLimiter
+ * @description 基于Redisson RRateLimiter的限流，所有节点共享额度，RRateLimiter按滑动窗口计算，
+ * 因此三种算法都按"任意second秒内最多maxCount次"处理。
+ * RBatch不支持RRateLimiter，放行时需要再查询一次剩余许可，共两次网络往返；
+ * 限流器的配置和过期时间在本地记录，快过期时才重新设置。
+ * 启用 demo.limit.fallback 时通过异步接口等待，一次判断的所有往返合计不超过budget，超时抛出RedisTimeoutException
+ * @since 2023/5/17 10:00
+ */
+@Component
+public class RedissonRateLimiter implements RateLimiter {
+    /**
+     * 本地最多记录的key数量，超过后清理已过期的记录
+     */
+    private static final int MAX_LOCAL_KEYS = 100_000;
+
+    /**
+     * redis中限流器数据的最短存活时间
+     */
+    private static final long MIN_TTL_MILLIS = 60_000;
+
+    private final RedissonClient redissonClient;
+
+    /**
+     * key -> 本地记录的redis数据过期时间
+     */
+    private final ConcurrentMap<String, Long> expireAt = new ConcurrentHashMap<>();
+
+    /**
+     * 一次判断等待redis的最长时间，为null时按Redisson的timeout等待
+     */
+    private final Duration timeout;
+
+    public RedissonRateLimiter(RedissonClient redissonClient) {
+        this(redissonClient, (Duration) null);
+    }
+
+    @Autowired
+    public RedissonRateLimiter(RedissonClient redissonClient, LimitFallbackProperties fallbackProperties) {
+        this(redissonClient, fallbackProperties.isEnabled() ? fallbackProperties.getBudget() : null);
+    }
+
+    RedissonRateLimiter(RedissonClient redissonClient, Duration timeout) {
+        this.redissonClient = redissonClient;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public LimitBackend backend() {
+        return LimitBackend.REDISSON;
+    }
+
+    @Override
+    public boolean supports(RequestLimit requestLimit) {
+        return true;
+    }
+
+    @Override
+    public LimitResult tryAcquire(String key, LimitPolicy policy) {
+        return tryAcquire(key, policy.getMaxCount(), policy.getSecond());
+    }
+
+    /**
+     * 尝试获取一次请求许可
+     *
+     * @param key      限流key
+     * @param maxCount 任意second秒内最多允许的请求次数
+     * @param second   窗口时长(秒)
+     * @return 限流结果，RRateLimiter不返回等待时间，受限时ttlMillis为窗口时长
+     */
+    public LimitResult tryAcquire(String key, int maxCount, int second) {
+        long windowMillis = second * 1000L;
+        long now = System.currentTimeMillis();
+        long deadline = timeout != null ? System.nanoTime() + timeout.toNanos() : 0;
+        RRateLimiter rateLimiter = redissonClient.getRateLimiter(key);
+
+        Long localExpireAt = expireAt.get(key);
+        long ttl = Math.max(MIN_TTL_MILLIS, windowMillis * 2);
+        // 剩余存活时间不到一半时重新设置，trySetRate在限流器已存在时不会修改配置
+        if (localExpireAt == null || localExpireAt - now < ttl / 2) {
+            await(rateLimiter.trySetRateAsync(RateType.OVERALL, maxCount, second, RateIntervalUnit.SECONDS), deadline);
+            rateLimiter.expireAsync(Duration.ofMillis(ttl));
+            expireAt.put(key, now + ttl);
+            if (expireAt.size() > MAX_LOCAL_KEYS) {
+                expireAt.values().removeIf(t -> t <= now);
+            }
+        }
+
+        if (!await(rateLimiter.tryAcquireAsync(), deadline)) {
+            return new LimitResult(false, 0, windowMillis);
+        }
+        return new LimitResult(true, await(rateLimiter.availablePermitsAsync(), deadline), 0);
+    }
+
+    private <T> T await(RFuture<T> future, long deadline) {
+        return await(future, timeout, deadline);
+    }
+
+    /**
+     * 最多等到deadline(System.nanoTime())，redis的结果由Redisson的netty线程完成，等待不占用额外的线程
+     *
+     * @param timeout 为null时一直等待，由Redisson的timeout兜底
+     */
+    static <T> T await(RFuture<T> future, Duration timeout, long deadline) {
+        try {
+            return timeout == null ? future.toCompletableFuture().get()
+                    : future.toCompletableFuture().get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new RedisTimeoutException("限流访问redis超过" + timeout.toMillis() + "ms");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                    : new RedisException("限流访问redis出错", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisException("限流等待redis时被中断", e);
+        }
+    }
+}
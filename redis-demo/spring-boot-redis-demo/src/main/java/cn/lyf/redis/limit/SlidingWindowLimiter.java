@@ -0,0 +1,72 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.anno.RequestLimit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+import static cn.lyf.redis.limit.RedisCounterLimiter.loadScript;
+import static cn.lyf.redis.limit.RedisCounterLimiter.scriptLoad;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname SlidingWindowLimiter
+ * @description 基于zset的滑动窗口日志限流，过期记录在服务端清理，每个key最多保存maxCount条记录
+ * @since 2023/4/23 10:20
+ */
+@Slf4j
+@Component
+public class SlidingWindowLimiter implements RateLimiter, InitializingBean {
+    private static final RedisScript<List> SLIDING_WINDOW_SCRIPT = loadScript("lua/sliding_window.lua");
+
+    private final RedisTemplate<String, Serializable> redisTemplate;
+
+    public SlidingWindowLimiter(@Qualifier(value = "limitRedisTemplate") RedisTemplate<String, Serializable> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        try {
+            redisTemplate.execute((RedisCallback<String>) connection -> scriptLoad(connection, SLIDING_WINDOW_SCRIPT));
+        } catch (Exception e) {
+            log.warn("滑动窗口限流脚本预加载失败, 将在首次执行时加载: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean supports(RequestLimit requestLimit) {
+        return requestLimit.algorithm() == LimitAlgorithm.SLIDING_WINDOW;
+    }
+
+    @Override
+    public LimitResult tryAcquire(String key, LimitPolicy policy) {
+        return tryAcquire(key, policy.getMaxCount(), policy.getSecond());
+    }
+
+    /**
+     * 尝试获取一次请求许可
+     *
+     * @param key      限流key
+     * @param maxCount 任意second秒内最多允许的请求次数
+     * @param second   窗口时长(秒)
+     * @return 限流结果，受限时ttlMillis为需要等待的时间
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public LimitResult tryAcquire(String key, int maxCount, int second) {
+        List<Long> reply = redisTemplate.execute(SLIDING_WINDOW_SCRIPT, RedisSerializer.string(),
+                (RedisSerializer) RedisSerializer.string(), Collections.singletonList(key),
+                String.valueOf(maxCount), String.valueOf(second * 1000L));
+        return new LimitResult(reply.get(0) == 1L, reply.get(1), reply.get(2));
+    }
+}
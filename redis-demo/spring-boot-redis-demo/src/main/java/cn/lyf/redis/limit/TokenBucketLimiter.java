@@ -0,0 +1,73 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.anno.RequestLimit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+import static cn.lyf.redis.limit.RedisCounterLimiter.loadScript;
+import static cn.lyf.redis.limit.RedisCounterLimiter.scriptLoad;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname TokenBucketLimiter
+ * @description 基于GCRA的令牌桶限流，每个桶在redis中只占用一个保存时间戳的字符串，
+ * 令牌在请求到达时惰性计算，不依赖定时任务补充，因此与节点数量无关
+ * @since 2023/4/24 09:50
+ */
+@Slf4j
+@Component
+public class TokenBucketLimiter implements RateLimiter, InitializingBean {
+    private static final RedisScript<List> TOKEN_BUCKET_SCRIPT = loadScript("lua/token_bucket.lua");
+
+    private final RedisTemplate<String, Serializable> redisTemplate;
+
+    public TokenBucketLimiter(@Qualifier(value = "limitRedisTemplate") RedisTemplate<String, Serializable> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        try {
+            redisTemplate.execute((RedisCallback<String>) connection -> scriptLoad(connection, TOKEN_BUCKET_SCRIPT));
+        } catch (Exception e) {
+            log.warn("令牌桶限流脚本预加载失败, 将在首次执行时加载: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean supports(RequestLimit requestLimit) {
+        return requestLimit.algorithm() == LimitAlgorithm.TOKEN_BUCKET;
+    }
+
+    @Override
+    public LimitResult tryAcquire(String key, LimitPolicy policy) {
+        return tryAcquire(key, policy.getMaxCount(), policy.getSecond());
+    }
+
+    /**
+     * 尝试从桶中取出一个令牌
+     *
+     * @param key      限流key
+     * @param capacity 桶容量，同时也是每second秒生成的令牌数
+     * @param second   生成capacity个令牌需要的时间(秒)
+     * @return 限流结果，受限时ttlMillis为下一个令牌生成需要等待的时间
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public LimitResult tryAcquire(String key, int capacity, int second) {
+        List<Long> reply = redisTemplate.execute(TOKEN_BUCKET_SCRIPT, RedisSerializer.string(),
+                (RedisSerializer) RedisSerializer.string(), Collections.singletonList(key),
+                String.valueOf(capacity), String.valueOf(second * 1000L));
+        return new LimitResult(reply.get(0) == 1L, reply.get(1), reply.get(2));
+    }
+}
@@ -0,0 +1,24 @@
+package cn.lyf.redis.metrics;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisTemplate;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname InstrumentedRedisTemplate
+ * @description 按命令记录耗时和错误次数的RedisTemplate，每次执行时包装取到的连接
+ * @since 2023/5/23 11:00
+ */
+public class InstrumentedRedisTemplate<K, V> extends RedisTemplate<K, V> {
+    private final RedisCommandMetrics commandMetrics;
+
+    public InstrumentedRedisTemplate(RedisCommandMetrics commandMetrics) {
+        this.commandMetrics = commandMetrics;
+    }
+
+    @Override
+    protected RedisConnection preProcessConnection(RedisConnection connection, boolean existingConnection) {
+        return commandMetrics.instrument(super.preProcessConnection(connection, existingConnection));
+    }
+}
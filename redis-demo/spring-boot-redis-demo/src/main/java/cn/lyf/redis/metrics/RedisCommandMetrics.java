@@ -0,0 +1,179 @@
+package cn.lyf.redis.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname RedisCommandMetrics
+ * @description 按命令统计redis连接上的调用耗时和错误次数。
+ * 指标: redis.commands(耗时, tag: template、command)、redis.command.errors(tag: template、command、exception)。
+ * 通过动态代理包装RedisConnection，xxxCommands()返回的命令接口同样被包装；
+ * 代理类的构造器按被包装的类缓存，每次执行只创建一个代理实例，同一个连接上的命令接口只包装一次。
+ * 管道中的命令只是入队，耗时记在closePipeline上
+ * @since 2023/5/23 10:30
+ */
+public class RedisCommandMetrics {
+    /**
+     * 不是redis命令的连接方法，不计时
+     */
+    private static final Set<String> IGNORED = new HashSet<>(Arrays.asList("close", "isClosed", "getNativeConnection",
+            "isQueueing", "isPipelined", "openPipeline", "getSentinelConnection", "isSubscribed", "getSubscription"));
+
+    private final MeterRegistry meterRegistry;
+
+    private final String template;
+
+    private final ConcurrentMap<Method, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * 被包装的类 -> 实现它所有接口的代理类的构造器，避免每次包装时查找接口和代理类
+     */
+    private final ConcurrentMap<Class<?>, Constructor<?>> proxyConstructors = new ConcurrentHashMap<>();
+
+    public RedisCommandMetrics(MeterRegistry meterRegistry, String template) {
+        this.meterRegistry = meterRegistry;
+        this.template = template;
+    }
+
+    /**
+     * 包装连接，保留原连接实现的所有接口(如RedisClusterConnection)
+     *
+     * @param connection 连接
+     * @return 记录指标的连接
+     */
+    public RedisConnection instrument(RedisConnection connection) {
+        return (RedisConnection) wrap(connection);
+    }
+
+    private Object wrap(Object target) {
+        Constructor<?> constructor = proxyConstructors.get(target.getClass());
+        if (constructor == null) {
+            constructor = proxyConstructors.computeIfAbsent(target.getClass(), this::proxyConstructor);
+        }
+        try {
+            return constructor.newInstance(new Handler(target));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("创建redis连接代理失败: " + target.getClass().getName(), e);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private Constructor<?> proxyConstructor(Class<?> type) {
+        ClassLoader classLoader = getClass().getClassLoader();
+        Class<?>[] interfaces = ClassUtils.getAllInterfacesForClass(type, classLoader);
+        try {
+            return Proxy.getProxyClass(classLoader, interfaces).getConstructor(InvocationHandler.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Timer timer(Method method) {
+        Timer timer = timers.get(method);
+        if (timer == null) {
+            timer = timers.computeIfAbsent(method, m -> Timer.builder("redis.commands")
+                    .description("redis命令的耗时")
+                    .tag("template", template)
+                    .tag("command", command(m))
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+        return timer;
+    }
+
+    private static String command(Method method) {
+        return method.getName().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isCommandsInterface(Class<?> type) {
+        return type.isInterface() && type.getSimpleName().endsWith("Commands")
+                && type.getName().startsWith("org.springframework.data.redis.connection.");
+    }
+
+    private final class Handler implements InvocationHandler {
+        private final Object target;
+
+        /**
+         * xxxCommands() -> 包装后的命令接口，连接不会被多个线程同时使用
+         */
+        private Map<Method, Object> commands;
+
+        private Handler(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class || IGNORED.contains(method.getName())) {
+                return invokeTarget(method, args);
+            }
+            if (isCommandsInterface(method.getReturnType())) {
+                return commands(method, args);
+            }
+
+            long start = System.nanoTime();
+            try {
+                Object result = invokeTarget(method, args);
+                timer(method).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return result;
+            } catch (Throwable e) {
+                timer(method).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                Counter.builder("redis.command.errors")
+                        .tag("template", template)
+                        .tag("command", command(method))
+                        .tag("exception", e.getClass().getSimpleName())
+                        .register(meterRegistry)
+                        .increment();
+                throw e;
+            }
+        }
+
+        private Object commands(Method method, Object[] args) throws Throwable {
+            if (args != null && args.length > 0) {
+                Object result = invokeTarget(method, args);
+                return result == null ? null : wrap(result);
+            }
+            if (commands == null) {
+                commands = new HashMap<>();
+            }
+            Object wrapped = commands.get(method);
+            if (wrapped == null) {
+                Object result = invokeTarget(method, null);
+                if (result == null) {
+                    return null;
+                }
+                wrapped = wrap(result);
+                commands.put(method, wrapped);
+            }
+            return wrapped;
+        }
+
+        private Object invokeTarget(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
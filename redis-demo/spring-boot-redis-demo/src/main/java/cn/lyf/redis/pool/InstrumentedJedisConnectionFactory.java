@@ -0,0 +1,47 @@
+package cn.lyf.redis.pool;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname InstrumentedJedisConnectionFactory
+ * @description 记录从连接池借出连接耗时的JedisConnectionFactory，单机模式getConnection即从JedisPool借出连接，
+ * 集群模式每条命令才按slot借出连接，这里只能统计到创建集群连接的耗时
+ * @since 2023/5/15 10:00
+ */
+public class InstrumentedJedisConnectionFactory extends JedisConnectionFactory {
+    private final Timer borrowTimer;
+
+    public InstrumentedJedisConnectionFactory(RedisStandaloneConfiguration standaloneConfig,
+                                              JedisClientConfiguration clientConfig, Timer borrowTimer) {
+        super(standaloneConfig, clientConfig);
+        this.borrowTimer = borrowTimer;
+    }
+
+    public InstrumentedJedisConnectionFactory(RedisClusterConfiguration clusterConfig,
+                                              JedisClientConfiguration clientConfig, Timer borrowTimer) {
+        super(clusterConfig, clientConfig);
+        this.borrowTimer = borrowTimer;
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        if (borrowTimer == null) {
+            return super.getConnection();
+        }
+        long start = System.nanoTime();
+        try {
+            return super.getConnection();
+        } finally {
+            borrowTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package cn.lyf.redis.pool;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname InstrumentedLettuceConnectionFactory
+ * @description 记录获取连接耗时的LettuceConnectionFactory。普通命令共用一个多路复用的连接，获取几乎不耗时；
+ * 配置了连接池时，阻塞命令和事务才从池中借出独占的连接
+ * @since 2023/5/15 10:00
+ */
+public class InstrumentedLettuceConnectionFactory extends LettuceConnectionFactory {
+    private final Timer borrowTimer;
+
+    public InstrumentedLettuceConnectionFactory(RedisStandaloneConfiguration standaloneConfig,
+                                                LettuceClientConfiguration clientConfig, Timer borrowTimer) {
+        super(standaloneConfig, clientConfig);
+        this.borrowTimer = borrowTimer;
+    }
+
+    public InstrumentedLettuceConnectionFactory(RedisClusterConfiguration clusterConfig,
+                                                LettuceClientConfiguration clientConfig, Timer borrowTimer) {
+        super(clusterConfig, clientConfig);
+        this.borrowTimer = borrowTimer;
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        if (borrowTimer == null) {
+            return super.getConnection();
+        }
+        long start = System.nanoTime();
+        try {
+            return super.getConnection();
+        } finally {
+            borrowTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package cn.lyf.redis.serializer;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname CompactRedisSerializer
+ * @description 紧凑的二进制序列化：Smile编码，超过阈值时再用LZ4压缩。
+ * 第一个字节为格式标识，0x01: Smile，0x02: Smile + LZ4(后跟4字节原始长度)。
+ * json不会以这两个控制字符开头，其它内容都交给原来的json序列化器，因此已经写入redis的json数据仍然可以读取
+ * @since 2023/5/10 10:00
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+    static final byte SMILE = 0x01;
+    static final byte SMILE_LZ4 = 0x02;
+    private static final int LZ4_HEADER_LENGTH = 5;
+    private static final byte[] EMPTY_ARRAY = new byte[0];
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * 用于读取旧的json数据
+     */
+    private final RedisSerializer<Object> legacySerializer;
+
+    /**
+     * Smile编码后超过该字节数才压缩，小于等于0时不压缩
+     */
+    private final int compressThreshold;
+
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+    public CompactRedisSerializer(RedisSerializer<Object> legacySerializer, int compressThreshold) {
+        this.objectMapper = smileObjectMapper();
+        this.legacySerializer = legacySerializer;
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return EMPTY_ARRAY;
+        }
+        byte[] smile;
+        try {
+            smile = objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new SerializationException("Could not write Smile: " + e.getMessage(), e);
+        }
+
+        if (compressThreshold > 0 && smile.length > compressThreshold) {
+            int maxLength = compressor.maxCompressedLength(smile.length);
+            byte[] compressed = new byte[LZ4_HEADER_LENGTH + maxLength];
+            int length = compressor.compress(smile, 0, smile.length, compressed, LZ4_HEADER_LENGTH, maxLength);
+            // 压缩效果不明显时不压缩，读取时省去解压
+            if (length + LZ4_HEADER_LENGTH < smile.length) {
+                compressed[0] = SMILE_LZ4;
+                writeInt(compressed, 1, smile.length);
+                return Arrays.copyOf(compressed, LZ4_HEADER_LENGTH + length);
+            }
+        }
+
+        byte[] bytes = new byte[smile.length + 1];
+        bytes[0] = SMILE;
+        System.arraycopy(smile, 0, bytes, 1, smile.length);
+        return bytes;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            switch (bytes[0]) {
+                case SMILE:
+                    return objectMapper.readValue(bytes, 1, bytes.length - 1, Object.class);
+                case SMILE_LZ4:
+                    byte[] smile = decompressor.decompress(bytes, LZ4_HEADER_LENGTH, readInt(bytes, 1));
+                    return objectMapper.readValue(smile, Object.class);
+                default:
+                    return legacySerializer.deserialize(bytes);
+            }
+        } catch (IOException e) {
+            throw new SerializationException("Could not read Smile: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 与jsonRedisTemplate一致的配置，另外写入类型信息，读取时还原为原来的类型(如Result)
+     */
+    private static ObjectMapper smileObjectMapper() {
+        ObjectMapper objectMapper = new ObjectMapper(new SmileFactory());
+        objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.ANY);
+        objectMapper.activateDefaultTyping(LaissezFaireSubTypeValidator.instance,
+                ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+        objectMapper.registerModule(new Jdk8Module())
+                .registerModule(new JavaTimeModule())
+                .registerModule(new ParameterNamesModule());
+        return objectMapper;
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+}
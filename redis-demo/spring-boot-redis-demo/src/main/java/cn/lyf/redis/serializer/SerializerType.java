@@ -0,0 +1,25 @@
+package cn.lyf.redis.serializer;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname SerializerType
+ * @description redis值的序列化方式
+ * @since 2023/5/10 10:30
+ */
+public enum SerializerType {
+    /**
+     * GenericJackson2JsonRedisSerializer
+     */
+    JSON,
+
+    /**
+     * CompactRedisSerializer，Smile + LZ4
+     */
+    COMPACT,
+
+    /**
+     * JdkSerializationRedisSerializer
+     */
+    JDK
+}
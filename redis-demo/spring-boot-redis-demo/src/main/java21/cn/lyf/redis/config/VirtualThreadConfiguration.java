@@ -0,0 +1,64 @@
+package cn.lyf.redis.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.task.TaskSchedulerBuilder;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname VirtualThreadConfiguration
+ * @description 请求处理和@Scheduled任务使用虚拟线程，只在 -Pjava21 构建时编译，通过 demo.threads.virtual=true 开启
+ * (spring profile virtual)。tomcat的每个请求在一个新的虚拟线程中执行，阻塞在redis上时不占用平台线程，
+ * 同时处理的请求数由server.tomcat.max-connections限制，访问redis的并发由连接池限制。
+ * 两个线程池都不注册为bean，否则自动配置的applicationTaskExecutor会因为已有Executor而不再创建
+ * @since 2023/5/27 10:00
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "demo.threads", name = "virtual", havingValue = "true")
+public class VirtualThreadConfiguration implements SchedulingConfigurer, DisposableBean {
+    private final ExecutorService requestExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-virtual-", 0).factory());
+
+    private final ThreadPoolTaskScheduler taskScheduler;
+
+    /**
+     * 按spring.task.scheduling的配置创建，工作线程为虚拟线程
+     */
+    public VirtualThreadConfiguration(TaskSchedulerBuilder taskSchedulerBuilder) {
+        this.taskScheduler = taskSchedulerBuilder.build();
+        this.taskScheduler.setThreadFactory(Thread.ofVirtual().name(taskScheduler.getThreadNamePrefix(), 0).factory());
+        this.taskScheduler.initialize();
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        log.info("tomcat请求和@Scheduled任务使用虚拟线程");
+        return protocolHandler -> protocolHandler.setExecutor(requestExecutor);
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.setTaskScheduler(taskScheduler);
+    }
+
+    /**
+     * tomcat和ScheduledTaskRegistrar都不会关闭外部传入的线程池
+     */
+    @Override
+    public void destroy() {
+        taskScheduler.shutdown();
+        requestExecutor.shutdown();
+    }
+}
@@ -0,0 +1,7 @@
+-- 只释放自己持有的租约，避免租约过期后误删其它节点的租约
+-- KEYS[1]: 租约key
+-- ARGV[1]: 持有者标识
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
@@ -0,0 +1,26 @@
+-- 固定窗口计数限流，检查与自增在服务端一次完成
+-- KEYS[1]: 限流key
+-- ARGV[1]: 窗口内最大请求次数
+-- ARGV[2]: 窗口时长(毫秒)
+-- 返回: {是否放行(1/0), 剩余次数, 窗口剩余时间(毫秒)}
+local max = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+
+local current = redis.call('INCR', KEYS[1])
+local ttl
+if current == 1 then
+    redis.call('PEXPIRE', KEYS[1], window)
+    ttl = window
+else
+    ttl = redis.call('PTTL', KEYS[1])
+    if ttl < 0 then
+        -- 兼容旧版本写入的没有过期时间的key
+        redis.call('PEXPIRE', KEYS[1], window)
+        ttl = window
+    end
+end
+
+if current > max then
+    return {0, 0, ttl}
+end
+return {1, max - current, ttl}
@@ -0,0 +1,24 @@
+-- 两级限流：从固定窗口计数中一次性预占一批额度给本地使用
+-- KEYS[1]: 限流key(与request_limit.lua共用同一计数)
+-- ARGV[1]: 窗口内最大请求次数
+-- ARGV[2]: 窗口时长(毫秒)
+-- ARGV[3]: 本次希望预占的额度
+-- 返回: {实际预占到的额度, 窗口剩余时间(毫秒)}
+local max = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local lease = tonumber(ARGV[3])
+
+local used = tonumber(redis.call('GET', KEYS[1]) or '0')
+local grant = math.min(lease, max - used)
+if grant > 0 then
+    redis.call('INCRBY', KEYS[1], grant)
+else
+    grant = 0
+end
+
+local ttl = redis.call('PTTL', KEYS[1])
+if ttl < 0 then
+    redis.call('PEXPIRE', KEYS[1], window)
+    ttl = window
+end
+return {grant, ttl}
@@ -0,0 +1,25 @@
+-- 滑动窗口日志限流：清理过期记录、计数、记录本次请求在服务端一次完成
+-- KEYS[1]: 限流key(zset)
+-- ARGV[1]: 窗口内最大请求次数
+-- ARGV[2]: 窗口时长(毫秒)
+-- 返回: {是否放行(1/0), 剩余次数, 放行时为窗口时长/受限时为需要等待的时间(毫秒)}
+local max = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+
+-- 使用redis服务端时间，避免多个节点之间的时钟误差
+redis.replicate_commands()
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now - window)
+local count = redis.call('ZCARD', KEYS[1])
+if count < max then
+    -- 同一毫秒内count单调递增，member不会重复；zset的大小不会超过max
+    redis.call('ZADD', KEYS[1], now, now .. '-' .. count)
+    redis.call('PEXPIRE', KEYS[1], window)
+    return {1, max - count - 1, window}
+end
+
+-- 最早的一条记录滑出窗口后才能再次请求
+local oldest = redis.call('ZRANGE', KEYS[1], 0, 0, 'WITHSCORES')
+return {0, 0, tonumber(oldest[2]) + window - now}
@@ -0,0 +1,30 @@
+-- 令牌桶限流(GCRA)：只保存一个理论到达时间(TAT)，令牌在请求到达时按时间差惰性计算，不需要定时补充
+-- KEYS[1]: 限流key
+-- ARGV[1]: 桶容量，同时也是每个周期生成的令牌数
+-- ARGV[2]: 周期时长(毫秒)
+-- 返回: {是否放行(1/0), 桶中剩余令牌数, 放行时为桶被填满的时间/受限时为需要等待的时间(毫秒)}
+local capacity = tonumber(ARGV[1])
+local period = tonumber(ARGV[2])
+-- 生成一个令牌需要的时间
+local interval = period / capacity
+
+-- 使用redis服务端时间，避免多个节点之间的时钟误差
+redis.replicate_commands()
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + tonumber(time[2]) / 1000
+
+local tat = tonumber(redis.call('GET', KEYS[1]))
+if tat == nil or tat < now then
+    tat = now
+end
+
+local newTat = tat + interval
+local allowAt = newTat - period
+if allowAt > now then
+    return {0, 0, math.ceil(allowAt - now)}
+end
+
+-- 桶满之后key就没有意义了，过期时间即为桶被填满的时间
+local ttl = math.ceil(newTat - now)
+redis.call('SET', KEYS[1], string.format('%.3f', newTat), 'PX', ttl)
+return {1, math.floor((now - allowAt) / interval), ttl}
@@ -0,0 +1,138 @@
+package cn.lyf.redis.batch;
+
+import cn.lyf.redis.config.RedisBatchProperties;
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisRequestBatcherTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory connectionFactory;
+    private static RedisTemplate<String, Serializable> redisTemplate;
+    private RedisRequestBatcher batcher;
+
+    @BeforeAll
+    static void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        connectionFactory = EmbeddedRedisSupport.connectionFactory(EmbeddedRedisSupport.port(redisServer), 16);
+        redisTemplate = EmbeddedRedisSupport.jsonRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        connectionFactory.destroy();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @AfterEach
+    void stopBatcher() {
+        if (batcher != null) {
+            batcher.destroy();
+        }
+    }
+
+    private RedisRequestBatcher batcher(Duration window) {
+        RedisBatchProperties properties = new RedisBatchProperties();
+        properties.setWindow(window);
+        properties.setDispatchers(1);
+        batcher = new RedisRequestBatcher(redisTemplate, properties);
+        batcher.afterPropertiesSet();
+        return batcher;
+    }
+
+    @Test
+    void coalescesConcurrentGets() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            redisTemplate.opsForValue().set("batch:get:" + i, "value-" + i);
+        }
+        RedisRequestBatcher batcher = batcher(Duration.ofMillis(5));
+        long mgetBefore = EmbeddedRedisSupport.commandCalls(redisTemplate, "mget");
+
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                int n = i;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return batcher.get("batch:get:" + n).get(5, TimeUnit.SECONDS);
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < 100; i++) {
+                assertEquals("value-" + i, results.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long mgets = EmbeddedRedisSupport.commandCalls(redisTemplate, "mget") - mgetBefore;
+        assertTrue(mgets < 50, "mget calls: " + mgets);
+        assertNull(batcher.get("batch:get:missing").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void keepsOrderOfWritesAndReads() throws Exception {
+        RedisRequestBatcher batcher = batcher(Duration.ofMillis(20));
+        CompletableFuture<Object> before = batcher.get("batch:order");
+        CompletableFuture<Object> set = batcher.set("batch:order", "new", Duration.ofMinutes(1));
+        CompletableFuture<Object> after = batcher.get("batch:order");
+
+        assertNull(before.get(5, TimeUnit.SECONDS));
+        assertNull(set.get(5, TimeUnit.SECONDS));
+        assertEquals("new", after.get(5, TimeUnit.SECONDS));
+        long ttl = redisTemplate.getExpire("batch:order");
+        assertTrue(ttl > 0 && ttl <= 60);
+    }
+
+    @Test
+    void runsOnCallerThreadWhenNotStarted() throws Exception {
+        RedisBatchProperties properties = new RedisBatchProperties();
+        RedisRequestBatcher stopped = new RedisRequestBatcher(redisTemplate, properties);
+        redisTemplate.opsForValue().set("batch:direct", 1);
+        CompletableFuture<Object> future = stopped.get("batch:direct");
+        assertTrue(future.isDone());
+        assertEquals(1, future.get());
+    }
+
+    @Test
+    void strayInterruptDoesNotStopDispatcher() throws Exception {
+        RedisRequestBatcher batcher = batcher(Duration.ZERO);
+        redisTemplate.opsForValue().set("batch:interrupt", "value");
+        Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("redis-batcher-"))
+                .forEach(Thread::interrupt);
+        assertEquals("value", batcher.get("batch:interrupt").get(5, TimeUnit.SECONDS));
+        assertEquals("value", batcher.get("batch:interrupt").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void completesEveryFutureOnShutdown() throws Exception {
+        RedisRequestBatcher batcher = batcher(Duration.ofMillis(50));
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(batcher.set("batch:shutdown:" + i, i, Duration.ofMinutes(1)));
+        }
+        batcher.destroy();
+        for (CompletableFuture<Object> future : futures) {
+            assertTrue(future.isDone());
+        }
+        // 关闭后提交的命令在调用线程执行
+        CompletableFuture<Object> after = batcher.get("batch:shutdown:99");
+        assertTrue(after.isDone());
+        assertEquals(99, after.get());
+    }
+}
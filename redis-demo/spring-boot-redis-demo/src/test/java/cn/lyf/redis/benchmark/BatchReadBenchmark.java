@@ -0,0 +1,81 @@
+package cn.lyf.redis.benchmark;
+
+import cn.lyf.redis.batch.RedisRequestBatcher;
+import cn.lyf.redis.config.RedisBatchProperties;
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname BatchReadBenchmark
+ * @description 单key读取的吞吐：plain为jsonRedisTemplate.opsForValue().get，每次占用一个连接；
+ * batched为RedisRequestBatcher合并后的MGET。main方法分别以1、16、256个线程运行
+ * @since 2023/5/12 15:00
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchReadBenchmark {
+    private static final int KEYS = 1_000;
+
+    private RedisServer redisServer;
+    private JedisConnectionFactory connectionFactory;
+    private RedisTemplate<String, Serializable> redisTemplate;
+    private RedisRequestBatcher batcher;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        // 连接数足够256个线程各占一个，plain模式不会等待连接
+        connectionFactory = EmbeddedRedisSupport.connectionFactory(EmbeddedRedisSupport.port(redisServer), 256);
+        redisTemplate = EmbeddedRedisSupport.jsonRedisTemplate(connectionFactory);
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "goods:" + i;
+            redisTemplate.opsForValue().set(keys[i], "goods-" + i);
+        }
+        batcher = new RedisRequestBatcher(redisTemplate, new RedisBatchProperties());
+        batcher.afterPropertiesSet();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        batcher.destroy();
+        connectionFactory.destroy();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @Benchmark
+    public Object plain() {
+        return redisTemplate.opsForValue().get(keys[ThreadLocalRandom.current().nextInt(KEYS)]);
+    }
+
+    @Benchmark
+    public Object batched() {
+        return batcher.get(keys[ThreadLocalRandom.current().nextInt(KEYS)]).join();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[]{1, 16, 256}) {
+            new Runner(new OptionsBuilder()
+                    .include(BatchReadBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
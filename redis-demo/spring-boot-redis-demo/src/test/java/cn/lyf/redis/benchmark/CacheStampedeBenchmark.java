@@ -0,0 +1,117 @@
+package cn.lyf.redis.benchmark;
+
+import cn.lyf.redis.cache.SingleFlightCache;
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.embedded.RedisServer;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname CacheStampedeBenchmark
+ * @description 缓存击穿：1000个调用方同时读取不存在的key，每次加载耗时5ms。
+ * redis: 原来的lockingRedisCacheWriter + RedisCache.get(key, loader)；singleFlight: 不加锁的writer + 按key合并加载。
+ * loaderCalls为所有测量轮次的加载次数之和，keys=1时理想值为每轮1次，keys=100时两种模式的差别在于不同key能否并行加载
+ * @since 2023/5/8 15:00
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheStampedeBenchmark {
+    private static final int CALLERS = 1_000;
+
+    @Param({"redis", "singleFlight"})
+    private String mode;
+
+    /**
+     * 1000个调用方读取的不同key的数量
+     */
+    @Param({"1", "100"})
+    private int keys;
+
+    private RedisServer redisServer;
+    private JedisConnectionFactory connectionFactory;
+    private Cache cache;
+    private ExecutorService executor;
+    private final AtomicLong round = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        connectionFactory = EmbeddedRedisSupport.connectionFactory(EmbeddedRedisSupport.port(redisServer), 64);
+        RedisCacheWriter cacheWriter = "redis".equals(mode)
+                ? RedisCacheWriter.lockingRedisCacheWriter(connectionFactory)
+                : RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory);
+        RedisCacheManager cacheManager = RedisCacheManager.builder(cacheWriter)
+                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig().entryTtl(Duration.ofMinutes(5)))
+                .build();
+        cacheManager.afterPropertiesSet();
+        cache = cacheManager.getCache("stampede");
+        if ("singleFlight".equals(mode)) {
+            cache = new SingleFlightCache(cache, null, null, null);
+        }
+        executor = Executors.newFixedThreadPool(CALLERS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        connectionFactory.destroy();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Loads {
+        public long loaderCalls;
+    }
+
+    @Benchmark
+    public void stampede(Loads loads) throws Exception {
+        // 每轮使用新的key，保证全部未命中
+        long current = round.incrementAndGet();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(CALLERS);
+        for (int i = 0; i < CALLERS; i++) {
+            String key = current + ":" + (i % keys);
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    cache.get(key, () -> {
+                        calls.incrementAndGet();
+                        TimeUnit.MILLISECONDS.sleep(5);
+                        return "value";
+                    });
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        done.await();
+        loads.loaderCalls += calls.get();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CacheStampedeBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,120 @@
+package cn.lyf.redis.benchmark;
+
+import cn.lyf.redis.anno.RequestLimit;
+import cn.lyf.redis.limit.LimitPolicy;
+import cn.lyf.redis.limit.LimitPolicyRegistry;
+import cn.lyf.redis.limit.LimitResult;
+import cn.lyf.redis.limit.RedisCounterLimiter;
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.web.method.HandlerMethod;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ClusterLimiterBenchmark
+ * @description 本地3个主节点的redis cluster上，固定窗口计数限流在各节点之间的负载分布：
+ * client为客户端维度的key(1024个客户端)，global为接口维度的单个key，sharded为接口维度拆成6个分片。
+ * TearDown输出每个节点执行的限流脚本次数占比，global全部落在一个节点上，sharded与client接近平均
+ * @since 2023/5/25 15:00
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ClusterLimiterBenchmark {
+    private static final int MASTERS = 3;
+    private static final int CLIENTS = 1024;
+
+    @Param({"client", "global", "sharded"})
+    private String mode;
+
+    private List<RedisServer> nodes;
+    private JedisConnectionFactory connectionFactory;
+    private LimitPolicy policy;
+    private String[] clientKeys;
+    private long[] scriptCallsBefore;
+
+    @Setup(Level.Trial)
+    public void setUp() throws NoSuchMethodException {
+        nodes = EmbeddedRedisSupport.startCluster(MASTERS);
+        connectionFactory = EmbeddedRedisSupport.clusterConnectionFactory(nodes, 16);
+        RedisTemplate<String, Serializable> redisTemplate = EmbeddedRedisSupport.jsonRedisTemplate(connectionFactory);
+        RedisCounterLimiter limiter = new RedisCounterLimiter(redisTemplate);
+        limiter.afterPropertiesSet();
+        LimitPolicyRegistry registry = new LimitPolicyRegistry(Collections.singletonList(limiter));
+        policy = registry.getPolicy(new HandlerMethod(new Handlers(), Handlers.class.getMethod(mode)));
+        clientKeys = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            clientKeys[i] = policy.limitKey("/goods/test", "10.0." + (i >> 8) + "." + (i & 0xff));
+        }
+        scriptCallsBefore = scriptCalls();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long[] after = scriptCalls();
+        long total = 0;
+        for (int i = 0; i < MASTERS; i++) {
+            after[i] -= scriptCallsBefore[i];
+            total += after[i];
+        }
+        StringBuilder sb = new StringBuilder(String.format("%n[%s] scripts per node:", mode));
+        for (int i = 0; i < MASTERS; i++) {
+            sb.append(String.format(" node%d %d (%.1f%%)", i, after[i], 100.0 * after[i] / Math.max(1, total)));
+        }
+        System.out.println(sb);
+        connectionFactory.destroy();
+        EmbeddedRedisSupport.stopCluster(nodes);
+    }
+
+    @Benchmark
+    public LimitResult tryAcquire() {
+        String key = policy.isGlobal() ? policy.getGlobalKey() : clientKeys[ThreadLocalRandom.current().nextInt(CLIENTS)];
+        return policy.tryAcquire(key);
+    }
+
+    private long[] scriptCalls() {
+        long[] calls = new long[MASTERS];
+        for (int i = 0; i < MASTERS; i++) {
+            calls[i] = EmbeddedRedisSupport.commandCalls(nodes.get(i), "evalsha", "eval");
+        }
+        return calls;
+    }
+
+    /**
+     * 限额足够大，测量的是放行路径
+     */
+    public static class Handlers {
+        @RequestLimit(maxCount = Integer.MAX_VALUE)
+        public void client() {
+        }
+
+        @RequestLimit(maxCount = Integer.MAX_VALUE, global = true)
+        public void global() {
+        }
+
+        @RequestLimit(maxCount = Integer.MAX_VALUE, global = true, shards = 2 * MASTERS)
+        public void sharded() {
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ClusterLimiterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,249 @@
+package cn.lyf.redis.benchmark;
+
+import cn.lyf.redis.SpringRedisDemoApplication;
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import cn.lyf.redis.support.LatencyProxy;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import redis.embedded.RedisServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ConcurrencyHarness
+ * @description 大量并发连接下平台线程与虚拟线程的对比。应用在子进程中启动(连接内嵌redis，可选加单向延迟)，
+ * 关闭限流降级，请求线程直接阻塞在redis上；load.connections个连接各自循环请求(闭环)，
+ * 输出吞吐量、延迟，以及子进程的RSS和操作系统线程数峰值(从/proc读取，只支持linux)。
+ * 应用放在子进程中，客户端的连接和内存不计入结果，连接数也不受单个进程文件描述符上限的限制。
+ * 参数(系统属性): load.connections、load.duration(秒)、load.warmup(秒)、load.path、load.redisDelayMicros、
+ * load.virtual(true时使用spring profile virtual，需要 -Pjava21 构建并运行在JDK 21上)、
+ * load.threads(平台线程模式下tomcat的最大线程数)、load.serverJvmArgs
+ * @since 2023/5/27 14:00
+ */
+public class ConcurrencyHarness {
+    private static final int CONNECTIONS = Integer.getInteger("load.connections", 10_000);
+    private static final int DURATION_SECONDS = Integer.getInteger("load.duration", 20);
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmup", 10);
+    private static final String PATH = System.getProperty("load.path", "/goods/test");
+    private static final long REDIS_DELAY_MICROS = Long.getLong("load.redisDelayMicros", 1_000L);
+    private static final boolean VIRTUAL = Boolean.getBoolean("load.virtual");
+    private static final int THREADS = Integer.getInteger("load.threads", 200);
+    private static final String SERVER_JVM_ARGS = System.getProperty("load.serverJvmArgs", "-Xmx1g");
+
+    /**
+     * 等待应用启动的最长时间
+     */
+    private static final long STARTUP_SECONDS = 120;
+
+    public static void main(String[] args) throws Exception {
+        RedisServer redisServer = EmbeddedRedisSupport.start();
+        LatencyProxy proxy = REDIS_DELAY_MICROS > 0
+                ? new LatencyProxy(EmbeddedRedisSupport.port(redisServer), REDIS_DELAY_MICROS) : null;
+        int redisPort = proxy != null ? proxy.port() : EmbeddedRedisSupport.port(redisServer);
+        int port = freePort();
+        Process server = null;
+        try {
+            server = startServer(port, redisPort);
+            long pid = pid(server);
+            String baseUrl = "http://127.0.0.1:" + port;
+            awaitStarted(baseUrl, server);
+            System.out.printf("%s, %d connections, %ds, redis delay %dus, pid %d%n",
+                    VIRTUAL ? "virtual threads" : "platform threads (max " + THREADS + ")",
+                    CONNECTIONS, DURATION_SECONDS, REDIS_DELAY_MICROS, pid);
+            run(baseUrl, WARMUP_SECONDS, pid);
+            System.out.println(run(baseUrl, DURATION_SECONDS, pid));
+        } finally {
+            if (server != null) {
+                server.destroy();
+                server.waitFor(30, TimeUnit.SECONDS);
+            }
+            if (proxy != null) {
+                proxy.close();
+            }
+            EmbeddedRedisSupport.stop(redisServer);
+        }
+    }
+
+    private static Process startServer(int port, int redisPort) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String arg : SERVER_JVM_ARGS.trim().split("\\s+")) {
+            if (!arg.isEmpty()) {
+                command.add(arg);
+            }
+        }
+        command.add("-classpath");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SpringRedisDemoApplication.class.getName());
+        command.add("--server.port=" + port);
+        command.add("--spring.redis.host=127.0.0.1");
+        command.add("--spring.redis.port=" + redisPort);
+        command.add("--server.tomcat.max-connections=" + (CONNECTIONS + 1_000));
+        command.add("--server.tomcat.accept-count=1000");
+        command.add("--demo.limit.fallback.enabled=false");
+        command.add("--logging.level.cn.lyf.redis=WARN");
+        // VirtualThreadConfiguration启动时的日志用于确认虚拟线程已启用
+        command.add("--logging.level.cn.lyf.redis.config=INFO");
+        if (VIRTUAL) {
+            command.add("--spring.profiles.active=virtual");
+        } else {
+            command.add("--server.tomcat.threads.max=" + THREADS);
+        }
+        File log = new File("target", "concurrency-server.log");
+        return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+    }
+
+    private static void awaitStarted(String baseUrl, Process server) throws InterruptedException {
+        WebClient client = WebClient.create(baseUrl);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(STARTUP_SECONDS);
+        while (!healthy(client)) {
+            if (!server.isAlive()) {
+                throw new IllegalStateException("应用启动失败, 见target/concurrency-server.log");
+            }
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("应用在" + STARTUP_SECONDS + "秒内没有启动");
+            }
+            TimeUnit.MILLISECONDS.sleep(500);
+        }
+        if (VIRTUAL && !logContains("使用虚拟线程")) {
+            throw new IllegalStateException("没有启用虚拟线程, 需要 -Pjava21 构建并运行在JDK 21上");
+        }
+    }
+
+    private static boolean healthy(WebClient client) {
+        try {
+            client.get().uri("/actuator/health").retrieve().toBodilessEntity().block(Duration.ofSeconds(1));
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static Result run(String baseUrl, int seconds, long pid) {
+        ConnectionProvider provider = ConnectionProvider.builder("concurrency")
+                .maxConnections(CONNECTIONS).pendingAcquireMaxCount(-1)
+                .pendingAcquireTimeout(Duration.ofSeconds(STARTUP_SECONDS)).build();
+        WebClient client = WebClient.builder()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(provider)))
+                .build();
+        Result result = new Result();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(() -> result.sample(pid), 0, 200, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        // 每个连接上一个请求完成后立即发送下一个
+        Flux.range(0, CONNECTIONS)
+                .flatMap(i -> Mono.defer(() -> request(client, result)).repeat(() -> System.nanoTime() < deadline),
+                        CONNECTIONS)
+                .blockLast();
+        result.elapsedNanos = System.nanoTime() - start;
+        sampler.shutdownNow();
+        provider.disposeLater().block();
+        return result;
+    }
+
+    private static Mono<Void> request(WebClient client, Result result) {
+        long start = System.nanoTime();
+        return client.get().uri(PATH)
+                .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode().is2xxSuccessful()))
+                .doOnNext(ok -> {
+                    if (ok) {
+                        result.latency.recordValue(System.nanoTime() - start);
+                    } else {
+                        result.errors.incrementAndGet();
+                    }
+                })
+                .onErrorResume(e -> {
+                    result.errors.incrementAndGet();
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private static boolean logContains(String text) {
+        try {
+            return new String(Files.readAllBytes(Paths.get("target", "concurrency-server.log")), StandardCharsets.UTF_8)
+                    .contains(text);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Process.pid()从java 9开始提供，测试代码按java 8编译，通过反射调用
+     */
+    private static long pid(Process process) {
+        try {
+            return (Long) Process.class.getMethod("pid").invoke(process);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("需要在java 9以上运行", e);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    private static final class Result {
+        private final Histogram latency = new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(1), 3);
+        private final AtomicLong errors = new AtomicLong();
+        private long elapsedNanos;
+        private volatile long peakRssKb;
+        private volatile long peakThreads;
+
+        /**
+         * 读取子进程的/proc/pid/status，虚拟线程不计入Threads
+         */
+        private void sample(long pid) {
+            try {
+                for (String line : Files.readAllLines(Paths.get("/proc", String.valueOf(pid), "status"))) {
+                    if (line.startsWith("VmRSS:")) {
+                        peakRssKb = Math.max(peakRssKb, Long.parseLong(line.replaceAll("\\D", "")));
+                    } else if (line.startsWith("Threads:")) {
+                        peakThreads = Math.max(peakThreads, Long.parseLong(line.replaceAll("\\D", "")));
+                    }
+                }
+            } catch (IOException | UncheckedIOException e) {
+                // 进程已退出或不是linux
+            }
+        }
+
+        @Override
+        public String toString() {
+            long completed = latency.getTotalCount();
+            return String.format("completed %d, errors %d, %.0f req/s, p50 %.2fms, p99 %.2fms, max %.2fms, "
+                            + "peak RSS %dMB, peak OS threads %d",
+                    completed, errors.get(), completed / (elapsedNanos / 1e9),
+                    millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(99)),
+                    millis(latency.getMaxValue()), peakRssKb / 1024, peakThreads);
+        }
+
+        private static double millis(long nanos) {
+            return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
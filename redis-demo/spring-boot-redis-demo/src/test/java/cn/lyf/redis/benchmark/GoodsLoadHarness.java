@@ -0,0 +1,271 @@
+package cn.lyf.redis.benchmark;
+
+import cn.lyf.redis.SpringRedisDemoApplication;
+import cn.lyf.redis.limit.LimitAlgorithm;
+import cn.lyf.redis.limit.LimitPolicy;
+import cn.lyf.redis.limit.LimitPolicyRegistry;
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import cn.lyf.redis.support.LatencyProxy;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import redis.embedded.RedisServer;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import static cn.lyf.redis.common.CommonConstant.HEADER_RETRY_AFTER;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname GoodsLoadHarness
+ * @description 离线负载测试：应用连接内嵌redis(可选加单向延迟)启动，按固定到达速率(开环)请求GoodsController的接口，
+ * 输出吞吐量、p50/p99/p999延迟和限流准确度。
+ * 延迟从请求计划发出的时刻算起，服务端变慢时后续请求照常发出，排队时间计入延迟，不会因为等待响应而少算。
+ * 客户端绑定不同的127.0.0.x地址，每个地址对应一个限流key；准确度为放行次数与上限之比，上限按接口的限流配置
+ * 和该客户端第一次到最后一次放行之间的时长算出(以收到响应的时刻近似服务端处理的时刻)，
+ * 请求速率远大于限额时应接近100%，超过100%说明限流器多放行了(redis超过延迟预算时降级为本地限流，会同时输出降级次数)。
+ * 参数(系统属性): load.paths、load.rate(每个接口每秒请求数)、load.duration(秒)、load.clients、
+ * load.warmup(每个接口预热秒数)、load.redisDelayMicros、load.clientType(jedis/lettuce)，也可以通过 mvn -Pload test -Dload.args="-Dload.rate=5000" 运行
+ * @since 2023/5/24 10:00
+ */
+public class GoodsLoadHarness {
+    private static final String PATHS = System.getProperty("load.paths", "/goods/test,/goods/findAll,/goods/findAll2");
+    private static final int RATE = Integer.getInteger("load.rate", 2_000);
+    private static final int DURATION_SECONDS = Integer.getInteger("load.duration", 10);
+    private static final int CLIENTS = Integer.getInteger("load.clients", 4);
+    private static final long REDIS_DELAY_MICROS = Long.getLong("load.redisDelayMicros", 0L);
+    private static final String CLIENT_TYPE = System.getProperty("load.clientType", "jedis");
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmup", 5);
+
+    /**
+     * 响应迟迟不返回时最多等待的时间
+     */
+    private static final long DRAIN_SECONDS = 30;
+
+    private static final int ADMITTED = 0;
+    private static final int REJECTED = 1;
+    private static final int FAILED = 2;
+
+    public static void main(String[] args) {
+        RedisServer redisServer = EmbeddedRedisSupport.start();
+        // 不加延迟时直接连接redis，避免代理本身成为瓶颈
+        LatencyProxy proxy = REDIS_DELAY_MICROS > 0
+                ? new LatencyProxy(EmbeddedRedisSupport.port(redisServer), REDIS_DELAY_MICROS) : null;
+        int redisPort = proxy != null ? proxy.port() : EmbeddedRedisSupport.port(redisServer);
+        ConfigurableApplicationContext context = null;
+        try {
+            context = new SpringApplicationBuilder(SpringRedisDemoApplication.class)
+                    .web(WebApplicationType.SERVLET)
+                    .run("--server.port=0",
+                            "--spring.redis.host=127.0.0.1",
+                            "--spring.redis.port=" + redisPort,
+                            "--spring.redis.client-type=" + CLIENT_TYPE,
+                            "--logging.level.cn.lyf.redis=WARN");
+            int port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+            System.out.printf("rate %d req/s per path, %ds, %d clients, redis delay %dus, %s%n",
+                    RATE, DURATION_SECONDS, CLIENTS, REDIS_DELAY_MICROS, CLIENT_TYPE);
+            String[] paths = PATHS.split(",");
+            // 先预热所有接口，否则第一个接口的结果包含JIT编译；预热使用另一组客户端地址，不占用正式测试的限流额度
+            for (String path : paths) {
+                run(path, port, 2, WARMUP_SECONDS, policy(context, path));
+            }
+            MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+            for (String path : paths) {
+                LimitPolicy policy = policy(context, path);
+                double fallbackBefore = fallbacks(meterRegistry, policy);
+                Result result = run(path, port, 1, DURATION_SECONDS, policy);
+                result.fallbacks = (long) (fallbacks(meterRegistry, policy) - fallbackBefore);
+                System.out.println(result);
+            }
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+            if (proxy != null) {
+                proxy.close();
+            }
+            EmbeddedRedisSupport.stop(redisServer);
+        }
+    }
+
+    private static Result run(String path, int port, int subnet, int seconds, LimitPolicy policy) {
+        WebClient[] clients = new WebClient[CLIENTS];
+        ConnectionProvider provider = ConnectionProvider.builder("load")
+                .maxConnections(256).pendingAcquireMaxCount(-1).build();
+        for (int i = 0; i < CLIENTS; i++) {
+            InetSocketAddress local = new InetSocketAddress("127.0." + subnet + "." + (i + 1), 0);
+            clients[i] = WebClient.builder()
+                    .baseUrl("http://127.0.0.1:" + port)
+                    .clientConnector(new ReactorClientHttpConnector(HttpClient.create(provider).bindAddress(() -> local)))
+                    .build();
+        }
+
+        int requests = RATE * seconds;
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / RATE;
+        Result result = new Result(path, requests, policy);
+        CountDownLatch done = new CountDownLatch(requests);
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            long intended = start + i * periodNanos;
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            int client = i % CLIENTS;
+            clients[client].get().uri(path)
+                    .exchangeToMono(response -> response.releaseBody().thenReturn(outcome(response)))
+                    .subscribe(outcome -> {
+                        result.latency.recordValue(System.nanoTime() - intended);
+                        if (outcome == ADMITTED) {
+                            result.admitted(client, System.nanoTime());
+                        } else if (outcome == FAILED) {
+                            result.errors.incrementAndGet();
+                        }
+                        done.countDown();
+                    }, e -> {
+                        result.errors.incrementAndGet();
+                        done.countDown();
+                    });
+        }
+        try {
+            done.await(seconds + DRAIN_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        provider.disposeLater().block();
+        return result;
+    }
+
+    /**
+     * 受限时仍然是200，通过Retry-After区分；其它状态码(如redis不可用时的500)记为错误，不算放行
+     */
+    private static int outcome(ClientResponse response) {
+        if (!response.statusCode().is2xxSuccessful()) {
+            return FAILED;
+        }
+        return response.headers().header(HEADER_RETRY_AFTER).isEmpty() ? ADMITTED : REJECTED;
+    }
+
+    private static LimitPolicy policy(ConfigurableApplicationContext context, String path) {
+        RequestMappingHandlerMapping handlerMapping =
+                context.getBean("requestMappingHandlerMapping", RequestMappingHandlerMapping.class);
+        LimitPolicyRegistry registry = context.getBean(LimitPolicyRegistry.class);
+        for (Map.Entry<RequestMappingInfo, HandlerMethod> entry : handlerMapping.getHandlerMethods().entrySet()) {
+            if (entry.getKey().getPatternValues().contains(path)) {
+                return registry.getPolicy(entry.getValue());
+            }
+        }
+        throw new IllegalArgumentException("没有找到接口: " + path);
+    }
+
+    /**
+     * 接口降级为本地限流的总次数
+     */
+    private static double fallbacks(MeterRegistry meterRegistry, LimitPolicy policy) {
+        if (!policy.isLimited()) {
+            return 0;
+        }
+        return meterRegistry.find("request.limit.fallback").tag("route", policy.getRoute()).counters().stream()
+                .mapToDouble(Counter::count).sum();
+    }
+
+    /**
+     * 一个客户端第一次到最后一次放行相隔seconds秒时，最多应该被放行的次数
+     */
+    static long admittedLimit(LimitPolicy policy, double seconds) {
+        if (!policy.isLimited()) {
+            return Long.MAX_VALUE;
+        }
+        if (policy.getAlgorithm() == LimitAlgorithm.TOKEN_BUCKET) {
+            // 桶初始是满的，之后按 maxCount / second 的速率补充；响应时刻与服务端处理时刻有偏差，补充的令牌数向上取整
+            return policy.getMaxCount() + (long) Math.ceil(seconds * policy.getMaxCount() / policy.getSecond());
+        }
+        // 固定窗口从第一次放行开始计时，滑动窗口任意second秒内不超过maxCount，都按覆盖到的窗口数计算
+        long windows = (long) Math.floor(seconds / policy.getSecond()) + 1;
+        return windows * policy.getMaxCount();
+    }
+
+    private static final class Result {
+        private final String path;
+        private final int requests;
+        private final LimitPolicy policy;
+        private final Histogram latency = new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(1), 3);
+        private final AtomicLongArray admitted = new AtomicLongArray(CLIENTS);
+        private final AtomicLongArray firstAdmitted = new AtomicLongArray(CLIENTS);
+        private final AtomicLongArray lastAdmitted = new AtomicLongArray(CLIENTS);
+        private final AtomicLong errors = new AtomicLong();
+        private long elapsedNanos;
+        private long fallbacks;
+
+        private Result(String path, int requests, LimitPolicy policy) {
+            this.path = path;
+            this.requests = requests;
+            this.policy = policy;
+        }
+
+        private void admitted(int client, long now) {
+            if (admitted.getAndIncrement(client) == 0) {
+                firstAdmitted.set(client, now);
+            }
+            lastAdmitted.accumulateAndGet(client, now, Math::max);
+        }
+
+        @Override
+        public String toString() {
+            long completed = latency.getTotalCount();
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%-16s sent %d, completed %d, errors %d, %.0f req/s, "
+                            + "p50 %.2fms, p99 %.2fms, p999 %.2fms, max %.2fms",
+                    path, requests, completed, errors.get(), completed / (elapsedNanos / 1e9),
+                    millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(99)),
+                    millis(latency.getValueAtPercentile(99.9)), millis(latency.getMaxValue())));
+            if (policy.isLimited()) {
+                long total = 0;
+                long totalLimit = 0;
+                int worst = 0;
+                double worstRatio = 0;
+                long[] limits = new long[admitted.length()];
+                for (int i = 0; i < admitted.length(); i++) {
+                    double span = admitted.get(i) == 0 ? 0 : (lastAdmitted.get(i) - firstAdmitted.get(i)) / 1e9;
+                    limits[i] = admittedLimit(policy, span);
+                    total += admitted.get(i);
+                    totalLimit += limits[i];
+                    double ratio = admitted.get(i) / (double) limits[i];
+                    if (ratio > worstRatio) {
+                        worstRatio = ratio;
+                        worst = i;
+                    }
+                }
+                sb.append(String.format("%n%-16s %s maxCount %d / %ds: admitted %d / limit %d (%.1f%%), "
+                                + "worst client %d / %d, fallbacks %d",
+                        "", policy.getAlgorithm(), policy.getMaxCount(), policy.getSecond(),
+                        total, totalLimit, 100.0 * total / totalLimit, admitted.get(worst), limits[worst], fallbacks));
+            }
+            return sb.toString();
+        }
+
+        private static double millis(long nanos) {
+            return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+    }
+}
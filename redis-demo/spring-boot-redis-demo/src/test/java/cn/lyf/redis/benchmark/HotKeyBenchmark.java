@@ -0,0 +1,107 @@
+package cn.lyf.redis.benchmark;
+
+import cn.lyf.redis.config.HotKeyProperties;
+import cn.lyf.redis.hotkey.HotKeyDetector;
+import cn.lyf.redis.hotkey.HotKeyRecordingSerializer;
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname HotKeyBenchmark
+ * @description 热点key探测的开销：
+ * record单独测量一次记录的耗时；get对比开启/关闭探测时jsonRedisTemplate读取的吞吐量
+ * @since 2023/5/22 14:00
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class HotKeyBenchmark {
+    private static final int KEYS = 10_000;
+
+    /**
+     * off: 原来的StringRedisSerializer；on: HotKeyRecordingSerializer
+     */
+    @Param({"off", "on"})
+    private String mode;
+
+    @Param({"0.1"})
+    private double sampleRate;
+
+    private RedisServer redisServer;
+    private JedisConnectionFactory connectionFactory;
+    private RedisTemplate<String, Serializable> redisTemplate;
+    private HotKeyDetector detector;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        HotKeyProperties properties = new HotKeyProperties();
+        properties.setEnabled("on".equals(mode));
+        properties.setSampleRate(sampleRate);
+        detector = new HotKeyDetector(properties);
+
+        redisServer = EmbeddedRedisSupport.start();
+        connectionFactory = EmbeddedRedisSupport.connectionFactory(EmbeddedRedisSupport.port(redisServer), 16);
+        redisTemplate = EmbeddedRedisSupport.jsonRedisTemplate(connectionFactory);
+        redisTemplate.setKeySerializer("on".equals(mode) ? new HotKeyRecordingSerializer(detector) : new StringRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "goods:" + i;
+            redisTemplate.opsForValue().set(keys[i], "value" + i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if ("on".equals(mode)) {
+            System.out.printf("%ntop keys: %s%n", detector.topKeys().stream().limit(3)
+                    .map(k -> k.getKey() + "=" + k.getEstimatedCount()).collect(Collectors.joining(", ")));
+        }
+        connectionFactory.destroy();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    /**
+     * 一半的访问集中在前10个key上
+     */
+    private String nextKey() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return keys[random.nextBoolean() ? random.nextInt(10) : random.nextInt(KEYS)];
+    }
+
+    @Benchmark
+    public Serializable get() {
+        return redisTemplate.opsForValue().get(nextKey());
+    }
+
+    @Benchmark
+    public String record() {
+        String key = nextKey();
+        detector.record(key);
+        return key;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HotKeyBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,147 @@
+package cn.lyf.redis.benchmark;
+
+import cn.lyf.redis.cache.CompactKeyGenerator;
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname KeyGeneratorBenchmark
+ * @description 原来的keyGenerator(全类名 + 方法名 + 参数toString)与CompactKeyGenerator的对比。
+ * main方法先在内嵌redis中分别写入10万个key，输出两种key占用的内存，再运行JMH
+ * @since 2023/5/11 15:00
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class KeyGeneratorBenchmark {
+    private static final int KEYS = 100_000;
+
+    /**
+     * 原来RedisConfiguration中的实现
+     */
+    static final KeyGenerator LEGACY = (target, method, params) -> {
+        StringBuilder sb = new StringBuilder();
+        sb.append(target.getClass().getName());
+        sb.append(method.getName());
+        for (Object obj : params) {
+            sb.append(obj.toString());
+        }
+        return sb.toString();
+    };
+
+    @Param({"legacy", "compact"})
+    private String generator;
+
+    private KeyGenerator keyGenerator;
+    private final GoodsService target = new GoodsService();
+    private Method findById;
+    private Method findPage;
+    private Method findByIds;
+    private long id;
+    private final List<Long> ids = Arrays.asList(10001L, 10002L, 10003L, 10004L);
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        keyGenerator = "legacy".equals(generator) ? LEGACY : new CompactKeyGenerator(128);
+        findById = GoodsService.class.getMethod("findById", Long.class);
+        findPage = GoodsService.class.getMethod("findPage", String.class, Integer.class, Integer.class);
+        findByIds = GoodsService.class.getMethod("findByIds", List.class);
+    }
+
+    @Benchmark
+    public Object singleId() {
+        return keyGenerator.generate(target, findById, id++ & 0xFFFF);
+    }
+
+    @Benchmark
+    public Object page() {
+        return keyGenerator.generate(target, findPage, "手机", 3, 20);
+    }
+
+    @Benchmark
+    public Object idList() {
+        return keyGenerator.generate(target, findByIds, ids);
+    }
+
+    public static class GoodsService {
+        public Object findById(Long id) {
+            return null;
+        }
+
+        public Object findPage(String category, Integer page, Integer size) {
+            return null;
+        }
+
+        public Object findByIds(List<Long> ids) {
+            return null;
+        }
+    }
+
+    /**
+     * 与缓存一致，key为 cacheName::key，值为同一个短字符串，比较两种key的内存占用
+     */
+    static long[] usedMemory(StringRedisTemplate redisTemplate, KeyGenerator keyGenerator) throws NoSuchMethodException {
+        GoodsService target = new GoodsService();
+        Method findById = GoodsService.class.getMethod("findById", Long.class);
+        Method findPage = GoodsService.class.getMethod("findPage", String.class, Integer.class, Integer.class);
+        redisTemplate.execute(connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        }, true);
+        long before = usedMemory(redisTemplate);
+        long[] keyLength = new long[1];
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            byte[] value = "{}".getBytes();
+            for (int i = 0; i < KEYS; i++) {
+                Object key = i % 2 == 0
+                        ? keyGenerator.generate(target, findById, (long) i)
+                        : keyGenerator.generate(target, findPage, "category" + (i % 100), i / 100, 20);
+                byte[] redisKey = ("custom::" + key).getBytes();
+                keyLength[0] += redisKey.length;
+                connection.stringCommands().set(redisKey, value);
+            }
+            return null;
+        });
+        return new long[]{usedMemory(redisTemplate) - before, keyLength[0] / KEYS};
+    }
+
+    private static long usedMemory(StringRedisTemplate redisTemplate) {
+        Properties info = redisTemplate.execute(connection -> connection.serverCommands().info("memory"), true);
+        return Long.parseLong(info.getProperty("used_memory"));
+    }
+
+    public static void main(String[] args) throws RunnerException, NoSuchMethodException {
+        RedisServer redisServer = EmbeddedRedisSupport.start();
+        JedisConnectionFactory connectionFactory = EmbeddedRedisSupport.connectionFactory(EmbeddedRedisSupport.port(redisServer), 4);
+        try {
+            StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+            long[] legacy = usedMemory(redisTemplate, LEGACY);
+            long[] compact = usedMemory(redisTemplate, new CompactKeyGenerator(128));
+            System.out.printf("%d keys, legacy: %d bytes (avg key %d), compact: %d bytes (avg key %d), saved: %.1f%%%n",
+                    KEYS, legacy[0], legacy[1], compact[0], compact[1], 100.0 * (legacy[0] - compact[0]) / legacy[0]);
+        } finally {
+            connectionFactory.destroy();
+            EmbeddedRedisSupport.stop(redisServer);
+        }
+        new Runner(new OptionsBuilder().include(KeyGeneratorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
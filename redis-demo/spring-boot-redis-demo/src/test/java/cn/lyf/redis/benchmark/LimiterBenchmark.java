@@ -0,0 +1,128 @@
+package cn.lyf.redis.benchmark;
+
+import cn.lyf.redis.limit.HybridCounterLimiter;
+import cn.lyf.redis.limit.LimitAlgorithm;
+import cn.lyf.redis.limit.LimitResult;
+import cn.lyf.redis.limit.LocalRateLimiter;
+import cn.lyf.redis.limit.RedisCounterLimiter;
+import cn.lyf.redis.limit.RedissonRateLimiter;
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname LimiterBenchmark
+ * @description 对比各限流实现的延迟，以及每次判断平均产生的redis命令数：
+ * redis lua计数、两级限流、Redisson RRateLimiter、进程内限流
+ * @since 2023/4/21 15:30
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class LimiterBenchmark {
+    private static final int KEYS = 16;
+
+    /**
+     * redis: 每次判断都执行lua脚本；hybrid: 本地租约+redis；redisson: RRateLimiter；local: 进程内
+     */
+    @Param({"redis", "hybrid", "redisson", "local"})
+    private String mode;
+
+    /**
+     * 两级限流允许的误差比例
+     */
+    @Param({"0.01"})
+    private double maxError;
+
+    private RedisServer redisServer;
+    private JedisConnectionFactory connectionFactory;
+    private RedisTemplate<String, Serializable> redisTemplate;
+    private RedisCounterLimiter redisCounterLimiter;
+    private HybridCounterLimiter hybridCounterLimiter;
+    private RedissonClient redissonClient;
+    private RedissonRateLimiter redissonRateLimiter;
+    private LocalRateLimiter localRateLimiter;
+    private final AtomicLong operations = new AtomicLong();
+    private long commandsBefore;
+    private long scriptCallsBefore;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        connectionFactory = EmbeddedRedisSupport.connectionFactory(EmbeddedRedisSupport.port(redisServer), 16);
+        redisTemplate = EmbeddedRedisSupport.jsonRedisTemplate(connectionFactory);
+        redisCounterLimiter = new RedisCounterLimiter(redisTemplate);
+        redisCounterLimiter.afterPropertiesSet();
+        hybridCounterLimiter = new HybridCounterLimiter(redisTemplate);
+        hybridCounterLimiter.afterPropertiesSet();
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + EmbeddedRedisSupport.port(redisServer));
+        redissonClient = Redisson.create(config);
+        redissonRateLimiter = new RedissonRateLimiter(redissonClient);
+        localRateLimiter = new LocalRateLimiter();
+        commandsBefore = totalCommands();
+        scriptCallsBefore = EmbeddedRedisSupport.commandCalls(redisTemplate, "evalsha", "eval");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long commands = totalCommands() - commandsBefore;
+        long roundTrips = EmbeddedRedisSupport.commandCalls(redisTemplate, "evalsha", "eval") - scriptCallsBefore;
+        long decisions = Math.max(1, operations.get());
+        System.out.printf("%n[%s] decisions: %d, redis round trips/decision: %.4f, redis commands/decision: %.4f%n",
+                mode, decisions, (double) roundTrips / decisions, (double) commands / decisions);
+        redissonClient.shutdown();
+        connectionFactory.destroy();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadKey {
+        private static final AtomicLong SEQUENCE = new AtomicLong();
+        private final String key = "bench:limit:/goods/test:" + SEQUENCE.getAndIncrement() % KEYS;
+    }
+
+    @Benchmark
+    public LimitResult tryAcquire(ThreadKey threadKey) {
+        operations.incrementAndGet();
+        // 限额足够大，保证测量的是放行路径而不是本地拒绝
+        switch (mode) {
+            case "hybrid":
+                return hybridCounterLimiter.tryAcquire(threadKey.key, 1_000_000, 1, maxError);
+            case "redisson":
+                return redissonRateLimiter.tryAcquire(threadKey.key, 1_000_000, 1);
+            case "local":
+                return localRateLimiter.tryAcquire(threadKey.key, LimitAlgorithm.FIXED_WINDOW, 1_000_000, 1);
+            default:
+                break;
+        }
+        return redisCounterLimiter.tryAcquire(threadKey.key, 1_000_000, 1);
+    }
+
+    private long totalCommands() {
+        return Long.parseLong(redisTemplate.execute(connection -> connection.serverCommands().info("stats"), true)
+                .getProperty("total_commands_processed"));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LimiterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
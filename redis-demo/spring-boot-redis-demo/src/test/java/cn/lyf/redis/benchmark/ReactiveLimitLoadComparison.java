@@ -0,0 +1,97 @@
+package cn.lyf.redis.benchmark;
+
+import cn.lyf.redis.SpringRedisDemoApplication;
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import cn.lyf.redis.support.LatencyProxy;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import redis.embedded.RedisServer;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ReactiveLimitLoadComparison
+ * @description servlet拦截器与响应式WebFilter限流的负载对比：同一个应用分别以servlet(tomcat 8个线程, jedis)
+ * 和reactive(netty 4个事件循环线程, lettuce)方式启动，redis前面加5ms的单向延迟，
+ * 以256的并发请求受限接口/goods/test，输出吞吐量与延迟分位数
+ * @since 2023/5/16 16:00
+ */
+public class ReactiveLimitLoadComparison {
+    private static final int CONCURRENCY = 256;
+    private static final int REQUESTS = 20_000;
+    private static final long REDIS_DELAY_MICROS = 5_000;
+
+    public static void main(String[] args) {
+        System.setProperty("reactor.netty.ioWorkerCount", "4");
+        RedisServer redisServer = EmbeddedRedisSupport.start();
+        LatencyProxy proxy = new LatencyProxy(EmbeddedRedisSupport.port(redisServer), REDIS_DELAY_MICROS);
+        try {
+            run("servlet", WebApplicationType.SERVLET, proxy.port(), "jedis");
+            run("reactive", WebApplicationType.REACTIVE, proxy.port(), "lettuce");
+        } finally {
+            proxy.close();
+            EmbeddedRedisSupport.stop(redisServer);
+        }
+    }
+
+    private static void run(String name, WebApplicationType type, int redisPort, String clientType) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(SpringRedisDemoApplication.class)
+                .web(type)
+                // 命令行参数的优先级高于application.yaml
+                .run("--server.port=0",
+                        "--server.tomcat.threads.max=8",
+                        "--server.tomcat.threads.min-spare=8",
+                        "--spring.redis.host=127.0.0.1",
+                        "--spring.redis.port=" + redisPort,
+                        "--spring.redis.client-type=" + clientType,
+                        "--spring.redis.jedis.pool.max-active=8",
+                        "--logging.level.cn.lyf.redis=WARN");
+        try {
+            int port = Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+            WebClient client = WebClient.builder()
+                    .baseUrl("http://127.0.0.1:" + port)
+                    .clientConnector(new ReactorClientHttpConnector(HttpClient.create(
+                            ConnectionProvider.builder("load").maxConnections(CONCURRENCY).pendingAcquireMaxCount(-1).build())))
+                    .build();
+            // 预热
+            load(client, 2_000);
+            long[] latencies = new long[REQUESTS];
+            long start = System.nanoTime();
+            load(client, REQUESTS, latencies);
+            long elapsed = System.nanoTime() - start;
+            Arrays.sort(latencies);
+            System.out.printf("%-8s %d requests, concurrency %d: %.0f req/s, p50 %.2fms, p99 %.2fms, p999 %.2fms%n",
+                    name, REQUESTS, CONCURRENCY, REQUESTS / (elapsed / 1e9),
+                    percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999));
+        } finally {
+            context.close();
+        }
+    }
+
+    private static void load(WebClient client, int requests) {
+        load(client, requests, new long[requests]);
+    }
+
+    private static void load(WebClient client, int requests, long[] latencies) {
+        Flux.range(0, requests)
+                .flatMap(i -> {
+                    long start = System.nanoTime();
+                    return client.get().uri("/goods/test").retrieve().toBodilessEntity()
+                            .doOnSuccess(r -> latencies[i] = System.nanoTime() - start);
+                }, CONCURRENCY)
+                .blockLast();
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
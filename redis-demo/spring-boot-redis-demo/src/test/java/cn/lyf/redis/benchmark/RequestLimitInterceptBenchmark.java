@@ -0,0 +1,157 @@
+package cn.lyf.redis.benchmark;
+
+import cn.lyf.redis.anno.RequestLimit;
+import cn.lyf.redis.common.Result;
+import cn.lyf.redis.common.StatusCode;
+import cn.lyf.redis.intercept.RequestLimitIntercept;
+import cn.lyf.redis.limit.*;
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname RequestLimitInterceptBenchmark
+ * @description RequestLimitIntercept.preHandle的开销：未声明限流的接口、放行、受限(含writeToResponse写回Result)。
+ * limiter=stub时限流器直接返回结果，只剩策略查找、key构建和响应头；limiter=redis时使用内嵌redis上的lua限流器，
+ * 测的是一次完整的限流判断。resultJson单独测Result的序列化。可以加上 -prof gc 查看每次调用分配的内存
+ * @since 2023/4/25 15:20
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestLimitInterceptBenchmark {
+    /**
+     * stub: 不访问redis的限流器；redis: 内嵌redis上的RedisCounterLimiter等
+     */
+    @Param({"stub", "redis"})
+    private String limiter;
+
+    private RedisServer redisServer;
+    private JedisConnectionFactory connectionFactory;
+    private ObjectMapper objectMapper;
+    private RequestLimitIntercept intercept;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+    private HandlerMethod plainHandler;
+    private HandlerMethod limitedHandler;
+    private HandlerMethod rejectedHandler;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        LimitPolicyRegistry registry;
+        if ("redis".equals(limiter)) {
+            redisServer = EmbeddedRedisSupport.start();
+            connectionFactory = EmbeddedRedisSupport.connectionFactory(EmbeddedRedisSupport.port(redisServer), 8);
+            RedisTemplate<String, Serializable> redisTemplate = EmbeddedRedisSupport.jsonRedisTemplate(connectionFactory);
+            RedisCounterLimiter redisCounterLimiter = new RedisCounterLimiter(redisTemplate);
+            redisCounterLimiter.afterPropertiesSet();
+            registry = new LimitPolicyRegistry(Arrays.asList(redisCounterLimiter,
+                    new SlidingWindowLimiter(redisTemplate), new TokenBucketLimiter(redisTemplate)));
+        } else {
+            // maxCount为1的接口始终受限，其它接口始终放行，排除redis的影响
+            RateLimiter stub = new RateLimiter() {
+                private final LimitResult allowed = new LimitResult(true, 99, 1_000);
+                private final LimitResult rejected = new LimitResult(false, 0, 1_000);
+
+                @Override
+                public boolean supports(RequestLimit requestLimit) {
+                    return true;
+                }
+
+                @Override
+                public LimitResult tryAcquire(String key, LimitPolicy policy) {
+                    return policy.getMaxCount() > 1 ? allowed : rejected;
+                }
+            };
+            registry = new LimitPolicyRegistry(Collections.singletonList(stub));
+        }
+        objectMapper = new ObjectMapper();
+        intercept = new RequestLimitIntercept(objectMapper, registry, new LimitMetrics(new SimpleMeterRegistry()));
+
+        BenchController controller = new BenchController();
+        plainHandler = new HandlerMethod(controller, BenchController.class.getMethod("plain"));
+        limitedHandler = new HandlerMethod(controller, BenchController.class.getMethod("limited"));
+        rejectedHandler = new HandlerMethod(controller, BenchController.class.getMethod("rejected"));
+        registry.getPolicy(plainHandler);
+        registry.getPolicy(limitedHandler);
+        registry.getPolicy(rejectedHandler);
+
+        request = new MockHttpServletRequest("GET", "/goods/test");
+        request.setServletPath("/goods/test");
+        request.setRemoteAddr("192.168.125.1");
+        response = new MockHttpServletResponse();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+            EmbeddedRedisSupport.stop(redisServer);
+        }
+    }
+
+    @Benchmark
+    public boolean unannotated() throws Exception {
+        return intercept.preHandle(request, response, plainHandler);
+    }
+
+    @Benchmark
+    public boolean annotatedAllowed() throws Exception {
+        return intercept.preHandle(request, response, limitedHandler);
+    }
+
+    /**
+     * 受限时写回Result，response每次清空以免内容累积
+     */
+    @Benchmark
+    public boolean annotatedRejected() throws Exception {
+        response.reset();
+        return intercept.preHandle(request, response, rejectedHandler);
+    }
+
+    @Benchmark
+    public String resultJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(Result.error(StatusCode.REQUEST_LIMIT));
+    }
+
+    public static class BenchController {
+        public String plain() {
+            return "plain";
+        }
+
+        @RequestLimit(maxCount = Integer.MAX_VALUE)
+        public String limited() {
+            return "limited";
+        }
+
+        @RequestLimit(maxCount = 1, second = 3600)
+        public String rejected() {
+            return "rejected";
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RequestLimitInterceptBenchmark.class.getSimpleName()).build()).run();
+    }
+}
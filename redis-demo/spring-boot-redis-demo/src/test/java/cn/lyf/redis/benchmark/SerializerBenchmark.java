@@ -0,0 +1,103 @@
+package cn.lyf.redis.benchmark;
+
+import cn.lyf.redis.common.Result;
+import cn.lyf.redis.config.RedisConfiguration;
+import cn.lyf.redis.serializer.CompactRedisSerializer;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname SerializerBenchmark
+ * @description 对比RedisConfiguration中三种值序列化方式的编码/解码耗时，setUp中输出写入redis的字节数
+ * @since 2023/5/10 15:00
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializerBenchmark {
+    @Param({"json", "jdk", "compact"})
+    private String serializer;
+
+    /**
+     * Result中商品的数量
+     */
+    @Param({"1", "100"})
+    private int items;
+
+    private RedisSerializer<Object> redisSerializer;
+    private Result<ArrayList<Goods>> value;
+    private byte[] encoded;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        GenericJackson2JsonRedisSerializer json = new RedisConfiguration().genericJackson2JsonRedisSerializer();
+        switch (serializer) {
+            case "jdk":
+                redisSerializer = (RedisSerializer<Object>) (RedisSerializer<?>) new JdkSerializationRedisSerializer();
+                break;
+            case "compact":
+                redisSerializer = new CompactRedisSerializer(json, 1024);
+                break;
+            default:
+                redisSerializer = json;
+        }
+
+        ArrayList<Goods> goods = new ArrayList<>();
+        for (int i = 0; i < items; i++) {
+            goods.add(new Goods((long) i, "商品-" + i, BigDecimal.valueOf(9900 + i, 2), i % 50,
+                    LocalDate.of(2023, 5, 1 + i % 28), LocalDateTime.of(2023, 5, 10, 10, i % 60)));
+        }
+        value = Result.ok(goods);
+        encoded = redisSerializer.serialize(value);
+        System.out.printf("%n%s items=%d bytes=%d%n", serializer, items, encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return redisSerializer.serialize(value);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return redisSerializer.deserialize(encoded);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Goods implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Long id;
+        private String name;
+        private BigDecimal price;
+        private Integer stock;
+        private LocalDate onSaleDate;
+        private LocalDateTime updateTime;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SerializerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,206 @@
+package cn.lyf.redis.cache;
+
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.config.Config;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import redis.embedded.RedisServer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BloomFilterCacheTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory connectionFactory;
+    private static RedisCacheManager redisCacheManager;
+    private static RedissonClient redissonClient;
+    private static ScheduledExecutorService refreshScheduler;
+
+    @BeforeAll
+    static void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        int port = EmbeddedRedisSupport.port(redisServer);
+        connectionFactory = EmbeddedRedisSupport.connectionFactory(port, 64);
+        redisCacheManager = RedisCacheManager.builder(RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory))
+                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig().entryTtl(Duration.ofMinutes(5)))
+                .build();
+        redisCacheManager.afterPropertiesSet();
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + port);
+        redissonClient = Redisson.create(config);
+        refreshScheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        refreshScheduler.shutdownNow();
+        redissonClient.shutdown();
+        connectionFactory.destroy();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @Test
+    void localCopyAgreesWithRedisson() {
+        CacheBloomFilter filter = new CacheBloomFilter("bf-local", redissonClient, 1_000, 0.05,
+                Duration.ofHours(1), refreshScheduler, new SimpleMeterRegistry());
+        RBloomFilter<String> remote = redissonClient.getBloomFilter(CacheBloomFilter.KEY_PREFIX + "bf-local", StringCodec.INSTANCE);
+        for (int i = 0; i < 500; i++) {
+            remote.add("goods:" + i);
+        }
+        filter.refresh();
+
+        for (int i = 0; i < 500; i++) {
+            assertTrue(filter.mightContain("goods:" + i));
+        }
+        // RedissonBloomFilter.contains没有检查最后一个下标，本地副本检查全部下标，只会更少误判
+        int falsePositives = 0;
+        int remoteFalsePositives = 0;
+        for (int i = 500; i < 5_000; i++) {
+            String key = "goods:" + i;
+            boolean local = filter.mightContain(key);
+            boolean redis = remote.contains(key);
+            assertTrue(!local || redis, key);
+            falsePositives += local ? 1 : 0;
+            remoteFalsePositives += redis ? 1 : 0;
+        }
+        assertTrue(falsePositives <= remoteFalsePositives);
+        assertTrue(falsePositives < 4_500 * 0.05, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void localAddIsVisibleBeforeRefresh() {
+        CacheBloomFilter nodeA = new CacheBloomFilter("bf-add", redissonClient, 1_000, 0.01,
+                Duration.ofHours(1), refreshScheduler, new SimpleMeterRegistry());
+        CacheBloomFilter nodeB = new CacheBloomFilter("bf-add", redissonClient, 1_000, 0.01,
+                Duration.ofHours(1), refreshScheduler, new SimpleMeterRegistry());
+        nodeA.add(42L);
+        assertTrue(nodeA.mightContain(42L));
+        // 其它节点刷新后可见
+        assertFalse(nodeB.mightContain(42L));
+        nodeB.refresh();
+        assertTrue(nodeB.mightContain(42L));
+    }
+
+    @Test
+    void refreshesLocalCopyInBackground() throws InterruptedException {
+        CacheBloomFilter nodeA = new CacheBloomFilter("bf-scheduled", redissonClient, 1_000, 0.01,
+                Duration.ofHours(1), refreshScheduler, new SimpleMeterRegistry());
+        CacheBloomFilter nodeB = new CacheBloomFilter("bf-scheduled", redissonClient, 1_000, 0.01,
+                Duration.ofMillis(100), refreshScheduler, new SimpleMeterRegistry());
+        nodeA.add(42L);
+        // 不需要读取触发，调度线程按间隔刷新
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!nodeB.mightContain(42L) && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        assertTrue(nodeB.mightContain(42L));
+    }
+
+    @Test
+    void repeatedWritesSkipRedisWhenBitsAreSetLocally() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CacheBloomFilter filter = new CacheBloomFilter("bf-repeat", redissonClient, 1_000, 0.01,
+                Duration.ofHours(1), refreshScheduler, meterRegistry);
+        Cache cache = new BloomFilterCache(redisCacheManager.getCache("bf-repeat"), filter, Duration.ofSeconds(30), 100, meterRegistry);
+        long before = EmbeddedRedisSupport.commandCalls(redisServer, "setbit");
+        cache.put("goods:1", "v1");
+        long setbits = EmbeddedRedisSupport.commandCalls(redisServer, "setbit");
+        assertTrue(setbits > before);
+        cache.put("goods:1", "v2");
+        cache.putIfAbsent("goods:1", "v3");
+        assertEquals(setbits, EmbeddedRedisSupport.commandCalls(redisServer, "setbit"));
+        assertEquals("v2", cache.get("goods:1").get());
+    }
+
+    @Test
+    void rejectsMissingKeyWithoutTouchingRedis() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Cache redisCache = redisCacheManager.getCache("bf-reject");
+        CacheBloomFilter filter = new CacheBloomFilter("bf-reject", redissonClient, 1_000, 0.01,
+                Duration.ofHours(1), refreshScheduler, meterRegistry);
+        Cache cache = new BloomFilterCache(redisCache, filter, Duration.ofSeconds(30), 100, meterRegistry);
+        // 直接写入redis但没有记录到过滤器的key被当作不存在
+        redisCache.put("hidden", "value");
+        assertNull(cache.get("hidden", () -> fail("不应执行加载")));
+        assertNotNull(cache.get("hidden"));
+        assertNull(cache.get("hidden").get());
+
+        cache.put("known", "value");
+        assertEquals("value", cache.get("known", () -> "unused"));
+        assertEquals(3, meterRegistry.get("cache.bloom.rejected").counter().count());
+        assertTrue(meterRegistry.get("cache.bloom.memory").tag("location", "redis").gauge().value() > 0);
+        assertTrue(meterRegistry.get("cache.bloom.memory").tag("location", "local").gauge().value() > 0);
+    }
+
+    @Test
+    void cachesNullResultLocallyWithShortTtl() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Cache redisCache = redisCacheManager.getCache("bf-negative");
+        CacheBloomFilter filter = new CacheBloomFilter("bf-negative", redissonClient, 1_000, 0.01,
+                null, refreshScheduler, meterRegistry);
+        Cache cache = new BloomFilterCache(new SingleFlightCache(redisCache, null, null, null), filter,
+                Duration.ofMillis(300), 100, meterRegistry);
+        // 模拟误判: 过滤器中有，数据不存在
+        filter.add("ghost");
+
+        AtomicInteger loads = new AtomicInteger();
+        List<Object> values = runConcurrently(20, () -> cache.get("ghost", () -> {
+            loads.incrementAndGet();
+            TimeUnit.MILLISECONDS.sleep(100);
+            return null;
+        }));
+        assertEquals(1, loads.get());
+        assertTrue(values.stream().allMatch(v -> v == null));
+        // null不写入redis
+        assertNull(redisCache.get("ghost"));
+
+        double negativeHits = meterRegistry.get("cache.bloom.negative.hits").counter().count();
+        assertNull(cache.get("ghost", () -> fail("空值存活时间内不应加载")));
+        assertEquals(negativeHits + 1, meterRegistry.get("cache.bloom.negative.hits").counter().count());
+        assertEquals(1, meterRegistry.get("cache.bloom.false.positives").counter().count());
+
+        TimeUnit.MILLISECONDS.sleep(400);
+        assertEquals("found", cache.get("ghost", () -> "found"));
+        assertEquals("found", redisCache.get("ghost").get());
+
+        assertNull(cache.get("absent").get());
+        // 通过过滤器但不存在的读取: 1次加载为null + 命中本地空值; 被拒绝1次
+        double passed = 1 + meterRegistry.get("cache.bloom.negative.hits").counter().count();
+        assertEquals(passed / (passed + 1), meterRegistry.get("cache.bloom.false.positive.rate").gauge().value(), 1e-9);
+    }
+
+    private static <T> List<T> runConcurrently(int callers, Callable<T> call) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return call.call();
+            }));
+        }
+        start.countDown();
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            results.add(future.get(30, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        return results;
+    }
+}
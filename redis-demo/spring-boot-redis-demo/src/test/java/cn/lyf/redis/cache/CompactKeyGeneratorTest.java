@@ -0,0 +1,130 @@
+package cn.lyf.redis.cache;
+
+import cn.lyf.redis.common.StatusCode;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactKeyGeneratorTest {
+    private final CompactKeyGenerator keyGenerator = new CompactKeyGenerator(128);
+    private final GoodsService target = new GoodsService();
+
+    @Test
+    void usesShortPrefix() throws NoSuchMethodException {
+        Method findAll = GoodsService.class.getMethod("findAll");
+        String key = (String) keyGenerator.generate(target, findAll);
+        assertTrue(Pattern.matches("c\\.l\\.r\\.c\\.CompactKeyGeneratorTest\\$GoodsService\\.findAll@[0-9a-f]{8}", key), key);
+        // 前缀按(类, 方法)缓存
+        assertSame(keyGenerator.generate(target, findAll), keyGenerator.generate(target, findAll));
+    }
+
+    @Test
+    void encodesParamsByType() throws NoSuchMethodException {
+        Method find = GoodsService.class.getMethod("find", Object.class, Object.class);
+        String prefix = keyGenerator.generate(target, find) + ":";
+        assertTrue(prefix.startsWith("c.l.r.c.CompactKeyGeneratorTest$GoodsService.find@"));
+
+        assertEquals(prefix + "n,n", keyGenerator.generate(target, find, null, null));
+        assertEquals(prefix + "i1,s1:1", keyGenerator.generate(target, find, 1, "1"));
+        assertEquals(prefix + "l1,t", keyGenerator.generate(target, find, 1L, true));
+        assertEquals(prefix + "eREQUEST_LIMIT,T2023-05-11",
+                keyGenerator.generate(target, find, StatusCode.REQUEST_LIMIT, LocalDate.of(2023, 5, 11)));
+        assertEquals(prefix + "[i1,n],[l2]", keyGenerator.generate(target, find, Arrays.asList(1, null), new long[]{2L}));
+        // Date与java.time类型的标识不同
+        assertEquals(prefix + "D0,T1970-01-01T00:00:00Z",
+                keyGenerator.generate(target, find, new Date(0), java.time.Instant.EPOCH));
+    }
+
+    @Test
+    void keysDoNotCollide() throws NoSuchMethodException {
+        Method find = GoodsService.class.getMethod("find", Object.class, Object.class);
+        Set<Object> keys = new HashSet<>();
+        keys.add(keyGenerator.generate(target, find, "a,b", ""));
+        keys.add(keyGenerator.generate(target, find, "a", ",b"));
+        keys.add(keyGenerator.generate(target, find, "a", "b"));
+        keys.add(keyGenerator.generate(target, find, "null", null));
+        keys.add(keyGenerator.generate(target, find, null, "null"));
+        keys.add(keyGenerator.generate(target, find, 1, 1L));
+        keys.add(keyGenerator.generate(target, find, "1", 1));
+        assertEquals(7, keys.size());
+    }
+
+    @Test
+    void unorderedCollectionsAreStable() throws NoSuchMethodException {
+        Method find = GoodsService.class.getMethod("find", Object.class, Object.class);
+        Set<String> set1 = new LinkedHashSet<>(Arrays.asList("b", "a", "c"));
+        Set<String> set2 = new LinkedHashSet<>(Arrays.asList("c", "b", "a"));
+        Map<String, Integer> map1 = new LinkedHashMap<>();
+        map1.put("x", 1);
+        map1.put("y", 2);
+        Map<String, Integer> map2 = new LinkedHashMap<>();
+        map2.put("y", 2);
+        map2.put("x", 1);
+        assertEquals(keyGenerator.generate(target, find, set1, map1), keyGenerator.generate(target, find, set2, map2));
+    }
+
+    @Test
+    void overloadedMethodsHaveDifferentPrefixes() throws NoSuchMethodException {
+        Method byId = GoodsService.class.getMethod("findBy", Long.class);
+        Method byName = GoodsService.class.getMethod("findBy", String.class);
+        String byIdKey = (String) keyGenerator.generate(target, byId, (Object) null);
+        String byNameKey = (String) keyGenerator.generate(target, byName, (Object) null);
+        assertTrue(Pattern.matches("c\\.l\\.r\\.c\\.CompactKeyGeneratorTest\\$GoodsService\\.findBy\\(Long\\)@[0-9a-f]{8}:n", byIdKey), byIdKey);
+        assertTrue(Pattern.matches("c\\.l\\.r\\.c\\.CompactKeyGeneratorTest\\$GoodsService\\.findBy\\(String\\)@[0-9a-f]{8}:n", byNameKey), byNameKey);
+    }
+
+    @Test
+    void sameAbbreviationInDifferentPackagesDoesNotCollide() throws NoSuchMethodException {
+        // cn.lyf.redis.cache.GoodsRepository与cn.lyf.redis.config.GoodsRepository缩写后相同
+        Method cacheFind = GoodsRepository.class.getMethod("find", Object.class);
+        Method configFind = cn.lyf.redis.config.GoodsRepository.class.getMethod("find", Object.class);
+        String cacheKey = (String) keyGenerator.generate(new GoodsRepository(), cacheFind, 1L);
+        String configKey = (String) keyGenerator.generate(new cn.lyf.redis.config.GoodsRepository(), configFind, 1L);
+        assertTrue(cacheKey.startsWith("c.l.r.c.GoodsRepository.find@"), cacheKey);
+        assertTrue(configKey.startsWith("c.l.r.c.GoodsRepository.find@"), configKey);
+        assertNotEquals(cacheKey, configKey);
+    }
+
+    @Test
+    void hashesLongKeys() throws NoSuchMethodException {
+        Method find = GoodsService.class.getMethod("find", Object.class, Object.class);
+        char[] chars = new char[200];
+        Arrays.fill(chars, 'x');
+        String longValue = new String(chars);
+
+        String key = (String) keyGenerator.generate(target, find, longValue, 1);
+        assertTrue(key.startsWith(keyGenerator.generate(target, find) + ":#"));
+        assertEquals(key, keyGenerator.generate(target, find, longValue, 1));
+        assertNotEquals(key, keyGenerator.generate(target, find, longValue, 2));
+        assertEquals(key.indexOf('#') + 33, key.length());
+    }
+
+    public static class GoodsService {
+        public Object findAll() {
+            return null;
+        }
+
+        public Object find(Object a, Object b) {
+            return null;
+        }
+
+        public Object findBy(Long id) {
+            return null;
+        }
+
+        public Object findBy(String name) {
+            return null;
+        }
+    }
+}
+
+class GoodsRepository {
+    public Object find(Object id) {
+        return null;
+    }
+}
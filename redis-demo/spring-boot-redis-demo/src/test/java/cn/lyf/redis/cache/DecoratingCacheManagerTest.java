@@ -0,0 +1,171 @@
+package cn.lyf.redis.cache;
+
+import cn.lyf.redis.config.CacheSpecProperties;
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按配置里的顺序套上真实的装饰器，验证组合后每一层都生效
+ */
+class DecoratingCacheManagerTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory connectionFactory;
+    private static RedisTemplate<String, Serializable> redisTemplate;
+    private static RedissonClient redissonClient;
+
+    @BeforeAll
+    static void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        int port = EmbeddedRedisSupport.port(redisServer);
+        connectionFactory = EmbeddedRedisSupport.connectionFactory(port, 64);
+        redisTemplate = EmbeddedRedisSupport.jsonRedisTemplate(connectionFactory);
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + port);
+        redissonClient = Redisson.create(config);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        redissonClient.shutdown();
+        connectionFactory.destroy();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @Test
+    void singleFlightLoadsThroughLockRebuild() throws Exception {
+        CacheSpecProperties properties = new CacheSpecProperties();
+        CacheSpecProperties.CacheSpec spec = new CacheSpecProperties.CacheSpec();
+        spec.getSingleFlight().setEnabled(true);
+        spec.getLockRebuild().setEnabled(true);
+        spec.getLockRebuild().setStaleTtl(Duration.ofHours(1));
+        properties.getSpecs().put("dc-lock", spec);
+        properties.afterPropertiesSet();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        RedisCacheManager redisCacheManager = redisCacheManager(properties);
+        Cache cache = new DecoratingCacheManager(redisCacheManager, Arrays.asList(
+                new LockRebuildCacheDecorator(properties, redissonClient, meterRegistry),
+                new SingleFlightCacheDecorator(properties, redisTemplate))).getCache("dc-lock");
+        assertTrue(cache instanceof SingleFlightCache);
+
+        // 本节点合并后只有一个线程去抢锁
+        AtomicInteger loads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return cache.get("hot", () -> {
+                    loads.incrementAndGet();
+                    TimeUnit.MILLISECONDS.sleep(200);
+                    return "old";
+                });
+            }));
+        }
+        start.countDown();
+        for (Future<String> future : futures) {
+            assertEquals("old", future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, meterRegistry.get("cache.rebuild").tag("result", "loaded").counter().count());
+
+        // 缓存过期、其它节点持有锁时返回影子key里的旧值
+        redisCacheManager.getCache("dc-lock").evict("hot");
+        RLock lock = redissonClient.getLock(LockRebuildCache.LOCK_PREFIX + "dc-lock:hot");
+        assertTrue(executor.submit(() -> lock.tryLock(0, 10_000, TimeUnit.MILLISECONDS)).get(5, TimeUnit.SECONDS));
+        try {
+            assertEquals("old", cache.get("hot", () -> fail("持有者之外的节点不应加载")));
+            assertEquals(1, meterRegistry.get("cache.rebuild").tag("result", "stale").counter().count());
+        } finally {
+            lock.forceUnlock();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void aheadRefreshRunsUnderSingleFlight() throws Exception {
+        // 与配置文件中的custom一致，同时启用跨节点租约
+        CacheSpecProperties properties = new CacheSpecProperties();
+        CacheSpecProperties.CacheSpec spec = new CacheSpecProperties.CacheSpec();
+        spec.setTtl(Duration.ofSeconds(2));
+        spec.getEarlyRefresh().setEnabled(true);
+        spec.getEarlyRefresh().setMode(RefreshMode.AHEAD);
+        spec.getEarlyRefresh().setAheadRatio(0.9);
+        spec.getSingleFlight().setEnabled(true);
+        spec.getSingleFlight().setLease(Duration.ofSeconds(3));
+        properties.getSpecs().put("dc-ahead", spec);
+        properties.afterPropertiesSet();
+        CacheRefreshExecutor refreshExecutor = new CacheRefreshExecutor(1, 10, new SimpleMeterRegistry());
+        Cache cache = new DecoratingCacheManager(redisCacheManager(properties), Arrays.asList(
+                new EarlyRefreshCacheDecorator(properties, refreshExecutor),
+                new SingleFlightCacheDecorator(properties, redisTemplate))).getCache("dc-ahead");
+        try {
+            assertEquals("v1", cache.get("hot", () -> "v1"));
+            // 进入最后90%的存活时间
+            TimeUnit.MILLISECONDS.sleep(300);
+
+            Thread caller = Thread.currentThread();
+            CompletableFuture<Thread> loader = new CompletableFuture<>();
+            assertEquals("v1", cache.get("hot", () -> {
+                loader.complete(Thread.currentThread());
+                return "v2";
+            }));
+            assertNotSame(caller, loader.get(5, TimeUnit.SECONDS));
+
+            // 只读不触发新的刷新
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+            while (!"v2".equals(cache.get("hot", String.class)) && System.nanoTime() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(20);
+            }
+            assertEquals("v2", cache.get("hot", String.class));
+        } finally {
+            refreshExecutor.destroy();
+        }
+    }
+
+    @Test
+    void rejectsLockRebuildWithLease() {
+        CacheSpecProperties properties = new CacheSpecProperties();
+        CacheSpecProperties.CacheSpec spec = new CacheSpecProperties.CacheSpec();
+        spec.getSingleFlight().setEnabled(true);
+        spec.getSingleFlight().setLease(Duration.ofSeconds(3));
+        spec.getLockRebuild().setEnabled(true);
+        properties.getSpecs().put("dc-conflict", spec);
+        assertThrows(IllegalArgumentException.class, properties::afterPropertiesSet);
+    }
+
+    private static RedisCacheManager redisCacheManager(CacheSpecProperties properties) {
+        RedisCacheConfiguration cacheConfiguration = RedisCacheConfiguration.defaultCacheConfig();
+        RedisCacheManager.RedisCacheManagerBuilder builder = RedisCacheManager
+                .builder(RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory))
+                .transactionAware();
+        properties.getSpecs().forEach((name, spec) -> builder.withCacheConfiguration(name, cacheConfiguration.entryTtl(spec.getTtl())));
+        RedisCacheManager redisCacheManager = builder.build();
+        redisCacheManager.afterPropertiesSet();
+        return redisCacheManager;
+    }
+}
@@ -0,0 +1,269 @@
+package cn.lyf.redis.cache;
+
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EarlyRefreshCacheTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory connectionFactory;
+    private static RedisTemplate<String, Serializable> redisTemplate;
+    private static RedisCacheManager redisCacheManager;
+
+    @BeforeAll
+    static void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        connectionFactory = EmbeddedRedisSupport.connectionFactory(EmbeddedRedisSupport.port(redisServer), 16);
+        redisTemplate = EmbeddedRedisSupport.jsonRedisTemplate(connectionFactory);
+        RedisCacheConfiguration cacheConfiguration = RedisCacheConfiguration.defaultCacheConfig();
+        Map<String, RedisCacheConfiguration> configurations = new HashMap<>();
+        configurations.put("jitter", cacheConfiguration.entryTtl(Duration.ofSeconds(100)));
+        configurations.put("early", cacheConfiguration.entryTtl(Duration.ofSeconds(10)));
+        redisCacheManager = RedisCacheManager.builder(connectionFactory)
+                .withInitialCacheConfigurations(configurations)
+                .cacheWriter(new JitterRedisCacheWriter(RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory),
+                        Collections.singletonMap("jitter", 0.5)))
+                .build();
+        redisCacheManager.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        connectionFactory.destroy();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @Test
+    void jitterSpreadsExpiration() {
+        Cache cache = redisCacheManager.getCache("jitter");
+        Set<Long> seconds = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            cache.put("k" + i, "v");
+            long ttl = redisTemplate.getExpire("jitter::k" + i, TimeUnit.SECONDS);
+            assertTrue(ttl >= 99 && ttl <= 150, "ttl: " + ttl);
+            seconds.add(ttl);
+        }
+        // 固定ttl时只有1-2个不同的值
+        assertTrue(seconds.size() > 30, "distinct ttl: " + seconds.size());
+    }
+
+    @Test
+    void oneCallerRefreshesBeforeExpiryOthersReadOldValue() {
+        // 逻辑过期时间设为1秒，redis中的值10秒后才过期
+        Cache cache = new EarlyRefreshCache(redisCacheManager.getCache("early"), Duration.ofSeconds(1), 0, 1.0);
+        cache.get("hot", () -> "v1");
+        assertEquals("v1", cache.get("hot").get());
+
+        // 逻辑过期后第一个调用者拿到未命中，负责重新计算
+        sleep(1100);
+        AtomicInteger misses = new AtomicInteger();
+        Thread refresher = new Thread(() -> {
+            if (cache.get("hot") == null) {
+                misses.incrementAndGet();
+            }
+        });
+        refresher.start();
+        join(refresher);
+        assertEquals(1, misses.get());
+
+        // 刷新完成前其它调用者继续读旧值
+        for (int i = 0; i < 10; i++) {
+            Cache.ValueWrapper wrapper = cache.get("hot");
+            assertNotNull(wrapper);
+            assertEquals("v1", wrapper.get());
+        }
+        cache.put("hot", "v2");
+        assertEquals("v2", cache.get("hot").get());
+    }
+
+    @Test
+    void syncLoaderRefreshesEarlyWithoutMiss() {
+        Cache cache = new EarlyRefreshCache(redisCacheManager.getCache("early"), Duration.ofMillis(600), 0, 1.0);
+        AtomicInteger loads = new AtomicInteger();
+        long start = System.currentTimeMillis();
+        // 计算耗时200ms，delta较大时在逻辑过期之前就有较大概率刷新
+        while (System.currentTimeMillis() - start < 1500) {
+            String value = cache.get("slow", () -> {
+                loads.incrementAndGet();
+                sleep(200);
+                return "v" + loads.get();
+            });
+            assertNotNull(value);
+            sleep(10);
+        }
+        assertTrue(loads.get() >= 2, "loads: " + loads.get());
+    }
+
+    @Test
+    void legacyValuesAreReadAsIs() {
+        Cache target = redisCacheManager.getCache("early");
+        target.put("legacy", "plain");
+        Cache cache = new EarlyRefreshCache(target, Duration.ofSeconds(1), 0, 1.0);
+        assertEquals("plain", cache.get("legacy").get());
+        assertEquals("plain", cache.get("legacy", String.class));
+    }
+
+    @Test
+    void refreshAheadReloadsInBackground() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CacheRefreshExecutor executor = new CacheRefreshExecutor(1, 10, meterRegistry);
+        Cache cache = new EarlyRefreshCache(redisCacheManager.getCache("early"), Duration.ofSeconds(1), 0, 0.5, executor);
+        AtomicInteger loads = new AtomicInteger();
+        Callable<String> loader = () -> {
+            sleep(300);
+            return "v" + loads.incrementAndGet();
+        };
+        assertEquals("v1", cache.get("ahead", loader));
+
+        // 进入最后一半存活时间，调用者不等待加载，直接拿到当前值
+        sleep(600);
+        long start = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            assertEquals("v1", cache.get("ahead", loader));
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 200);
+
+        sleep(500);
+        assertEquals("v2", cache.get("ahead", loader));
+        assertEquals(2, loads.get());
+        assertEquals(1, meterRegistry.get("cache.refresh").tag("result", "success").timer().count());
+        executor.destroy();
+    }
+
+    @Test
+    void refreshAheadIsBoundedAndRecordsFailures() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        // 只有一个线程且没有队列
+        CacheRefreshExecutor executor = new CacheRefreshExecutor(1, 0, meterRegistry);
+        Cache cache = new EarlyRefreshCache(redisCacheManager.getCache("early"), Duration.ofSeconds(1), 0, 1.0, executor);
+        for (int i = 0; i < 5; i++) {
+            cache.put("bounded" + i, "v");
+        }
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("v", cache.get("bounded" + i, () -> {
+                release.await();
+                throw new IllegalStateException("backend down");
+            }));
+        }
+        release.countDown();
+        sleep(200);
+
+        assertEquals(4, meterRegistry.get("cache.refresh.rejected").counter().count());
+        assertEquals(1, meterRegistry.get("cache.refresh").tag("result", "failure").timer().count());
+        // 刷新失败后旧值仍然可用，并且可以再次刷新
+        assertEquals("v", cache.get("bounded0", () -> "v2"));
+        sleep(200);
+        assertEquals("v2", cache.get("bounded0", () -> "v3"));
+        executor.destroy();
+    }
+
+    /**
+     * 模拟部署后N个key同时写入，每个key每秒被读取一次，统计每秒回源次数：
+     * 固定ttl在同一秒全部未命中；随机增量把回源分散到 ttl * jitter 内；XFetch在过期前刷新，几乎没有未命中
+     */
+    @Test
+    void simulationSmoothsMisses() {
+        int keys = 2000;
+        long ttl = 300_000;
+        long delta = 200;
+        long duration = 400_000;
+
+        Stats fixed = simulate(keys, ttl, 0, 0, delta, duration);
+        Stats jitter = simulate(keys, ttl, 0.1, 0, delta, duration);
+        Stats xfetch = simulate(keys, ttl, 0.1, 1.0, delta, duration);
+
+        assertEquals(keys, fixed.peakLoadsPerSecond);
+        assertTrue(jitter.peakLoadsPerSecond < keys / 10, jitter.toString());
+        assertTrue(xfetch.peakLoadsPerSecond < keys / 10, xfetch.toString());
+        assertTrue(xfetch.misses < keys / 100, xfetch.toString());
+    }
+
+    private static Stats simulate(int keys, long ttl, double jitter, double beta, long delta, long duration) {
+        Random random = new Random(42);
+        long[] expireAt = new long[keys];
+        long[] logicalExpireAt = new long[keys];
+        for (int i = 0; i < keys; i++) {
+            write(i, 0, ttl, jitter, beta, expireAt, logicalExpireAt, random);
+        }
+        Map<Long, Integer> loadsPerSecond = new HashMap<>();
+        Stats stats = new Stats();
+        for (long second = 1; second * 1000 < duration; second++) {
+            for (int i = 0; i < keys; i++) {
+                // 每个key每秒读取一次，读取时刻在秒内均匀分布
+                long now = second * 1000 + (i * 997L) % 1000;
+                boolean miss = now >= expireAt[i];
+                boolean early = !miss && beta > 0
+                        && EarlyRefreshCache.shouldRefresh(now, logicalExpireAt[i], delta, beta, 1 - random.nextDouble());
+                if (miss || early) {
+                    stats.misses += miss ? 1 : 0;
+                    loadsPerSecond.merge(second, 1, Integer::sum);
+                    write(i, now + delta, ttl, jitter, beta, expireAt, logicalExpireAt, random);
+                }
+            }
+        }
+        stats.peakLoadsPerSecond = loadsPerSecond.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+        return stats;
+    }
+
+    /**
+     * 与RedisConfiguration一致：未启用提前刷新时随机增量加在redis的ttl上；
+     * 启用时加在逻辑过期时间上，redis中取上限
+     */
+    private static void write(int i, long now, long ttl, double jitter, double beta,
+                              long[] expireAt, long[] logicalExpireAt, Random random) {
+        long jittered = JitterRedisCacheWriter.jitter(Duration.ofMillis(ttl), jitter, random.nextDouble()).toMillis();
+        if (beta > 0) {
+            logicalExpireAt[i] = now + jittered;
+            expireAt[i] = now + (long) (ttl * (1 + jitter));
+        } else {
+            expireAt[i] = now + jittered;
+        }
+    }
+
+    private static final class Stats {
+        private int misses;
+        private int peakLoadsPerSecond;
+
+        @Override
+        public String toString() {
+            return "misses=" + misses + ", peak loads/s=" + peakLoadsPerSecond;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
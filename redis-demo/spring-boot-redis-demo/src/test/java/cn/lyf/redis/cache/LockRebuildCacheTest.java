@@ -0,0 +1,196 @@
+package cn.lyf.redis.cache;
+
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LockRebuildCacheTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory connectionFactory;
+    private static RedisTemplate<String, Serializable> redisTemplate;
+    private static RedisCacheManager redisCacheManager;
+    private static RedissonClient redissonClient;
+
+    @BeforeAll
+    static void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        int port = EmbeddedRedisSupport.port(redisServer);
+        connectionFactory = EmbeddedRedisSupport.connectionFactory(port, 64);
+        redisTemplate = EmbeddedRedisSupport.jsonRedisTemplate(connectionFactory);
+        redisCacheManager = RedisCacheManager.builder(RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory))
+                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig().entryTtl(Duration.ofMinutes(5)))
+                .build();
+        redisCacheManager.afterPropertiesSet();
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + port);
+        redissonClient = Redisson.create(config);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        redissonClient.shutdown();
+        connectionFactory.destroy();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @Test
+    void rebuildsOnceAcrossNodes() throws Exception {
+        // 两个实例模拟两个节点，没有旧值时等待持有者的结果
+        Cache nodeA = cache("lr-once", Duration.ofSeconds(2), null, new SimpleMeterRegistry());
+        Cache nodeB = cache("lr-once", Duration.ofSeconds(2), null, new SimpleMeterRegistry());
+        AtomicInteger loads = new AtomicInteger();
+        List<String> values = runConcurrently(40, i -> (i % 2 == 0 ? nodeA : nodeB).get("hot", () -> {
+            loads.incrementAndGet();
+            TimeUnit.MILLISECONDS.sleep(200);
+            return "value";
+        }));
+
+        assertEquals(1, loads.get());
+        assertTrue(values.stream().allMatch("value"::equals));
+        assertFalse(redissonClient.getLock(LockRebuildCache.LOCK_PREFIX + "lr-once:hot").isLocked());
+    }
+
+    @Test
+    void servesStaleCopyWhileAnotherNodeRebuilds() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Cache nodeA = cache("lr-stale", Duration.ofSeconds(2), Duration.ofHours(1), new SimpleMeterRegistry());
+        Cache nodeB = cache("lr-stale", Duration.ofSeconds(2), Duration.ofHours(1), meterRegistry);
+        nodeA.put("hot", "old");
+        // 模拟缓存过期，影子key还在
+        redisCacheManager.getCache("lr-stale").evict("hot");
+
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<String> rebuild = executor.submit(() -> nodeA.get("hot", () -> {
+            loading.countDown();
+            finish.await();
+            return "new";
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        assertEquals("old", nodeB.get("hot", () -> fail("持有者之外的节点不应加载")));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1_000);
+        assertEquals(1, meterRegistry.get("cache.rebuild").tag("result", "stale").counter().count());
+
+        finish.countDown();
+        assertEquals("new", rebuild.get(5, TimeUnit.SECONDS));
+        assertEquals("new", nodeB.get("hot", () -> "unused"));
+        assertTrue(Boolean.TRUE.equals(redisTemplate.hasKey(LockRebuildCache.STALE_PREFIX + "lr-stale:hot")));
+        executor.shutdown();
+
+        nodeB.evict("hot");
+        assertFalse(Boolean.TRUE.equals(redisTemplate.hasKey(LockRebuildCache.STALE_PREFIX + "lr-stale:hot")));
+    }
+
+    @Test
+    void staleCopyUsesCacheSerializerAndWaitsForCommit() throws Exception {
+        Cache nodeA = cache("lr-tx", Duration.ofSeconds(2), Duration.ofHours(1), new SimpleMeterRegistry());
+        Cache nodeB = cache("lr-tx", Duration.ofSeconds(2), Duration.ofHours(1), new SimpleMeterRegistry());
+        String staleKey = LockRebuildCache.STALE_PREFIX + "lr-tx:hot";
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            nodeA.put("hot", 1L);
+            // 提交前不写入影子key
+            assertFalse(Boolean.TRUE.equals(redisTemplate.hasKey(staleKey)));
+            TransactionSynchronizationUtils.triggerAfterCommit();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertTrue(Boolean.TRUE.equals(redisTemplate.hasKey(staleKey)));
+        redisCacheManager.getCache("lr-tx").evict("hot");
+
+        // 其它线程持有锁，读到的旧值与缓存的序列化方式一致，仍然是Long
+        ExecutorService holder = Executors.newSingleThreadExecutor();
+        RLock lock = redissonClient.getLock(LockRebuildCache.LOCK_PREFIX + "lr-tx:hot");
+        try {
+            holder.submit(() -> lock.lock()).get(5, TimeUnit.SECONDS);
+            assertEquals(1L, nodeB.<Object>get("hot", () -> fail("持有者之外的节点不应加载")));
+        } finally {
+            holder.submit(lock::unlock).get(5, TimeUnit.SECONDS);
+            holder.shutdown();
+        }
+    }
+
+    @Test
+    void loadsItselfWhenWaitTimesOut() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Cache nodeA = cache("lr-timeout", Duration.ofMillis(100), null, new SimpleMeterRegistry());
+        Cache nodeB = cache("lr-timeout", Duration.ofMillis(100), null, meterRegistry);
+
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<String> slow = executor.submit(() -> nodeA.get("slow", () -> {
+            loading.countDown();
+            finish.await();
+            return "a";
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        assertEquals("b", nodeB.get("slow", () -> "b"));
+        assertEquals(1, meterRegistry.get("cache.rebuild").tag("result", "timeout").counter().count());
+
+        finish.countDown();
+        assertEquals("a", slow.get(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    private static Cache cache(String name, Duration waitTime, Duration staleTtl, SimpleMeterRegistry meterRegistry) {
+        RedisCache redisCache = (RedisCache) redisCacheManager.getCache(name);
+        return new LockRebuildCache(redisCache, redisCache, redissonClient,
+                Duration.ofSeconds(10), waitTime, staleTtl, meterRegistry);
+    }
+
+    private static <T> List<T> runConcurrently(int callers, IntCall<T> call) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            int index = i;
+            futures.add(executor.submit(() -> {
+                start.await();
+                return call.call(index);
+            }));
+        }
+        start.countDown();
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            results.add(future.get(30, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        return results;
+    }
+
+    @FunctionalInterface
+    private interface IntCall<T> {
+        T call(int index) throws Exception;
+    }
+}
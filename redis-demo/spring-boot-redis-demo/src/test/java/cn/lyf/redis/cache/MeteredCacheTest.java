@@ -0,0 +1,36 @@
+package cn.lyf.redis.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeteredCacheTest {
+
+    @Test
+    void countsHitsMissesPutsAndEvictions() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Cache cache = new MeteredCacheDecorator(meterRegistry).decorate(new ConcurrentMapCache("goods"));
+
+        assertNull(cache.get("k1"));
+        cache.put("k1", "v1");
+        assertEquals("v1", cache.get("k1").get());
+        assertEquals("v1", cache.get("k1", String.class));
+        // valueLoader执行即未命中
+        assertEquals("v2", cache.get("k2", () -> "v2"));
+        assertEquals("v2", cache.get("k2", () -> "other"));
+        cache.evict("k1");
+
+        assertEquals(3, count(meterRegistry, "cache.gets", "hit"));
+        assertEquals(2, count(meterRegistry, "cache.gets", "miss"));
+        assertEquals(2, meterRegistry.get("cache.puts").tag("cache", "goods").counter().count());
+        assertEquals(1, meterRegistry.get("cache.evictions").tag("cache", "goods").counter().count());
+    }
+
+    private static double count(MeterRegistry meterRegistry, String name, String result) {
+        return meterRegistry.get(name).tag("cache", "goods").tag("result", result).counter().count();
+    }
+}
@@ -0,0 +1,185 @@
+package cn.lyf.redis.cache;
+
+import cn.lyf.redis.config.CacheSpecProperties;
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NearCacheTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory connectionFactory;
+    private static RedisTemplate<String, Serializable> redisTemplate;
+    private static RedisCacheManager redisCacheManager;
+
+    @BeforeAll
+    static void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        connectionFactory = EmbeddedRedisSupport.connectionFactory(EmbeddedRedisSupport.port(redisServer), 16);
+        redisTemplate = EmbeddedRedisSupport.jsonRedisTemplate(connectionFactory);
+        redisCacheManager = RedisCacheManager.builder(RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory))
+                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig().entryTtl(Duration.ofMinutes(5)))
+                .build();
+        redisCacheManager.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        connectionFactory.destroy();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @Test
+    void readsFromLocalAfterFirstRedisHit() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        Cache cache = node(meterRegistry).getCache("near");
+        assertTrue(cache instanceof NearCache);
+
+        cache.put("k1", "v1");
+        for (int i = 0; i < 10; i++) {
+            assertEquals("v1", cache.get("k1", String.class));
+        }
+        assertNull(cache.get("absent"));
+
+        NearCache nearCache = (NearCache) cache;
+        assertEquals(9, nearCache.l1HitCount());
+        assertEquals(1, nearCache.l2HitCount());
+        assertEquals(1, nearCache.missCount());
+        assertEquals(9, meterRegistry.get("cache.near.requests").tag("cache", "near").tag("result", "l1_hit")
+                .functionCounter().count());
+        assertEquals(0.5, meterRegistry.get("cache.near.hit.ratio").tag("tier", "l2").gauge().value());
+    }
+
+    @Test
+    void writesOnOneNodeInvalidateOtherNodes() throws InterruptedException {
+        Cache nodeA = node(new SimpleMeterRegistry()).getCache("near");
+        Cache nodeB = node(new SimpleMeterRegistry()).getCache("near");
+
+        nodeA.put("shared", "v1");
+        // 失效通知可能在nodeB读取redis期间到达，这次不回填本地，之后的读取才回填
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (((NearCache) nodeB).l1HitCount() == 0 && System.currentTimeMillis() < deadline) {
+            assertEquals("v1", nodeB.get("shared", String.class));
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        assertTrue(((NearCache) nodeB).l1HitCount() > 0);
+
+        nodeA.put("shared", "v2");
+        // 失效通知通过发布订阅异步到达
+        deadline = System.currentTimeMillis() + 5_000;
+        while (!"v2".equals(nodeB.get("shared", String.class)) && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        assertEquals("v2", nodeB.get("shared", String.class));
+
+        nodeA.evict("shared");
+        deadline = System.currentTimeMillis() + 5_000;
+        while (nodeB.get("shared") != null && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        assertNull(nodeB.get("shared"));
+    }
+
+    @Test
+    void writeInTransactionInvalidatesLocalAfterCommit() {
+        RedisCacheManager transactionAware = RedisCacheManager.builder(RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory))
+                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig().entryTtl(Duration.ofMinutes(5)))
+                .transactionAware()
+                .build();
+        transactionAware.afterPropertiesSet();
+        Cache cache = node(new SimpleMeterRegistry(), transactionAware).getCache("near");
+        cache.put("tx", "v1");
+        assertEquals("v1", cache.get("tx", String.class));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.put("tx", "v2");
+            // 提交前redis中还是旧值，读取会回填本地
+            assertEquals("v1", cache.get("tx", String.class));
+            TransactionSynchronizationUtils.triggerAfterCommit();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertEquals("v2", cache.get("tx", String.class));
+    }
+
+    @Test
+    void invalidationDuringRedisReadSkipsLocalFill() {
+        AtomicReference<NearCache> near = new AtomicReference<>();
+        Cache delegate = new ConcurrentMapCache("race") {
+            @Override
+            public ValueWrapper get(Object key) {
+                ValueWrapper wrapper = super.get(key);
+                // 读到旧值后、回填前，其它节点的失效通知到达
+                near.get().evictLocal(String.valueOf(key));
+                return wrapper;
+            }
+        };
+        delegate.put("k", "old");
+        near.set(new NearCache(delegate, Caffeine.newBuilder().build(), key -> {
+        }));
+        assertEquals("old", near.get().get("k").get());
+        assertEquals(0, near.get().localSize());
+    }
+
+    @Test
+    void cachesWithoutSpecAreNotWrapped() {
+        Cache cache = node(new SimpleMeterRegistry()).getCache("plain");
+        assertFalse(cache instanceof NearCache);
+    }
+
+    @Test
+    void invalidationMessageRoundTrip() {
+        NearCacheInvalidation keyed = NearCacheInvalidation.fromMessage(
+                new NearCacheInvalidation("node", "near", "a\nb").toMessage());
+        assertEquals(new NearCacheInvalidation("node", "near", "a\nb"), keyed);
+        NearCacheInvalidation clear = NearCacheInvalidation.fromMessage(
+                new NearCacheInvalidation("node", "near", null).toMessage());
+        assertNull(clear.getKey());
+        assertNull(NearCacheInvalidation.fromMessage("broken"));
+    }
+
+    /**
+     * 模拟一个节点：独立的监听容器和近端缓存
+     */
+    private static CacheManager node(MeterRegistry meterRegistry) {
+        return node(meterRegistry, redisCacheManager);
+    }
+
+    private static CacheManager node(MeterRegistry meterRegistry, RedisCacheManager redisCacheManager) {
+        CacheSpecProperties properties = new CacheSpecProperties();
+        CacheSpecProperties.CacheSpec spec = new CacheSpecProperties.CacheSpec();
+        spec.getNear().setEnabled(true);
+        properties.getSpecs().put("near", spec);
+
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        NearCacheDecorator decorator = new NearCacheDecorator(properties, redisTemplate, container, meterRegistry);
+        container.afterPropertiesSet();
+        container.start();
+        return new DecoratingCacheManager(redisCacheManager, Collections.singletonList(decorator));
+    }
+}
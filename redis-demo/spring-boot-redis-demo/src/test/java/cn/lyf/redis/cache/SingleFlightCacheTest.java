@@ -0,0 +1,134 @@
+package cn.lyf.redis.cache;
+
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightCacheTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory connectionFactory;
+    private static RedisTemplate<String, Serializable> redisTemplate;
+    private static RedisCacheManager redisCacheManager;
+
+    @BeforeAll
+    static void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        connectionFactory = EmbeddedRedisSupport.connectionFactory(EmbeddedRedisSupport.port(redisServer), 64);
+        redisTemplate = EmbeddedRedisSupport.jsonRedisTemplate(connectionFactory);
+        redisCacheManager = RedisCacheManager.builder(RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory))
+                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig().entryTtl(Duration.ofMinutes(5)))
+                .build();
+        redisCacheManager.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        connectionFactory.destroy();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @Test
+    void concurrentMissesOnOneKeyLoadOnce() throws Exception {
+        Cache cache = new SingleFlightCache(redisCacheManager.getCache("sf-local"), redisTemplate, null, null);
+        AtomicInteger loads = new AtomicInteger();
+        List<String> values = runConcurrently(1_000, i -> cache.get("hot", () -> {
+            loads.incrementAndGet();
+            TimeUnit.MILLISECONDS.sleep(200);
+            return "value";
+        }));
+
+        assertEquals(1, loads.get());
+        assertTrue(values.stream().allMatch("value"::equals));
+    }
+
+    @Test
+    void differentKeysLoadInParallel() throws Exception {
+        Cache cache = new SingleFlightCache(redisCacheManager.getCache("sf-parallel"), redisTemplate, null, null);
+        long start = System.nanoTime();
+        runConcurrently(20, i -> cache.get("key" + i, () -> {
+            TimeUnit.MILLISECONDS.sleep(300);
+            return "v" + i;
+        }));
+        // 串行加载需要6秒
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 3_000);
+    }
+
+    @Test
+    void leaseDedupesLoadsAcrossNodes() throws Exception {
+        // 两个实例模拟两个节点，各自有独立的本地合并
+        Duration lease = Duration.ofSeconds(3);
+        Cache nodeA = new SingleFlightCache(redisCacheManager.getCache("sf-lease"), redisTemplate, lease, Duration.ofMillis(10));
+        Cache nodeB = new SingleFlightCache(redisCacheManager.getCache("sf-lease"), redisTemplate, lease, Duration.ofMillis(10));
+        AtomicInteger loads = new AtomicInteger();
+        List<String> values = runConcurrently(200, i -> (i % 2 == 0 ? nodeA : nodeB).get("hot", () -> {
+            loads.incrementAndGet();
+            TimeUnit.MILLISECONDS.sleep(200);
+            return "value";
+        }));
+
+        assertEquals(1, loads.get());
+        assertTrue(values.stream().allMatch("value"::equals));
+        assertFalse(Boolean.TRUE.equals(redisTemplate.hasKey("cache:lease:sf-lease:hot")));
+    }
+
+    @Test
+    void loaderFailureReachesAllWaitersAndIsNotCached() throws Exception {
+        Cache cache = new SingleFlightCache(redisCacheManager.getCache("sf-failure"), redisTemplate, null, null);
+        AtomicInteger failures = new AtomicInteger();
+        runConcurrently(50, i -> {
+            try {
+                return cache.get("broken", () -> {
+                    TimeUnit.MILLISECONDS.sleep(100);
+                    throw new IllegalStateException("backend down");
+                });
+            } catch (Cache.ValueRetrievalException e) {
+                failures.incrementAndGet();
+                return null;
+            }
+        });
+        assertEquals(50, failures.get());
+        assertEquals("ok", cache.get("broken", () -> "ok"));
+    }
+
+    private static <T> List<T> runConcurrently(int callers, IntCall<T> call) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            int index = i;
+            futures.add(executor.submit(() -> {
+                start.await();
+                return call.call(index);
+            }));
+        }
+        start.countDown();
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            results.add(future.get(30, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        return results;
+    }
+
+    @FunctionalInterface
+    private interface IntCall<T> {
+        T call(int index) throws Exception;
+    }
+}
@@ -0,0 +1,10 @@
+package cn.lyf.redis.config;
+
+/**
+ * 与cn.lyf.redis.cache.GoodsRepository缩写后同名，CompactKeyGeneratorTest用
+ */
+public class GoodsRepository {
+    public Object find(Object id) {
+        return null;
+    }
+}
@@ -0,0 +1,140 @@
+package cn.lyf.redis.config;
+
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import cn.lyf.redis.support.LatencyProxy;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.commonspool2.CommonsObjectPool2Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.embedded.RedisServer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisConnectionFactoryTest {
+    private static RedisServer redisServer;
+
+    @BeforeAll
+    static void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    private static RedisConnectionFactory connectionFactory(RedisProperties.ClientType clientType, MeterRegistry meterRegistry) throws Exception {
+        RedisProperties redisProperties = new RedisProperties();
+        redisProperties.setHost("127.0.0.1");
+        redisProperties.setPort(EmbeddedRedisSupport.port(redisServer));
+        redisProperties.setClientType(clientType);
+        RedisProperties.Pool pool = redisProperties.getJedis().getPool();
+        pool.setMaxActive(2);
+        pool.setMaxWait(Duration.ofMillis(100));
+
+        RedisConfiguration configuration = new RedisConfiguration();
+        ReflectionTestUtils.setField(configuration, "redisProperties", redisProperties);
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", meterRegistry);
+        ObjectProvider<MeterRegistry> provider = beanFactory.getBeanProvider(MeterRegistry.class);
+        RedisConnectionFactory connectionFactory = configuration.redisConnectionFactory(provider);
+        ((InitializingBean) connectionFactory).afterPropertiesSet();
+        return connectionFactory;
+    }
+
+    @Test
+    void jedisPoolUsesPropertiesAndRecordsBorrowTime() throws Exception {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CommonsObjectPool2Metrics poolMetrics = new CommonsObjectPool2Metrics();
+        poolMetrics.bindTo(meterRegistry);
+        JedisConnectionFactory connectionFactory = (JedisConnectionFactory) connectionFactory(RedisProperties.ClientType.JEDIS, meterRegistry);
+        List<RedisConnection> connections = new ArrayList<>();
+        try {
+            connections.add(connectionFactory.getConnection());
+            connections.add(connectionFactory.getConnection());
+            connections.forEach(RedisConnection::ping);
+            // max-active为2，第三个连接等待max-wait后失败
+            assertThrows(RuntimeException.class, connectionFactory::getConnection);
+
+            assertEquals(3, meterRegistry.get("redis.pool.borrow").tag("client", "jedis").timer().count());
+            assertTrue(meterRegistry.get("redis.pool.borrow").timer().max(TimeUnit.MILLISECONDS) >= 100);
+            // 连接池的JMX注册通知是异步处理的
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (meterRegistry.find("commons.pool2.num.active").gauge() == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(2.0, meterRegistry.get("commons.pool2.num.active").gauge().value());
+            assertEquals(0.0, meterRegistry.get("commons.pool2.num.waiters").gauge().value());
+        } finally {
+            connections.forEach(RedisConnection::close);
+            connectionFactory.destroy();
+            poolMetrics.close();
+        }
+    }
+
+    @Test
+    void lettuceSharesOneConnection() throws Exception {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        LettuceConnectionFactory connectionFactory = (LettuceConnectionFactory) connectionFactory(RedisProperties.ClientType.LETTUCE, meterRegistry);
+        try {
+            RedisConnection first = connectionFactory.getConnection();
+            RedisConnection second = connectionFactory.getConnection();
+            first.stringCommands().set("lettuce:key".getBytes(), "1".getBytes());
+            assertArrayEquals("1".getBytes(), second.stringCommands().get("lettuce:key".getBytes()));
+            assertSame(first.getNativeConnection(), second.getNativeConnection());
+            first.close();
+            second.close();
+            assertEquals(2, meterRegistry.get("redis.pool.borrow").tag("client", "lettuce").timer().count());
+        } finally {
+            connectionFactory.destroy();
+        }
+    }
+
+    @Test
+    void limitConnectionFactoryBoundsScriptsByBudget() throws Exception {
+        try (LatencyProxy proxy = new LatencyProxy(EmbeddedRedisSupport.port(redisServer), 0)) {
+            RedisProperties redisProperties = new RedisProperties();
+            redisProperties.setHost("127.0.0.1");
+            redisProperties.setPort(proxy.port());
+            LimitFallbackProperties limitFallbackProperties = new LimitFallbackProperties();
+            limitFallbackProperties.setBudget(Duration.ofMillis(50));
+            RedisConfiguration configuration = new RedisConfiguration();
+            ReflectionTestUtils.setField(configuration, "redisProperties", redisProperties);
+            ReflectionTestUtils.setField(configuration, "limitFallbackProperties", limitFallbackProperties);
+            LettuceConnectionFactory connectionFactory = (LettuceConnectionFactory) configuration.limitConnectionFactory();
+            connectionFactory.afterPropertiesSet();
+            try {
+                RedisConnection connection = connectionFactory.getConnection();
+                byte[] script = "return 1".getBytes();
+                assertEquals(1L, (Long) connection.scriptingCommands().eval(script, ReturnType.INTEGER, 0));
+
+                // 一次往返400ms，jedis执行脚本时不设读超时，lettuce的命令超时仍然生效
+                proxy.setDelayMicros(TimeUnit.MILLISECONDS.toMicros(200));
+                long start = System.nanoTime();
+                assertThrows(RuntimeException.class, () -> connection.scriptingCommands().eval(script, ReturnType.INTEGER, 0));
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertTrue(millis < 150, "latency: " + millis + "ms");
+                connection.close();
+            } finally {
+                connectionFactory.destroy();
+            }
+        }
+    }
+}
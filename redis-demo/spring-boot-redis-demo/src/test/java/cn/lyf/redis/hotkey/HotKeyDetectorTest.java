@@ -0,0 +1,134 @@
+package cn.lyf.redis.hotkey;
+
+import cn.lyf.redis.config.HotKeyProperties;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotKeyDetectorTest {
+    @Test
+    void findsHeavyHittersInSkewedTraffic() {
+        HotKeyProperties properties = new HotKeyProperties();
+        properties.setSampleRate(0.1);
+        properties.setTopK(10);
+        properties.setHotThreshold(10_000);
+        properties.setDecayInterval(Duration.ofMinutes(10));
+        HotKeyDetector detector = new HotKeyDetector(properties);
+
+        // 5个热点key各占10%的流量，其余50%均匀分布在10万个key上
+        Random random = new Random(7);
+        for (int i = 0; i < 1_000_000; i++) {
+            int r = random.nextInt(10);
+            detector.record(r < 5 ? "hot:" + r : "cold:" + random.nextInt(100_000));
+        }
+
+        List<HotKeyDetector.HotKey> top = detector.topKeys();
+        Set<String> top5 = top.subList(0, 5).stream().map(HotKeyDetector.HotKey::getKey).collect(Collectors.toSet());
+        assertEquals(new HashSet<>(Arrays.asList("hot:0", "hot:1", "hot:2", "hot:3", "hot:4")), top5);
+        for (HotKeyDetector.HotKey hotKey : top.subList(0, 5)) {
+            // 实际约10万次，采样和sketch的误差在20%以内
+            assertEquals(100_000, hotKey.getEstimatedCount(), 20_000, hotKey.getKey());
+            assertTrue(hotKey.isHot());
+        }
+        assertTrue(detector.isHot("hot:0"));
+        assertFalse(detector.isHot("cold:1"));
+    }
+
+    @Test
+    void countsDecayOverTime() throws InterruptedException {
+        HotKeyProperties properties = new HotKeyProperties();
+        properties.setSampleRate(1);
+        properties.setHotThreshold(100);
+        properties.setDecayInterval(Duration.ofMillis(100));
+        HotKeyDetector detector = new HotKeyDetector(properties);
+
+        for (int i = 0; i < 150; i++) {
+            detector.record("burst");
+        }
+        assertTrue(detector.isHot("burst"));
+
+        // 不再访问后每个周期减半，低于阈值后不再是热点
+        TimeUnit.MILLISECONDS.sleep(150);
+        detector.record("other");
+        assertFalse(detector.isHot("burst"));
+    }
+
+    @Test
+    void promotesHotKeysToLocalCache() {
+        HotKeyProperties properties = new HotKeyProperties();
+        properties.setSampleRate(1);
+        properties.setHotThreshold(10);
+        HotKeyDetector detector = new HotKeyDetector(properties);
+        AtomicInteger redisReads = new AtomicInteger();
+        Cache redis = new ConcurrentMapCache("goods") {
+            @Override
+            public ValueWrapper get(Object key) {
+                redisReads.incrementAndGet();
+                return super.get(key);
+            }
+        };
+        Cache cache = new HotKeyCache(redis, detector, Caffeine.newBuilder().maximumSize(100).build());
+        cache.put("1", "apple");
+        cache.put("2", "pear");
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("apple", cache.get("1").get());
+        }
+        // 达到阈值之后的读取都在本地完成
+        assertTrue(redisReads.get() <= 11, "redis reads: " + redisReads.get());
+        assertTrue(detector.isHot("goods::1"));
+
+        // 冷key每次都读redis
+        redisReads.set(0);
+        assertEquals("pear", cache.get("2").get());
+        assertEquals(1, redisReads.get());
+
+        // 本节点写入后本地失效
+        cache.put("1", "banana");
+        assertEquals("banana", cache.get("1").get());
+    }
+
+    @Test
+    void skipsPromotionWhenInvalidatedDuringRead() {
+        HotKeyProperties properties = new HotKeyProperties();
+        properties.setSampleRate(1);
+        properties.setHotThreshold(1);
+        HotKeyDetector detector = new HotKeyDetector(properties);
+        AtomicInteger redisReads = new AtomicInteger();
+        Cache[] holder = new Cache[1];
+        Cache redis = new ConcurrentMapCache("goods") {
+            @Override
+            public ValueWrapper get(Object key) {
+                ValueWrapper wrapper = super.get(key);
+                // 第一次读取返回旧值之前，本节点写入了新值
+                if (redisReads.incrementAndGet() == 1) {
+                    holder[0].put(key, "banana");
+                }
+                return wrapper;
+            }
+        };
+        Cache cache = new HotKeyCache(redis, detector, Caffeine.newBuilder().maximumSize(100).build());
+        holder[0] = cache;
+        redis.put("1", "apple");
+
+        assertEquals("apple", cache.get("1").get());
+        // 旧值没有被提升，下一次读取到新值
+        assertEquals("banana", cache.get("1").get());
+        assertEquals(2, redisReads.get());
+        assertEquals("banana", cache.get("1").get());
+        assertEquals(2, redisReads.get());
+    }
+}
@@ -0,0 +1,200 @@
+package cn.lyf.redis.intercept;
+
+import cn.lyf.redis.anno.ConcurrencyLimit;
+import cn.lyf.redis.common.StatusCode;
+import cn.lyf.redis.config.LimitFallbackProperties;
+import cn.lyf.redis.limit.ConcurrencyLimitRegistry;
+import cn.lyf.redis.limit.LimitFallback;
+import cn.lyf.redis.limit.LimiterCircuitBreaker;
+import cn.lyf.redis.limit.LocalRateLimiter;
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import cn.lyf.redis.support.LatencyProxy;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import redis.embedded.RedisServer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static cn.lyf.redis.common.CommonConstant.HEADER_RETRY_AFTER;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimitInterceptTest {
+
+    @Test
+    void rejectsOverLocalLimitAndReleasesAfterCompletion() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ConcurrencyLimitIntercept intercept = intercept(null, meterRegistry);
+        HandlerMethod handler = handler("local");
+
+        MockHttpServletRequest first = new MockHttpServletRequest();
+        MockHttpServletRequest second = new MockHttpServletRequest();
+        assertTrue(intercept.preHandle(first, new MockHttpServletResponse(), handler));
+        assertTrue(intercept.preHandle(second, new MockHttpServletResponse(), handler));
+        // 异步请求再次分派时不重复获取许可
+        assertTrue(intercept.preHandle(first, new MockHttpServletResponse(), handler));
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        assertFalse(intercept.preHandle(new MockHttpServletRequest(), rejected, handler));
+        assertEquals("1", rejected.getHeader(HEADER_RETRY_AFTER));
+        assertTrue(rejected.getContentAsString().contains(String.valueOf(StatusCode.REQUEST_LIMIT.code())));
+        assertEquals(1, meterRegistry.get("request.concurrency.rejected").tag("route", "LimitedController.local")
+                .tag("reason", "local").counter().count());
+
+        intercept.afterCompletion(first, new MockHttpServletResponse(), handler, null);
+        // 重复调用不会多归还
+        intercept.afterCompletion(first, new MockHttpServletResponse(), handler, null);
+        assertEquals(1, meterRegistry.get("request.concurrency.inflight").gauge().value());
+        assertTrue(intercept.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), handler));
+    }
+
+    @Test
+    void unannotatedHandlerIsNotLimited() throws Exception {
+        ConcurrencyLimitIntercept intercept = intercept(null, new SimpleMeterRegistry());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(intercept.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(),
+                    handler("plain")));
+        }
+        assertTrue(intercept.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), new Object()));
+    }
+
+    @Test
+    void globalLimitRequiresRedisson() throws Exception {
+        ConcurrencyLimitIntercept intercept = intercept(null, new SimpleMeterRegistry());
+        assertThrows(IllegalStateException.class, () -> intercept.preHandle(new MockHttpServletRequest(),
+                new MockHttpServletResponse(), handler("global")));
+    }
+
+    @Test
+    void sharesGlobalLimitThroughRedissonSemaphore() throws Exception {
+        RedisServer redisServer = EmbeddedRedisSupport.start();
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + EmbeddedRedisSupport.port(redisServer));
+        RedissonClient redissonClient = Redisson.create(config);
+        try {
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            // 两个节点各自的本地上限是5，共用的全局上限是2
+            ConcurrencyLimitIntercept node1 = intercept(redissonClient, meterRegistry);
+            ConcurrencyLimitIntercept node2 = intercept(redissonClient, new SimpleMeterRegistry());
+            HandlerMethod handler = handler("global");
+
+            MockHttpServletRequest first = new MockHttpServletRequest();
+            MockHttpServletRequest second = new MockHttpServletRequest();
+            assertTrue(node1.preHandle(first, new MockHttpServletResponse(), handler));
+            assertTrue(node2.preHandle(second, new MockHttpServletResponse(), handler));
+            assertFalse(node1.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), handler));
+            assertEquals(1, meterRegistry.get("request.concurrency.rejected").tag("reason", "global")
+                    .counter().count());
+
+            // 许可异步归还
+            node2.afterCompletion(second, new MockHttpServletResponse(), handler, null);
+            String semaphore = "request:concurrency:LimitedController.global";
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (redissonClient.getPermitExpirableSemaphore(semaphore).availablePermits() == 0
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            MockHttpServletRequest third = new MockHttpServletRequest();
+            assertTrue(node1.preHandle(third, new MockHttpServletResponse(), handler));
+
+            node1.afterCompletion(first, new MockHttpServletResponse(), handler, null);
+            node1.afterCompletion(third, new MockHttpServletResponse(), handler, null);
+        } finally {
+            redissonClient.shutdown();
+            EmbeddedRedisSupport.stop(redisServer);
+        }
+    }
+
+    @Test
+    void slowRedisFallsBackToLocalLimitWithinBudget() throws Exception {
+        RedisServer redisServer = EmbeddedRedisSupport.start();
+        LatencyProxy proxy = new LatencyProxy(EmbeddedRedisSupport.port(redisServer), 0);
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + proxy.port());
+        RedissonClient redissonClient = Redisson.create(config);
+        LimitFallbackProperties properties = new LimitFallbackProperties();
+        properties.setBudget(Duration.ofMillis(100));
+        properties.setFailureThreshold(2);
+        properties.setOpenDuration(Duration.ofSeconds(10));
+        properties.setThreads(0);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        LimitFallback fallback = new LimitFallback(properties, new LocalRateLimiter(), meterRegistry);
+        try {
+            ConcurrencyLimitIntercept intercept = intercept(redissonClient, meterRegistry, fallback);
+            HandlerMethod handler = handler("global");
+            String semaphore = "request:concurrency:LimitedController.global";
+            assertTrue(intercept.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), handler));
+            assertEquals(1, redissonClient.getPermitExpirableSemaphore(semaphore).availablePermits());
+
+            // 每个方向300ms，获取许可在预算内放弃，只按本地上限放行，连续两次失败后熔断
+            proxy.setDelayMicros(TimeUnit.MILLISECONDS.toMicros(300));
+            for (int i = 0; i < 3; i++) {
+                long start = System.nanoTime();
+                assertTrue(intercept.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), handler));
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertTrue(millis < 250, "latency: " + millis + "ms");
+            }
+            assertEquals(LimiterCircuitBreaker.State.OPEN, fallback.getBreaker().getState());
+            assertEquals(2, meterRegistry.get("request.limit.fallback").tag("reason", "error").counter().count());
+            assertEquals(1, meterRegistry.get("request.limit.fallback").tag("reason", "open").counter().count());
+
+            // 放弃等待后获取到的许可被归还，不等租约到期
+            proxy.setDelayMicros(0);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (redissonClient.getPermitExpirableSemaphore(semaphore).availablePermits() != 1
+                    && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, redissonClient.getPermitExpirableSemaphore(semaphore).availablePermits());
+        } finally {
+            fallback.destroy();
+            redissonClient.shutdown();
+            proxy.close();
+            EmbeddedRedisSupport.stop(redisServer);
+        }
+    }
+
+    private static ConcurrencyLimitIntercept intercept(RedissonClient redissonClient, SimpleMeterRegistry meterRegistry)
+            throws Exception {
+        return intercept(redissonClient, meterRegistry, null);
+    }
+
+    private static ConcurrencyLimitIntercept intercept(RedissonClient redissonClient, SimpleMeterRegistry meterRegistry,
+                                                       LimitFallback fallback) throws Exception {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        if (redissonClient != null) {
+            beanFactory.registerSingleton("redisson", redissonClient);
+        }
+        ConcurrencyLimitRegistry registry = new ConcurrencyLimitRegistry(
+                beanFactory.getBeanProvider(RedissonClient.class), meterRegistry, fallback);
+        return new ConcurrencyLimitIntercept(registry, new ObjectMapper());
+    }
+
+    private static HandlerMethod handler(String method) throws Exception {
+        return new HandlerMethod(new LimitedController(), LimitedController.class.getMethod(method));
+    }
+
+    public static class LimitedController {
+        @ConcurrencyLimit(initialLimit = 2, minLimit = 1, maxLimit = 2)
+        public String local() {
+            return "local";
+        }
+
+        @ConcurrencyLimit(initialLimit = 5, maxLimit = 5, globalLimit = 2, leaseMillis = 5_000)
+        public String global() {
+            return "global";
+        }
+
+        public String plain() {
+            return "plain";
+        }
+    }
+}
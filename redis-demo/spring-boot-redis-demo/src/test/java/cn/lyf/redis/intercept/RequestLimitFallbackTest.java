@@ -0,0 +1,311 @@
+package cn.lyf.redis.intercept;
+
+import cn.lyf.redis.anno.RequestLimit;
+import cn.lyf.redis.config.LimitFallbackProperties;
+import cn.lyf.redis.limit.*;
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import cn.lyf.redis.support.LatencyProxy;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static cn.lyf.redis.common.CommonConstant.HEADER_LIMIT_REMAINING;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * redis前面加一个可调延迟的代理，验证出现慢请求后限流判断的耗时不超过延迟预算，熔断期间按每个节点的份额本地限流，
+ * redis恢复后由半开探测恢复正常；健康时高并发不会触发熔断
+ */
+class RequestLimitFallbackTest {
+    private static final long BUDGET_MILLIS = 50;
+    private static final long OPEN_MILLIS = 300;
+
+    private RedisServer redisServer;
+    private LatencyProxy proxy;
+    private LettuceConnectionFactory connectionFactory;
+    private RedisTemplate<String, Serializable> redisTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private LimitFallback fallback;
+
+    @BeforeEach
+    void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        proxy = new LatencyProxy(EmbeddedRedisSupport.port(redisServer), 0);
+        // 与limitConnectionFactory一致，命令超时等于预算
+        connectionFactory = EmbeddedRedisSupport.limitConnectionFactory(proxy.port(), Duration.ofMillis(BUDGET_MILLIS));
+        redisTemplate = EmbeddedRedisSupport.jsonRedisTemplate(connectionFactory);
+        LimitFallbackProperties properties = new LimitFallbackProperties();
+        properties.setBudget(Duration.ofMillis(BUDGET_MILLIS));
+        properties.setFailureThreshold(3);
+        properties.setOpenDuration(Duration.ofMillis(OPEN_MILLIS));
+        properties.setNodes(2);
+        properties.setThreads(4);
+        meterRegistry = new SimpleMeterRegistry();
+        fallback = new LimitFallback(properties, new LocalRateLimiter(), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        fallback.destroy();
+        connectionFactory.destroy();
+        proxy.close();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @Test
+    void slowRedisFallsBackWithinBudgetAndRecovers() throws Exception {
+        RedisCounterLimiter limiter = new RedisCounterLimiter(redisTemplate);
+        // 冷启动时第一次建立连接、执行脚本可能超过预算，先直接执行几次，避免第一次判断就被计为变慢
+        for (int i = 0; i < 3; i++) {
+            try {
+                limiter.tryAcquire("request:limit:warmup", 10, 60);
+            } catch (RuntimeException e) {
+                // 重试
+            }
+        }
+        RequestLimitIntercept intercept = intercept(limiter);
+        HandlerMethod handler = handler("limited");
+
+        assertTrue(intercept.preHandle(request(), new MockHttpServletResponse(), handler));
+        assertEquals(LimiterCircuitBreaker.State.CLOSED, fallback.getBreaker().getState());
+        assertEquals(1, ((Number) redisTemplate.opsForValue().get("request:limit:{/goods/test:10.0.0.1}")).intValue());
+
+        // 每个方向200ms，一次脚本往返400ms，远超预算
+        proxy.setDelayMicros(TimeUnit.MILLISECONDS.toMicros(200));
+        // 健康时在请求线程执行，命令超时等于预算，第一次慢请求也在预算内按出错降级，计为一次失败
+        long firstStart = System.nanoTime();
+        int allowed = intercept.preHandle(request(), new MockHttpServletResponse(), handler) ? 1 : 0;
+        long firstMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - firstStart);
+        assertTrue(firstMillis < BUDGET_MILLIS + 100, "first latency: " + firstMillis + "ms");
+        assertEquals(LimiterCircuitBreaker.State.CLOSED, fallback.getBreaker().getState());
+        assertFalse(fallback.getBreaker().isHealthy());
+        assertEquals(1, fallbackCount("error"));
+
+        // 之后在线程池中限时等待，等待超时和命令超时几乎同时发生，两种原因都可能出现
+        long maxNanos = 0;
+        for (int i = 0; i < 19; i++) {
+            long start = System.nanoTime();
+            if (intercept.preHandle(request(), new MockHttpServletResponse(), handler)) {
+                allowed++;
+            }
+            maxNanos = Math.max(maxNanos, System.nanoTime() - start);
+        }
+        long maxMillis = TimeUnit.NANOSECONDS.toMillis(maxNanos);
+        assertTrue(maxMillis < BUDGET_MILLIS + 100, "max latency: " + maxMillis + "ms");
+        assertEquals(LimiterCircuitBreaker.State.OPEN, fallback.getBreaker().getState());
+        // maxCount = 10，两个节点，每个节点本地放行5次
+        assertEquals(5, allowed);
+        assertEquals(3, fallbackCount("timeout") + fallbackCount("error"));
+        assertEquals(17, fallbackCount("open"));
+
+        // redis仍然很慢时，半开的探测请求超时，重新打开
+        TimeUnit.MILLISECONDS.sleep(OPEN_MILLIS + 50);
+        intercept.preHandle(request(), new MockHttpServletResponse(), handler);
+        assertEquals(LimiterCircuitBreaker.State.OPEN, fallback.getBreaker().getState());
+        assertEquals(4, fallbackCount("timeout") + fallbackCount("error"));
+
+        // redis恢复后，探测成功，之后的请求重新由redis计数
+        proxy.setDelayMicros(0);
+        TimeUnit.MILLISECONDS.sleep(OPEN_MILLIS + 50);
+        intercept.preHandle(request(), new MockHttpServletResponse(), handler);
+        assertEquals(LimiterCircuitBreaker.State.CLOSED, fallback.getBreaker().getState());
+        assertEquals(0, meterRegistry.get("request.limit.breaker").gauge().value());
+    }
+
+    @Test
+    void redisErrorsFailOpenToLocalShare() throws Exception {
+        RateLimiter failing = new RateLimiter() {
+            @Override
+            public boolean supports(RequestLimit requestLimit) {
+                return true;
+            }
+
+            @Override
+            public LimitResult tryAcquire(String key, LimitPolicy policy) {
+                throw new IllegalStateException("redis down");
+            }
+        };
+        RequestLimitIntercept intercept = intercept(failing);
+        HandlerMethod handler = handler("limited");
+        int allowed = 0;
+        for (int i = 0; i < 8; i++) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            if (intercept.preHandle(request(), response, handler)) {
+                allowed++;
+            }
+            assertNotNull(response.getHeader(HEADER_LIMIT_REMAINING));
+        }
+        assertEquals(5, allowed);
+        assertEquals(3, fallbackCount("error"));
+        assertEquals(5, fallbackCount("open"));
+    }
+
+    @Test
+    void concurrencyAloneDoesNotTripBreaker() throws Exception {
+        // 线程池只有4个线程，健康时在请求线程执行，64个并发调用者不会因为线程池已满而降级或熔断；
+        // 预算放宽到1秒，避免调度延迟让1ms的判断超过预算
+        fallback.destroy();
+        LimitFallbackProperties properties = new LimitFallbackProperties();
+        properties.setBudget(Duration.ofSeconds(1));
+        properties.setFailureThreshold(3);
+        properties.setOpenDuration(Duration.ofMillis(OPEN_MILLIS));
+        properties.setThreads(4);
+        fallback = new LimitFallback(properties, new LocalRateLimiter(), meterRegistry);
+        RateLimiter healthy = new RateLimiter() {
+            @Override
+            public boolean supports(RequestLimit requestLimit) {
+                return true;
+            }
+
+            @Override
+            public LimitResult tryAcquire(String key, LimitPolicy policy) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new LimitResult(true, 1, 0);
+            }
+        };
+        RequestLimitIntercept intercept = intercept(healthy);
+        HandlerMethod handler = handler("limited");
+        ExecutorService callers = Executors.newFixedThreadPool(64);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                futures.add(callers.submit(() -> {
+                    start.await();
+                    int allowed = 0;
+                    for (int j = 0; j < 200; j++) {
+                        if (intercept.preHandle(request(), new MockHttpServletResponse(), handler)) {
+                            allowed++;
+                        }
+                    }
+                    return allowed;
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> future : futures) {
+                assertEquals(200, future.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(LimiterCircuitBreaker.State.CLOSED, fallback.getBreaker().getState());
+        assertNull(meterRegistry.find("request.limit.fallback").counter());
+    }
+
+    @Test
+    void withoutPoolSlowCallsRunOnCallerThreadAndTripBreaker() throws Exception {
+        fallback.destroy();
+        LimitFallbackProperties properties = new LimitFallbackProperties();
+        properties.setBudget(Duration.ofMillis(BUDGET_MILLIS));
+        properties.setFailureThreshold(3);
+        properties.setOpenDuration(Duration.ofMillis(OPEN_MILLIS));
+        properties.setThreads(0);
+        fallback = new LimitFallback(properties, new LocalRateLimiter(), meterRegistry);
+
+        Thread caller = Thread.currentThread();
+        RateLimiter slow = new RateLimiter() {
+            @Override
+            public boolean supports(RequestLimit requestLimit) {
+                return true;
+            }
+
+            @Override
+            public LimitResult tryAcquire(String key, LimitPolicy policy) {
+                assertSame(caller, Thread.currentThread());
+                try {
+                    TimeUnit.MILLISECONDS.sleep(BUDGET_MILLIS + 20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new LimitResult(true, 1, 0);
+            }
+        };
+        RequestLimitIntercept intercept = intercept(slow);
+        HandlerMethod handler = handler("limited");
+        // 没有线程池时慢请求的结果照常采用，连续3次后熔断
+        for (int i = 0; i < 3; i++) {
+            assertTrue(intercept.preHandle(request(), new MockHttpServletResponse(), handler));
+        }
+        assertEquals(LimiterCircuitBreaker.State.OPEN, fallback.getBreaker().getState());
+        intercept.preHandle(request(), new MockHttpServletResponse(), handler);
+        assertEquals(1, fallbackCount("open"));
+    }
+
+    @Test
+    void disabledFallbackCallsRedisDirectly() {
+        fallback.destroy();
+        LimitFallbackProperties properties = new LimitFallbackProperties();
+        properties.setEnabled(false);
+        fallback = new LimitFallback(properties, new LocalRateLimiter(), meterRegistry);
+
+        // 关闭时不经过熔断器，出错直接抛出
+        for (int i = 0; i < 10; i++) {
+            assertThrows(IllegalStateException.class, () -> fallback.tryAcquire("k", LimitPolicy.NONE,
+                    () -> {
+                        throw new IllegalStateException("redis down");
+                    }));
+        }
+        assertEquals(LimiterCircuitBreaker.State.CLOSED, fallback.getBreaker().getState());
+        assertNull(meterRegistry.find("request.limit.fallback").counter());
+    }
+
+    @Test
+    void localBackendIsNotWrapped() throws Exception {
+        RequestLimitIntercept intercept = intercept(new LocalRateLimiter());
+        assertTrue(intercept.preHandle(request(), new MockHttpServletResponse(), handler("local")));
+        assertNull(meterRegistry.find("request.limit.fallback").counter());
+    }
+
+    private RequestLimitIntercept intercept(RateLimiter limiter) {
+        LimitPolicyRegistry registry = new LimitPolicyRegistry(Collections.singletonList(limiter), LimitBackend.REDIS, fallback);
+        return new RequestLimitIntercept(new ObjectMapper(), registry, new LimitMetrics(meterRegistry));
+    }
+
+    private double fallbackCount(String reason) {
+        Counter counter = meterRegistry.find("request.limit.fallback").tag("reason", reason).counter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    private static MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/goods/test");
+        request.setServletPath("/goods/test");
+        request.setRemoteAddr("10.0.0.1");
+        return request;
+    }
+
+    private static HandlerMethod handler(String method) throws Exception {
+        return new HandlerMethod(new LimitedController(), LimitedController.class.getMethod(method));
+    }
+
+    public static class LimitedController {
+        @RequestLimit(maxCount = 10, second = 60)
+        public String limited() {
+            return "limited";
+        }
+
+        @RequestLimit(maxCount = 10, second = 60, backend = LimitBackend.LOCAL)
+        public String local() {
+            return "local";
+        }
+    }
+}
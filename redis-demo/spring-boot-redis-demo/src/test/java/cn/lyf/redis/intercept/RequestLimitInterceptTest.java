@@ -0,0 +1,125 @@
+package cn.lyf.redis.intercept;
+
+import cn.lyf.redis.anno.RequestLimit;
+import cn.lyf.redis.common.StatusCode;
+import cn.lyf.redis.limit.LimitAlgorithm;
+import cn.lyf.redis.limit.LimitMetrics;
+import cn.lyf.redis.limit.LimitPolicy;
+import cn.lyf.redis.limit.LimitPolicyRegistry;
+import cn.lyf.redis.limit.LimitResult;
+import cn.lyf.redis.limit.RateLimiter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static cn.lyf.redis.common.CommonConstant.HEADER_LIMIT_REMAINING;
+import static cn.lyf.redis.common.CommonConstant.HEADER_RETRY_AFTER;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestLimitInterceptTest {
+    private final List<String> keys = new ArrayList<>();
+    private SimpleMeterRegistry meterRegistry;
+    private RequestLimitIntercept intercept;
+
+    @BeforeEach
+    void setUp() {
+        // 每个key只放行一次的限流器，记录收到的key
+        RateLimiter limiter = new RateLimiter() {
+            @Override
+            public boolean supports(RequestLimit requestLimit) {
+                return true;
+            }
+
+            @Override
+            public LimitResult tryAcquire(String key, LimitPolicy policy) {
+                boolean allowed = !keys.contains(key);
+                keys.add(key);
+                return new LimitResult(allowed, allowed ? policy.getMaxCount() - 1 : 0, 1_500);
+            }
+        };
+        meterRegistry = new SimpleMeterRegistry();
+        intercept = new RequestLimitIntercept(new ObjectMapper(),
+                new LimitPolicyRegistry(Collections.singletonList(limiter)), new LimitMetrics(meterRegistry));
+    }
+
+    @Test
+    void unannotatedHandlerSkipsLimiter() throws Exception {
+        assertTrue(intercept.preHandle(request("/plain", "127.0.0.1"), new MockHttpServletResponse(),
+                handler(LimitedController.class, "plain")));
+        assertTrue(intercept.preHandle(request("/plain", "127.0.0.1"), new MockHttpServletResponse(),
+                new Object()));
+        assertTrue(keys.isEmpty());
+    }
+
+    @Test
+    void rejectsWithRequestLimitResult() throws Exception {
+        HandlerMethod handler = handler(LimitedController.class, "limited");
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        assertTrue(intercept.preHandle(request("/goods/test", "0:0:0:0:0:0:0:1"), first, handler));
+        assertEquals("4", first.getHeader(HEADER_LIMIT_REMAINING));
+        assertEquals("request:limit:sw:{/goods/test:0-0-0-0-0-0-0-1}", keys.get(0));
+
+        MockHttpServletResponse second = new MockHttpServletResponse();
+        assertFalse(intercept.preHandle(request("/goods/test", "0:0:0:0:0:0:0:1"), second, handler));
+        assertEquals("2", second.getHeader(HEADER_RETRY_AFTER));
+        assertTrue(second.getContentAsString().contains(String.valueOf(StatusCode.REQUEST_LIMIT.code())));
+
+        assertEquals(1, meterRegistry.get("request.limit").tag("route", "LimitedController.limited")
+                .tag("result", "allowed").timer().count());
+        assertEquals(1, meterRegistry.get("request.limit").tag("route", "LimitedController.limited")
+                .tag("result", "rejected").timer().count());
+    }
+
+    @Test
+    void classLevelAnnotationApplies() throws Exception {
+        assertTrue(intercept.preHandle(request("/class", "10.0.0.1"), new MockHttpServletResponse(),
+                handler(ClassLimitedController.class, "any")));
+        assertEquals("request:limit:{/class:10.0.0.1}", keys.get(0));
+    }
+
+    @Test
+    void doesNotCreateSession() throws Exception {
+        MockHttpServletRequest request = request("/goods/test", "");
+        assertTrue(intercept.preHandle(request, new MockHttpServletResponse(),
+                handler(LimitedController.class, "limited")));
+        assertNull(request.getSession(false));
+        assertEquals("request:limit:sw:{/goods/test:anonymous}", keys.get(0));
+    }
+
+    private static MockHttpServletRequest request(String path, String remoteAddr) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setServletPath(path);
+        request.setRemoteAddr(remoteAddr);
+        return request;
+    }
+
+    private static HandlerMethod handler(Class<?> type, String method) throws Exception {
+        return new HandlerMethod(type.getDeclaredConstructor().newInstance(), type.getMethod(method));
+    }
+
+    public static class LimitedController {
+        @RequestLimit(maxCount = 5, algorithm = LimitAlgorithm.SLIDING_WINDOW)
+        public String limited() {
+            return "limited";
+        }
+
+        public String plain() {
+            return "plain";
+        }
+    }
+
+    @RequestLimit
+    public static class ClassLimitedController {
+        public String any() {
+            return "any";
+        }
+    }
+}
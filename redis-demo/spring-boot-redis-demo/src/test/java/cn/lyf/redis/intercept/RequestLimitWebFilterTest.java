@@ -0,0 +1,113 @@
+package cn.lyf.redis.intercept;
+
+import cn.lyf.redis.common.StatusCode;
+import cn.lyf.redis.controller.GoodsController;
+import cn.lyf.redis.limit.*;
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.config.EnableWebFlux;
+import org.springframework.web.reactive.result.method.annotation.RequestMappingHandlerMapping;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import static cn.lyf.redis.common.CommonConstant.HEADER_LIMIT_REMAINING;
+import static cn.lyf.redis.common.CommonConstant.HEADER_RETRY_AFTER;
+
+class RequestLimitWebFilterTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory jedisConnectionFactory;
+    private static LettuceConnectionFactory lettuceConnectionFactory;
+    private static AnnotationConfigApplicationContext context;
+    private static WebTestClient client;
+
+    @BeforeAll
+    static void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        int port = EmbeddedRedisSupport.port(redisServer);
+        jedisConnectionFactory = EmbeddedRedisSupport.connectionFactory(port, 8);
+        lettuceConnectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        lettuceConnectionFactory.afterPropertiesSet();
+
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(TestConfig.class);
+        context.refresh();
+        client = WebTestClient.bindToApplicationContext(context).build();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+        lettuceConnectionFactory.destroy();
+        jedisConnectionFactory.destroy();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @Test
+    void rejectsWithSameResponseAsInterceptor() {
+        // /goods/test: 1秒内只允许1次
+        client.get().uri("/goods/test").exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HEADER_LIMIT_REMAINING, "0")
+                .expectBody().jsonPath("$.data").isEqualTo("请求成功");
+        client.get().uri("/goods/test").exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HEADER_RETRY_AFTER, "1")
+                .expectBody().jsonPath("$.code").isEqualTo(StatusCode.REQUEST_LIMIT.code());
+    }
+
+    @Test
+    void usesAlgorithmOfAnnotation() {
+        // /goods/findAll: 滑动窗口，10秒内5次
+        for (int i = 4; i >= 0; i--) {
+            client.get().uri("/goods/findAll").exchange()
+                    .expectHeader().valueEquals(HEADER_LIMIT_REMAINING, String.valueOf(i))
+                    .expectBody(String.class).isEqualTo("商品获取成功");
+        }
+        client.get().uri("/goods/findAll").exchange()
+                .expectHeader().exists(HEADER_RETRY_AFTER);
+    }
+
+    /**
+     * 不加@Configuration，避免被应用的组件扫描到
+     */
+    @EnableWebFlux
+    static class TestConfig {
+        @Bean
+        GoodsController goodsController() {
+            return new GoodsController();
+        }
+
+        @Bean
+        LimitPolicyRegistry limitPolicyRegistry() {
+            RedisTemplate<String, Serializable> redisTemplate = EmbeddedRedisSupport.jsonRedisTemplate(jedisConnectionFactory);
+            return new LimitPolicyRegistry(Arrays.asList(new RedisCounterLimiter(redisTemplate),
+                    new SlidingWindowLimiter(redisTemplate), new TokenBucketLimiter(redisTemplate)));
+        }
+
+        @Bean
+        ReactiveRateLimiter reactiveRateLimiter() {
+            return new ReactiveRateLimiter(lettuceConnectionFactory);
+        }
+
+        @Bean
+        RequestLimitWebFilter requestLimitWebFilter(
+                RequestMappingHandlerMapping handlerMapping,
+                LimitPolicyRegistry limitPolicyRegistry, ReactiveRateLimiter rateLimiter) throws Exception {
+            return new RequestLimitWebFilter(handlerMapping, limitPolicyRegistry, rateLimiter,
+                    new LimitMetrics(new SimpleMeterRegistry()), new ObjectMapper());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package cn.lyf.redis.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GradientLimitTest {
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    void growsToMaxWhenSaturatedWithSteadyLatency() {
+        GradientLimit limit = new GradientLimit(10, 1, 50, 1.5);
+        for (int i = 0; i < 100; i++) {
+            window(limit, RTT, limit.getLimit());
+        }
+        assertEquals(50, limit.getLimit());
+    }
+
+    @Test
+    void shrinksWhenLatencyRises() {
+        GradientLimit limit = new GradientLimit(40, 5, 50, 1.5);
+        for (int i = 0; i < 5; i++) {
+            window(limit, RTT, limit.getLimit());
+        }
+        int before = limit.getLimit();
+        for (int i = 0; i < 10; i++) {
+            window(limit, RTT * 5, limit.getLimit());
+        }
+        // 长期耗时逐渐追上新的耗时，下降会放缓
+        assertTrue(limit.getLimit() < before * 0.7, "before: " + before + ", after: " + limit.getLimit());
+        assertTrue(limit.getLimit() >= 5);
+    }
+
+    @Test
+    void unchangedWhenUnderUtilized() {
+        GradientLimit limit = new GradientLimit(20, 1, 200, 1.5);
+        for (int i = 0; i < 50; i++) {
+            window(limit, RTT, 3);
+        }
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    void rejectsInvalidBounds() {
+        assertThrows(IllegalArgumentException.class, () -> new GradientLimit(10, 20, 30, 1.5));
+        assertThrows(IllegalArgumentException.class, () -> new GradientLimit(10, 1, 5, 1.5));
+        assertThrows(IllegalArgumentException.class, () -> new GradientLimit(10, 1, 20, 0.5));
+    }
+
+    private static void window(GradientLimit limit, long rttNanos, int inflight) {
+        for (int i = 0; i < GradientLimit.WINDOW_SAMPLES; i++) {
+            limit.onSample(rttNanos, inflight);
+        }
+    }
+}
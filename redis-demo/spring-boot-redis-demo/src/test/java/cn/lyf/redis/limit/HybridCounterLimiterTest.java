@@ -0,0 +1,114 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HybridCounterLimiterTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory connectionFactory;
+    private static RedisTemplate<String, Serializable> redisTemplate;
+
+    @BeforeAll
+    static void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        connectionFactory = EmbeddedRedisSupport.connectionFactory(EmbeddedRedisSupport.port(redisServer), 64);
+        redisTemplate = EmbeddedRedisSupport.jsonRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        connectionFactory.destroy();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @Test
+    void leaseSizeFollowsMaxError() {
+        assertEquals(10, HybridCounterLimiter.leaseSize(100, 0.1));
+        assertEquals(1, HybridCounterLimiter.leaseSize(5, 0.1));
+        assertEquals(1, HybridCounterLimiter.leaseSize(100, 0));
+    }
+
+    @Test
+    void nodesNeverAdmitMoreThanLimit() throws InterruptedException {
+        // 两个实例模拟两个节点，共享同一个redis计数
+        HybridCounterLimiter[] nodes = {new HybridCounterLimiter(redisTemplate), new HybridCounterLimiter(redisTemplate)};
+        int threads = 32;
+        int requestsPerThread = 500;
+        int maxCount = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicInteger allowed = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            HybridCounterLimiter node = nodes[i % nodes.length];
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        if (node.tryAcquire("test:hybrid:nodes", maxCount, 60, 0.05).isAllowed()) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        // 预占的额度不会超过总量，所有额度最终都被两个节点用完
+        assertEquals(maxCount, allowed.get());
+    }
+
+    @Test
+    void mostDecisionsAreLocal() {
+        HybridCounterLimiter limiter = new HybridCounterLimiter(redisTemplate);
+        limiter.afterPropertiesSet();
+        long before = scriptCalls();
+        for (int i = 0; i < 1000; i++) {
+            LimitResult result = limiter.tryAcquire("test:hybrid:local", 10_000, 60, 0.1);
+            assertTrue(result.isAllowed());
+            // 自己的分段用完后借用其它分段，剩余额度按所有分段合计
+            assertEquals(999 - i, result.getRemaining());
+        }
+        // 每次预占1000个额度，1000次请求只需一次脚本调用
+        assertEquals(1, scriptCalls() - before);
+    }
+
+    @Test
+    void rejectsLocallyUntilWindowEnds() throws InterruptedException {
+        HybridCounterLimiter limiter = new HybridCounterLimiter(redisTemplate);
+        limiter.afterPropertiesSet();
+        assertTrue(limiter.tryAcquire("test:hybrid:reset", 2, 1, 0.5).isAllowed());
+        assertTrue(limiter.tryAcquire("test:hybrid:reset", 2, 1, 0.5).isAllowed());
+        long before = scriptCalls();
+        assertFalse(limiter.tryAcquire("test:hybrid:reset", 2, 1, 0.5).isAllowed());
+        assertFalse(limiter.tryAcquire("test:hybrid:reset", 2, 1, 0.5).isAllowed());
+        // 第一次拒绝时续约失败，之后的拒绝都在本地完成
+        assertEquals(1, scriptCalls() - before);
+        TimeUnit.MILLISECONDS.sleep(1_100);
+        assertTrue(limiter.tryAcquire("test:hybrid:reset", 2, 1, 0.5).isAllowed());
+    }
+
+    private static long scriptCalls() {
+        return EmbeddedRedisSupport.commandCalls(redisTemplate, "evalsha", "eval");
+    }
+}
@@ -0,0 +1,27 @@
+package cn.lyf.redis.limit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LimitKeysTest {
+
+    @Test
+    void clientKeysOfAllAlgorithmsShareSlot() {
+        String counter = LimitKeys.clientKey(LimitAlgorithm.FIXED_WINDOW.keyPrefix(), "/goods/test", "0:0:0:0:0:0:0:1");
+        String bucket = LimitKeys.clientKey(LimitAlgorithm.TOKEN_BUCKET.keyPrefix(), "/goods/test", "0:0:0:0:0:0:0:1");
+        assertEquals("request:limit:{/goods/test:0-0-0-0-0-0-0-1}", counter);
+        assertEquals(LimitKeys.slot(counter), LimitKeys.slot(bucket));
+        assertEquals(LimitKeys.slot(counter), LimitKeys.slot(counter + ":lease"));
+    }
+
+    @Test
+    void shardKeysAreSpreadOverSlotSpace() {
+        String[] keys = LimitKeys.shardKeys("request:limit:", "GoodsController.testLimit", 12);
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(i, LimitKeys.slot(keys[i]) * keys.length / LimitKeys.SLOT_COUNT, keys[i]);
+        }
+        // 相同的接口得到相同的key
+        assertArrayEquals(keys, LimitKeys.shardKeys("request:limit:", "GoodsController.testLimit", 12));
+    }
+}
@@ -0,0 +1,116 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.anno.RequestLimit;
+import cn.lyf.redis.config.LimitFallbackProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.method.HandlerMethod;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LimitPolicyRegistryTest {
+    private final RedisCounterLimiter redis = new RedisCounterLimiter(null);
+    private final RedissonRateLimiter redisson = new RedissonRateLimiter(null);
+    private final LocalRateLimiter local = new LocalRateLimiter();
+    private final List<RateLimiter> limiters = Arrays.asList(redis, redisson, local);
+
+    @Test
+    void annotationBackendOverridesDefault() throws NoSuchMethodException {
+        LimitPolicyRegistry registry = new LimitPolicyRegistry(limiters, LimitBackend.REDIS);
+
+        LimitPolicy byDefault = registry.getPolicy(handlerMethod("byDefault"));
+        assertSame(redis, byDefault.getLimiter());
+        assertEquals(LimitBackend.REDIS, byDefault.getBackend());
+        assertEquals("request:limit:", byDefault.getKeyPrefix());
+
+        LimitPolicy local = registry.getPolicy(handlerMethod("local"));
+        assertSame(this.local, local.getLimiter());
+        assertEquals("request:limit:tb:", local.getKeyPrefix());
+
+        LimitPolicy redisson = registry.getPolicy(handlerMethod("redisson"));
+        assertSame(this.redisson, redisson.getLimiter());
+        assertEquals("request:limit:rrl:", redisson.getKeyPrefix());
+    }
+
+    @Test
+    void configuredDefaultBackend() throws NoSuchMethodException {
+        LimitPolicyRegistry registry = new LimitPolicyRegistry(limiters, LimitBackend.LOCAL);
+        assertSame(local, registry.getPolicy(handlerMethod("byDefault")).getLimiter());
+        assertSame(redisson, registry.getPolicy(handlerMethod("redisson")).getLimiter());
+
+        assertThrows(IllegalArgumentException.class, () -> new LimitPolicyRegistry(limiters, LimitBackend.DEFAULT));
+    }
+
+    @Test
+    void shardedGlobalPolicySplitsQuota() throws NoSuchMethodException {
+        LimitPolicyRegistry registry = new LimitPolicyRegistry(limiters, LimitBackend.REDIS);
+        LimitPolicy policy = registry.getPolicy(handlerMethod("sharded"));
+        assertTrue(policy.isGlobal());
+        assertEquals("request:limit:global:{Handlers.sharded}", policy.getGlobalKey());
+        assertEquals(policy.getGlobalKey(), policy.limitKey("/any", "10.0.0.1"));
+
+        int total = 0;
+        Set<Integer> segments = new HashSet<>();
+        for (int i = 0; i < policy.getShards(); i++) {
+            total += policy.shardPolicy(i).getMaxCount();
+            segments.add(LimitKeys.slot(policy.shardKey(i)) * policy.getShards() / LimitKeys.SLOT_COUNT);
+        }
+        assertEquals(10, total);
+        assertEquals(3, policy.shardPolicy(0).getMaxCount());
+        assertEquals(2, policy.shardPolicy(3).getMaxCount());
+        // 每个分片落在slot空间的不同区间
+        assertEquals(4, segments.size());
+
+        assertThrows(IllegalStateException.class, () -> registry.getPolicy(handlerMethod("shardedPerClient")));
+    }
+
+    @Test
+    void hybridLimiterIsNotWrappedByFallback() throws NoSuchMethodException {
+        LimitFallback fallback = new LimitFallback(new LimitFallbackProperties(), local, new SimpleMeterRegistry());
+        try {
+            HybridCounterLimiter hybrid = new HybridCounterLimiter(null, fallback);
+            LimitPolicyRegistry registry = new LimitPolicyRegistry(Arrays.asList(hybrid, redis, redisson, local),
+                    LimitBackend.REDIS, fallback);
+            // 两级限流只在续约时访问redis，由它自己经过LimitFallback
+            assertSame(hybrid, registry.getPolicy(handlerMethod("hybrid")).getLimiter());
+            assertTrue(registry.getPolicy(handlerMethod("byDefault")).getLimiter() instanceof FallbackRateLimiter);
+        } finally {
+            fallback.destroy();
+        }
+    }
+
+    private HandlerMethod handlerMethod(String name) throws NoSuchMethodException {
+        return new HandlerMethod(new Handlers(), Handlers.class.getMethod(name));
+    }
+
+    static class Handlers {
+        @RequestLimit(maxCount = 10)
+        public void byDefault() {
+        }
+
+        @RequestLimit(maxCount = 10, algorithm = LimitAlgorithm.TOKEN_BUCKET, backend = LimitBackend.LOCAL)
+        public void local() {
+        }
+
+        @RequestLimit(maxCount = 10, backend = LimitBackend.REDISSON)
+        public void redisson() {
+        }
+
+        @RequestLimit(maxCount = 10, global = true, shards = 4)
+        public void sharded() {
+        }
+
+        @RequestLimit(maxCount = 10, shards = 4)
+        public void shardedPerClient() {
+        }
+
+        @RequestLimit(maxCount = 10, hybrid = true)
+        public void hybrid() {
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package cn.lyf.redis.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalRateLimiterTest {
+    private final LocalRateLimiter limiter = new LocalRateLimiter();
+
+    @Test
+    void fixedWindowLimitsWithinWindow() {
+        for (int i = 2; i >= 0; i--) {
+            LimitResult result = limiter.tryAcquire("fw", LimitAlgorithm.FIXED_WINDOW, 3, 3600);
+            assertTrue(result.isAllowed());
+            assertEquals(i, result.getRemaining());
+        }
+        LimitResult limited = limiter.tryAcquire("fw", LimitAlgorithm.FIXED_WINDOW, 3, 3600);
+        assertFalse(limited.isAllowed());
+        assertTrue(limited.getTtlMillis() > 0 && limited.getTtlMillis() <= 3600_000);
+    }
+
+    @Test
+    void slidingWindowCountsPreviousWindow() throws InterruptedException {
+        // 等到一个1秒窗口的开始，前半个窗口用完额度
+        TimeUnit.MILLISECONDS.sleep(1000 - System.currentTimeMillis() % 1000 + 10);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire("sw", LimitAlgorithm.SLIDING_WINDOW, 4, 1).isAllowed());
+        }
+        assertFalse(limiter.tryAcquire("sw", LimitAlgorithm.SLIDING_WINDOW, 4, 1).isAllowed());
+
+        // 刚进入下一个窗口时上一个窗口的权重接近1，固定窗口在这里会放过4个请求
+        TimeUnit.MILLISECONDS.sleep(1000 - System.currentTimeMillis() % 1000 + 10);
+        assertFalse(limiter.tryAcquire("sw", LimitAlgorithm.SLIDING_WINDOW, 4, 1).isAllowed());
+    }
+
+    @Test
+    void tokenBucketBurstThenRefill() throws InterruptedException {
+        for (int i = 4; i >= 0; i--) {
+            LimitResult result = limiter.tryAcquire("tb", LimitAlgorithm.TOKEN_BUCKET, 5, 1);
+            assertTrue(result.isAllowed());
+            assertEquals(i, result.getRemaining());
+        }
+        LimitResult limited = limiter.tryAcquire("tb", LimitAlgorithm.TOKEN_BUCKET, 5, 1);
+        assertFalse(limited.isAllowed());
+        assertTrue(limited.getTtlMillis() > 0 && limited.getTtlMillis() <= 200);
+
+        TimeUnit.MILLISECONDS.sleep(limited.getTtlMillis() + 20);
+        assertTrue(limiter.tryAcquire("tb", LimitAlgorithm.TOKEN_BUCKET, 5, 1).isAllowed());
+        assertFalse(limiter.tryAcquire("tb", LimitAlgorithm.TOKEN_BUCKET, 5, 1).isAllowed());
+    }
+
+    @Test
+    void neverExceedsLimitUnderConcurrency() throws InterruptedException {
+        int threads = 16;
+        int requestsPerThread = 500;
+        int maxCount = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicInteger allowed = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        if (limiter.tryAcquire("concurrency", LimitAlgorithm.FIXED_WINDOW, maxCount, 3600).isAllowed()) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(maxCount, allowed.get());
+    }
+}
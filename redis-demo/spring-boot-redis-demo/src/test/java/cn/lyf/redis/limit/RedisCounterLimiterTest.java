@@ -0,0 +1,119 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.anno.RequestLimit;
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.web.method.HandlerMethod;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisCounterLimiterTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory connectionFactory;
+    private static RedisCounterLimiter limiter;
+
+    @BeforeAll
+    static void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        connectionFactory = EmbeddedRedisSupport.connectionFactory(EmbeddedRedisSupport.port(redisServer), 64);
+        RedisTemplate<String, Serializable> redisTemplate = EmbeddedRedisSupport.jsonRedisTemplate(connectionFactory);
+        limiter = new RedisCounterLimiter(redisTemplate);
+        limiter.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        connectionFactory.destroy();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @Test
+    void returnsRemainingAndTtl() {
+        LimitResult first = limiter.tryAcquire("test:remaining", 3, 10);
+        assertTrue(first.isAllowed());
+        assertEquals(2, first.getRemaining());
+        assertTrue(first.getTtlMillis() > 9_000 && first.getTtlMillis() <= 10_000);
+
+        limiter.tryAcquire("test:remaining", 3, 10);
+        LimitResult third = limiter.tryAcquire("test:remaining", 3, 10);
+        assertTrue(third.isAllowed());
+        assertEquals(0, third.getRemaining());
+
+        LimitResult fourth = limiter.tryAcquire("test:remaining", 3, 10);
+        assertFalse(fourth.isAllowed());
+        assertTrue(fourth.getTtlMillis() > 0);
+    }
+
+    @Test
+    void neverExceedsLimitUnderConcurrency() throws InterruptedException {
+        int threads = 64;
+        int requestsPerThread = 200;
+        int maxCount = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicInteger allowed = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        if (limiter.tryAcquire("test:concurrency", maxCount, 60).isAllowed()) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(maxCount, allowed.get());
+    }
+
+    @Test
+    void shardedGlobalLimitStaysWithinMaxCount() throws NoSuchMethodException {
+        LimitPolicyRegistry registry = new LimitPolicyRegistry(Collections.singletonList(limiter));
+        LimitPolicy policy = registry.getPolicy(new HandlerMethod(new Handlers(), Handlers.class.getMethod("sharded")));
+        int allowed = 0;
+        for (int i = 0; i < 1_000; i++) {
+            if (policy.tryAcquire(policy.getGlobalKey()).isAllowed()) {
+                allowed++;
+            }
+        }
+        // 额度之和等于maxCount；受限时再尝试一个分片，分片间不均匀造成的提前受限很少
+        assertTrue(allowed <= 200 && allowed >= 190, "allowed: " + allowed);
+    }
+
+    @Test
+    void windowResetsAfterTtl() throws InterruptedException {
+        assertTrue(limiter.tryAcquire("test:reset", 1, 1).isAllowed());
+        assertFalse(limiter.tryAcquire("test:reset", 1, 1).isAllowed());
+        TimeUnit.MILLISECONDS.sleep(1_100);
+        assertTrue(limiter.tryAcquire("test:reset", 1, 1).isAllowed());
+    }
+
+    static class Handlers {
+        @RequestLimit(maxCount = 200, second = 60, global = true, shards = 8)
+        public void sharded() {
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import cn.lyf.redis.support.LatencyProxy;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisTimeoutException;
+import org.redisson.config.Config;
+import redis.embedded.RedisServer;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedissonRateLimiterTest {
+    private static RedisServer redisServer;
+    private static RedissonClient redissonClient;
+    private static RedissonRateLimiter limiter;
+
+    @BeforeAll
+    static void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + EmbeddedRedisSupport.port(redisServer));
+        redissonClient = Redisson.create(config);
+        limiter = new RedissonRateLimiter(redissonClient);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        redissonClient.shutdown();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @Test
+    void limitsWithinWindowAndSetsExpire() {
+        for (int i = 2; i >= 0; i--) {
+            LimitResult result = limiter.tryAcquire("test:rrl:basic", 3, 10);
+            assertTrue(result.isAllowed());
+            assertEquals(i, result.getRemaining());
+        }
+        LimitResult limited = limiter.tryAcquire("test:rrl:basic", 3, 10);
+        assertFalse(limited.isAllowed());
+        assertEquals(10_000, limited.getTtlMillis());
+
+        // 限流器的配置带过期时间，不会在redis中永久保留
+        long ttl = redissonClient.getRateLimiter("test:rrl:basic").remainTimeToLive();
+        assertTrue(ttl > 0 && ttl <= 60_000, "ttl: " + ttl);
+    }
+
+    @Test
+    void slowRedisTimesOutWithinBudget() throws Exception {
+        try (LatencyProxy proxy = new LatencyProxy(EmbeddedRedisSupport.port(redisServer), 0)) {
+            Config config = new Config();
+            config.useSingleServer().setAddress("redis://127.0.0.1:" + proxy.port());
+            RedissonClient slowClient = Redisson.create(config);
+            try {
+                RedissonRateLimiter budgeted = new RedissonRateLimiter(slowClient, Duration.ofMillis(50));
+                assertTrue(budgeted.tryAcquire("test:rrl:budget", 3, 10).isAllowed());
+
+                proxy.setDelayMicros(TimeUnit.MILLISECONDS.toMicros(200));
+                long start = System.nanoTime();
+                assertThrows(RedisTimeoutException.class, () -> budgeted.tryAcquire("test:rrl:budget", 3, 10));
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertTrue(millis < 150, "latency: " + millis + "ms");
+            } finally {
+                slowClient.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void neverExceedsLimitUnderConcurrency() throws InterruptedException {
+        int threads = 16;
+        int requestsPerThread = 50;
+        int maxCount = 300;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicInteger allowed = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        if (limiter.tryAcquire("test:rrl:concurrency", maxCount, 3600).isAllowed()) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(maxCount, allowed.get());
+    }
+}
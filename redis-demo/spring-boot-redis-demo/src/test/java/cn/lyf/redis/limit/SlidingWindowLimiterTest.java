@@ -0,0 +1,103 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlidingWindowLimiterTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory connectionFactory;
+    private static RedisTemplate<String, Serializable> redisTemplate;
+    private static SlidingWindowLimiter limiter;
+
+    @BeforeAll
+    static void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        connectionFactory = EmbeddedRedisSupport.connectionFactory(EmbeddedRedisSupport.port(redisServer), 64);
+        redisTemplate = EmbeddedRedisSupport.jsonRedisTemplate(connectionFactory);
+        limiter = new SlidingWindowLimiter(redisTemplate);
+        limiter.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        connectionFactory.destroy();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @Test
+    void neverExceedsLimitUnderConcurrency() throws InterruptedException {
+        int threads = 64;
+        int requestsPerThread = 100;
+        int maxCount = 300;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicInteger allowed = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        if (limiter.tryAcquire("test:sw:concurrency", maxCount, 60).isAllowed()) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(maxCount, allowed.get());
+        // 被拒绝的请求不会写入记录
+        assertEquals(maxCount, redisTemplate.opsForZSet().zCard("test:sw:concurrency"));
+    }
+
+    @Test
+    void expiredEntriesAreTrimmedAndKeyExpires() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire("test:sw:trim", 3, 1).isAllowed());
+        }
+        LimitResult limited = limiter.tryAcquire("test:sw:trim", 3, 1);
+        assertFalse(limited.isAllowed());
+        assertTrue(limited.getTtlMillis() > 0 && limited.getTtlMillis() <= 1_000);
+        assertTrue(redisTemplate.getExpire("test:sw:trim", TimeUnit.MILLISECONDS) > 0);
+
+        TimeUnit.MILLISECONDS.sleep(1_100);
+        LimitResult afterWindow = limiter.tryAcquire("test:sw:trim", 3, 1);
+        assertTrue(afterWindow.isAllowed());
+        assertEquals(2, afterWindow.getRemaining());
+        assertEquals(1, redisTemplate.opsForZSet().zCard("test:sw:trim"));
+    }
+
+    @Test
+    void windowSlidesInsteadOfResetting() throws InterruptedException {
+        assertTrue(limiter.tryAcquire("test:sw:slide", 2, 1).isAllowed());
+        TimeUnit.MILLISECONDS.sleep(600);
+        assertTrue(limiter.tryAcquire("test:sw:slide", 2, 1).isAllowed());
+        assertFalse(limiter.tryAcquire("test:sw:slide", 2, 1).isAllowed());
+        // 第一条记录滑出窗口后只释放一个名额
+        TimeUnit.MILLISECONDS.sleep(500);
+        assertTrue(limiter.tryAcquire("test:sw:slide", 2, 1).isAllowed());
+        assertFalse(limiter.tryAcquire("test:sw:slide", 2, 1).isAllowed());
+    }
+}
@@ -0,0 +1,104 @@
+package cn.lyf.redis.limit;
+
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketLimiterTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory connectionFactory;
+    private static RedisTemplate<String, Serializable> redisTemplate;
+    private static TokenBucketLimiter limiter;
+
+    @BeforeAll
+    static void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        connectionFactory = EmbeddedRedisSupport.connectionFactory(EmbeddedRedisSupport.port(redisServer), 64);
+        redisTemplate = EmbeddedRedisSupport.jsonRedisTemplate(connectionFactory);
+        limiter = new TokenBucketLimiter(redisTemplate);
+        limiter.afterPropertiesSet();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        connectionFactory.destroy();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @Test
+    void burstUpToCapacityThenRefillsLazily() throws InterruptedException {
+        // 容量5，每秒生成5个令牌
+        for (int i = 4; i >= 0; i--) {
+            LimitResult result = limiter.tryAcquire("test:tb:burst", 5, 1);
+            assertTrue(result.isAllowed());
+            assertEquals(i, result.getRemaining());
+        }
+        LimitResult limited = limiter.tryAcquire("test:tb:burst", 5, 1);
+        assertFalse(limited.isAllowed());
+        assertTrue(limited.getTtlMillis() > 0 && limited.getTtlMillis() <= 200);
+
+        // 没有任何定时任务，等待一个令牌的生成时间后即可再次请求
+        TimeUnit.MILLISECONDS.sleep(limited.getTtlMillis() + 20);
+        assertTrue(limiter.tryAcquire("test:tb:burst", 5, 1).isAllowed());
+        assertFalse(limiter.tryAcquire("test:tb:burst", 5, 1).isAllowed());
+    }
+
+    @Test
+    void neverExceedsCapacityUnderConcurrency() throws InterruptedException {
+        int threads = 64;
+        int requestsPerThread = 50;
+        // 一小时生成1000个令牌，测试期间生成的令牌可以忽略
+        int capacity = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicInteger allowed = new AtomicInteger();
+        for (int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        if (limiter.tryAcquire("test:tb:concurrency", capacity, 3600).isAllowed()) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(capacity, allowed.get());
+    }
+
+    @Test
+    void bucketIsOneSmallExpiringValue() {
+        limiter.tryAcquire("test:tb:size", 60, 60);
+        byte[] value = redisTemplate.execute(connection ->
+                connection.stringCommands().get("test:tb:size".getBytes(StandardCharsets.UTF_8)), true);
+        assertNotNull(value);
+        assertTrue(value.length <= 20);
+        // 只消耗了一个令牌，一秒后桶就会被填满，key随之过期
+        long ttl = redisTemplate.getExpire("test:tb:size", TimeUnit.MILLISECONDS);
+        assertTrue(ttl > 0 && ttl <= 1_000);
+    }
+}
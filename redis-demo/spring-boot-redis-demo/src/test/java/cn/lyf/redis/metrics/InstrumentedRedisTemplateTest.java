@@ -0,0 +1,88 @@
+package cn.lyf.redis.metrics;
+
+import cn.lyf.redis.support.EmbeddedRedisSupport;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import redis.embedded.RedisServer;
+
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstrumentedRedisTemplateTest {
+    private static RedisServer redisServer;
+    private static JedisConnectionFactory connectionFactory;
+
+    @BeforeAll
+    static void setUp() {
+        redisServer = EmbeddedRedisSupport.start();
+        connectionFactory = EmbeddedRedisSupport.connectionFactory(EmbeddedRedisSupport.port(redisServer), 4);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        connectionFactory.destroy();
+        EmbeddedRedisSupport.stop(redisServer);
+    }
+
+    @Test
+    void recordsCommandsAndErrors() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        RedisTemplate<String, Serializable> redisTemplate = template(meterRegistry);
+
+        redisTemplate.opsForValue().set("metrics:k", "v");
+        assertEquals("v", redisTemplate.opsForValue().get("metrics:k"));
+        assertEquals("v", redisTemplate.opsForValue().get("metrics:k"));
+        Long result = redisTemplate.execute(new DefaultRedisScript<>("return 1", Long.class), Collections.emptyList());
+        assertEquals(1L, result);
+
+        assertEquals(1, commands(meterRegistry, "set"));
+        assertEquals(2, commands(meterRegistry, "get"));
+        // DefaultRedisScript先执行evalsha
+        assertTrue(commands(meterRegistry, "evalsha") >= 1);
+
+        assertThrows(RuntimeException.class, () -> redisTemplate.opsForList().leftPush("metrics:k", "x"));
+        assertEquals(1, commands(meterRegistry, "lpush"));
+        assertEquals(1, meterRegistry.get("redis.command.errors").tag("template", "test")
+                .tag("command", "lpush").counter().count());
+    }
+
+    @Test
+    void reusesProxyClassAndCommandsWrapper() {
+        RedisTemplate<String, Serializable> redisTemplate = template(new SimpleMeterRegistry());
+        Class<?> first = redisTemplate.execute((RedisCallback<Class<?>>) connection -> {
+            // 同一个连接上的命令接口只包装一次
+            assertSame(connection.stringCommands(), connection.stringCommands());
+            return connection.getClass();
+        }, true);
+        Class<?> second = redisTemplate.execute((RedisCallback<Class<?>>) RedisConnection::getClass, true);
+        assertTrue(Proxy.isProxyClass(first));
+        assertSame(first, second);
+    }
+
+    private static long commands(MeterRegistry meterRegistry, String command) {
+        return meterRegistry.get("redis.commands").tag("template", "test").tag("command", command).timer().count();
+    }
+
+    private static RedisTemplate<String, Serializable> template(MeterRegistry meterRegistry) {
+        RedisTemplate<String, Serializable> redisTemplate = new InstrumentedRedisTemplate<>(new RedisCommandMetrics(meterRegistry, "test"));
+        GenericJackson2JsonRedisSerializer valueSerializer = new GenericJackson2JsonRedisSerializer();
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(valueSerializer);
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        return redisTemplate;
+    }
+}
@@ -0,0 +1,62 @@
+package cn.lyf.redis.serializer;
+
+import cn.lyf.redis.common.Result;
+import cn.lyf.redis.config.RedisConfiguration;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactRedisSerializerTest {
+    private final GenericJackson2JsonRedisSerializer jsonSerializer = new RedisConfiguration().genericJackson2JsonRedisSerializer();
+    private final CompactRedisSerializer serializer = new CompactRedisSerializer(jsonSerializer, 1024);
+
+    @Test
+    void roundTripsResultWithJdk8Dates() {
+        LocalDateTime now = LocalDateTime.of(2023, 5, 10, 10, 30, 15);
+        byte[] bytes = serializer.serialize(Result.ok(now));
+        assertEquals(CompactRedisSerializer.SMILE, bytes[0]);
+
+        Object value = serializer.deserialize(bytes);
+        assertTrue(value instanceof Result);
+        assertEquals(now, ((Result<?>) value).getData());
+        assertEquals(Result.ok(now), value);
+    }
+
+    @Test
+    void compressesLargeValues() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            names.add("商品名称-" + (i % 10) + "-" + LocalDate.of(2023, 5, 1 + i % 28));
+        }
+        Result<List<String>> result = Result.ok(names);
+
+        byte[] bytes = serializer.serialize(result);
+        assertEquals(CompactRedisSerializer.SMILE_LZ4, bytes[0]);
+        assertTrue(bytes.length < jsonSerializer.serialize(result).length / 2);
+        assertEquals(result, serializer.deserialize(bytes));
+    }
+
+    @Test
+    void readsLegacyJsonValues() {
+        byte[] json = jsonSerializer.serialize(Result.ok("请求成功"));
+        Object value = serializer.deserialize(json);
+        // 旧数据没有类型信息，按json序列化器的方式读取
+        assertTrue(value instanceof Map);
+        assertEquals("请求成功", ((Map<?, ?>) value).get("data"));
+        assertEquals(1, serializer.deserialize(jsonSerializer.serialize(1)));
+    }
+
+    @Test
+    void handlesNullAndEmpty() {
+        assertEquals(0, serializer.serialize(null).length);
+        assertNull(serializer.deserialize(new byte[0]));
+        assertNull(serializer.deserialize(null));
+    }
+}
@@ -0,0 +1,292 @@
+package cn.lyf.redis.support;
+
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.SocketOptions;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname EmbeddedRedisSupport
+ * @description 测试使用的本地内嵌redis，保证测试可以离线运行
+ * @since 2023/4/20 14:05
+ */
+public final class EmbeddedRedisSupport {
+    private static final int CLUSTER_SLOTS = 16384;
+
+    private EmbeddedRedisSupport() {
+    }
+
+    /**
+     * 在随机空闲端口上启动一个redis
+     *
+     * @return RedisServer
+     */
+    public static RedisServer start() {
+        try {
+            RedisServer redisServer = RedisServer.newRedisServer()
+                    .bind("127.0.0.1")
+                    .port(freePort())
+                    .setting("save \"\"")
+                    .setting("appendonly no")
+                    .build();
+            redisServer.start();
+            return redisServer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void stop(RedisServer redisServer) {
+        if (redisServer == null) {
+            return;
+        }
+        try {
+            redisServer.stop();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static int port(RedisServer redisServer) {
+        return redisServer.ports().get(0);
+    }
+
+    /**
+     * 与RedisConfiguration中一致的jedis连接工厂
+     *
+     * @param port     端口
+     * @param maxTotal 连接池最大连接数
+     * @return JedisConnectionFactory
+     */
+    public static JedisConnectionFactory connectionFactory(int port, int maxTotal) {
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(maxTotal);
+        poolConfig.setMaxIdle(maxTotal);
+        JedisConnectionFactory connectionFactory = new JedisConnectionFactory(
+                new RedisStandaloneConfiguration("127.0.0.1", port),
+                JedisClientConfiguration.builder().usePooling().poolConfig(poolConfig).build());
+        connectionFactory.afterPropertiesSet();
+        return connectionFactory;
+    }
+
+    /**
+     * 与RedisConfiguration中limitConnectionFactory一致的lettuce连接工厂
+     *
+     * @param port   端口
+     * @param budget 命令超时和建立连接超时
+     * @return LettuceConnectionFactory
+     */
+    public static LettuceConnectionFactory limitConnectionFactory(int port, Duration budget) {
+        LettuceClientConfiguration clientConfiguration = LettuceClientConfiguration.builder()
+                .commandTimeout(budget)
+                .clientOptions(ClientOptions.builder()
+                        .socketOptions(SocketOptions.builder().connectTimeout(budget).build())
+                        .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                        .build())
+                .build();
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration("127.0.0.1", port), clientConfiguration);
+        connectionFactory.afterPropertiesSet();
+        return connectionFactory;
+    }
+
+    /**
+     * 与jsonRedisTemplate配置一致的RedisTemplate
+     *
+     * @param connectionFactory connectionFactory
+     * @return RedisTemplate
+     */
+    public static RedisTemplate<String, Serializable> jsonRedisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, Serializable> redisTemplate = new RedisTemplate<>();
+        GenericJackson2JsonRedisSerializer valueSerializer = new GenericJackson2JsonRedisSerializer();
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(valueSerializer);
+        redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+        redisTemplate.setHashValueSerializer(valueSerializer);
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        return redisTemplate;
+    }
+
+    /**
+     * 统计redis执行过的某些命令的调用次数(INFO commandstats)，lua脚本内部调用的命令也会被统计
+     *
+     * @param redisTemplate redisTemplate
+     * @param commands      命令名，小写
+     * @return 调用次数之和
+     */
+    public static long commandCalls(RedisTemplate<String, ?> redisTemplate, String... commands) {
+        Properties stats = redisTemplate.execute(connection -> connection.serverCommands().info("commandstats"), true);
+        long calls = 0;
+        for (String command : commands) {
+            String value = stats.getProperty("cmdstat_" + command);
+            if (value != null) {
+                calls += Long.parseLong(value.substring("calls=".length(), value.indexOf(',')));
+            }
+        }
+        return calls;
+    }
+
+    /**
+     * 启动一个只有主节点的本地redis cluster，slot按区间平均分配给各节点
+     *
+     * @param masters 节点数
+     * @return 各节点，按slot区间排列
+     */
+    public static List<RedisServer> startCluster(int masters) {
+        List<RedisServer> nodes = new ArrayList<>(masters);
+        try {
+            Path dir = Files.createTempDirectory("redis-cluster");
+            for (int i = 0; i < masters; i++) {
+                int port = freeClusterPort();
+                RedisServer node = RedisServer.newRedisServer()
+                        .bind("127.0.0.1")
+                        .port(port)
+                        .setting("save \"\"")
+                        .setting("appendonly no")
+                        .setting("cluster-enabled yes")
+                        .setting("cluster-config-file nodes-" + port + ".conf")
+                        .setting("cluster-node-timeout 5000")
+                        .setting("dir " + dir.toAbsolutePath())
+                        .build();
+                node.start();
+                nodes.add(node);
+            }
+            for (int i = 0; i < masters; i++) {
+                try (Jedis jedis = new Jedis("127.0.0.1", port(nodes.get(i)))) {
+                    int from = i * CLUSTER_SLOTS / masters;
+                    int to = (i + 1) * CLUSTER_SLOTS / masters;
+                    int[] slots = new int[to - from];
+                    for (int slot = from; slot < to; slot++) {
+                        slots[slot - from] = slot;
+                    }
+                    jedis.clusterAddSlots(slots);
+                    if (i > 0) {
+                        jedis.clusterMeet("127.0.0.1", port(nodes.get(0)));
+                    }
+                }
+            }
+            awaitClusterOk(nodes);
+            return nodes;
+        } catch (IOException e) {
+            nodes.forEach(EmbeddedRedisSupport::stop);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static void stopCluster(List<RedisServer> nodes) {
+        if (nodes != null) {
+            nodes.forEach(EmbeddedRedisSupport::stop);
+        }
+    }
+
+    /**
+     * 连接本地redis cluster的jedis连接工厂
+     *
+     * @param nodes    startCluster返回的节点
+     * @param maxTotal 每个节点连接池的最大连接数
+     * @return JedisConnectionFactory
+     */
+    public static JedisConnectionFactory clusterConnectionFactory(List<RedisServer> nodes, int maxTotal) {
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(maxTotal);
+        poolConfig.setMaxIdle(maxTotal);
+        RedisClusterConfiguration clusterConfiguration = new RedisClusterConfiguration();
+        nodes.forEach(node -> clusterConfiguration.clusterNode("127.0.0.1", port(node)));
+        JedisConnectionFactory connectionFactory = new JedisConnectionFactory(clusterConfiguration,
+                JedisClientConfiguration.builder().usePooling().poolConfig(poolConfig).build());
+        connectionFactory.afterPropertiesSet();
+        return connectionFactory;
+    }
+
+    /**
+     * 某个节点执行过的命令次数(INFO commandstats)，lua脚本内部调用的命令也会被统计
+     *
+     * @param node     节点
+     * @param commands 命令名，小写
+     * @return 调用次数之和
+     */
+    public static long commandCalls(RedisServer node, String... commands) {
+        try (Jedis jedis = new Jedis("127.0.0.1", port(node))) {
+            long calls = 0;
+            for (String line : jedis.info("commandstats").split("\r?\n")) {
+                for (String command : commands) {
+                    if (line.startsWith("cmdstat_" + command + ":calls=")) {
+                        String value = line.substring(("cmdstat_" + command + ":calls=").length());
+                        calls += Long.parseLong(value.substring(0, value.indexOf(',')));
+                    }
+                }
+            }
+            return calls;
+        }
+    }
+
+    private static void awaitClusterOk(List<RedisServer> nodes) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        for (RedisServer node : nodes) {
+            try (Jedis jedis = new Jedis("127.0.0.1", port(node))) {
+                while (!jedis.clusterInfo().contains("cluster_state:ok")) {
+                    if (System.nanoTime() > deadline) {
+                        throw new IllegalStateException("redis cluster没有就绪: " + jedis.clusterInfo());
+                    }
+                    TimeUnit.MILLISECONDS.sleep(100);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * cluster节点还需要 端口 + 10000 作为集群总线端口
+     */
+    private static int freeClusterPort() throws IOException {
+        while (true) {
+            int port = freePort();
+            if (port + 10000 <= 65535 && isFree(port + 10000)) {
+                return port;
+            }
+        }
+    }
+
+    private static boolean isFree(int port) {
+        try (ServerSocket ignored = new ServerSocket(port)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            serverSocket.setReuseAddress(true);
+            return serverSocket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package cn.lyf.redis.support;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname LatencyProxy
+ * @description 测试使用的TCP代理，放在应用与redis之间，为每个方向的数据增加固定延迟，用于模拟跨机房或变慢的redis。
+ * 数据由一个单线程调度器转发，同一方向按到达顺序，延迟可以在运行中修改
+ * @since 2023/5/16 15:00
+ */
+public final class LatencyProxy implements Closeable {
+    private final ServerSocket serverSocket;
+    private final int targetPort;
+    private final ExecutorService ioExecutor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "latency-proxy-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "latency-proxy-delay");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+    private volatile long delayMicros;
+
+    /**
+     * @param targetPort  127.0.0.1上被代理的端口
+     * @param delayMicros 每个方向增加的延迟(微秒)
+     */
+    public LatencyProxy(int targetPort, long delayMicros) {
+        this.targetPort = targetPort;
+        this.delayMicros = delayMicros;
+        try {
+            this.serverSocket = new ServerSocket(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ioExecutor.execute(this::accept);
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    public void setDelayMicros(long delayMicros) {
+        this.delayMicros = delayMicros;
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                Socket upstream = new Socket();
+                upstream.connect(new InetSocketAddress("127.0.0.1", targetPort));
+                client.setTcpNoDelay(true);
+                upstream.setTcpNoDelay(true);
+                sockets.add(client);
+                sockets.add(upstream);
+                ioExecutor.execute(() -> pump(client, upstream));
+                ioExecutor.execute(() -> pump(upstream, client));
+            } catch (IOException e) {
+                // 代理已关闭
+            }
+        }
+    }
+
+    private void pump(Socket from, Socket to) {
+        byte[] buffer = new byte[16 * 1024];
+        try {
+            InputStream in = from.getInputStream();
+            OutputStream out = to.getOutputStream();
+            int n;
+            long lastDeadline = 0;
+            while ((n = in.read(buffer)) > 0) {
+                byte[] chunk = Arrays.copyOf(buffer, n);
+                // 延迟变小时也不能早于上一块数据发送，保证同一方向的顺序
+                long deadline = Math.max(System.nanoTime() + delayMicros * 1000, lastDeadline);
+                lastDeadline = deadline;
+                scheduler.schedule(() -> {
+                    try {
+                        out.write(chunk);
+                        out.flush();
+                    } catch (IOException e) {
+                        closeQuietly(to);
+                    }
+                }, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+        } catch (IOException e) {
+            // 连接已关闭
+        } finally {
+            scheduler.schedule(() -> closeQuietly(to), delayMicros, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // ignore
+        }
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(serverSocket);
+        sockets.forEach(LatencyProxy::closeQuietly);
+        scheduler.shutdownNow();
+        ioExecutor.shutdownNow();
+    }
+}
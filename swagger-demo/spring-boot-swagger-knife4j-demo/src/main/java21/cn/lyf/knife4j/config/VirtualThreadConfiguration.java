@@ -0,0 +1,36 @@
+package cn.lyf.knife4j.config;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @author lyf
+ * @description tomcat请求使用虚拟线程处理，只在 -Pjava21 构建时编译，通过 demo.threads.virtual=true 开启。
+ * 本模块没有@Scheduled任务，只替换请求线程池
+ * @since 2023/5/27 11:00:00
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "demo.threads", name = "virtual", havingValue = "true")
+public class VirtualThreadConfiguration implements DisposableBean {
+    private final ExecutorService requestExecutor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-virtual-", 0).factory());
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(requestExecutor);
+    }
+
+    /**
+     * tomcat不会关闭外部传入的线程池
+     */
+    @Override
+    public void destroy() {
+        requestExecutor.shutdown();
+    }
+}